@@ -0,0 +1,107 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.aladin;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cds.bench.BenchData;
+import cds.fits.Fits;
+
+/**
+ * Conversions pixel <-> coordonnes clestes par Calib.GetXY() et Calib.GetCoord()
+ * sur des images synthtiques 2048x2048 en projection TAN, SIN et CAR.
+ * Mesure du temps moyen pour un lot de 4096 positions.
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=CalibBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class CalibBench {
+
+   static final int SIZE = 2048;
+   static final int N = 4096;
+
+   @Param({ "TAN", "SIN", "CAR" })
+   public String proj;
+
+   private Calib calib;
+   private double [] x, y, ra, dec;
+   private Coord c = new Coord();
+
+   @Setup
+   public void setup() throws Exception {
+      Fits f = BenchData.fitsImage(SIZE,SIZE,16,proj,83.82,-5.39,1./3600,0);
+      calib = f.getCalib();
+      Random r = new Random(0);
+      x = new double[N]; y = new double[N]; ra = new double[N]; dec = new double[N];
+      for( int i=0; i<N; i++ ) {
+         c.x = x[i] = SIZE*r.nextDouble();
+         c.y = y[i] = SIZE*r.nextDouble();
+         calib.GetCoord(c);
+         ra[i] = c.al;
+         dec[i] = c.del;
+      }
+   }
+
+   /** Coordonnes clestes -> pixels */
+   @Benchmark
+   public double getXY() throws Exception {
+      double s=0;
+      for( int i=0; i<N; i++ ) {
+         c.al = ra[i];
+         c.del = dec[i];
+         calib.GetXY(c);
+         s += c.x+c.y;
+      }
+      return s;
+   }
+
+   /** Pixels -> coordonnes clestes */
+   @Benchmark
+   public double getCoord() throws Exception {
+      double s=0;
+      for( int i=0; i<N; i++ ) {
+         c.x = x[i];
+         c.y = y[i];
+         calib.GetCoord(c);
+         s += c.al+c.del;
+      }
+      return s;
+   }
+}
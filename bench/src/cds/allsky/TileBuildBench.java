@@ -0,0 +1,89 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.allsky;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cds.bench.BenchData;
+
+/**
+ * Gnration des tuiles HiPS (action TILES => ThreadBuilderTile.buildHealpix1())
+ *  partir d'images FITS synthtiques dj indexes (arborescence HpxFinder).
+ * Les tuiles sont supprimes (CLEANTILES) avant chaque mesure, l'index est conserv.
+ * Mesure en temps unique (une gnration complte par itration).
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=TileBuildBench
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=1)
+@Measurement(iterations=5)
+@Fork(value=1, jvmArgs={ "-Djava.awt.headless=true", "-Xmx2g" })
+public class TileBuildBench {
+
+   @Param({ "16" })
+   public int nImages;
+
+   @Param({ "16", "-32" })
+   public int bitpix;
+
+   private File dir, in, out;
+
+   @Setup(Level.Trial)
+   public void setup() throws Exception {
+      dir = BenchData.tmpDir("TileBuildBench");
+      out = BenchData.hpxFinder(dir,nImages,1024,bitpix,0);
+      in = new File(dir,"in");
+   }
+
+   @Setup(Level.Invocation)
+   public void clean() {
+      BenchData.hipsGen(in,out,"CLEANTILES");
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() {
+      BenchData.delete(dir);
+   }
+
+   @Benchmark
+   public File tiles() {
+      BenchData.hipsGen(in,out,"TILES");
+      return out;
+   }
+}
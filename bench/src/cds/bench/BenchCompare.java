@@ -0,0 +1,187 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Comparaison de deux rsultats JMH au format JSON (option -rf json) afin de dtecter
+ * les rgressions de performances entre une rfrence et une nouvelle campagne.
+ * Un benchmark (nom + paramtres) est en rgression si son score se dgrade de plus
+ * de threshold % (score plus grand pour les modes en temps, plus petit pour le mode
+ * "thrpt"). Les benchmarks absents de l'un des deux fichiers sont simplement signals.
+ *
+ * Usage : java cds.bench.BenchCompare baseline.json current.json [threshold%]
+ * Code retour : 0 si pas de rgression, 1 sinon, 2 en cas d'erreur
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+public final class BenchCompare {
+
+   private BenchCompare() { }
+
+   static public void main(String [] arg) {
+      if( arg.length<2 ) {
+         System.err.println("Usage: java cds.bench.BenchCompare baseline.json current.json [threshold%]");
+         System.exit(2);
+      }
+      try {
+         double threshold = arg.length>2 ? Double.parseDouble(arg[2]) : 10;
+         Map<String,double[]> ref = load(arg[0]);
+         Map<String,double[]> cur = load(arg[1]);
+         int nReg = compare(ref,cur,threshold);
+         System.out.println(nReg==0 ? "No regression (threshold "+threshold+"%)"
+               : nReg+" regression(s) above "+threshold+"%");
+         System.exit( nReg==0 ? 0 : 1 );
+      } catch( Exception e ) {
+         System.err.println("BenchCompare error: "+e.getMessage());
+         System.exit(2);
+      }
+   }
+
+   /** Compare les scores et affiche le dtail
+    * @return le nombre de rgressions */
+   static int compare(Map<String,double[]> ref,Map<String,double[]> cur,double threshold) {
+      int nReg=0;
+      for( Map.Entry<String,double[]> e : cur.entrySet() ) {
+         String key = e.getKey();
+         double [] c = e.getValue();
+         double [] r = ref.get(key);
+         if( r==null ) { System.out.println("  NEW        "+key); continue; }
+
+         // Variation en %, positive si dgradation
+         double delta = 100*(c[0]-r[0])/r[0];
+         if( c[1]>0 ) delta = -delta;
+         boolean reg = delta>threshold;
+         if( reg ) nReg++;
+         System.out.println(String.format(Locale.US,"  %-10s %s: %.4g -> %.4g (%+.1f%%)",
+               reg ? "REGRESSION" : delta<-threshold ? "IMPROVED" : "OK", key, r[0], c[0], delta));
+      }
+      for( String key : ref.keySet() ) {
+         if( !cur.containsKey(key) ) System.out.println("  MISSING    "+key);
+      }
+      return nReg;
+   }
+
+   /** Chargement d'un rsultat JMH JSON
+    * @return benchmark[params] -> { score, 1 si dbit (plus grand = mieux) sinon 0 } */
+   static Map<String,double[]> load(String file) throws Exception {
+      File f = new File(file);
+      byte [] buf = new byte[(int)f.length()];
+      FileInputStream in = new FileInputStream(f);
+      try {
+         int n=0;
+         while( n<buf.length ) { int m=in.read(buf,n,buf.length-n); if( m<0 ) break; n+=m; }
+      } finally { in.close(); }
+
+      Object o = new Json(new String(buf,"UTF-8")).parse();
+      if( !(o instanceof ArrayList) ) throw new Exception(file+": not a JMH JSON result");
+      Map<String,double[]> res = new LinkedHashMap<>();
+      for( Object x : (ArrayList<?>)o ) {
+         Map<?,?> b = (Map<?,?>)x;
+         String key = (String)b.get("benchmark");
+         Object params = b.get("params");
+         if( params instanceof Map ) key += params.toString();
+         Map<?,?> m = (Map<?,?>)b.get("primaryMetric");
+         double score = ((Number)m.get("score")).doubleValue();
+         boolean thrpt = "thrpt".equals(b.get("mode"));
+         res.put(key, new double[] { score, thrpt ? 1 : 0 });
+      }
+      return res;
+   }
+
+   /** Analyseur JSON minimal (objets => LinkedHashMap, tableaux => ArrayList,
+     * nombres => Double) */
+   static private class Json {
+      private String s;
+      private int pos=0;
+
+      Json(String s) { this.s=s; }
+
+      Object parse() throws Exception {
+         skip();
+         char c = s.charAt(pos);
+         if( c=='{' ) {
+            LinkedHashMap<String,Object> map = new LinkedHashMap<>();
+            pos++; skip();
+            if( s.charAt(pos)=='}' ) { pos++; return map; }
+            while( true ) {
+               skip();
+               String key = (String)parse();
+               skip(); expect(':');
+               map.put(key,parse());
+               skip();
+               if( s.charAt(pos)==',' ) { pos++; continue; }
+               expect('}');
+               return map;
+            }
+         }
+         if( c=='[' ) {
+            ArrayList<Object> list = new ArrayList<>();
+            pos++; skip();
+            if( s.charAt(pos)==']' ) { pos++; return list; }
+            while( true ) {
+               list.add(parse());
+               skip();
+               if( s.charAt(pos)==',' ) { pos++; continue; }
+               expect(']');
+               return list;
+            }
+         }
+         if( c=='"' ) {
+            StringBuilder b = new StringBuilder();
+            for( pos++; s.charAt(pos)!='"'; pos++ ) {
+               char d = s.charAt(pos);
+               if( d=='\\' ) {
+                  d = s.charAt(++pos);
+                  if( d=='u' ) { d=(char)Integer.parseInt(s.substring(pos+1,pos+5),16); pos+=4; }
+                  else if( d=='n' ) d='\n';
+                  else if( d=='t' ) d='\t';
+               }
+               b.append(d);
+            }
+            pos++;
+            return b.toString();
+         }
+         int deb=pos;
+         while( pos<s.length() && ",}] \t\r\n".indexOf(s.charAt(pos))<0 ) pos++;
+         String v = s.substring(deb,pos);
+         if( v.equals("true") ) return Boolean.TRUE;
+         if( v.equals("false") ) return Boolean.FALSE;
+         if( v.equals("null") ) return null;
+         return Double.valueOf(v);
+      }
+
+      private void skip() { while( pos<s.length() && Character.isWhitespace(s.charAt(pos)) ) pos++; }
+
+      private void expect(char c) throws Exception {
+         if( s.charAt(pos)!=c ) throw new Exception("JSON syntax error at "+pos+": '"+c+"' expected");
+         pos++;
+      }
+   }
+}
@@ -0,0 +1,264 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import cds.aladin.Calib;
+import cds.aladin.MyProperties;
+import cds.allsky.HipsGen;
+import cds.fits.Fits;
+import cds.moc.SMoc;
+import cds.mocmulti.MocItem;
+import cds.mocmulti.MultiMoc;
+
+/**
+ * Gnrateurs de donnes synthtiques pour les micro-benchmarks JMH (bench/src).
+ * Toutes les gnrations sont dterministes (graine explicite) afin que deux
+ * campagnes de mesures portent exactement sur les mmes donnes.
+ *
+ * - images FITS calibres (projections TAN, SIN, CAR)
+ * - arborescence HpxFinder (index HiPS) construite par HipsGen sur ces images
+ * - VOTables (TABLEDATA) et CSV de N lignes
+ * - MultiMoc de N enregistrements (MOC + proprits)
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+public final class BenchData {
+
+   private BenchData() { }
+
+   /** Gnration d'une image FITS calibre : fond bruit + sources gaussiennes
+    * @param width largeur en pixels
+    * @param height hauteur en pixels
+    * @param bitpix codage des pixels (8,16,32,-32,-64)
+    * @param proj projection WCS (TAN, SIN, CAR...)
+    * @param ra,dec centre de l'image (degrs)
+    * @param pixSize taille d'un pixel (degrs)
+    * @param seed graine du gnrateur alatoire
+    */
+   static public Fits fitsImage(int width,int height,int bitpix,String proj,
+         double ra,double dec,double pixSize,long seed) throws Exception {
+      Random r = new Random(seed);
+      Fits f = new Fits(width,height,bitpix);
+      f.headerFits.setKeyValue("CTYPE1","RA---"+proj);
+      f.headerFits.setKeyValue("CTYPE2","DEC--"+proj);
+      f.headerFits.setKeyValue("CRPIX1",(width/2.+0.5)+"");
+      f.headerFits.setKeyValue("CRPIX2",(height/2.+0.5)+"");
+      f.headerFits.setKeyValue("CRVAL1",ra+"");
+      f.headerFits.setKeyValue("CRVAL2",dec+"");
+      f.headerFits.setKeyValue("CDELT1",(-pixSize)+"");
+      f.headerFits.setKeyValue("CDELT2",pixSize+"");
+      f.headerFits.setKeyValue("RADESYS","ICRS");
+      f.headerFits.setKeyValue("EQUINOX","2000.0");
+      if( bitpix>0 ) { f.setBlank(0); f.headerFits.setKeyValue("BLANK","0"); }
+      else f.setBlank(Double.NaN);
+
+      double max = bitpix==8 ? 250 : bitpix==16 ? 30000 : 100000;
+      double [] img = new double[width*height];
+      for( int i=0; i<img.length; i++ ) img[i] = max/100 * (1+r.nextDouble());
+      int nSrc = width*height/2000+1;
+      for( int k=0; k<nSrc; k++ ) {
+         int cx = r.nextInt(width), cy = r.nextInt(height);
+         double flux = max/2*r.nextDouble(), sig = 1+3*r.nextDouble();
+         int rad = (int)(4*sig);
+         for( int y=Math.max(0,cy-rad); y<Math.min(height,cy+rad); y++ ) {
+            for( int x=Math.max(0,cx-rad); x<Math.min(width,cx+rad); x++ ) {
+               double d2 = (x-cx)*(x-cx)+(y-cy)*(y-cy);
+               img[y*width+x] += flux*Math.exp(-d2/(2*sig*sig));
+            }
+         }
+      }
+      for( int y=0; y<height; y++ ) {
+         for( int x=0; x<width; x++ ) f.setPixelDouble(x,y,Math.min(max,img[y*width+x]));
+      }
+      f.setCalib(new Calib(f.headerFits));
+      return f;
+   }
+
+   /** Ecriture de n images FITS calibres dans le rpertoire dir, rparties
+    * alatoirement dans un champ de quelques degrs centr sur (ra,dec)
+    * @return le rpertoire dir */
+   static public File fitsImages(File dir,int n,int size,int bitpix,String proj,
+         double ra,double dec,long seed) throws Exception {
+      Random r = new Random(seed);
+      dir.mkdirs();
+      double pixSize = 1./3600;                        // 1 arcsec
+      double field = size*pixSize*Math.sqrt(n);        // Champ couvert par les images
+      for( int i=0; i<n; i++ ) {
+         double ra1  = ra  + (r.nextDouble()-0.5)*field/Math.cos(Math.toRadians(dec));
+         double dec1 = dec + (r.nextDouble()-0.5)*field;
+         Fits f = fitsImage(size,size,bitpix,proj,ra1,dec1,pixSize,seed+i);
+         f.writeFITS(new File(dir,"img"+i+".fits").getAbsolutePath());
+      }
+      return dir;
+   }
+
+   /** Gnration d'une arborescence HpxFinder : n images FITS dans dir/in, puis
+    * indexation HipsGen (action INDEX) dans dir/out
+    * @return le rpertoire de sortie du HiPS (contenant HpxFinder) */
+   static public File hpxFinder(File dir,int n,int size,int bitpix,long seed) throws Exception {
+      File in = fitsImages(new File(dir,"in"),n,size,bitpix,"TAN",83.82,-5.39,seed);
+      File out = new File(dir,"out");
+      hipsGen(in,out,"INDEX");
+      if( !(new File(out,"HpxFinder")).isDirectory() ) throw new Exception("HpxFinder not generated in "+out);
+      return out;
+   }
+
+   /** Lancement de HipsGen sur le rpertoire d'entre in et de sortie out pour les actions indiques */
+   static public void hipsGen(File in,File out,String... actions) {
+      String [] args = new String[3+actions.length];
+      args[0] = "in="+in.getAbsolutePath();
+      args[1] = "out="+out.getAbsolutePath();
+      args[2] = "creator_did=ivo://bench/P/synthetic";
+      System.arraycopy(actions,0,args,3,actions.length);
+      new HipsGen().execute(args);
+   }
+
+   static private final String [] FIELDS = {
+         "id",   "int",    null,
+         "ra",   "double", "pos.eq.ra;meta.main",
+         "dec",  "double", "pos.eq.dec;meta.main",
+         "pmra", "double", "pos.pm;pos.eq.ra",
+         "pmdec","double", "pos.pm;pos.eq.dec",
+         "mag",  "float",  "phot.mag",
+         "flag", "boolean",null,
+         "name", "char",   "meta.id",
+   };
+
+   /** Gnration d'une VOTable (srialisation TABLEDATA) de nrows lignes */
+   static public byte [] votable(int nrows,long seed) throws Exception {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(nrows*200+2000);
+      Writer w = new OutputStreamWriter(bout,"UTF-8");
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            +"<VOTABLE version=\"1.3\" xmlns=\"http://www.ivoa.net/xml/VOTable/v1.3\">\n"
+            +"<RESOURCE name=\"bench\">\n"
+            +"<COOSYS ID=\"J2000\" system=\"eq_FK5\" equinox=\"J2000\"/>\n"
+            +"<TABLE name=\"synthetic\" nrows=\""+nrows+"\">\n");
+      for( int i=0; i<FIELDS.length; i+=3 ) {
+         w.write("<FIELD name=\""+FIELDS[i]+"\" datatype=\""+FIELDS[i+1]+"\""
+               +(FIELDS[i+1].equals("char") ? " arraysize=\"*\"" : "")
+               +(FIELDS[i+2]!=null ? " ucd=\""+FIELDS[i+2]+"\"" : "")
+               +(FIELDS[i].equals("ra") || FIELDS[i].equals("dec") ? " ref=\"J2000\" unit=\"deg\"" : "")
+               +"/>\n");
+      }
+      w.write("<DATA><TABLEDATA>\n");
+      Random r = new Random(seed);
+      String [] row = new String[FIELDS.length/3];
+      for( int i=0; i<nrows; i++ ) {
+         row(r,i,row);
+         w.write("<TR>");
+         for( String s : row ) { w.write("<TD>"); w.write(s); w.write("</TD>"); }
+         w.write("</TR>\n");
+      }
+      w.write("</TABLEDATA></DATA>\n</TABLE>\n</RESOURCE>\n</VOTABLE>\n");
+      w.close();
+      return bout.toByteArray();
+   }
+
+   /** Gnration d'une table CSV (sparateur sep) de nrows lignes, avec ligne d'entte */
+   static public byte [] csv(int nrows,char sep,long seed) throws Exception {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(nrows*100+200);
+      Writer w = new OutputStreamWriter(bout,"UTF-8");
+      for( int i=0; i<FIELDS.length; i+=3 ) { if( i>0 ) w.write(sep); w.write(FIELDS[i]); }
+      w.write('\n');
+      Random r = new Random(seed);
+      String [] row = new String[FIELDS.length/3];
+      for( int i=0; i<nrows; i++ ) {
+         row(r,i,row);
+         for( int j=0; j<row.length; j++ ) { if( j>0 ) w.write(sep); w.write(row[j]); }
+         w.write('\n');
+      }
+      w.close();
+      return bout.toByteArray();
+   }
+
+   // Gnration alatoire d'une ligne de table (mme ordre que FIELDS)
+   static private void row(Random r,int i,String [] row) {
+      double ra  = 360*r.nextDouble();
+      double dec = Math.toDegrees(Math.asin(2*r.nextDouble()-1));
+      row[0] = i+"";
+      row[1] = String.format(Locale.US,"%.7f",ra);
+      row[2] = String.format(Locale.US,"%+.7f",dec);
+      row[3] = String.format(Locale.US,"%.3f",r.nextGaussian()*10);
+      row[4] = String.format(Locale.US,"%.3f",r.nextGaussian()*10);
+      row[5] = String.format(Locale.US,"%.3f",10+10*r.nextDouble());
+      row[6] = r.nextBoolean() ? "T" : "F";
+      row[7] = "SRC J"+row[1]+row[2];
+   }
+
+   static private final String [] CATEGORY = { "Image/Optical/DSS", "Image/Infrared/2MASS",
+      "Catalog/VizieR/I", "Catalog/VizieR/II", "Catalog/VizieR/J", "Image/Radio", "Image/X" };
+
+   /** Gnration d'un MultiMoc de n enregistrements : un MOC de quelques dizaines de
+    * cellules (ordres 5  8) autour d'une position alatoire, et une dizaine de proprits */
+   static public MultiMoc multiMoc(int n,long seed) throws Exception {
+      Random r = new Random(seed);
+      MultiMoc mm = new MultiMoc();
+      for( int i=0; i<n; i++ ) {
+         String id = (i%3==0 ? "CDS/P/" : "CDS/J/A+A/")+(i/3)+"/"+i;
+         boolean cat = (i%3)!=0;
+         MyProperties prop = new MyProperties();
+         prop.put("ID",id);
+         prop.put("obs_title","Synthetic collection "+i);
+         prop.put("client_category",CATEGORY[r.nextInt(CATEGORY.length)]);
+         prop.put("dataproduct_type",cat ? "catalog" : "image");
+         prop.put("obs_regime",cat ? "Optical" : r.nextBoolean() ? "Infrared" : "Radio");
+         if( cat ) prop.put("nb_rows",(1+r.nextInt(1000000))+"");
+         else prop.put("hips_order",(3+r.nextInt(9))+"");
+         prop.put("moc_sky_fraction",String.format(Locale.US,"%.6f",r.nextDouble()/100));
+         prop.put("obs_copyright","CDS");
+
+         // MOC : des cellules voisines autour d'un pixel alatoire de l'ordre 5
+         int order = 5+r.nextInt(4);
+         long base = ((long)r.nextInt(12*1024))<<(2*(order-5));
+         StringBuilder s = new StringBuilder(order+"/");
+         int nCell = 10+r.nextInt(50);
+         for( int k=0; k<nCell; k++ ) s.append(' ').append(base+r.nextInt(1<<(2*(order-5)+2)));
+         SMoc moc = new SMoc(s.toString());
+         mm.add(new MocItem(id,moc,prop,0L,0L));
+      }
+      return mm;
+   }
+
+   /** Cration d'un rpertoire temporaire (supprim  la fin de la JVM s'il est vide) */
+   static public File tmpDir(String prefix) throws Exception {
+      File f = File.createTempFile(prefix,"");
+      f.delete();
+      if( !f.mkdirs() ) throw new Exception("Cannot create "+f);
+      f.deleteOnExit();
+      return f;
+   }
+
+   /** Suppression rcursive d'un rpertoire */
+   static public void delete(File f) {
+      File [] list = f.listFiles();
+      if( list!=null ) for( File g : list ) delete(g);
+      f.delete();
+   }
+}
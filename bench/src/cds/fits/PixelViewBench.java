@@ -0,0 +1,143 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.fits;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Comparaison de l'accs aux pixels par Fits.getPixValDouble() (switch sur le bitpix  chaque
+ * pixel) et par PixelView (accs typ, oprations par ligne) sur des tuiles 512x512
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=PixelViewBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PixelViewBench {
+
+   static final int SIZE = 512;
+
+   @Param({ "8", "16", "32", "64", "-32", "-64" })
+   public int bitpix;
+
+   private Fits fits, fits1;
+   private double [] row, row1;
+
+   @Setup
+   public void setup() throws Exception {
+      Random r = new Random(0);
+      fits = new Fits(SIZE,SIZE,bitpix);
+      fits1 = new Fits(SIZE,SIZE,bitpix);
+      fits.setBlank(bitpix>0 ? 0 : Double.NaN);
+      fits1.setBlank(bitpix>0 ? 0 : Double.NaN);
+      PixelView v = fits.getPixelView();
+      PixelView v1 = fits1.getPixelView();
+      for( int i=0; i<SIZE*SIZE; i++ ) {
+         v.set(i, r.nextInt(200)+1);
+         v1.set(i, r.nextInt(200)+1);
+      }
+      row = new double[SIZE];
+      row1 = new double[SIZE];
+   }
+
+   /** Somme des pixels, un getPixValDouble() par pixel */
+   @Benchmark
+   public double sumOld() {
+      double s=0;
+      for( int i=0; i<SIZE*SIZE; i++ ) s += fits.getPixValDouble(fits.pixels, bitpix, i);
+      return s;
+   }
+
+   /** Somme des pixels, lecture ligne  ligne via PixelView */
+   @Benchmark
+   public double sumNew() {
+      PixelView v = fits.getPixelView();
+      double s=0;
+      for( int y=0; y<SIZE; y++ ) {
+         v.getRow(y*SIZE, row, 0, SIZE);
+         for( int x=0; x<SIZE; x++ ) s += row[x];
+      }
+      return s;
+   }
+
+   /** Min/max des pixels non blank, un getPixValDouble() par pixel */
+   @Benchmark
+   public double minMaxOld() {
+      double min=Double.MAX_VALUE, max=-Double.MAX_VALUE;
+      for( int i=0; i<SIZE*SIZE; i++ ) {
+         double c = fits.getPixValDouble(fits.pixels, bitpix, i);
+         if( fits.isBlankPixel(c) ) continue;
+         if( c<min ) min=c;
+         if( c>max ) max=c;
+      }
+      return max-min;
+   }
+
+   /** Min/max des pixels non blank via PixelView.minMax() */
+   @Benchmark
+   public double minMaxNew() {
+      PixelView v = fits.getPixelView();
+      double [] minmax = new double[2];
+      long n=0;
+      for( int y=0; y<SIZE; y++ ) n = v.minMax(y*SIZE, SIZE, fits.blank, minmax, n);
+      return minmax[1]-minmax[0];
+   }
+
+   /** Coaddition (moyenne) pixel par pixel, getPixValDouble()/setPixValDouble() */
+   @Benchmark
+   public Fits coaddOld() {
+      for( int i=0; i<SIZE*SIZE; i++ ) {
+         double v1 = fits.getPixValDouble(fits.pixels, bitpix, i);
+         double v2 = fits1.getPixValDouble(fits1.pixels, bitpix, i);
+         double v = fits.isBlankPixel(v1) ? v2 : fits1.isBlankPixel(v2) ? v1 : (v1 + v2) / 2;
+         Fits.setPixValDouble(fits.pixels, bitpix, i, v);
+      }
+      return fits;
+   }
+
+   /** Coaddition (moyenne) ligne  ligne via PixelView.coaddRow() */
+   @Benchmark
+   public Fits coaddNew() {
+      PixelView v = fits.getPixelView();
+      PixelView v1 = fits1.getPixelView();
+      for( int y=0; y<SIZE; y++ ) {
+         v.coaddRow(y*SIZE, v1, y*SIZE, SIZE, Fits.AVG, fits.blank, fits1.blank, row, row1);
+      }
+      return fits;
+   }
+}
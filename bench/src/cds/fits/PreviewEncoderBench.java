@@ -0,0 +1,88 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.fits;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Nombre de tuiles preview 512x512 codes par seconde, par l'ancienne mthode (Toolkit AWT,
+ * MemoryImageSource, ImageWriter recr  chaque tuile) et par PreviewEncoder (raster rempli
+ * directement, ImageWriter rutilis par thread)
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=PreviewEncoderBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgs={ "-Djava.awt.headless=true" })
+public class PreviewEncoderBench {
+
+   static final int SIZE = 512;
+
+   @Param({ "jpeg", "png" })
+   public String format;
+
+   private Fits fits;
+   private ByteArrayOutputStream out;
+
+   @Setup
+   public void setup() throws Exception {
+      Random r = new Random(0);
+      fits = new Fits(SIZE,SIZE,16);
+      fits.setBlank(0);
+      PixelView v = fits.getPixelView();
+      for( int i=0; i<SIZE*SIZE; i++ ) v.set(i, r.nextInt(2000));
+      out = new ByteArrayOutputStream(SIZE*SIZE);
+   }
+
+   /** Ancienne mthode via le Toolkit AWT */
+   @Benchmark
+   public int encodeOld() throws Exception {
+      out.reset();
+      fits.writePreviewAwt(out, 0, 2000, null, format);
+      return out.size();
+   }
+
+   /** PreviewEncoder */
+   @Benchmark
+   public int encodeNew() throws Exception {
+      out.reset();
+      fits.writePreview(out, 0, 2000, null, format);
+      return out.size();
+   }
+}
@@ -0,0 +1,101 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.mocmulti;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cds.bench.BenchData;
+import cds.moc.SMoc;
+
+/**
+ * Interrogation d'un MultiMoc synthtique de N enregistrements : recherche par cellule
+ * HEALPix, par MOC, par expression sur les proprits, par masque d'identificateurs,
+ * ainsi que le rechargement du dump binaire (BinaryDump).
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=MultiMocBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgs={ "-Xmx2g" })
+public class MultiMocBench {
+
+   @Param({ "1000", "30000" })
+   public int n;
+
+   private MultiMoc mm;
+   private SMoc region;
+   private File dump;
+
+   @Setup
+   public void setup() throws Exception {
+      mm = BenchData.multiMoc(n,0);
+      region = new SMoc("3/100-120");
+      dump = File.createTempFile("MultiMocBench",".bin");
+      (new BinaryDump()).save(mm,dump.getAbsolutePath());
+   }
+
+   @TearDown
+   public void tearDown() { dump.delete(); }
+
+   @Benchmark
+   public int scanCell() {
+      return mm.scan(3,110,"*").size();
+   }
+
+   @Benchmark
+   public int scanMoc() {
+      return mm.scan(region).size();
+   }
+
+   @Benchmark
+   public int scanExpr() throws Exception {
+      return mm.scan(null,"dataproduct_type=catalog && nb_rows>500000 && client_category=Catalog/VizieR/J*",
+            true,-1,MultiMoc.OVERLAPS).size();
+   }
+
+   @Benchmark
+   public int scanMask() throws Exception {
+      return mm.scan("CDS/J/A+A/1*").size();
+   }
+
+   @Benchmark
+   public int loadDump() throws Exception {
+      return MultiMoc.createFromDump(dump.getAbsolutePath()).size();
+   }
+}
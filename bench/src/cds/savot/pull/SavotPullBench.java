@@ -0,0 +1,108 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.savot.pull;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cds.bench.BenchData;
+import cds.savot.model.SavotTR;
+import cds.savot.model.TDSet;
+
+/**
+ * Lecture d'une VOTable TABLEDATA synthtique de N lignes par SavotPullParser,
+ * en mode squentiel (getNextTR(), accs  toutes les cellules) et en mode FULL
+ * (construction complte du modle), et par lots colonnes (nextBatch()).
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=SavotPullBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class SavotPullBench {
+
+   @Param({ "10000", "100000" })
+   public int nrows;
+
+   private byte [] votable;
+
+   @Setup
+   public void setup() throws Exception {
+      votable = BenchData.votable(nrows,0);
+   }
+
+   @Benchmark
+   public long sequential() throws Exception {
+      SavotPullParser sp = new SavotPullParser(new ByteArrayInputStream(votable),SavotPullEngine.SEQUENTIAL,"UTF-8");
+      long n=0;
+      SavotTR tr;
+      while( (tr=sp.getNextTR())!=null ) {
+         TDSet tds = tr.getTDSet();
+         for( int i=0; i<tds.getItemCount(); i++ ) n += tds.getContent(i).length();
+      }
+      sp.close();
+      return n;
+   }
+
+   @Benchmark
+   public double batch() throws Exception {
+      SavotPullParser sp = new SavotPullParser(new ByteArrayInputStream(votable),SavotPullEngine.SEQUENTIAL,"UTF-8");
+      double s=0;
+      int n=0;
+      SavotColumnBatch b;
+      while( (b=sp.nextBatch(1024))!=null ) {
+         for( int c=0; c<b.getColumnCount(); c++ ) {
+            if( b.getColumnType(c)!=SavotColumnBatch.DOUBLE ) continue;
+            double [] v = b.getDoubleColumn(c);
+            for( int i=0; i<b.getRowCount(); i++ ) if( !b.isNull(c,i) ) s+=v[i];
+         }
+         n+=b.getRowCount();
+      }
+      sp.close();
+      if( n!=nrows ) throw new Exception("Bad row number: "+n+" (expected "+nrows+")");
+      return s;
+   }
+
+   @Benchmark
+   public int full() throws Exception {
+      SavotPullParser sp = new SavotPullParser(new ByteArrayInputStream(votable),SavotPullEngine.FULL,"UTF-8");
+      int n = sp.getTRCount();
+      if( n!=nrows ) throw new Exception("Bad TR number: "+n+" (expected "+nrows+")");
+      sp.close();
+      return n;
+   }
+}
@@ -0,0 +1,113 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.tools.pixtools;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requtes HEALPix lmentaires via CDSHealpix : ang2pix, pix2ang, query_disc,
+ * voisins et coins d'une cellule. Mesure du temps moyen pour un lot de 1024 requtes
+ * sur des positions alatoires uniformes sur la sphre.
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=HealpixBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class HealpixBench {
+
+   static final int N = 1024;
+
+   @Param({ "3", "11", "18" })
+   public int order;
+
+   private double [] theta, phi, ra, dec;
+   private long [] npix;
+
+   @Setup
+   public void setup() throws Exception {
+      Random r = new Random(0);
+      theta = new double[N]; phi = new double[N]; ra = new double[N]; dec = new double[N];
+      npix = new long[N];
+      for( int i=0; i<N; i++ ) {
+         ra[i] = 360*r.nextDouble();
+         dec[i] = Math.toDegrees(Math.asin(2*r.nextDouble()-1));
+         double [] pol = CDSHealpix.radecToPolar(new double[] { ra[i], dec[i] });
+         theta[i] = pol[0];
+         phi[i] = pol[1];
+         npix[i] = CDSHealpix.ang2pix_nest(order,theta[i],phi[i]);
+      }
+   }
+
+   @Benchmark
+   public long ang2pix() throws Exception {
+      long s=0;
+      for( int i=0; i<N; i++ ) s += CDSHealpix.ang2pix_nest(order,theta[i],phi[i]);
+      return s;
+   }
+
+   @Benchmark
+   public double pix2ang() throws Exception {
+      double s=0;
+      for( int i=0; i<N; i++ ) s += CDSHealpix.pix2ang_nest(order,npix[i])[0];
+      return s;
+   }
+
+   /** Cne de rayon gal  4 cellules */
+   @Benchmark
+   public long queryDisc() throws Exception {
+      double radius = 4*CDSHealpix.pixRes(order)/3600;
+      long s=0;
+      for( int i=0; i<N; i++ ) s += CDSHealpix.query_disc(order,ra[i],dec[i],Math.toRadians(radius),true).length;
+      return s;
+   }
+
+   @Benchmark
+   public long neighbours() throws Exception {
+      long s=0;
+      for( int i=0; i<N; i++ ) s += CDSHealpix.neighbours(order,npix[i]).length;
+      return s;
+   }
+
+   @Benchmark
+   public double corners() throws Exception {
+      double s=0;
+      for( int i=0; i<N; i++ ) s += CDSHealpix.corners(order,npix[i])[0][0];
+      return s;
+   }
+}
@@ -0,0 +1,101 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.xml;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cds.aladin.MyInputStream;
+import cds.bench.BenchData;
+
+/**
+ * Parsing par TableParser.parse() d'une VOTable TABLEDATA et d'un CSV synthtiques
+ * de N lignes (8 colonnes), avec un consumer qui se contente de compter les enregistrements.
+ *
+ * Lancement : ant -Djmh.lib=/chemin/des/jars/jmh bench -Dbench.args=TableParserBench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class TableParserBench {
+
+   @Param({ "10000", "100000" })
+   public int nrows;
+
+   private byte [] votable, csv;
+
+   @Setup
+   public void setup() throws Exception {
+      votable = BenchData.votable(nrows,0);
+      csv = BenchData.csv(nrows,',',0);
+   }
+
+   @Benchmark
+   public int votable() throws Exception { return parse(votable); }
+
+   @Benchmark
+   public int csv() throws Exception { return parse(csv); }
+
+   private int parse(byte [] buf) throws Exception {
+      Counter c = new Counter();
+      MyInputStream in = new MyInputStream(new ByteArrayInputStream(buf));
+      try {
+         in = in.startRead();
+         if( !(new TableParser(null,c)).parse(in) ) throw new Exception("Parsing error");
+      } finally { in.close(); }
+      if( c.n!=nrows ) throw new Exception("Bad record number: "+c.n+" (expected "+nrows+")");
+      return c.n;
+   }
+
+   /** Consumer minimal : compte les enregistrements */
+   static class Counter implements TableParserConsumer {
+      int n=0;
+      public void setRecord(double ra,double dec,double jdtime,String [] field) { n++; }
+      public void startResource(String ID) { }
+      public void setResourceInfo(String name,String contain) { }
+      public void endResource() { }
+      public void startTable(String ID) { }
+      public void setTableInfo(String name,String value) { }
+      public void endTable() { }
+      public void setTableRaDecXYIndex(int nRa,int nDec,int nPmRa,int nPmDec,int nX,int nY,boolean badDetection) { }
+      public void setField(Field f) { }
+      public void setTarget(String target) { }
+      public void tableParserWarning(String msg) { }
+      public void tableParserInfo(String msg) { }
+      public void setFilter(String filter) { }
+   }
+}
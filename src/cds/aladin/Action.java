@@ -2283,12 +2283,10 @@ public class Action {
 
 
 			// setting the value of the variable
-    	    try {
-    	    	parser.setVar(curVar, Double.valueOf(s.getValue(pos)).doubleValue());
-    	    }
-    	    catch(NumberFormatException exc) {if(cont) continue; else return false;}
-			// patch provisoire, a modifier (bug d'un field sans valeur associe)
-			catch(NullPointerException npExc) {if(cont) continue; else return false;}
+    	    // lecture directe dans les colonnes types de la lgende (NaN si valeur absente ou non numrique)
+    	    double val = s.getDoubleValue(pos);
+    	    if( Double.isNaN(val) ) {if(cont) continue; else return false;}
+    	    parser.setVar(curVar, val);
 
 			// setting unit of the variable
 			if( setUnit ) {
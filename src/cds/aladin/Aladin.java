@@ -5129,6 +5129,9 @@ DropTargetListener, DragSourceListener, DragGestureListener
 
          // Nettoyage de la pile
          try { calque.FreeAll(); } catch( Exception e ) {}
+
+         // Sauvegarde des derniers accs au cache HiPS (ordre LRU)
+         PlanBG.flushCacheIndex();
       }
       
       if( directory!=null ) directory.interruptMocServerReading();
@@ -0,0 +1,366 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.aladin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cds.tools.Util;
+
+/**
+ * Index LRU persistant du cache disque des tuiles HiPS. Evite le parcours complet
+ * du rpertoire de cache (PlanBG.cleanCache()) pour connatre sa taille et choisir
+ * les tuiles  supprimer.
+ *
+ * L'index est un journal texte (CacheIndex.log,  la racine du cache) en ajout seul,
+ * une ligne par vnement :
+ *   #CacheIndex gnration date => entte (gnration change  chaque compaction,
+ *                                  date du dernier parcours complet du cache)
+ *   + taille chemin             => criture d'une tuile (taille en octets)
+ *   = chemin                    => accs  une tuile
+ *   - chemin                    => suppression d'une tuile
+ *   * prfixe                   => suppression de toutes les tuiles d'un rpertoire
+ * Les chemins sont relatifs  la racine du cache, avec '/' comme sparateur quel que
+ * soit le systme (cf. HealpixKey.getFileCache()).
+ *
+ * En mmoire, une LinkedHashMap en ordre d'accs donne l'ordre LRU et la taille
+ * totale est maintenue au fil de l'eau => mise  jour et viction en O(1) par tuile.
+ *
+ * Plusieurs instances d'Aladin peuvent partager le mme cache : toute lecture ou
+ * criture du journal se fait sous verrou fichier exclusif (FileChannel.lock()), et
+ * chaque instance rejoue les lignes ajoutes par les autres depuis sa dernire lecture.
+ * Si l'entte a chang (compaction par une autre instance), le journal est relu en entier.
+ *
+ * Tant que le journal n'a pas t initialis par un premier parcours du cache (build()),
+ * l'index est inactif et PlanBG revient  la mthode par parcours du rpertoire.
+ * Seuls les fichiers crits par Aladin via addInCache() sont suivis => PlanBG refait
+ * priodiquement un parcours complet (cf. getBuildTime()) qui reconstruit l'index.
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+final class CacheIndex {
+
+   static final String JOURNAL = "CacheIndex.log";
+   static private final String HEADER = "#CacheIndex ";
+   static private final int MAXPENDING = 256;    // Nombre max d'accs mmoriss avant criture
+
+   private String dir;                // Racine du cache
+   private File file;                 // Journal
+   private LinkedHashMap<String,Long> entries = new LinkedHashMap<>(1024,0.75f,true);  // chemin -> taille (ordre LRU)
+   private long size=0L;              // Taille totale des tuiles indexes (en octets)
+   private String generation=null;    // Gnration du journal lu (null si index inactif)
+   private long buildTime=0L;         // Date du dernier parcours complet du cache (ms)
+   private long readPos=0L;           // Position dans le journal jusqu'o on a dj rejou
+   private int nbRecord=0;            // Nombre d'enregistrements dans le journal courant
+   private ArrayList<String> pending = new ArrayList<>();   // Accs pas encore journaliss
+
+   CacheIndex(String dir) {
+      this.dir=dir;
+      file = new File(dir+Util.FS+JOURNAL);
+   }
+
+   /** Retourne true si l'index est oprationnel (journal initialis par un build()) */
+   synchronized boolean isBuilt() {
+      if( generation==null && file.exists() ) {
+         try { lockAndSync(null); } catch( Exception e ) { reset(); }
+      }
+      return generation!=null;
+   }
+
+   /** Taille totale du cache index, en Ko */
+   synchronized long getSize() { return size/1024; }
+
+   /** Nombre de tuiles indexes */
+   synchronized int getNbEntries() { return entries.size(); }
+
+   /** Date du dernier parcours complet du cache ayant servi  construire l'index (ms),
+    * 0 si inconnue */
+   synchronized long getBuildTime() { return buildTime; }
+
+   /** Normalisation d'un chemin relatif => sparateur '/' */
+   static private String norm(String path) {
+      return Util.FS.equals("/") ? path : path.replace(Util.FS,"/");
+   }
+
+   /** Mmorisation de l'criture d'une tuile
+    * @param path chemin relatif  la racine du cache
+    * @param n taille en octets */
+   synchronized void add(String path,long n) {
+      if( generation==null ) return;
+      path = norm(path);
+      apply("+ "+n+" "+path);
+      pending.add("+ "+n+" "+path);
+      flush(false);
+   }
+
+   /** Mmorisation de l'accs  une tuile (criture diffre dans le journal) */
+   synchronized void access(String path) {
+      if( generation==null ) return;
+      path = norm(path);
+      if( entries.get(path)==null ) return;
+      pending.add("= "+path);
+      if( pending.size()>=MAXPENDING ) flush(true);
+   }
+
+   /** Oubli de toutes les tuiles d'un rpertoire (ex: survey renomm en .old) */
+   synchronized void removeDir(String prefix) {
+      if( generation==null ) return;
+      prefix = norm(prefix);
+      if( !prefix.endsWith("/") ) prefix+="/";
+      apply("* "+prefix);
+      pending.add("* "+prefix);
+      flush(true);
+   }
+
+   /** Ecriture immdiate des enregistrements en attente (ex: en fin de session) */
+   synchronized void flush() {
+      if( generation==null ) return;
+      flush(true);
+   }
+
+   /** Ecriture des enregistrements en attente
+    * @param force false si on peut encore attendre un peu pour grouper les critures */
+   private void flush(boolean force) {
+      if( pending.size()==0 || !force && pending.size()<MAXPENDING/8 ) return;
+      try { lockAndSync(pending); }
+      catch( Exception e ) { if( Aladin.levelTrace>=3 ) e.printStackTrace(); }
+      pending.clear();
+   }
+
+   /** Supprime les tuiles les plus anciennement utilises jusqu' ce que
+    * la taille du cache soit infrieure ou gale  maxSize
+    * @param maxSize taille  atteindre en Ko
+    * @return la nouvelle taille du cache en Ko */
+   synchronized long evict(long maxSize) throws Exception {
+      if( generation==null ) throw new Exception("Cache index not built");
+      flush(true);
+      RandomAccessFile raf = new RandomAccessFile(file,"rw");
+      FileLock lock=null;
+      try {
+         lock = raf.getChannel().lock();
+         sync(raf);
+         maxSize *= 1024L;
+         ArrayList<String> rec = new ArrayList<>();
+         Iterator<Map.Entry<String,Long>> it = entries.entrySet().iterator();
+         while( size>maxSize && it.hasNext() ) {
+            Map.Entry<String,Long> e = it.next();
+            String path = e.getKey();
+            File f = new File(dir+Util.FS+path);
+            Aladin.trace(4,"CacheIndex.evict(): removing "+f);
+            f.delete();
+            size -= e.getValue().longValue();
+            it.remove();
+            rec.add("- "+path);
+         }
+         if( nbRecord+rec.size() > 4*entries.size()+1024 ) compact(raf,buildTime);
+         else append(raf,rec);
+      } finally {
+         if( lock!=null ) try { lock.release(); } catch( Exception e ) {}
+         raf.close();
+      }
+      return size/1024;
+   }
+
+   /** (Re)construction complte de l'index  partir de la liste des fichiers
+    * du cache, trie par date d'accs croissante. Les fichiers hors de la racine
+    * du cache sont ignors. */
+   synchronized void build(Iterable<PlanBG.FileItem> list) throws Exception {
+      entries.clear();
+      size=0L;
+      pending.clear();
+      String root = dir+Util.FS;
+      if( list!=null ) {
+         for( PlanBG.FileItem fi : list ) {
+            String s = fi.f.getPath();
+            if( !s.startsWith(root) || !fi.f.isFile() ) continue;
+            s = norm( s.substring(root.length()) );
+            if( s.equals(JOURNAL) ) continue;
+            long n = fi.f.length();
+            Long old = entries.put(s,n);
+            size += n - (old==null ? 0L : old.longValue());
+         }
+      }
+      (new File(dir)).mkdirs();
+      RandomAccessFile raf = new RandomAccessFile(file,"rw");
+      FileLock lock=null;
+      try {
+         lock = raf.getChannel().lock();
+         compact(raf,System.currentTimeMillis());
+      } finally {
+         if( lock!=null ) try { lock.release(); } catch( Exception e ) {}
+         raf.close();
+      }
+      Aladin.trace(3,"CacheIndex.build(): "+entries.size()+" tiles indexed ("+Util.getUnitDisk(size)+")");
+   }
+
+   /** Remise  zro de l'index en mmoire (index inactif jusqu'au prochain build()) */
+   synchronized void reset() {
+      entries.clear();
+      size=0L;
+      pending.clear();
+      generation=null;
+      buildTime=0L;
+      readPos=0L;
+      nbRecord=0;
+   }
+
+   /* Prise du verrou sur le journal, rejeu des ajouts des autres instances, puis
+    * ajout ventuel des enregistrements rec */
+   private void lockAndSync(ArrayList<String> rec) throws Exception {
+      RandomAccessFile raf = new RandomAccessFile(file,"rw");
+      FileLock lock=null;
+      try {
+         lock = raf.getChannel().lock();
+         sync(raf);
+         if( rec!=null && generation!=null ) {
+            // Nos propres enregistrements ont dj t appliqus en mmoire => on les
+            // rejoue aprs ceux des autres instances pour respecter l'ordre du journal
+            for( String s : rec ) apply(s);
+            append(raf,rec);
+         }
+      } finally {
+         if( lock!=null ) try { lock.release(); } catch( Exception e ) {}
+         raf.close();
+      }
+   }
+
+   /* Rejoue les lignes du journal pas encore lues (verrou dj pris) */
+   private void sync(RandomAccessFile raf) throws Exception {
+      long len = raf.length();
+      String gen = readGeneration(raf);
+      if( gen==null ) { reset(); return; }
+      if( !gen.equals(generation) || len<readPos ) {
+         entries.clear();
+         size=0L;
+         nbRecord=0;
+         readPos=0L;
+         generation=gen;
+         buildTime=parseBuildTime(gen);
+      }
+      if( len==readPos ) return;
+
+      byte [] buf = new byte[(int)(len-readPos)];
+      raf.seek(readPos);
+      raf.readFully(buf);
+      int start=0;
+      for( int i=0; i<buf.length; i++ ) {
+         if( buf[i]!='\n' ) continue;
+         String s = new String(buf,start,i-start,"UTF-8");
+         if( !s.startsWith(HEADER) ) { apply(s); nbRecord++; }
+         start=i+1;
+      }
+      readPos += start;   // Une ventuelle ligne incomplte sera relue au prochain coup
+   }
+
+   /* Lecture de la gnration dans l'entte du journal, null si absente */
+   private String readGeneration(RandomAccessFile raf) throws Exception {
+      if( raf.length()<HEADER.length() ) return null;
+      byte [] buf = new byte[ (int)Math.min(raf.length(),128) ];
+      raf.seek(0);
+      raf.readFully(buf);
+      String s = new String(buf,"UTF-8");
+      if( !s.startsWith(HEADER) ) return null;
+      int i = s.indexOf('\n');
+      if( i<0 ) return null;
+      return s.substring(HEADER.length(),i).trim();
+   }
+
+   /* Extraction de la date du dernier parcours complet  partir de la gnration
+    * ("gnration date"), 0 si absente (ancien format) */
+   static private long parseBuildTime(String gen) {
+      int i = gen.lastIndexOf(' ');
+      if( i<0 ) return 0L;
+      try { return Long.parseLong(gen.substring(i+1)); } catch( Exception e ) { return 0L; }
+   }
+
+   /* Ajout des enregistrements en fin de journal (verrou dj pris) */
+   private void append(RandomAccessFile raf,ArrayList<String> rec) throws Exception {
+      if( rec.size()==0 ) return;
+      ByteArrayOutputStream out = new ByteArrayOutputStream(rec.size()*64);
+      for( String s : rec ) out.write((s+"\n").getBytes("UTF-8"));
+      long pos = raf.length();
+      raf.seek(pos);
+      raf.write(out.toByteArray());
+      nbRecord+=rec.size();
+      if( pos==readPos ) readPos = raf.length();
+   }
+
+   /* Rcriture complte du journal  partir de l'index en mmoire, dans l'ordre LRU,
+    * sous une nouvelle gnration (verrou dj pris)
+    * @param date date du dernier parcours complet du cache  conserver dans l'entte */
+   private void compact(RandomAccessFile raf,long date) throws Exception {
+      String gen = System.currentTimeMillis()+"-"+Integer.toHexString((int)(Math.random()*0x7FFFFFFF))+" "+date;
+      ByteArrayOutputStream out = new ByteArrayOutputStream(entries.size()*64+64);
+      out.write((HEADER+gen+"\n").getBytes("UTF-8"));
+      for( Map.Entry<String,Long> e : entries.entrySet() ) {
+         out.write(("+ "+e.getValue()+" "+e.getKey()+"\n").getBytes("UTF-8"));
+      }
+      FileChannel fc = raf.getChannel();
+      raf.setLength(0L);
+      raf.seek(0L);
+      raf.write(out.toByteArray());
+      fc.force(false);
+      generation=gen;
+      buildTime=date;
+      nbRecord=entries.size();
+      readPos=raf.length();
+   }
+
+   /* Application d'un enregistrement du journal  l'index en mmoire */
+   private void apply(String s) {
+      if( s.length()<3 || s.charAt(1)!=' ' ) return;
+      char c = s.charAt(0);
+      try {
+         if( c=='+' ) {
+            int i = s.indexOf(' ',2);
+            long n = Long.parseLong(s.substring(2,i));
+            Long old = entries.put(s.substring(i+1),n);
+            size += n - (old==null ? 0L : old.longValue());
+
+         } else if( c=='=' ) {
+            entries.get(s.substring(2));
+
+         } else if( c=='-' ) {
+            Long old = entries.remove(s.substring(2));
+            if( old!=null ) size -= old.longValue();
+
+         } else if( c=='*' ) {
+            String prefix = s.substring(2);
+            Iterator<Map.Entry<String,Long>> it = entries.entrySet().iterator();
+            while( it.hasNext() ) {
+               Map.Entry<String,Long> e = it.next();
+               if( !e.getKey().startsWith(prefix) ) continue;
+               size -= e.getValue().longValue();
+               it.remove();
+            }
+         }
+      } catch( Exception e ) { }   // Ligne errone => ignore
+   }
+}
@@ -231,6 +231,7 @@ public class ColumnCalculator {
         
         // ajout de la nouvelle valeur
         s.info = new String(s.info+"\t"+value);
+        s.infoChanged();
         
         // pb des colonnes vide qui engendrent un dcalage
         s.fixInfo();
@@ -0,0 +1,245 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.aladin;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.StampedLock;
+
+import cds.xml.Field;
+
+/**
+ * Cache en colonnes types des valeurs numriques des sources associes  une mme Legende,
+ * pour les lectures rptes (filtres, tris, statistiques de la table des mesures...).
+ * Les champs numriques sont mmoriss dans des tableaux double[] (long[] pour les entiers)
+ * accompagns d'un bitmap des valeurs nulles ou non numriques, les champs textuels ne sont
+ * pas mmoriss (lecture dans la chane info).
+ *
+ * Il s'agit d'un cache et non du stockage des sources : la chane info de chaque Source reste
+ * la rfrence, et le cache occupe de la mmoire en plus. Une ligne n'est attribue  une
+ * source qu' la premire lecture numrique de l'une de ses valeurs.
+ *
+ * Chaque Source mmorise l'indice de sa ligne (Source.row). La chane info n'est pas
+ * conserve par le cache : toute modification de info
+ * (setValue(), fixInfo(), colonnes calcules...) passe par Source.infoChanged() qui marque
+ * la ligne  redcoder (Source.row = -row-2), dans la mme ligne,  la prochaine lecture.
+ *
+ * Les lectures se font sans verrou (lecture optimiste valide par un StampedLock), seuls
+ * l'attribution et le dcodage d'une ligne prennent le verrou en criture.
+ * Le stockage n'est pas utilis pour les lgendes partages par un nombre non born de
+ * sources (HiPS catalogue, cf. Legende.setColumnStoreOff()).
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+final class ColumnStore {
+
+   static final private int DBL = 0;    // rels  => double[]
+   static final private int LNG = 1;    // entiers => long[]
+   static final private int RAW = 2;    // non numrique => non mmoris, lecture dans Source.info
+
+   /** Une colonne type */
+   static private final class Column {
+      int type;
+      double [] d;
+      long [] l;
+      BitSet nulls;
+
+      Column(int type,int cap) {
+         this.type=type;
+         if( type==DBL ) d = new double[cap];
+         else if( type==LNG ) l = new long[cap];
+         if( type!=RAW ) nulls = new BitSet();
+      }
+
+      void grow(int cap) {
+         if( d!=null ) { double [] t = new double[cap]; System.arraycopy(d,0,t,0,d.length); d=t; }
+         if( l!=null ) { long [] t = new long[cap]; System.arraycopy(l,0,t,0,l.length); l=t; }
+      }
+
+      /** Passage d'une colonne entire en colonne relle (valeur non entire rencontre) */
+      void toDouble(int nbRow) {
+         d = new double[l.length];
+         for( int i=0; i<nbRow; i++ ) d[i]=l[i];
+         l=null;
+         type=DBL;
+      }
+   }
+
+   private final Legende leg;  // La lgende associe
+   private final StampedLock lock = new StampedLock();
+   private Column [] col;      // Les colonnes (une par champ de la lgende)
+   private boolean [] ok;      // ok[row] : ligne dcode dans les colonnes courantes
+   private int nbRow;          // Nombre de lignes attribues
+   private int cap;            // Capacit courante des tableaux
+
+   ColumnStore(Legende leg) {
+      this.leg=leg;
+      nbRow=0;
+      cap=1024;
+      ok = new boolean[cap];
+      resetColumns();
+   }
+
+   /** Rinitialisation des colonnes suite  une modification de la lgende (ajout de champ,
+    * changement de type...). Les lignes restent attribues aux mmes sources mais devront
+    * toutes tre redcodes */
+   void reset() {
+      long stamp = lock.writeLock();
+      try { resetColumns(); }
+      finally { lock.unlockWrite(stamp); }
+   }
+
+   private void resetColumns() {
+      Field [] field = leg.field;
+      col = new Column[ field.length ];
+      for( int i=0; i<col.length; i++ ) col[i] = new Column( getType(field[i]),cap );
+      Arrays.fill(ok,0,nbRow,false);
+   }
+
+   /** Dtermine le type de stockage en fonction du datatype du champ */
+   static private int getType(Field f) {
+      if( f==null || f.datatype==null ) return RAW;
+      if( f.isNumDataType() && f.arraysize==null ) {
+         char c = f.datatype.charAt(0);
+         return c=='J' || c=='K' || c=='I' ? LNG : DBL;
+      }
+      return RAW;
+   }
+
+   /** Retourne la valeur numrique du champ index de la source, NaN si nulle, absente
+    * ou non numrique */
+   double getDouble(Source s,int index) {
+      long stamp = lock.tryOptimisticRead();
+      if( stamp!=0L ) {
+         try {
+            int row = s.row;
+            if( isDecoded(row) ) {
+               double v = getDouble(row,index);
+               if( lock.validate(stamp) ) return v;
+            }
+         } catch( RuntimeException e ) { }   // criture concurrente => lecture sous verrou
+      }
+      stamp = lock.writeLock();
+      try {
+         check(s);
+         return getDouble(s.row,index);
+      } finally { lock.unlockWrite(stamp); }
+   }
+
+   private double getDouble(int row,int index) {
+      Column c = col[index];
+      switch( c.type ) {
+         case DBL: return c.nulls.get(row) ? Double.NaN : c.d[row];
+         case LNG: return c.nulls.get(row) ? Double.NaN : c.l[row];
+      }
+      return Double.NaN;
+   }
+
+   /** Retourne true si le champ index est mmoris dans une colonne numrique */
+   boolean isNumeric(int index) {
+      long stamp = lock.tryOptimisticRead();
+      boolean rep=false;
+      try {
+         Column [] c = col;
+         rep = index>=0 && index<c.length && (c[index].type==DBL || c[index].type==LNG);
+      } catch( RuntimeException e ) { stamp=0L; }
+      if( stamp!=0L && lock.validate(stamp) ) return rep;
+      stamp = lock.readLock();
+      try { return index>=0 && index<col.length && (col[index].type==DBL || col[index].type==LNG); }
+      finally { lock.unlockRead(stamp); }
+   }
+
+   // true si la ligne est attribue et dcode dans les colonnes courantes (-1 : pas de
+   // ligne, <-1 : ligne  redcoder suite  une modification de la chane info)
+   private boolean isDecoded(int row) {
+      return row>=0 && row<nbRow && ok[row] && col.length==leg.field.length;
+   }
+
+   /** Vrifie (et si ncessaire (re)dcode) la ligne associe  la source. Sous verrou */
+   private void check(Source s) {
+      if( col.length!=leg.field.length ) resetColumns();
+      int row = s.row;
+      if( row<-1 ) row = -row-2;
+      if( row>=0 && row<nbRow ) {
+         if( ok[row] && s.row==row ) return;
+      } else {
+         if( nbRow==cap ) grow();
+         row = nbRow++;
+      }
+      decode(row,s.info);
+      ok[row]=true;
+      s.row=row;
+   }
+
+   private void grow() {
+      cap = cap+cap/2;
+      ok = Arrays.copyOf(ok,cap);
+      for( Column c : col ) c.grow(cap);
+   }
+
+   /** Dcoupage de la chane info (tabulations, premier champ=triangle) et mmorisation
+    * des valeurs numriques dans les colonnes */
+   private void decode(int row,String info) {
+      int n = info.length();
+      int deb = info.indexOf('\t');   // skip du triangle
+      for( int i=0; i<col.length; i++ ) {
+         String s=null;
+         if( deb>=0 ) {
+            int fin = info.indexOf('\t',deb+1);
+            if( col[i].type!=RAW ) s = clean( info.substring(deb+1, fin<0 ? n : fin), i);
+            deb=fin;
+         }
+         set(row,i,s);
+      }
+   }
+
+   /** Mme nettoyage que Source.getValue() : valeur nulle, marques GLU, blancs */
+   private String clean(String s,int i) {
+      if( leg.isNullValue(s,i) ) return "";
+      if( s.startsWith("<&") ) {
+         int a = s.indexOf('|');
+         if( a>0 ) {
+            int b = s.indexOf('>',a+1);
+            if( b>=0 ) s=s.substring(a+1,b);
+         }
+      }
+      return s.trim();
+   }
+
+   /** Mmorisation d'une valeur (null si absente de la chane info) */
+   private void set(int row,int i,String s) {
+      Column c = col[i];
+      switch( c.type ) {
+         case LNG:
+            if( s==null || s.length()==0 ) { c.nulls.set(row); return; }
+            try { c.l[row] = Long.parseLong(s); c.nulls.clear(row); return; }
+            catch( NumberFormatException e ) { c.toDouble(nbRow); }
+            // pas de break, on continue en rel
+         case DBL:
+            if( s==null || s.length()==0 ) { c.nulls.set(row); return; }
+            try { c.d[row] = Double.parseDouble(s); c.nulls.clear(row); }
+            catch( NumberFormatException e ) { c.nulls.set(row); }
+            return;
+      }
+   }
+}
@@ -0,0 +1,317 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.aladin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calcul parallle des isocontours de plusieurs niveaux par l'algorithme des "marching squares".
+ *
+ * La grille est dcoupe en bandes de lignes traites en parallle. Chaque bande ne parcourt qu'une seule
+ * fois ses lignes et gnre pour tous les niveaux  la fois les segments de contour de chaque cellule (seuls
+ * les niveaux compris entre le min et le max des 4 coins sont tests, les points de selle tant levs
+ * par la moyenne de la cellule). Chaque extrmit de segment est repre par l'arte de la grille qu'elle
+ * coupe : pour chaque niveau, les segments sont ensuite raccords en polylignes via une table de hachage
+ * sur ces artes, une arte n'tant partage que par deux segments au plus.
+ *
+ * Les lignes de la grille sont fournies  la demande par un ContourEngine.Grid, ce qui permet de travailler
+ * directement sur les valeurs des pixels d'origine, sans copie ni quantification de l'image.
+ *
+ * Les contours sont rendus au format de ContourAlgorithm.getContours() : un tableau de PointD par niveau,
+ * chaque polyligne tant prcde d'un lment null.
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+final class ContourEngine {
+
+   static private final int BAND = 128;   // Nombre de lignes de cellules par bande
+
+   /** Source des lignes de la grille */
+   static abstract class Grid {
+      final int width,height;
+
+      Grid(int width,int height) { this.width=width; this.height=height; }
+
+      /** Remplit row[0..width-1] avec les valeurs de la ligne y (NaN si indfinie).
+       * Doit pouvoir tre appele simultanment par plusieurs threads */
+      abstract void getRow(int y,double [] row);
+   }
+
+   /** Pool partag par les calculs de contours, cr  la premire utilisation */
+   static private ForkJoinPool pool;
+
+   static synchronized private ForkJoinPool getPool() {
+      if( pool==null ) pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      return pool;
+   }
+
+   // Segments  gnrer pour chacune des 16 configurations d'une cellule (artes 0-haut,1-droite,2-bas,3-gauche).
+   // Les points de selle (5 et 10) sont traits  part
+   static private final int [][] SEG = {
+      {}, {3,2}, {2,1}, {3,1}, {0,1}, null, {0,2}, {0,3},
+      {0,3}, {0,2}, null, {0,1}, {3,1}, {2,1}, {3,2}, {},
+   };
+   static private final int [] SADDLE_AC = {0,3, 1,2};   // Segments isolant les coins a et c
+   static private final int [] SADDLE_BD = {0,1, 3,2};   // Segments isolant les coins b et d
+
+   private final Grid grid;
+   private final AtomicInteger nbBandDone = new AtomicInteger();
+
+   ContourEngine(Grid grid) { this.grid=grid; }
+
+   /** Segments d'un niveau : cls des artes et coordonnes des deux extrmits */
+   static private final class Segments {
+      int n=0;
+      long [] key = new long[64];       // 2 cls par segment
+      double [] pt = new double[128];   // 4 coordonnes par segment (xa,ya,xb,yb)
+
+      void add(long ka,double xa,double ya,long kb,double xb,double yb) {
+         if( 2*n==key.length ) {
+            key = Arrays.copyOf(key,key.length*2);
+            pt = Arrays.copyOf(pt,pt.length*2);
+         }
+         key[2*n]=ka; key[2*n+1]=kb;
+         pt[4*n]=xa; pt[4*n+1]=ya; pt[4*n+2]=xb; pt[4*n+3]=yb;
+         n++;
+      }
+   }
+
+   /** Calcul des contours de tous les niveaux
+    * @param levels les niveaux (dans l'chelle des valeurs de la grille)
+    * @param pc plan  tenir inform de l'avancement (ou null)
+    * @return pour chaque niveau, le tableau des points des polylignes
+    */
+   PointD[][] getContours(final double [] levels,final PlanContour pc) throws Exception {
+      final int nbLevels = levels.length;
+      PointD [][] res = new PointD[nbLevels][];
+      if( grid.width<2 || grid.height<2 ) {
+         for( int l=0; l<nbLevels; l++ ) res[l] = new PointD[0];
+         return res;
+      }
+
+      // Niveaux tris pour ne tester que ceux qui coupent une cellule
+      final double [] sorted = levels.clone();
+      Arrays.sort(sorted);
+      final int [] order = new int[nbLevels];
+      boolean [] done = new boolean[nbLevels];
+      for( int i=0; i<nbLevels; i++ ) {
+         for( int l=0; l<nbLevels; l++ ) {
+            if( !done[l] && levels[l]==sorted[i] ) { order[i]=l; done[l]=true; break; }
+         }
+      }
+
+      // Gnration des segments par bandes de lignes
+      int nbCellRows = grid.height-1;
+      final int nbBand = (nbCellRows+BAND-1)/BAND;
+      ArrayList<Callable<Segments[]>> bandTasks = new ArrayList<>(nbBand);
+      for( int b=0; b<nbBand; b++ ) {
+         final int y0 = b*BAND;
+         final int y1 = Math.min(y0+BAND,nbCellRows);
+         bandTasks.add( new Callable<Segments[]>() {
+            public Segments[] call() {
+               Segments [] s = band(y0,y1,sorted,order,nbLevels);
+               int n = nbBandDone.incrementAndGet();
+               if( pc!=null ) pc.updatePourcentAll( 0.8*n/nbBand );
+               return s;
+            }
+         });
+      }
+      final Segments [][] bands = new Segments[nbBand][];
+      int b=0;
+      for( Future<Segments[]> f : getPool().invokeAll(bandTasks) ) bands[b++] = f.get();
+
+      // Raccordement des segments en polylignes, niveau par niveau
+      ArrayList<Callable<PointD[]>> levelTasks = new ArrayList<>(nbLevels);
+      for( int l=0; l<nbLevels; l++ ) {
+         final int level=l;
+         levelTasks.add( new Callable<PointD[]>() {
+            public PointD[] call() { return stitch(bands,level); }
+         });
+      }
+      int l=0;
+      for( Future<PointD[]> f : getPool().invokeAll(levelTasks) ) res[l++] = f.get();
+      if( pc!=null ) pc.updatePourcentAll(1);
+
+      return res;
+   }
+
+   /** Gnration des segments de tous les niveaux pour les lignes de cellules [y0,y1[
+    * @param sorted niveaux tris, order[i] tant l'indice d'origine de sorted[i]
+    */
+   private Segments[] band(int y0,int y1,double [] sorted,int [] order,int nbLevels) {
+      int w = grid.width;
+      Segments [] seg = new Segments[nbLevels];
+      for( int l=0; l<nbLevels; l++ ) seg[l] = new Segments();
+
+      double [] r0 = new double[w];
+      double [] r1 = new double[w];
+      double [] p = new double[4];
+      grid.getRow(y0,r0);
+      for( int y=y0; y<y1; y++ ) {
+         grid.getRow(y+1,r1);
+         for( int x=0; x<w-1; x++ ) {
+            double a=r0[x], b=r0[x+1], c=r1[x+1], d=r1[x];
+            if( Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d) ) continue;
+
+            double min = Math.min( Math.min(a,b), Math.min(c,d) );
+            double max = Math.max( Math.max(a,b), Math.max(c,d) );
+            if( max<=sorted[0] || min>sorted[nbLevels-1] ) continue;
+
+            // Un niveau coupe la cellule si min<=level<max
+            int i = firstLevel(sorted,min);
+            for( ; i<nbLevels && sorted[i]<max; i++ ) {
+               double lev = sorted[i];
+               int conf = (a>lev?8:0) | (b>lev?4:0) | (c>lev?2:0) | (d>lev?1:0);
+               int [] s = SEG[conf];
+               if( s==null ) s = ((a+b+c+d)/4>lev) == (conf==10) ? SADDLE_BD : SADDLE_AC;
+               for( int k=0; k<s.length; k+=2 ) addSegment(seg[ order[i] ],s[k],s[k+1],x,y,a,b,c,d,lev,p);
+            }
+         }
+         double [] tmp=r0; r0=r1; r1=tmp;
+      }
+      return seg;
+   }
+
+   /** Indice du premier niveau >= v (niveaux tris) */
+   static private int firstLevel(double [] sorted,double v) {
+      int lo=0, hi=sorted.length;
+      while( lo<hi ) {
+         int mid = (lo+hi)>>>1;
+         if( sorted[mid]<v ) lo=mid+1;
+         else hi=mid;
+      }
+      return lo;
+   }
+
+   /** Ajout du segment reliant les artes e1 et e2 de la cellule (x,y) */
+   private void addSegment(Segments seg,int e1,int e2,int x,int y,double a,double b,double c,double d,double lev,double [] p) {
+      long k1 = edge(e1,x,y,a,b,c,d,lev,p,0);
+      long k2 = edge(e2,x,y,a,b,c,d,lev,p,2);
+      seg.add(k1,p[0],p[1],k2,p[2],p[3]);
+   }
+
+   /** Calcul du point de passage du contour sur l'arte e de la cellule (x,y), mmoris dans p[i],p[i+1]
+    * @return la cl de l'arte (unique dans la grille)
+    */
+   private long edge(int e,int x,int y,double a,double b,double c,double d,double lev,double [] p,int i) {
+      long w = grid.width;
+      switch( e ) {
+         case 0:  p[i]=x+(lev-a)/(b-a); p[i+1]=y;                return (y*w+x)<<1;
+         case 1:  p[i]=x+1;             p[i+1]=y+(lev-b)/(c-b);  return ((y*w+x+1)<<1)|1;
+         case 2:  p[i]=x+(lev-d)/(c-d); p[i+1]=y+1;              return ((y+1)*w+x)<<1;
+         default: p[i]=x;               p[i+1]=y+(lev-a)/(d-a);  return ((y*w+x)<<1)|1;
+      }
+   }
+
+   /** Raccordement en polylignes des segments du niveau l de toutes les bandes */
+   private PointD[] stitch(Segments [][] bands,int l) {
+      int n=0;
+      for( Segments [] s : bands ) n+=s[l].n;
+      if( n==0 ) return new PointD[0];
+
+      // Regroupement des segments de toutes les bandes
+      long [] key = new long[2*n];
+      double [] pt = new double[4*n];
+      int pos=0;
+      for( Segments [] bs : bands ) {
+         Segments s = bs[l];
+         System.arraycopy(s.key,0,key,2*pos,2*s.n);
+         System.arraycopy(s.pt,0,pt,4*pos,4*s.n);
+         pos+=s.n;
+         bs[l]=null;
+      }
+
+      // Extrmit partenaire de chaque extrmit de segment (mme arte), -1 si aucune
+      int [] partner = new int[2*n];
+      Arrays.fill(partner,-1);
+      LongIntMap map = new LongIntMap(2*n);
+      for( int e=0; e<2*n; e++ ) {
+         int p = map.putIfAbsent(key[e],e);
+         if( p>=0 ) { partner[e]=p; partner[p]=e; }
+      }
+      key=null; map=null;
+
+      ArrayList<PointD> out = new ArrayList<>(2*n);
+      boolean [] visited = new boolean[n];
+      for( int s=0; s<n; s++ ) {
+         if( visited[s] ) continue;
+
+         // Recherche du dbut de la polyligne (bout libre), ou s si elle est ferme
+         int e = 2*s;
+         for( int i=0; i<n; i++ ) {
+            int p = partner[e];
+            if( p<0 ) break;
+            if( (p>>1)==s ) { e=2*s; break; }
+            e = p^1;
+         }
+
+         // Parcours de la polyligne (une boucle ferme se termine sur son point de dpart)
+         out.add(null);
+         out.add( new PointD(pt[2*e],pt[2*e+1]) );
+         for( int cur=e; ; ) {
+            visited[cur>>1]=true;
+            int f = cur^1;
+            out.add( new PointD(pt[2*f],pt[2*f+1]) );
+            int q = partner[f];
+            if( q<0 || visited[q>>1] ) break;
+            cur=q;
+         }
+      }
+      return out.toArray(new PointD[out.size()]);
+   }
+
+   /** Table de hachage long -> int (adressage ouvert) */
+   static private final class LongIntMap {
+      private final long [] keys;
+      private final int [] values;
+      private final int mask;
+      private final int shift;     // Dcalage pour garder les bits de poids fort du hachage
+
+      LongIntMap(int n) {
+         int size = Integer.highestOneBit(Math.max(n,8)*2-1)<<1;
+         keys = new long[size];
+         values = new int[size];
+         Arrays.fill(values,-1);
+         mask = size-1;
+         shift = 64-Integer.numberOfTrailingZeros(size);
+      }
+
+      /** Mmorise value pour key si key est absente et retourne -1, sinon retourne la valeur dj associe */
+      int putIfAbsent(long key,int value) {
+         int i = (int)((key*0x9E3779B97F4A7C15L)>>>shift);
+         while( values[i]>=0 ) {
+            if( keys[i]==key ) return values[i];
+            i = (i+1) & mask;
+         }
+         keys[i]=key;
+         values[i]=value;
+         return -1;
+      }
+   }
+}
@@ -2812,7 +2812,7 @@ public class Directory extends JPanel implements Iterable<MocItem>, GrabItFrame
          MultiMoc multiProp = (new BinaryDump()).load(s);
          this.multiProp = new MultiMoc2(multiProp);
          aladin.trace(3, "Multiprop loaded (" + multiProp.size() + " rec.) from cache [" + s + "] in "
-               + (System.currentTimeMillis() - t0) + "ms...");
+               + (System.currentTimeMillis() - t0) + "ms (RAM=" + Util.getUnitDisk(multiProp.getMem()) + ")...");
       } catch( Exception e ) {
          if( e.getMessage()!=null ) aladin.trace(1,"Multiprop cache ignored: "+e.getMessage());
          return false;
@@ -0,0 +1,304 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.aladin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cds.astro.Astrocoo;
+import cds.astro.AstroMath;
+import cds.astro.Unit;
+import cds.tools.Util;
+import cds.xml.TableParser;
+
+/**
+ * Propagation par mouvement propre des positions des sources d'un plan catalogue  une nouvelle poque.
+ *
+ * Les colonnes astromtriques (RA, DE, pmRA, pmDE) de chaque Legende ne sont analyses qu'une seule fois :
+ * chaque source y est mmorise par son vecteur unitaire (ICRS) et son vecteur vitesse, obtenu en
+ * appliquant au mouvement propre la matrice locale (direction, axes en longitude et latitude).
+ * Un changement d'poque se rduit alors  u+t.v puis au retour en (ra,dec), calcul en parallle par
+ * tranches et report directement dans Source.raj/dej. C'est la mme propagation linaire que
+ * Astropos.toEpoch() dans un repre fixe comme ICRS.
+ *
+ * Chaque demande incrmente une gnration : un calcul en cours s'interrompt ds qu'une demande plus rcente
+ * arrive (dplacement du slider d'poque), les tranches dj traites tant simplement crases par le
+ * calcul suivant.
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+final class EpochPropagator {
+
+   static private final int CHUNK = 16384;   // Nombre de sources par tranche de calcul
+
+   /** Pool partag par tous les plans, cr  la premire utilisation */
+   static private ForkJoinPool pool;
+
+   static synchronized private ForkJoinPool getPool() {
+      if( pool==null ) pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      return pool;
+   }
+
+   private final Plan plan;
+   private final HashMap<Legende, Cache> cache = new HashMap<>();   // Colonnes astromtriques par lgende
+   private final AtomicInteger gen = new AtomicInteger();           // Gnration de la dernire demande
+   private final Object runLock = new Object();                     // Un seul calcul  la fois
+
+   EpochPropagator(Plan plan) { this.plan=plan; }
+
+   /** Oubli des colonnes mmorises (modification des champs de position) */
+   synchronized void reset() { cache.clear(); }
+
+   /** Recalcule les positions de toutes les sources du plan dont la lgende a des champs
+    * de mouvement propre, de l'poque originale epoch0  l'poque epoch (en annes juliennes).
+    * En mode asynchrone, le calcul est effectu par un thread ddi qui rafrachit les vues
+    *  la fin, sauf s'il a t interrompu par une demande plus rcente.
+    * @return false s'il n'y a aucune lgende avec mouvement propre
+    */
+   boolean propagate(final double epoch0, final double epoch, boolean async) {
+      Vector<Legende> legs = plan.getLegende();
+      if( legs==null ) return false;
+      final ArrayList<Legende> pmLegs = new ArrayList<>();
+      for( Legende leg : legs ) {
+         if( leg.getPmRa()<=0 || leg.getPmDe()<=0 ) continue;  // Inutile, pas de PM
+         pmLegs.add(leg);
+      }
+      if( pmLegs.size()==0 ) return false;
+
+      final int g = gen.incrementAndGet();
+      if( !async ) {
+         run(pmLegs,epoch0,epoch,g);
+         return true;
+      }
+
+      Thread t = new Thread("AladinEpoch") {
+         public void run() {
+            try {
+               if( EpochPropagator.this.run(pmLegs,epoch0,epoch,g) ) {
+                  plan.aladin.view.newView(1);
+                  plan.aladin.calque.repaintAll();
+               }
+            } catch( Exception e ) { if( Aladin.levelTrace>=3 ) e.printStackTrace(); }
+         }
+      };
+      t.setDaemon(true);
+      t.start();
+      return true;
+   }
+
+   /** Propagation de toutes les lgendes. Retourne false si le calcul a t interrompu */
+   private boolean run(ArrayList<Legende> legs, double epoch0, double epoch, int g) {
+      synchronized( runLock ) {
+         for( Legende leg : legs ) {
+            if( gen.get()!=g ) return false;
+            Cache c = getCache(leg);
+            if( !c.propagate(epoch-epoch0,g) ) return false;
+         }
+         return gen.get()==g;
+      }
+   }
+
+   /** Retourne les colonnes astromtriques de la lgende, en les (re)construisant si
+    * les champs de position ou la liste des sources ont chang */
+   synchronized private Cache getCache(Legende leg) {
+      Cache c = cache.get(leg);
+      if( c!=null && c.isValid() ) return c;
+      c = new Cache(leg);
+      cache.put(leg,c);
+      return c;
+   }
+
+   /** Facteur de conversion en mas/yr d'une unit de mouvement propre. Si l'unit est un temps
+    * (s/yr pour le mouvement en RA), le facteur est exprim en ms/yr et time[0] est positionn.
+    * Retourne NaN si l'unit n'est pas convertible */
+   static private double getPmFactor(String unit, boolean [] time) {
+      try {
+         Unit mu = new Unit();
+         mu.setUnit( Util.adjustFoxUnit(unit) );
+         mu.setValue(1.);
+         mu.convertTo(new Unit("mas/yr"));
+         return mu.getValue();
+      } catch( Exception e ) { }
+      if( time!=null ) {
+         try {
+            Unit mu = new Unit();
+            mu.setUnit( Util.adjustFoxUnit(unit) );
+            mu.setValue(1.);
+            mu.convertTo(new Unit("ms/yr"));
+            time[0]=true;
+            return mu.getValue();
+         } catch( Exception e ) { }
+      }
+      return Double.NaN;
+   }
+
+   /** Colonnes astromtriques des sources d'une lgende */
+   private final class Cache {
+      final Legende leg;
+      final int nra,nde,npmra,npmde;   // Indices des champs utiliss
+      final int n;                     // Nombre de sources
+      final Source [] src;             // Les sources
+      final double [] ra,de;           // Positions  l'poque originale (degrs)
+      final double [] x,y,z;           // Vecteurs unitaires
+      final double [] vx,vy,vz;        // Vecteurs vitesse (radians/an), nuls si pas de mouvement propre
+
+      Cache(Legende leg) {
+         this.leg = leg;
+         nra   = leg.getRa();
+         nde   = leg.getDe();
+         npmra = leg.getPmRa();
+         npmde = leg.getPmDe();
+
+         ArrayList<Source> list = new ArrayList<>();
+         Iterator<Obj> it = plan.iterator();
+         while( it!=null && it.hasNext() ) {
+            Obj o = it.next();
+            if( o instanceof Source && ((Source)o).getLeg()==leg ) list.add((Source)o);
+         }
+         n = list.size();
+         src = list.toArray(new Source[n]);
+         ra = new double[n]; de = new double[n];
+         x = new double[n]; y = new double[n]; z = new double[n];
+         vx = new double[n]; vy = new double[n]; vz = new double[n];
+         if( n==0 ) return;
+
+         // Les units sont celles des champs, communes  toutes les sources
+         int unit = TableParser.getUnit( src[0].getUnit(nra) );
+         boolean [] time = new boolean[1];
+         double k1 = getPmFactor( src[0].getUnit(npmra), time);
+         double k2 = getPmFactor( src[0].getUnit(npmde), null);
+         int format = TableParser.FMT_UNKNOWN;
+         int nError=0;
+
+         Astrocoo c = new Astrocoo();
+         for( int i=0; i<n; i++ ) {
+            Source s = src[i];
+            boolean ok=true;
+            try {
+               format = TableParser.getRaDec(c, s.getValue(nra), s.getValue(nde), format, unit);
+               ra[i] = c.getLon();
+               de[i] = c.getLat();
+            } catch( Exception e ) {
+               ok=false;
+               ra[i] = s.raj;
+               de[i] = s.dej;
+               if( ++nError>100 ) {
+                  if( Aladin.levelTrace>=3 ) e.printStackTrace();
+                  nError=Integer.MIN_VALUE;
+                  plan.aladin.warning("Too many error during proper motion computation !\n"+e.getMessage());
+               }
+            }
+
+            double alpha = Math.toRadians(ra[i]);
+            double delta = Math.toRadians(de[i]);
+            double ca = Math.cos(alpha), sa = Math.sin(alpha);
+            double cd = Math.cos(delta), sd = Math.sin(delta);
+            x[i] = cd*ca;
+            y[i] = cd*sa;
+            z[i] = sd;
+
+            // Position de rfrence inconnue (s.raj/s.dej peut tre dj propage)
+            // => source laisse immobile pour ne pas cumuler les dplacements
+            if( !ok ) continue;
+
+            double mu1 = s.getDoubleValue(npmra)*k1;
+            double mu2 = s.getDoubleValue(npmde)*k2;
+            if( time[0] ) mu1 = 15*mu1*cd;
+            if( Double.isNaN(mu1) || Double.isNaN(mu2) ) continue;   // Pas de mouvement propre
+
+            // Matrice locale : axe en longitude (-sa,ca,0), axe en latitude (-sd.ca,-sd.sa,cd)
+            vx[i] = (-sa*mu1 - sd*ca*mu2)/AstroMath.MAS;
+            vy[i] = ( ca*mu1 - sd*sa*mu2)/AstroMath.MAS;
+            vz[i] = (            cd*mu2)/AstroMath.MAS;
+         }
+      }
+
+      /** Retourne true si les champs de position de la lgende et les sources du plan sont inchangs */
+      boolean isValid() {
+         if( nra!=leg.getRa() || nde!=leg.getDe() || npmra!=leg.getPmRa() || npmde!=leg.getPmDe() ) return false;
+         int i=0;
+         Iterator<Obj> it = plan.iterator();
+         while( it!=null && it.hasNext() ) {
+            Obj o = it.next();
+            if( !(o instanceof Source) || ((Source)o).getLeg()!=leg ) continue;
+            if( i>=n || src[i]!=o ) return false;
+            i++;
+         }
+         return i==n;
+      }
+
+      /** Propagation de t annes de toutes les sources, en parallle par tranches.
+       * Retourne false si le calcul a t interrompu par une demande plus rcente */
+      boolean propagate(double t, int g) {
+         if( n<=CHUNK ) propagate(t,0,n);
+         else getPool().invoke( new Chunk(this,t,g,0,n) );
+         return gen.get()==g;
+      }
+
+      /** Propagation de t annes des sources [deb,fin[ */
+      void propagate(double t, int deb, int fin) {
+         for( int i=deb; i<fin; i++ ) {
+            Source s = src[i];
+            if( t==0 || (vx[i]==0 && vy[i]==0 && vz[i]==0) ) {
+               s.raj = ra[i];
+               s.dej = de[i];
+               continue;
+            }
+            double x1 = x[i] + t*vx[i];
+            double y1 = y[i] + t*vy[i];
+            double z1 = z[i] + t*vz[i];
+            double r2 = x1*x1 + y1*y1;
+            double lon = r2==0 ? 0 : Math.toDegrees( Math.atan2(y1,x1) );
+            if( lon<0 ) lon+=360;
+            s.raj = lon;
+            s.dej = Math.toDegrees( Math.atan2(z1,Math.sqrt(r2)) );
+         }
+      }
+   }
+
+   /** Tranche de propagation, dcoupe rcursivement jusqu' CHUNK sources. Une tranche
+    * n'est pas traite si une demande plus rcente est arrive entre temps */
+   private final class Chunk extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      final Cache c;
+      final double t;
+      final int g, deb, fin;
+
+      Chunk(Cache c, double t, int g, int deb, int fin) {
+         this.c=c; this.t=t; this.g=g; this.deb=deb; this.fin=fin;
+      }
+
+      protected void compute() {
+         if( gen.get()!=g ) return;
+         if( fin-deb<=CHUNK ) { c.propagate(t,deb,fin); return; }
+         int mid = (deb+fin)>>>1;
+         invokeAll( new Chunk(c,t,g,deb,mid), new Chunk(c,t,g,mid,fin) );
+      }
+   }
+}
@@ -90,6 +90,8 @@ public class HealpixKey implements Comparable<HealpixKey> {
    protected long timer;        // Date de la dernire utilisation du losange, -1 si jamais encore utilis
    protected long timerLoad;    // Date du chargement
    protected int priority=-1;   // Priorit pour le chargement
+   volatile protected PlanBG.TileJob queueJob=null; // Entre courante dans la file de chargement, null si aucune
+   protected long timeQueued;   // Date de la premire mise en file de chargement
 
    protected PlanBG planBG;     // Plan d'appartenance de ce losange
    protected int order;         // Numro de rsolution HEALPIX
@@ -532,6 +534,7 @@ public class HealpixKey implements Comparable<HealpixKey> {
             planBG.cumulTimeLoadCache+=(System.currentTimeMillis()-t);
             askForRepaint();
             planBG.touchCache();
+            PlanBG.accessInCache(fileCache);
          } catch( Exception e) {
             System.err.println("Error on "+pathName);
             e.printStackTrace(); 
@@ -621,7 +624,7 @@ public class HealpixKey implements Comparable<HealpixKey> {
          planBG.nByteWriteCache+=n;
          planBG.nbWriteCache++;
          planBG.cumulTimeWriteCache+=(System.currentTimeMillis()-t);
-         planBG.addInCache(n/1024);
+         PlanBG.addInCache(fileCache,n);
       } catch( Exception e ) {}
       alreadyCached = true;
    }
@@ -1451,10 +1454,13 @@ public class HealpixKey implements Comparable<HealpixKey> {
    /** Positionne le status du losange NOTREADY, READY... */
    protected void setStatus(int status) { setStatus(status,false); }
    protected void setStatus(int status,boolean flagForce) {
+      int old;
       synchronized( lockStatus ) {
          if( !flagForce && getStatus()==ABORTING ) return;
+         old=this.status;
          this.status=status;
       }
+      if( old!=status && planBG!=null ) planBG.statusChanged(this,old,status);
    }
 
    /** Retourne le status du losange NOTREADY, READY... */
@@ -67,6 +67,8 @@ public final class Legende extends AbstractTableModel  {
    boolean[] computed; // computed[i] true if field[i] is a computed column
    private int firstLink=-2;  // position du premier champ qui a un lien
    private boolean sorted=false;  // true s'il il y a tri pos sur un champ
+   private volatile ColumnStore store=null; // Stockage en colonnes types des valeurs des sources
+   private boolean noStore=false;  // true si pas de stockage en colonnes (lgende partage, cf. PlanBGCat)
    
    int fieldAt[] = null;     // Ordre d'affichage des Fields de la lgende
    
@@ -269,6 +271,26 @@ public final class Legende extends AbstractTableModel  {
       field=nField;
       fieldAt=nTri;
       computed=nComputed;
+      if( store!=null ) store.reset();
+   }
+
+   /** Retourne le stockage en colonnes types des valeurs des sources de cette lgende
+    * (cr  la premire demande), null si dsactiv (cf. setColumnStoreOff()) */
+   protected ColumnStore getColumnStore() {
+      ColumnStore cs = store;
+      if( cs!=null || noStore ) return cs;
+      synchronized( this ) {
+         if( store==null && !noStore ) store = new ColumnStore(this);
+         return store;
+      }
+   }
+
+   /** Pas de stockage en colonnes pour cette lgende. Concerne les lgendes partages par
+    * un nombre non born de sources, comme celle d'un HiPS catalogue commune  toutes
+    * les tuiles charges au fil de la navigation */
+   protected void setColumnStoreOff() {
+      noStore=true;
+      store=null;
    }
 
    /** Modification du nom, unit, ucd ou taille d'affichage d'une colonne.
@@ -318,6 +340,7 @@ public final class Legende extends AbstractTableModel  {
       if( width>=0 ) f.width= width==0? null : width+"";
       f.computeColumnSize();
       computed[index] = true;
+      if( store!=null && (datatype!=null || index>=n) ) store.reset();
 
       return res;
    }
@@ -27,7 +27,10 @@
  */
 package cds.aladin;
 
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /** This class aims at providing a positionnal cross-match in Java
  * Algorithms have been adapted from Sebastien's C algorithms
@@ -97,68 +100,10 @@ public final class LocalXMatch {
     public static XMatchResult[] xMatch(double[][] array1, double[][] array2,
                                         boolean[] flag1, boolean[] flag2,
                                         double[] seuil, int fmtOut) {
-        Vector resultVec = new Vector();
-        int len1 = array1.length;
-        int len2 = array2.length;
-        XMatchElem[] pos1 = new XMatchElem[len1];
-        XMatchElem[] pos2 = new XMatchElem[len2];
-        fillElem(pos1, array1);
-        //for( int i=0; i<pos1.length ; i++) System.out.println("before : "+pos1[i]);
-        sortPos(pos1);
-        //for( int i=0; i<pos1.length ; i++) System.out.println("after : "+pos1[i]);
-
-        fillElem(pos2, array2);
-        sortPos(pos2);
-
-        int k_inf = 0;
-        int k_sup = 0;
-
-        double dstBest, dst;
-        int j,k;
-        int kBest;
-        XMatchResult result;
-
-        for (j=0; j<len1; j++) {
-            if( flag1[j] ) continue;
-
-            while (pos2[k_inf].dec < pos1[j].dec-seuil[1]/3600. && k_inf < (len2-1) ) {
-                k_inf++;
-            }
-            while ( pos2[k_sup].dec <= pos1[j].dec+seuil[1]/3600. && k_sup<(len2-1) ) {
-                k_sup++;
-            }
-            //System.out.println("ksup : "+k_sup);
-            kBest = -1;
-            dstBest = seuil[1]+1.0; /* make it a non-match */
-            for (k=k_inf; k<=k_sup; k++) {
-                if( flag2[k] ) continue;
-                //System.out.println(k+" "+j);
-                dst = 3600.0*sphDst(pos1[j].ra, pos1[j].dec, pos2[k].ra, pos2[k].dec);
-                if (dst <= seuil[1] && dst >= seuil[0]) {
-                    if ((fmtOut & 2)>0) { /* print all matches */
-                        result = new XMatchResult(pos1[j].idx , pos2[k].idx, dst);
-                        resultVec.addElement(result);
-                    }
-                    if (dst < dstBest) {
-                        kBest = k;
-                        dstBest = dst;
-                    }
-                }
-            } /* end for k ...*/
-            if (kBest >=0 && (fmtOut & 1)>0 && (fmtOut & 2)==0) { /* print best, but only if not already done */
-                result = new XMatchResult(pos1[j].idx, pos2[kBest].idx, dstBest);
-                resultVec.addElement(result);
-            }
-            if (kBest < 0 && (fmtOut & 4)>0) { /* print non matches : distance is set to -1 */
-                result = new XMatchResult(pos1[j].idx, kBest, -1.0);
-                resultVec.addElement(result);
-            }
-        }
-        XMatchResult[] resultArr = new XMatchResult[resultVec.size()];
-        resultVec.copyInto(resultArr);
-        resultVec = null;
-
-        return resultArr;
+        SortedPos pos1 = new SortedPos(array1, null, null, null);
+        SortedPos pos2 = new SortedPos(array2, null, null, null);
+        PosMatcher m = new PosMatcher(pos1, pos2, flag1, flag2, seuil, fmtOut);
+        return m.run();
     }
 
     /**************************************************************
@@ -178,21 +123,8 @@ public final class LocalXMatch {
 			          double[] maj1, double[] min1, double[] pa1,
 			          double[] maj2, double[] min2, double[] pa2, boolean[] flag1, boolean[] flag2,
 					  double[] seuil, int fmtOut) {
-
-        Vector resultVec = new Vector();
-        int len1 = array1.length;
-        int len2 = array2.length;
-        XMatchEllipseElem[] pos1 = new XMatchEllipseElem[len1];
-        XMatchEllipseElem[] pos2 = new XMatchEllipseElem[len2];
-        fillElem(pos1, array1, maj1, min1, pa1);
-        sortPos(pos1);
-        fillElem(pos2, array2, maj2, min2, pa2);
-        sortPos(pos2);
-
-        int j, k, kBest, nb=0;
-        double sig, span, dst, dstBest; /* span is in deg... distances are n-sigmas */
-        int kInf=0, kSup=0, fkInf=0, fkSup=0;
-        XMatchResult result = null;
+        SortedPos pos1 = new SortedPos(array1, maj1, min1, pa1);
+        SortedPos pos2 = new SortedPos(array2, maj2, min2, pa2);
 
         /* First we need to find 'span': the proper scanning window size (declination interval
            in catalogue 2 where we make the comparison)
@@ -201,102 +133,366 @@ public final class LocalXMatch {
            We adopt a conservative approach where 'span' is simply
            the largest major-axis found in any of the 2 catalogues times the upper
            sigma threshold: that way we never miss a possible association */
-
-        sig = seuil[1]/3600.0;
-        span = sig * ( Math.sqrt (  Math.pow(getMaxEllipse(maj1), 2)
+        double sig = seuil[1]/3600.0;
+        double span = sig * ( Math.sqrt (  Math.pow(getMaxEllipse(maj1), 2)
                              + Math.pow(getMaxEllipse(maj2), 2) ));
 
-        for (j=0; j<len1; j++) {
-//        	UTILISER FLAG ICI
-			if( flag1[j] ) continue;
-
-        	/* fkInf and fkSup are the max window boundaries
-               they grow monotonically with j */
-        	while (pos2[fkInf].dec < pos1[j].dec-span && fkInf < len2-1) {
-        		fkInf++;
-        	}
-        	while (pos2[fkSup].dec <= pos1[j].dec+span && fkSup < len2-1) {
-        		fkSup++;
-        	}
-        	/* here we refine the window boundaries, the interval will be smaller,
-        	   allowing faster computation */
-        	for (kInf = fkInf; pos1[j].dec-pos2[kInf].dec > sig*Math.sqrt(pos1[j].maj*pos1[j].maj+pos2[kInf].maj*pos2[kInf].maj)
-                 && kInf < fkSup; kInf++) ;
-        	for (kSup = fkSup; pos2[kSup].dec-pos1[j].dec > sig*Math.sqrt(pos1[j].maj*pos1[j].maj+pos2[kSup].maj*pos2[kSup].maj)
-                 && kSup > fkInf; kSup--) ;
-//        	if (true) { System.out.println("j="+j+", f="+fkInf+"-"+fkSup+", k="+kInf+"-"+kSup); }
-
-
-        	kBest = -1;
-        	dstBest = seuil[1]+1.0; /* make it a non-match */
-        	for (k=kInf; k<=kSup; k++) {
-//        		UTLISER FLAG ICI
-				if( flag2[k] ) continue;
-
-        		/* petite ruse: on calcule la distance pour faire une selection grossiere en RA... */
-        		if (sphDst(pos1[j].ra, pos1[j].dec, pos2[k].ra, pos2[k].dec) > span) continue;
-        		/* et on passe au k suivant de la boucle for(k...) ... */
-        		dst = nSigmaEllipse(pos1[j], pos2[k]);
-        		if (dst <= seuil[1] && dst >= seuil[0]) {
-        			if ((fmtOut & 2)>0) { /* print all matches */
-        				result = new XMatchResult(pos1[j].idx, pos2[k].idx, dst);
-//        				result.idx1 = pos1[j].idx;
-//        				result.idx2 = pos2[k].idx;
-//        				result.dist = dst;
-        				resultVec.addElement(result);
-        				nb++;
-        			}
-        			if (dst < dstBest) {
-        				kBest = k;
-        				dstBest = dst;
-        			}
-        		}
-        	} /* end for k ...*/
-        	if (kBest >=0 && (fmtOut & 1)>0 && (fmtOut & 2)==0) { /* print best, but only if not already done */
-        		result = new XMatchResult(pos1[j].idx, pos2[kBest].idx, dstBest);
-        		resultVec.addElement(result);
-        		nb++;
-        	}
-        	if (kBest < 0 && (fmtOut & 4)>0) { /* print non matches : distance is set to -1 */
-        		result = new XMatchResult(pos1[j].idx, kBest, -1.0);
-        		resultVec.addElement(result);
-        		nb++;
-        	}
-        }
-        XMatchResult[] resultArr = new XMatchResult[resultVec.size()];
-        resultVec.copyInto(resultArr);
-        resultVec = null;
-        return resultArr;
+        EllipseMatcher m = new EllipseMatcher(pos1, pos2, flag1, flag2, seuil, fmtOut, sig, span);
+        return m.run();
    }
 
+    /** Number of sources of the 1st table (sorted by dec) in each declination zone */
+    static private final int ZONE_SIZE = 8192;
+
+    /** Slack (in radians) added to the radius before the unit-vector pre-filter, large enough
+     * to cover the rounding errors of the dot product and of the haversine formula */
+    static private final double DOT_SLACK = 1e-6;
+
+    /** Pool shared by the cross-matches, created at first use */
+    static private ForkJoinPool pool;
+
+    static synchronized private ForkJoinPool getPool() {
+        if( pool==null ) pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
+    /** Returns the lower limit for the dot product of 2 unit vectors whose separation may
+     * be lower or equal to radius (in degrees). A dot product below this limit guarantees
+     * that the haversine distance is above radius. Returns -2 if the pre-filter can not be
+     * used safely (very large radius)
+     */
+    static private double getDotLimit(double radius) {
+        double r = deg2rad(radius)+DOT_SLACK;
+        if( !(r<1) ) return -2;
+        return Math.cos(r);
+    }
+
+    /** Positions of a table sorted by ascending declination, stored in primitive arrays
+     * (with unit vectors for the dot-product pre-filter). idx[] keeps the original index */
+    static private final class SortedPos {
+        final int n;
+        final int[] idx;
+        final double[] ra, dec, x, y, z;
+        final double[] maj, min, pa;
+
+        SortedPos(double[][] array, double[] maj, double[] min, double[] pa) {
+            n = array.length;
+            double[] d = new double[n];
+            for( int i=0; i<n; i++ ) d[i] = array[i][1];
+            idx = new int[n];
+            dindexx(d, idx);
+
+            ra = new double[n];
+            dec = new double[n];
+            x = new double[n];
+            y = new double[n];
+            z = new double[n];
+            for( int i=0; i<n; i++ ) {
+                int o = idx[i];
+                ra[i] = array[o][0];
+                dec[i] = array[o][1];
+                double cd = Math.cos(deg2rad(dec[i]));
+                x[i] = cd*Math.cos(deg2rad(ra[i]));
+                y[i] = cd*Math.sin(deg2rad(ra[i]));
+                z[i] = Math.sin(deg2rad(dec[i]));
+            }
+
+            if( maj==null ) { this.maj = this.min = this.pa = null; return; }
+            this.maj = new double[n];
+            this.min = new double[n];
+            this.pa = new double[n];
+            for( int i=0; i<n; i++ ) {
+                int o = idx[i];
+                this.maj[i] = maj[o];
+                this.min[i] = min[o];
+                this.pa[i] = pa[o];
+            }
+        }
+
+        /** Dot product between the unit vectors of the source i and the source k of p */
+        double dot(int i, SortedPos p, int k) {
+            return x[i]*p.x[k] + y[i]*p.y[k] + z[i]*p.z[k];
+        }
+    }
+
+    /** Growable buffer of cross-match results (idx1, idx2, dist) in primitive arrays */
+    static private final class ResultBuffer {
+        int n=0;
+        int[] idx1 = new int[64];
+        int[] idx2 = new int[64];
+        double[] dist = new double[64];
+
+        void add(int i1, int i2, double d) {
+            if( n==dist.length ) {
+                int size = n*2;
+                idx1 = Arrays.copyOf(idx1, size);
+                idx2 = Arrays.copyOf(idx2, size);
+                dist = Arrays.copyOf(dist, size);
+            }
+            idx1[n] = i1;
+            idx2[n] = i2;
+            dist[n++] = d;
+        }
+    }
+
+    /** Zone-partitioned cross-match: the 1st table (sorted by dec) is cut into declination zones of
+     * ZONE_SIZE sources, the window of the 2nd table associated to each zone extending the zone by the
+     * search margin on both sides. The zones are processed in parallel on a fork/join pool, each
+     * of them in its own result buffer, and the buffers are concatenated in the zone order so that the
+     * output is exactly the one of the single sweep.
+     * The bounds of the window at the beginning of each zone are computed beforehand by a quick
+     * sequential sweep (no distance computation), with the same stop conditions as the matching loop.
+     */
+    static private abstract class Matcher {
+        final SortedPos pos1, pos2;
+        final boolean[] flag1, flag2;
+        final double[] seuil;
+        final int fmtOut;
+        final int nZone;
+        final int[] zoneInf, zoneSup;
+        final ResultBuffer[] zoneResult;
+
+        Matcher(SortedPos pos1, SortedPos pos2, boolean[] flag1, boolean[] flag2, double[] seuil, int fmtOut) {
+            this.pos1 = pos1;
+            this.pos2 = pos2;
+            this.flag1 = flag1;
+            this.flag2 = flag2;
+            this.seuil = seuil;
+            this.fmtOut = fmtOut;
+            nZone = (pos1.n+ZONE_SIZE-1)/ZONE_SIZE;
+            zoneInf = new int[nZone];
+            zoneSup = new int[nZone];
+            zoneResult = new ResultBuffer[nZone];
+        }
+
+        /** Lower margin (for the window bound kInf) of the source j of the 1st table */
+        abstract double getInf(int j);
+
+        /** Upper margin (for the window bound kSup) of the source j of the 1st table */
+        abstract double getSup(int j);
+
+        /** Matches the sources j of the 1st table, jMin<=j<jMax, starting from the window bounds kInf, kSup */
+        abstract void match(int jMin, int jMax, int kInf, int kSup, ResultBuffer res);
+
+        XMatchResult[] run() {
+            int len2 = pos2.n;
+
+            // no source in the 2nd table: only non-matches
+            if( len2==0 ) {
+                ResultBuffer res = new ResultBuffer();
+                if( (fmtOut & 4)>0 ) {
+                    for( int j=0; j<pos1.n; j++ ) if( !flag1[j] ) res.add(pos1.idx[j], -1, -1.0);
+                }
+                return toArray(new ResultBuffer[] { res });
+            }
+
+            // window bounds at the beginning of each zone
+            int kInf=0, kSup=0;
+            for( int j=0; j<pos1.n; j++ ) {
+                if( j%ZONE_SIZE==0 ) { zoneInf[j/ZONE_SIZE]=kInf; zoneSup[j/ZONE_SIZE]=kSup; }
+                if( flag1[j] ) continue;
+                while( pos2.dec[kInf] < getInf(j) && kInf < (len2-1) ) kInf++;
+                while( pos2.dec[kSup] <= getSup(j) && kSup < (len2-1) ) kSup++;
+            }
+
+            if( nZone==1 ) matchZone(0);
+            else if( nZone>1 ) getPool().invoke(new ZoneTask(this, 0, nZone));
+            return toArray(zoneResult);
+        }
+
+        void matchZone(int zone) {
+            ResultBuffer res = new ResultBuffer();
+            match(zone*ZONE_SIZE, Math.min(pos1.n, (zone+1)*ZONE_SIZE), zoneInf[zone], zoneSup[zone], res);
+            zoneResult[zone] = res;
+        }
+
+        /** Concatenation of the zone results */
+        static XMatchResult[] toArray(ResultBuffer[] buf) {
+            int n=0;
+            for( ResultBuffer b : buf ) n+=b.n;
+            XMatchResult[] resultArr = new XMatchResult[n];
+            n=0;
+            for( ResultBuffer b : buf ) {
+                for( int i=0; i<b.n; i++ ) resultArr[n++] = new XMatchResult(b.idx1[i], b.idx2[i], b.dist[i]);
+            }
+            return resultArr;
+        }
+    }
+
+    /** Fork/join task processing the zones zMin<=zone<zMax */
+    static private final class ZoneTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final Matcher m;
+        final int zMin, zMax;
+
+        ZoneTask(Matcher m, int zMin, int zMax) {
+            this.m = m;
+            this.zMin = zMin;
+            this.zMax = zMax;
+        }
+
+        protected void compute() {
+            if( zMax-zMin==1 ) { m.matchZone(zMin); return; }
+            int zMid = (zMin+zMax)>>>1;
+            invokeAll(new ZoneTask(m, zMin, zMid), new ZoneTask(m, zMid, zMax));
+        }
+    }
+
+    /** Positional cross-match with a fixed radius */
+    static private final class PosMatcher extends Matcher {
+        final double radius;    // radius in degrees
+        final double dotLimit;
+
+        PosMatcher(SortedPos pos1, SortedPos pos2, boolean[] flag1, boolean[] flag2, double[] seuil, int fmtOut) {
+            super(pos1, pos2, flag1, flag2, seuil, fmtOut);
+            radius = seuil[1]/3600.;
+            dotLimit = getDotLimit(radius);
+        }
+
+        double getInf(int j) { return pos1.dec[j]-radius; }
+        double getSup(int j) { return pos1.dec[j]+radius; }
+
+        void match(int jMin, int jMax, int k_inf, int k_sup, ResultBuffer res) {
+            int len2 = pos2.n;
+            double dstBest, dst;
+            int j,k;
+            int kBest;
+
+            for (j=jMin; j<jMax; j++) {
+                if( flag1[j] ) continue;
+
+                while (pos2.dec[k_inf] < pos1.dec[j]-radius && k_inf < (len2-1) ) {
+                    k_inf++;
+                }
+                while ( pos2.dec[k_sup] <= pos1.dec[j]+radius && k_sup<(len2-1) ) {
+                    k_sup++;
+                }
+                kBest = -1;
+                dstBest = seuil[1]+1.0; /* make it a non-match */
+                for (k=k_inf; k<=k_sup; k++) {
+                    if( flag2[k] ) continue;
+                    /* unit vectors: quick rejection of the sources obviously too far in RA */
+                    if( pos1.dot(j, pos2, k) < dotLimit ) continue;
+                    dst = 3600.0*sphDst(pos1.ra[j], pos1.dec[j], pos2.ra[k], pos2.dec[k]);
+                    if (dst <= seuil[1] && dst >= seuil[0]) {
+                        if ((fmtOut & 2)>0) { /* print all matches */
+                            res.add(pos1.idx[j], pos2.idx[k], dst);
+                        }
+                        if (dst < dstBest) {
+                            kBest = k;
+                            dstBest = dst;
+                        }
+                    }
+                } /* end for k ...*/
+                if (kBest >=0 && (fmtOut & 1)>0 && (fmtOut & 2)==0) { /* print best, but only if not already done */
+                    res.add(pos1.idx[j], pos2.idx[kBest], dstBest);
+                }
+                if (kBest < 0 && (fmtOut & 4)>0) { /* print non matches : distance is set to -1 */
+                    res.add(pos1.idx[j], kBest, -1.0);
+                }
+            }
+        }
+    }
+
+    /** Positional cross-match taking into account the error ellipses */
+    static private final class EllipseMatcher extends Matcher {
+        final double sig, span;   // span is in deg... distances are n-sigmas
+        final double dotLimit;
+
+        EllipseMatcher(SortedPos pos1, SortedPos pos2, boolean[] flag1, boolean[] flag2, double[] seuil, int fmtOut,
+                       double sig, double span) {
+            super(pos1, pos2, flag1, flag2, seuil, fmtOut);
+            this.sig = sig;
+            this.span = span;
+            dotLimit = getDotLimit(span);
+        }
+
+        double getInf(int j) { return pos1.dec[j]-span; }
+        double getSup(int j) { return pos1.dec[j]+span; }
+
+        void match(int jMin, int jMax, int fkInf, int fkSup, ResultBuffer res) {
+            int len2 = pos2.n;
+            int j, k, kBest, kInf, kSup;
+            double dst, dstBest;
+            double[] dec1 = pos1.dec, dec2 = pos2.dec, maj1 = pos1.maj, maj2 = pos2.maj;
+
+            for (j=jMin; j<jMax; j++) {
+                if( flag1[j] ) continue;
+
+                /* fkInf and fkSup are the max window boundaries
+                   they grow monotonically with j */
+                while (dec2[fkInf] < dec1[j]-span && fkInf < len2-1) {
+                    fkInf++;
+                }
+                while (dec2[fkSup] <= dec1[j]+span && fkSup < len2-1) {
+                    fkSup++;
+                }
+                /* here we refine the window boundaries, the interval will be smaller,
+                   allowing faster computation */
+                for (kInf = fkInf; dec1[j]-dec2[kInf] > sig*Math.sqrt(maj1[j]*maj1[j]+maj2[kInf]*maj2[kInf])
+                     && kInf < fkSup; kInf++) ;
+                for (kSup = fkSup; dec2[kSup]-dec1[j] > sig*Math.sqrt(maj1[j]*maj1[j]+maj2[kSup]*maj2[kSup])
+                     && kSup > fkInf; kSup--) ;
+
+                kBest = -1;
+                dstBest = seuil[1]+1.0; /* make it a non-match */
+                for (k=kInf; k<=kSup; k++) {
+                    if( flag2[k] ) continue;
+
+                    /* petite ruse: on calcule la distance pour faire une selection grossiere en RA... */
+                    if( pos1.dot(j, pos2, k) < dotLimit ) continue;
+                    if (sphDst(pos1.ra[j], dec1[j], pos2.ra[k], dec2[k]) > span) continue;
+                    /* et on passe au k suivant de la boucle for(k...) ... */
+                    dst = nSigmaEllipse(pos1, j, pos2, k);
+                    if (dst <= seuil[1] && dst >= seuil[0]) {
+                        if ((fmtOut & 2)>0) { /* print all matches */
+                            res.add(pos1.idx[j], pos2.idx[k], dst);
+                        }
+                        if (dst < dstBest) {
+                            kBest = k;
+                            dstBest = dst;
+                        }
+                    }
+                } /* end for k ...*/
+                if (kBest >=0 && (fmtOut & 1)>0 && (fmtOut & 2)==0) { /* print best, but only if not already done */
+                    res.add(pos1.idx[j], pos2.idx[kBest], dstBest);
+                }
+                if (kBest < 0 && (fmtOut & 4)>0) { /* print non matches : distance is set to -1 */
+                    res.add(pos1.idx[j], kBest, -1.0);
+                }
+            }
+        }
+    }
+
 
 	/**************************************************************
 	 Computes distance between 2 ellipses expressed as a merged 'sigma'
 	 Returns the value of the distance
 	*/
-	static private double nSigmaEllipse(XMatchEllipseElem tab1, XMatchEllipseElem tab2)
+	static private double nSigmaEllipse(SortedPos p1, int i1, SortedPos p2, int i2)
 	{
 	   double theta, dra, ddec, dcos, dst;
 	   double siang, coang, sig, sig1, sig2;
+	   double ra1 = p1.ra[i1], dec1 = p1.dec[i1], ra2 = p2.ra[i2], dec2 = p2.dec[i2];
 
-	   dra = tab2.ra-tab1.ra;
-	   ddec = Math.abs(tab2.dec-tab1.dec);
-	   dcos = Math.cos(deg2rad(tab2.dec));
+	   dra = ra2-ra1;
+	   ddec = Math.abs(dec2-dec1);
+	   dcos = Math.cos(deg2rad(dec2));
 
 	   siang = dcos*Math.sin(deg2rad(dra));
-	   coang = Math.sin(deg2rad(tab2.dec))*Math.cos(deg2rad(tab1.dec)) - dcos*Math.sin(deg2rad(tab1.dec))*Math.cos(deg2rad(dra));
+	   coang = Math.sin(deg2rad(dec2))*Math.cos(deg2rad(dec1)) - dcos*Math.sin(deg2rad(dec1))*Math.cos(deg2rad(dra));
 
 	   /* orientation angle between the 2 sources... */
 	   theta = (180.0/Math.PI)*Math.atan2(siang,coang);
 
-	   coang = Math.cos(deg2rad(theta+tab1.pa))/tab1.maj;
-	   siang = Math.sin(deg2rad(theta+tab1.pa))/tab1.min;
+	   coang = Math.cos(deg2rad(theta+p1.pa[i1]))/p1.maj[i1];
+	   siang = Math.sin(deg2rad(theta+p1.pa[i1]))/p1.min[i1];
 	   sig1 = 1.0/(coang*coang+siang*siang);
-	   coang = Math.cos(deg2rad(theta+tab2.pa))/tab2.maj;
-	   siang = Math.sin(deg2rad(theta+tab2.pa))/tab2.min;
+	   coang = Math.cos(deg2rad(theta+p2.pa[i2]))/p2.maj[i2];
+	   siang = Math.sin(deg2rad(theta+p2.pa[i2]))/p2.min[i2];
 	   sig2 = 1.0/(coang*coang+siang*siang);
 
-	   dst = sphDst(tab1.ra, tab1.dec, tab2.ra, tab2.dec); /* dst in in dec degrees */
+	   dst = sphDst(ra1, dec1, ra2, dec2); /* dst in in dec degrees */
 	   sig = 3600*dst/Math.sqrt(sig1+sig2); /* sig1 and sig2 are in arcsec... */
 	   return sig;
 	}
@@ -317,22 +513,6 @@ public final class LocalXMatch {
 	   return max;
 	}
 
-    /** fill a XMatchElem array from a table of coordinates */
-    private static void fillElem(XMatchElem[] pos, double[][] array) {
-        for( int i=0; i<array.length; i++ ) {
-            pos[i] = new XMatchElem(array[i][0], array[i][1], i);
-        }
-    }
-
-    /** fill a XMatchEllipseElem array from a table of coordinates,
-     * a table of maj, a table of min, a table of pa */
-    private static void fillElem(XMatchEllipseElem[] pos, double[][] array,
-    		                     double[] maj, double[] min, double[] pa) {
-        for( int i=0; i<array.length; i++ ) {
-            pos[i] = new XMatchEllipseElem(array[i][0], array[i][1], i, maj[i], min[i], pa[i]);
-        }
-    }
-
     /**
      * Computes spherical distance between 2 pairs of coordinates,
      * given in decimal degrees.
@@ -367,33 +547,6 @@ public final class LocalXMatch {
     }
 
 
-    /**************************************************************
-      Sorts an array of pos by ascending declination
-    */
-    static private void sortPos(XMatchElem[] rec) {
-
-        int n = rec.length;
-
-        double[] dec = new double[n];
-
-        for (int j=0; j<n; j++)
-            dec[j] = rec[j].dec;
-
-        int[] iwksp = new int[n];
-        XMatchElem[] wksp = new XMatchElem[n];
-        dindexx(dec, iwksp);
-
-        for (int j=0; j<n; j++)
-            wksp[j] = rec[j];
-
-        for (int j=0; j<n; j++) {
-            rec[j] = wksp[iwksp[j]]; /* rec is now ordered */
-            rec[j].idx = iwksp[j]; /* we keep track of the original index that way */
-        }
-
-
-    }
-
     /**************************************************************
       NR function for efficient sorting of an array of double
       Sort is in ASCENDING order
@@ -352,8 +352,10 @@ public final class Mesure extends JPanel implements Runnable,Iterable<Source>,Wi
       // R�cup�ration des valeurs du champ indiqu�
       for( int i=0,j=0; i<nbSrc; i++ ) {
          if( src[i].getLeg()!=o.getLeg() ) continue;
-         x[j]=Double.NaN;
+         x[j] = src[i].getDoubleValue(nField);
+         if( !Double.isNaN(x[j]) ) { j++; continue; }
          String s = src[i].getValue(nField);
+         if( s==null ) { j++; continue; }
          int n = s.length();
          //          boolean neuf=true;
          //          if( n>3 ) for( int k=n-1; neuf && k>=0; k-- ) neuf=s.charAt(k)=='9';    // que des 9999 => ignor�
@@ -46,6 +46,7 @@ import java.util.TimeZone;
  * @author Pierre Fernique [CDS]
  * @version 2.0 dcembre 2016 - fusion de la version Aladin et MultiMoc
  * @version 2.1 Juillet 2017 - ajout mthode removeComment(...)
+ * @version 2.2 octobre 2026 - ajout d'un compteur de modifications (getModCount())
  */
 public class MyProperties {
    
@@ -54,6 +55,7 @@ public class MyProperties {
    private HashMap<String, PropItem>   hash;  // Accs direct  la valeur d'une proprit
    
    private StringBuilder propOriginal = null;   // Strings des properties originales (telles que) si demand dans load()
+   private int modCount=0;                      // Compteur de modifications (voir getModCount())
 
    public MyProperties() {
       prop = new ArrayList<>();
@@ -67,6 +69,10 @@ public class MyProperties {
       return p;
    }
    
+   /** Retourne le compteur de modifications, incrment  chaque changement de cl ou de valeur.
+    * Permet aux index externes (ex: PropIndex) de dtecter les modifications "sur place" */
+   public int getModCount() { return modCount; }
+   
    /** Retourne la liste ordonne des cls */
    public ArrayList<String> getKeys() {
       ArrayList<String> a = new ArrayList<>();
@@ -85,6 +91,7 @@ public class MyProperties {
       }
       if( find==-1 ) return false;
       prop.remove( find );
+      modCount++;
       return true;
    }
    
@@ -304,6 +311,7 @@ public class MyProperties {
       PropItem item = new PropItem(key, value);
       prop.add(item);
       hash.put(key,item);
+      modCount++;
    }
 
    /** Insertion de la cl et de la valeur au dbut de liste.
@@ -316,12 +324,14 @@ public class MyProperties {
       PropItem item = new PropItem(key, value);
       prop.add(0,item);
       hash.put(key,item);
+      modCount++;
    }
    
    /** Suppression d'une proprit */
    public void remove(String key) {
       prop.remove( getItem(key) );
       hash.remove(key);
+      modCount++;
    }
    
    /** Ajout d'une nouvelle proprit.
@@ -346,6 +356,7 @@ public class MyProperties {
          prop.add(item);
          hash.put(key,item);
       } else item.value = value;
+      modCount++;
    }
    
    /** Ajout d'une valeur  une proprit. 
@@ -360,6 +371,7 @@ public class MyProperties {
          prop.add(item);
          hash.put(key,item);
       } else item.value += "\t" + value;
+      modCount++;
    }
    
    
@@ -370,6 +382,7 @@ public class MyProperties {
             item.key=key; 
             hash.remove(oldKey);
             hash.put(key, item);
+            modCount++;
             return;
          }
       }
@@ -426,7 +439,7 @@ public class MyProperties {
 
       prop = new ArrayList<>();
       hash = new HashMap<>();
-      
+      modCount++;
 
       // Je lis les proprits de la configuration
       String s;
@@ -565,7 +578,7 @@ public class MyProperties {
          } else {
             if( mode==0 ) {
                if( value.length()==0 ) remove(key);
-               else itemProp.value=value;
+               else { itemProp.value=value; modCount++; }
             } else {
                boolean trouve=false;
                Tok tok = new Tok(itemProp.value,"\t");
@@ -579,6 +592,7 @@ public class MyProperties {
                }
                if( mode==1 && !trouve) v1.append("\t"+value);
                itemProp.value = v1.toString();
+               modCount++;
                if( itemProp.value.length()==0 ) remove(key); 
             }
          }
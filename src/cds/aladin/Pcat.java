@@ -54,6 +54,8 @@ import cds.tools.Util;
 import cds.xml.Field;
 import cds.xml.TableParser;
 import cds.xml.TableParserConsumer;
+import cds.xml.TableParserTypedConsumer;
+import cds.xml.TableRecord;
 
 import cds.savot.model.SavotResource;
 import cds.savot.pull.SavotPullEngine;
@@ -83,7 +85,7 @@ import cds.savot.pull.SavotPullParser;
  * @version 0.9 - 31 mars 1998
  */
 //public final class PlanObjet implements SavotSAXLikeConsumer {
-public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
+public final class Pcat implements TableParserTypedConsumer/* , VOTableConsumer */ {
 
    static String OUTOFMEMORY,CATABORT;
    static final int DEFAULTBLOC = 200;
@@ -542,8 +544,22 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
 //      genericLeg=leg;
 //   }
 
+   /** Version typee de setRecord() : les cellules numeriques deja decodees par le parser
+    * sont ecrites directement dans la ligne d'info (sans chaine intermediaire) et alimentent
+    * les colonnes typees de la legende, sauf en presence de colonnes standardisees (SIAV2)
+    * qui decalent les indices */
+   public void setRecord(double ra, double dec, double jdTime, TableRecord rec) {
+      setRecord(ra,dec,jdTime,null,rec);
+   }
+
    /** L'interface TableParserConsumer */
    public void setRecord(double ra, double dec, double jdTime, String[] value) {
+      setRecord(ra,dec,jdTime,value,null);
+   }
+
+   /** Creation d'une source a partir de l'enregistrement courant, fourni soit sous forme
+    * de chaines (value), soit sous forme typee (rec) */
+   private void setRecord(double ra, double dec, double jdTime, String[] value, TableRecord rec) {
       int n;
       String oid = null; // OID trouve s'il y a lieu
       SimpleData data = null ;
@@ -648,6 +664,9 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
                leg.name=table;
             }
 
+            // Legende partagee par toutes les tuiles du HiPS => pas de stockage en colonnes
+            if( plan instanceof PlanBGCat ) leg.setColumnStoreOff();
+
             // Ajout de GROUPs �ventuels
             if( group!=null ) leg.setGroup(group);
             
@@ -656,7 +675,7 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
          }
 
          // Dans le cas de la g�n�ration a posterio de la l�gende pour une table vide
-         if( value==null ) return;
+         if( value==null && rec==null ) return;
 
          // Limite de chargement ?
          // On agrandi le tableau avec un petit gag sur l'indice de nb_o
@@ -674,24 +693,35 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
          else line = line.append("<&_getReadMe " + table + " |" + table + ">");
 
          // Construction de la ligne des mesures
-         n = value.length;
+         n = value!=null ? value.length : rec.size();
          int j = -1; // Veritable index de la mesure (en fonction des champs
          // caches)
          for( int i = 0; i < n; i++ ) {
-            if( value[i]==null ) value[i]="";	// En cas de VOTable <TD/>
-
-            // Memorisation d'un eventuel OID
-            if( indexOID >= 0 && i == indexOID ) oid = value[i];
 
             //            if( hiddenField != null && i < hiddenField.length && hiddenField[i] ) continue;
             j++;
 
+            // Cellule numerique deja decodee et sans ancre => ecriture directe dans la ligne
+            if( value==null && rec.getType(i)!=TableRecord.STRING && i!=indexOID
+                  && (leg == null || !leg.hasInfo(j)) && !standardisedColumns.containsKey(i) ) {
+               line.append('\t');
+               rec.append(i,line);
+               continue;
+            }
+
+            String v = value!=null ? value[i] : rec.getString(i);
+            if( v==null ) v="";	// En cas de VOTable <TD/>
+            if( value!=null ) value[i]=v;
+
+            // Memorisation d'un eventuel OID
+            if( indexOID >= 0 && i == indexOID ) oid = v;
+
             // pas d'info sur la mesure ou mesure vide ou nulle
-            String a=value[i].trim();
+            String a=v.trim();
             if( leg == null || !leg.hasInfo(j) || a.length() == 0
                   || a.equals("0") || a.equals("-") /* || a.equalsIgnoreCase("null") */ 
                   ) {
-            	String displayString = "\t" + ((a.length() == 0) ? " " : value[i]);
+            	String displayString = "\t" + ((a.length() == 0) ? " " : v);
             	line.append(displayString);
             	if (flagSIAV2 && standardisedColumns.containsKey(i)) {
             		line.append(displayString);
@@ -714,14 +744,14 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
 //               }
 //            } catch( Exception e ) { }
             
-            if( indexSTC==-1 && ( Util.indexOfIgnoreCase( value[i], "Polygon ")==0 
-                               || Util.indexOfIgnoreCase( value[i], "Circle ")==0 )) {
+            if( indexSTC==-1 && ( Util.indexOfIgnoreCase( v, "Polygon ")==0 
+                               || Util.indexOfIgnoreCase( v, "Circle ")==0 )) {
                indexSTC=j;
             }
             
             // On met un lien sur les urls ?
-            if( href==null && (value[i].startsWith("http://") || value[i].startsWith("https://") || value[i].startsWith("ftp://"))) {
-               href=value[i];
+            if( href==null && (v.startsWith("http://") || v.startsWith("https://") || v.startsWith("ftp://"))) {
+               href=v;
                
                // SIA 1.0
                if( flagArchive==null ) {
@@ -766,7 +796,7 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
             // JE LE REMETS ACTIF DE MANIERE GENERIQUE POUR N'IMPORTE QUEL SPECTRE - PF sept 2012
             if( tag!=null && flagArchive!=null && (flagArchive.startsWith("spectr") && flagArchive.indexOf('/')>0) ) tag="�"+tag;
             else if( tag != null && flagArchive != null && flagArchive.indexOf('/')>0  ) tag = "^" + tag;
-            else if (tag == null && flagArchive != null && flagArchive.startsWith("service")) {tag= "^s:" +value[i];
+            else if (tag == null && flagArchive != null && flagArchive.startsWith("service")) {tag= "^s:" +v;
             System.out.println("tag "+tag); 
             
             }
@@ -781,7 +811,7 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
             if( indexServiceDef==-1 && Util.indexOfIgnoreCase(name,"service_def")>=0 ) indexServiceDef=j;
             // DESORMAIS LE TEXTE FORCE EST MIS A LA VISUALISATION DES MESURES (A FAIRE)
 //            String text = (refText != null) ? refText : value[i];
-            String text = value[i];
+            String text = v;
             
             // Les TABs ne peuvent �tre pr�sents dans les valeurs individuelles (au risque de ne plus pouvoir relire les donn�es
             // correctement). Je les remplace par un espace
@@ -789,8 +819,8 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
             
             line.append('\t');
             if( tag != null ) {
-               line.append("<&" + dollarSub(tag, value, (href != null) ? 1 : 0));
-               if( text != null ) line.append("|" + dollarSub(text, value, 0));
+               line.append("<&" + dollarSub(tag, value!=null ? value : rec.getStrings(), (href != null) ? 1 : 0));
+               if( text != null ) line.append("|" + dollarSub(text, value!=null ? value : rec.getStrings(), 0));
                line.append('>');
             } else {
             	line.append(text);
@@ -810,7 +840,7 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
          }
 
          // Determination de label de la source
-         String lab = (nId >= 0) ? value[nId] : "Source #" + (nb_o+1);
+         String lab = (nId >= 0) ? (value!=null ? value[nId] : rec.getString(nId)) : "Source #" + (nb_o+1);
 
          if( firstTrace ) {
 
@@ -1208,7 +1238,7 @@ public final class Pcat implements TableParserConsumer/* , VOTableConsumer */ {
 
       // Cas particulier pour un plan hi�rarchique
       if( ok && plan instanceof PlanBGCat ) {
-         if( nb_o==0 ) setRecord(0, 0, Double.NaN, null);  // pour initialiser tout de m�me la l�gende
+         if( nb_o==0 ) setRecord(0, 0, Double.NaN, (String[])null);  // pour initialiser tout de m�me la l�gende
          return nb_o;
       }
 
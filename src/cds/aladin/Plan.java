@@ -141,6 +141,7 @@ public class Plan implements Runnable {
    protected Color c;            // La couleur associee au plan
    protected Astrotime epoch;    // Epoque pour catalogue (par dfaut J2000)
    protected Astrotime epochOrig;    // Epoque originale pour catalogue (par dfaut J2000)
+   private EpochPropagator epochPropagator=null; // Propagation des positions par mouvement propre (cr  la demande)
    protected Projection projd;   // La projection PAR DEFAUT associee au plan
    protected Projection projInit; // La projection initiale associee au plan
    protected Hashtable projD = null;  // La liste des projections associes au plan
@@ -604,11 +605,15 @@ public class Plan implements Runnable {
 
    /** Positionne une nouvelle epoque, et recalcule les positions de tous les objets
     * en fonction de cette nouvelle epoque */
-   protected void setEpoch(String s) throws Exception {
+   protected void setEpoch(String s) throws Exception { setEpoch(s,false); }
+
+   /** Idem, le recalcul pouvant tre effectu en tche de fond (async=true), interrompu par
+    * la demande suivante - utilis lors du dplacement des sliders d'poque */
+   protected void setEpoch(String s,boolean async) throws Exception {
       if( Character.isDigit( s.charAt(0)) ) s = "J"+s;
       if( epoch==null ) epoch = new Astrotime(s);
       else epoch.set(s);
-      if( !recomputePosition() ) throw new Exception("Unknown proper motion fields !");
+      if( !recomputePosition(async) ) throw new Exception("Unknown proper motion fields !");
    }
    
    /** Retourne le niveau d'nergie moyen associ au plan (em_max+em_min)/2
@@ -757,26 +762,24 @@ public class Plan implements Runnable {
    /** Recalcule toutes les positions internes
     * @return true si au moins une position a t effectivement modifi
     */
-   public boolean recomputePosition() {
-      boolean rep=false;
-      Vector<Legende> legs = getLegende();
-      if( legs==null ) return false;
+   public boolean recomputePosition() { return recomputePosition(false); }
+
+   /** Idem, en tche de fond si async=true (les vues sont rafrachies  la fin du calcul)
+    * @return true si au moins une lgende dispose de champs de mouvement propre
+    */
+   protected boolean recomputePosition(boolean async) {
       //       aladin.trace(3,label+": reprocessing all internal coordinates...");
-      Iterator<Legende> it = legs.iterator();
-      while( it.hasNext() ) {
-         Legende leg = it.next();
-         int npmra = leg.getPmRa();
-         int npmde = leg.getPmDe();
-         if( npmra<=0 || npmde<=0 ) continue;  // Inutile, pas de PM
-         int nra   = leg.getRa();
-         int nde   = leg.getDe();
-         recomputePosition(iterator(),leg,nra,nde,npmra,npmde);
-         rep=true;
-      }
-      if( rep ) aladin.view.newView(1);
+      boolean rep = getEpochPropagator().propagate(getOriginalEpoch().getJyr(), getEpoch().getJyr(), async);
+      if( rep && !async ) aladin.view.newView(1);
 
       return rep;
    }
+
+   /** Retourne le moteur de propagation des positions par mouvement propre (cr  la demande) */
+   synchronized protected EpochPropagator getEpochPropagator() {
+      if( epochPropagator==null ) epochPropagator = new EpochPropagator(this);
+      return epochPropagator;
+   }
    
    /** recalcule les positions internes de toutes les sources ayant la lgende indiqu */
    public void recomputePositionByFrame(Iterator<Obj> it,Legende leg, int nlon,int nlat,int originFrame) {
@@ -943,6 +946,7 @@ public class Plan implements Runnable {
    
    /** Modification des champs utiliss pour la position cleste */
    public void modifyLonLatField(Legende leg, int nlon,int nlat,int frame) {
+      if( epochPropagator!=null ) epochPropagator.reset();
       String sFrame = Localisation.getFrameName(frame);
       aladin.trace(3,label+" new "+sFrame+" => LON pos="+(nlon+1)+" LAT pos="+(nlat+1) );
 
@@ -977,6 +981,7 @@ public class Plan implements Runnable {
 
    /** Modification des champs utiliss pour la position cleste */
    public void modifyRaDecField(Legende leg, int nra,int ndec,int npmra,int npmde) {
+      if( epochPropagator!=null ) epochPropagator.reset();
       aladin.trace(3,label+" new ICRS => RA pos="+(nra+1)+" DE pos="+(ndec+1)
             +" PMRA pos="+(npmra+1)+" PMDE pos="+(npmde+1));
 
@@ -50,7 +50,6 @@ import java.lang.ref.SoftReference;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -61,6 +60,10 @@ import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import javax.swing.SwingUtilities;
 
@@ -126,17 +129,23 @@ import cds.tools.pixtools.CDSHealpix;
  *
  * L'algorithme du HealpixLoader fonctionne de la manire suivante :
  * 1) Sommeil
- * 2) Rveil (par timeout ou par wakeUp())
- *     2.1) Gestion du cache disque (suppression des plus vieux fichiers accds si ncessaire)
- *     2.2) Purge des losanges en mmoire inutilise (temps de vie>dernier affichage forc)
- *     2.3) Changement des tats des losanges (ASKING=>TOBELOAD...) en vue de leur
- *          chargement par les threads de gestion du cache et de gestion du net
+ * 2) Rveil (par changement de status d'un losange, par wakeUp(), ou  l'chance de vie
+ *    du prochain losange)
+ *     2.1) Traitement des losanges dont le status a chang (ASKING=>TOBELOAD..., criture
+ *          dans le cache...) et mise en file (cache ou net, ordonne par priorit) en vue de leur
+ *          chargement par les threads de gestion du cache et de gestion du net. Les compteurs
+ *          par status sont tenus  jour au fil de l'eau
+ *     2.2) Uniquement aprs wakeUp() (nouvel affichage) ou  l'chance de vie d'un losange :
+ *          parcours complet des losanges pour la purge des losanges en mmoire inutilise
+ *          (temps de vie>dernier affichage forc), la re-priorisation des files et le recalage
+ *          des compteurs
+ *     2.3) Gestion du cache disque (suppression des plus vieux fichiers accds si ncessaire)
  *
  * 2 threads, les loaders, grent les chargements (cache et rseau)
  * L'algorithme des Loader fonctionne de la manire suivante:
  * 1) Sommeil
  * 2) Rveil (par timeout ou wakeUp())
- *     2.1) Chargement du "meilleur" losange  tre TOBELOAD..
+ *     2.1) Chargement des losanges de la file, par ordre de priorit
  *
  * @author Pierre Fernique + Anas Oberto [CDS]
  */
@@ -298,6 +307,7 @@ public class PlanBG extends PlanImage {
          if( f.renameTo(new File(getCacheDir()+Util.FS+getCacheName()+"."+i+".old")) ) break;
       }
       (new File(getCacheDir()+Util.FS+getCacheName())).mkdir();
+      getCacheIndex().removeDir(getCacheName());
       aladin.trace(3,"HEALPix local cache for "+getCacheName()+" is out of date => renamed => will be removed");
    }
 
@@ -378,6 +388,7 @@ public class PlanBG extends PlanImage {
                      f = new File(cacheFile);
                      fcache = new RandomAccessFile(f, "rw");
                      fcache.write(buf);
+                     addInCache(getCacheName()+"/"+Constante.FILE_PROPERTIES,buf.length);
                   }
                   catch( Exception e ) { e.printStackTrace(); }
                   finally { if( fcache!=null ) fcache.close(); }
@@ -857,6 +868,7 @@ public class PlanBG extends PlanImage {
 
       if( !local && useCache ) {
          moc.write(fcache);
+         addInCache(getCacheName()+"/"+Constante.FILE_MOC,new File(fcache).length());
          Aladin.trace(3,"Saving "+survey+" MOC in cache");
       }
    }
@@ -1114,6 +1126,9 @@ public class PlanBG extends PlanImage {
    protected void initCache() {
       if( cacheSize==-1 ) {
          cacheSize=aladin.configuration.getHpxCacheSize();
+         
+         // L'index du cache, s'il existe, donne directement la taille exacte
+         if( getCacheIndex().isBuilt() ) setCacheSize(getCacheIndex().getSize());
          Aladin.trace(3,"Cache Size => "+cacheSize);
       }
 
@@ -1509,6 +1524,38 @@ public class PlanBG extends PlanImage {
       synchronized( cacheLock ) { cacheSize=size; }
    }
 
+   static private CacheIndex cacheIndex = null;
+   static private final long MAXINDEXAGE = 7*24*3600*1000L;   // Age max de l'index avant un nouveau parcours complet du cache
+
+   /** Index LRU du cache disque (journal CacheIndex.log  la racine du cache) */
+   static CacheIndex getCacheIndex() {
+      synchronized( cacheLock ) {
+         if( cacheIndex==null ) cacheIndex = new CacheIndex(getCacheDirStatic());
+         return cacheIndex;
+      }
+   }
+
+   /** Ecriture dans le journal de l'index du cache des accs et critures en attente */
+   static void flushCacheIndex() {
+      CacheIndex index;
+      synchronized( cacheLock ) { index=cacheIndex; }
+      if( index!=null ) index.flush();
+   }
+
+   /** Mmorisation de l'criture d'une tuile dans le cache
+    * @param fileCache chemin de la tuile relatif  la racine du cache
+    * @param n taille en octets */
+   static void addInCache(String fileCache,long n) {
+      addInCache(n/1024);
+      getCacheIndex().add(fileCache,n);
+   }
+
+   /** Mmorisation de l'accs  une tuile du cache (ordre LRU)
+    * @param fileCache chemin de la tuile relatif  la racine du cache */
+   static void accessInCache(String fileCache) {
+      getCacheIndex().access(fileCache);
+   }
+
    static private Thread scanCache = null;
 
    /** Scan du cache et suppression des vieux fichiers */
@@ -1529,6 +1576,39 @@ public class PlanBG extends PlanImage {
          return;
       }
       
+      // Si l'index du cache est disponible, inutile de parcourir le cache, on supprime
+      // directement les tuiles les plus anciennement utilises. Les fichiers non suivis
+      // par l'index (crits par une autre version d'Aladin...) sont rattraps par un
+      // parcours complet priodique, qui reconstruit l'index
+      final CacheIndex index = getCacheIndex();
+      if( index.isBuilt() && System.currentTimeMillis()-index.getBuildTime()<MAXINDEXAGE ) {
+         (scanCache=new Thread("Clean cache") {
+            @Override
+            public void run() {
+               currentThread().setPriority(MIN_PRIORITY);
+               long t = System.currentTimeMillis();
+               try {
+                  removeOldSurveys(PlanBG.getCacheDirStatic());
+
+                  // Les caches des PlanHealpix ne sont pas suivis par l'index => parcours
+                  // classique de leurs rpertoires (peu nombreux), supprims en dernier recours
+                  Vector<FileItem> listHpx = new Vector<>();
+                  long hpxSize = getCacheSizePlanHealpix(new File(PlanHealpix.getCacheDirPath()), listHpx);
+                  long size = index.evict( Math.max(0L,(3*MAXCACHE)/4 - hpxSize) ) + hpxSize;
+                  size = removeOldFiles(listHpx,size);
+                  Aladin.trace(3,"Cleaning HiPS cache via index => Cache size="+Util.getUnitDisk(size*1024)
+                        +" maxCache="+Util.getUnitDisk(MAXCACHE*1024)+" in "+(System.currentTimeMillis()-t)+"ms");
+                  setCacheSize(size);
+               } catch( Exception e1 ) {
+                  Aladin.trace(3,"Cache index error => reset"+(e1.getMessage()!=null?" => "+e1.getMessage():""));
+                  index.reset();
+               }
+               finally { scanCache=null; }
+            }
+         }).start();
+         return;
+      }
+
       // Vrifie qu'une autre instance n'est pas dj en train de faire le mme boulot
       // en regardant la prsence ou non du fichier ScanRunning.bin
       File ft = new File(Cache.getCacheDir()+Util.FS+"ScanRunning.bin");
@@ -1560,57 +1640,22 @@ public class PlanBG extends PlanImage {
             Aladin.trace(3,"Scanning HiPS cache...");
 
             // Premier parcours pour virer les surveys obsoletes
-            File fold[] = new File(dir).listFiles();
-            for( int i=0; i<fold.length; i++ ) {
-               if( fold[i].isDirectory() && fold[i].getName().endsWith(".old") ) {
-                  Aladin.trace(4,"PlanBG.scanCache(): removing folder "+fold[i].getName()+"...");
-                  Util.deleteDir(fold[i]);
-               }
-            }
+            removeOldSurveys(dir);
 
             // Parcours du cache
             Vector<FileItem> listCache = new Vector<>(2000);
             size  = getCacheSize(new File(dir),listCache);
             size += getCacheSizePlanHealpix(new File(PlanHealpix.getCacheDirPath()), listCache);
             try {
-               Collections.sort(listCache,(new Comparator() {
-                  public int compare(Object o1, Object o2) {
-                     if( o1==o2 ) return 0;
-                     if( o1==null ) return -1;
-                     if( o2==null ) return 1;
-                     long t1 = ((FileItem)o1).date;
-                     long t2 = ((FileItem)o2).date;
-                     return t1==t2 ? 0: t1>t2 ? 1 : -1;
-                  }
-               }));
-
-
-               // Suppression des vieux fichiers si ncessaires
-               Enumeration<FileItem> e = listCache.elements();
-               while( e.hasMoreElements() && size > (3*MAXCACHE)/4 ) {
-                  FileItem fi = e.nextElement();
-                  File f = fi.f;
-                  if( !fi.hasBeenModified() && size > (3*MAXCACHE)/4 ) {
-
-                     Aladin.trace(4,"PlanBG.scanCache(): removing "+ f+" ("+fi.date+")");
-                     if( f.isFile() ) {
-                        size-=f.length()/1024;
-                        if( fi.hasBeenModified() ) throw new Exception("File :"+f.getAbsolutePath());
-                        f.delete();
-                     }
-                     // cache HPX des fichiers locaux
-                     else if( f.isDirectory()) {
-                        long dirSize = Util.dirSize(f)/1024;
-                        size-=dirSize;
-                        // TODO : vrifier qu'on n'efface pas des donnes d'un PlanHealpix dans la pile
-                        if( fi.hasBeenModified() ) throw new Exception("Dir :"+f.getAbsolutePath());
-                        Util.deleteDir(f);
-                        //                      System.out.println("je vire le repertoire "+f.getAbsolutePath()+" de taille "+dirSize);
-                     }
-                  }
-               }
+               size = removeOldFiles(listCache,size);
                Aladin.trace(3," => Cache size="+Util.getUnitDisk(size*1024)+" maxCache="+Util.getUnitDisk(MAXCACHE*1024)+" scan in "+(System.currentTimeMillis()-t)+"ms");
                setCacheSize(size);
+
+               // Construction de l'index du cache  partir des fichiers restants => les
+               // prochains nettoyages n'auront plus besoin de parcourir le cache
+               ArrayList<FileItem> remain = new ArrayList<>(listCache.size());
+               for( FileItem fi : listCache ) if( fi.f.exists() ) remain.add(fi);
+               getCacheIndex().build(remain);
                
             } catch( Exception e1 ) {
                Aladin.trace(3,"Simultaneous access on cache => Clean aborted for avoiding conflict"
@@ -1628,6 +1673,61 @@ public class PlanBG extends PlanImage {
       }).start();
    }
    
+   /** Suppression des fichiers (ou rpertoires de cache PlanHealpix) les plus anciens
+    * jusqu' ce que la taille du cache passe sous les 3/4 de la taille max.
+    * @param listCache liste des fichiers candidats (trie ici par date croissante)
+    * @param size taille courante du cache en Ko
+    * @return la nouvelle taille du cache en Ko */
+   static private long removeOldFiles(Vector<FileItem> listCache,long size) throws Exception {
+      Collections.sort(listCache,(new Comparator() {
+         public int compare(Object o1, Object o2) {
+            if( o1==o2 ) return 0;
+            if( o1==null ) return -1;
+            if( o2==null ) return 1;
+            long t1 = ((FileItem)o1).date;
+            long t2 = ((FileItem)o2).date;
+            return t1==t2 ? 0: t1>t2 ? 1 : -1;
+         }
+      }));
+
+      // Suppression des vieux fichiers si ncessaires
+      Enumeration<FileItem> e = listCache.elements();
+      while( e.hasMoreElements() && size > (3*MAXCACHE)/4 ) {
+         FileItem fi = e.nextElement();
+         File f = fi.f;
+         if( !fi.hasBeenModified() && size > (3*MAXCACHE)/4 ) {
+
+            Aladin.trace(4,"PlanBG.scanCache(): removing "+ f+" ("+fi.date+")");
+            if( f.isFile() ) {
+               size-=f.length()/1024;
+               if( fi.hasBeenModified() ) throw new Exception("File :"+f.getAbsolutePath());
+               f.delete();
+            }
+            // cache HPX des fichiers locaux
+            else if( f.isDirectory()) {
+               long dirSize = Util.dirSize(f)/1024;
+               size-=dirSize;
+               // TODO : vrifier qu'on n'efface pas des donnes d'un PlanHealpix dans la pile
+               if( fi.hasBeenModified() ) throw new Exception("Dir :"+f.getAbsolutePath());
+               Util.deleteDir(f);
+               //                      System.out.println("je vire le repertoire "+f.getAbsolutePath()+" de taille "+dirSize);
+            }
+         }
+      }
+      return size;
+   }
+
+   /** Suppression des surveys obsoltes (renomms en .old par resetCache()) */
+   static private void removeOldSurveys(String dir) {
+      File fold[] = new File(dir).listFiles();
+      for( int i=0; fold!=null && i<fold.length; i++ ) {
+         if( fold[i].isDirectory() && fold[i].getName().endsWith(".old") ) {
+            Aladin.trace(4,"PlanBG.scanCache(): removing folder "+fold[i].getName()+"...");
+            Util.deleteDir(fold[i]);
+         }
+      }
+   }
+
    static class FileItem {
       File f;
       long date;
@@ -1640,6 +1740,7 @@ public class PlanBG extends PlanImage {
    static void clearCache() {
       String dir = PlanBG.getCacheDirStatic();
       if( dir!=null ) Util.deleteDir(new File(dir));
+      try { getCacheIndex().build(null); } catch( Exception e ) { getCacheIndex().reset(); }
       dir = PlanHealpix.getCacheDirPath();
       if( dir!=null ) Util.deleteDir(new File(dir));
       setCacheSize(0);
@@ -1753,6 +1854,11 @@ public class PlanBG extends PlanImage {
 //      }).start();
    }
 
+   /** Prise en compte du changement de status d'un losange (cf. HealpixKey.setStatus()) */
+   protected void statusChanged(HealpixKey healpix,int old,int status) {
+      if( loader!=null ) loader.statusChanged(healpix,old,status);
+   }
+
    /** Suppression d'un losange */
    protected void purge(HealpixKey healpix) {
       nbFlush+=healpix.free();
@@ -4511,23 +4617,10 @@ public class PlanBG extends PlanImage {
       aladin.view.repaintAll();
    }
 
-   // Test qui repre un problme sur le serveur
+   // Test qui repre un problme sur le serveur (nb: nombre de losanges par status)
    protected boolean detectServerError(int nb[]) {
       if( moc==null ) return false;
-      else removeHealpixOutsideMoc();
-      
-//      return nb[HealpixKey.READY]==0 && nb[HealpixKey.ERROR]>5;
-      
-      int nbReady=0;
-      int nbError=0;
-      
-      for( HealpixKey key : pixList.values() ) {
-         int status = key.getStatus();
-         if( status==HealpixKey.READY ) nbReady++;
-         else if( status==HealpixKey.ERROR ) nbError++;
-      }
-
-      return nbReady==0 && nbError>5;
+      return nb[HealpixKey.READY]==0 && nb[HealpixKey.ERROR]>5;
    }
 
 
@@ -4677,14 +4770,34 @@ public class PlanBG extends PlanImage {
    class HealpixLoader implements Runnable {
       static final int POOLSIZE = 1; //8;
       boolean POOLTEST = true;   // EN COURS DE DEVELOPPEMENT POUR METTRE NE PLACE UN POOL DE THREADS DE CHARGEMENT DE TUILES
-      static final int DELAI =500;   // delai en ms entre deux demandes de chargement des losanges
 
-      private boolean loading;      // false s'il n'y a plus de losange en cours de chargement
-      private boolean purging;      // false s'il n'y a plus aucun losange  purger
+      volatile private boolean loading;      // false s'il n'y a plus de losange en cours de chargement
+      volatile private boolean purging;      // false s'il n'y a plus aucun losange  purger
       private Thread thread=null;
       private Loader cacheLoader, netLoader;
       private Loader [] netPool;
 
+      // Files de chargement (cache et rseau) ordonnes par priorit, alimentes lors du traitement
+      // des losanges (process) et consommes par les Loaders
+      private PriorityBlockingQueue<TileJob> cacheQueue = new PriorityBlockingQueue<>();
+      private PriorityBlockingQueue<TileJob> netQueue = new PriorityBlockingQueue<>();
+      private long seqJob=0;
+
+      // Losanges dont le status a chang depuis le dernier passage (cf. statusChanged())
+      private ConcurrentLinkedQueue<HealpixKey> events = new ConcurrentLinkedQueue<>();
+
+      // Nombre de losanges par status, tenu  jour  chaque changement de status,
+      // et recal lors de chaque parcours complet de la liste des losanges
+      private AtomicIntegerArray nbStatus = new AtomicIntegerArray(HealpixKey.NBSTATUS);
+
+      // Nombre (pondr) de losanges prioritaires pas encore prts (cf. pourcent)
+      private AtomicInteger nbWaiting = new AtomicInteger();
+
+      private boolean rescan=true;            // true si un parcours complet est demand (cf. wakeUp())
+      private long nextSweep=Long.MAX_VALUE;  // Date du prochain changement d'tat de vie d'un losange
+      private boolean stillOnePurge=false;    // true si un losange tait en fin de vie lors du dernier parcours
+      private Object lockSleep = new Object();
+
       HealpixLoader() {
          loading=false;
          purging=false;
@@ -4711,42 +4824,55 @@ public class PlanBG extends PlanImage {
 
       /** Demande de parcours de la liste des losanges */
       protected void wakeUp() {
-
-         if( thread!=null ) {
-            loading=true;
-            noSleep();
-            if( isSleeping() ) thread.interrupt();
-         }
-         else {
+         synchronized( lockSleep ) {
+            rescan=true;
+            if( thread!=null ) {
+               loading=true;
+               lockSleep.notify();
+               return;
+            }
             thread = new Thread(this,"HealpixLoader");
-            Util.decreasePriority(Thread.currentThread(), thread);
-            //            thread.setPriority(Thread.currentThread().getPriority()-1);
-            thread.start();
          }
+         Util.decreasePriority(Thread.currentThread(), thread);
+         //            thread.setPriority(Thread.currentThread().getPriority()-1);
+         thread.start();
       }
 
-      volatile private boolean sleep;
-      private boolean isSleeping=false;
-      private Object lockSleep = new Object();
+      /** Prise en compte du changement de status d'un losange : mise  jour des compteurs
+       * et rveil du thread pour son traitement (mise en file de chargement, criture dans le cache...) */
+      void statusChanged(HealpixKey healpix,int old,int status) {
 
-      private void noSleep() { synchronized( lockSleep ) { sleep=false; } }
+         // Les losanges issus du sous-chantillonnage d'un anctre ne sont pas dans pixList
+         if( healpix.parente>0 ) return;
 
-      private boolean isSleeping() {
-         synchronized( lockSleep ) { return isSleeping; }
-      }
+         if( old!=HealpixKey.UNKNOWN ) nbStatus.decrementAndGet(old);
+         if( status!=HealpixKey.UNKNOWN ) nbStatus.incrementAndGet(status);
+         boolean wasDone = old==HealpixKey.READY || old==HealpixKey.ERROR;
+         boolean done = status==HealpixKey.READY || status==HealpixKey.ERROR;
+         if( wasDone!=done ) {
+            int w = getWeight(healpix);
+            if( w>0 ) nbWaiting.addAndGet( done ? -w : w );
+         }
+
+         // Rien  faire au dbut d'un chargement
+         if( status==HealpixKey.LOADINGFROMCACHE || status==HealpixKey.LOADINGFROMNET ) return;
 
-      private void setSleep(boolean flag) {
-         synchronized( lockSleep ) { isSleeping=flag; }
+         // Le thread n'est relanc que pour les status qui ncessitent un traitement
+         boolean todo = status==HealpixKey.ASKING || status==HealpixKey.READY
+               || status==HealpixKey.TOBELOADFROMCACHE || status==HealpixKey.TOBELOADFROMNET;
+         if( todo ) events.offer(healpix);
+         synchronized( lockSleep ) {
+            if( thread==null ) { if( todo ) wakeUp(); }
+            else lockSleep.notify();
+         }
       }
-      
-      private long ot = -1;
 
       /** retourne true tant que le thread du loader a quelque chose sur le feu */
       private boolean shouldRun() {
          return isLoading() || isPurging();
       }
 
-      /** Boucle de surveillance des losanges en attentes */
+      /** Boucle de traitement des losanges en attentes */
       public void run() {
          Util.pause(100);
          if( useCache ) cacheLoader.start();
@@ -4756,102 +4882,68 @@ public class PlanBG extends PlanImage {
          } else {
             netLoader.start();
          }
-         do {
-            sleep=true;
+         while( true ) {
             try {
                try { launchJob(); }
                catch( Exception e ) { e.printStackTrace(); };
 
                if( useCache ) scanCache();
 
-               if( sleep ) {
-                  setSleep(true);
-                   Aladin.trace(5,"PlanBG.HealpixLoader sleeping");
-                  try { Thread.currentThread().sleep(DELAI); }
-                  catch( Exception e ) {
-                     Aladin.trace(5,"PlanBG.HealpixLoader wake up !");
+               // Attente d'un changement de status, d'une demande de parcours (wakeUp())
+               // ou de l'chance de vie du prochain losange
+               synchronized( lockSleep ) {
+                  if( !rescan && events.isEmpty() && !shouldRun() ) break;
+                  long delai = nextSweep==Long.MAX_VALUE ? 0 : Math.max(1,nextSweep-System.currentTimeMillis());
+                  if( !rescan && events.isEmpty() ) {
+                     Aladin.trace(5,"PlanBG.HealpixLoader sleeping");
+                     try { lockSleep.wait(delai); }
+                     catch( InterruptedException e ) { }
                   }
-                  setSleep(false);
                }
 
             } catch( Throwable e1 ) { e1.printStackTrace(); }
-         } while ( shouldRun() );
+         }
          if( useCache ) cacheLoader.stop();
          if( POOLTEST ) {
             for( Loader a : netPool ) a.stop();
          } else {
             netLoader.stop();
          }
-         thread=null;
+         // Un changement de status ou un wakeUp() survenu pendant l'arrt n'a pu que faire un notify()
+         // => on relance le thread s'il reste quelque chose  traiter
+         boolean restart;
+         synchronized( lockSleep ) {
+            thread=null;
+            restart = rescan || !events.isEmpty();
+         }
+         if( restart ) wakeUp();
          Aladin.trace(5,"PlanBG.HealpixLoader died");
          nbFlush=0;
          aladin.gcIfRequired();
       }
 
-      /** Parcours de la liste des losanges healpix et lancement du chargement de ceux
-       * qui n'ont pas encore t demand. Mise  jour du flag "loading" => voir isLoading()
+      /** Traitement des losanges dont le status a chang, et si ncessaire parcours complet
+       * de la liste des losanges. Mise  jour du flag "loading" => voir isLoading()
        */
       private void launchJob() throws Exception {
-         //System.out.println("Thread working...");
-         boolean stillOnePurge=false;
          boolean perhapsOneDeath=false;
-         int [] nb = new int[HealpixKey.NBSTATUS];
-//         boolean flagVerbose =  aladin.calque.hasHpxGrid();
-         boolean flagVerbose =  aladin.levelTrace>=5;
-
-         boolean first=true;
-         int n=0;
-         
-         // Parcours de la liste en commenant par les rsolutions les plus mauvaises
-         try {
-            ArrayList<HealpixKey> list = new ArrayList<>();
-            Enumeration<HealpixKey> e = pixList.elements();
-            while( e.hasMoreElements() ) list.add(e.nextElement());
-            try { Collections.sort(list); } catch( Exception e1 ) { }
-
-            Iterator<HealpixKey> it = list.iterator();
-            while( it.hasNext() ) {
-               final HealpixKey healpix = it.next();
-               int status = healpix.getStatus();
-
-               // Un peu de dbuging si besoin
-               if( flagVerbose && status!=HealpixKey.ERROR ) {
-                  System.out.println((first?"\n":"")+healpix);
-                  first=false;
-               }
-
-               // Purge ?
-               int live = healpix.getLive();
-               if( live==HealpixKey.DEATH ) purge(healpix);
-               else {
-                  if( live==HealpixKey.MAYBEDEATH ) {
-                     perhapsOneDeath=true;
-                     stillOnePurge=true;
-                  }
-                  else if( status==HealpixKey.READY ) healpix.purgeFils();
-               }
-
-               switch( status ) {
-                  case HealpixKey.ASKING:
-                     if( !healpix.allSky && healpix.priority>=1000 ) healpix.setOld();
-                     else {
-                        if( useCache && healpix.isCached() ) healpix.setStatus(status=HealpixKey.TOBELOADFROMCACHE);
-                        else healpix.setStatus(status=HealpixKey.TOBELOADFROMNET);
-                     }
-                     break;
-                  case HealpixKey.READY:
-                     if( useCache ) healpix.write();
-                     break;
-               }
-
-               nb[status]++;
+         HealpixKey healpix;
 
-               if( healpix.priority<250 && !(status==HealpixKey.READY || status==HealpixKey.ERROR) ) n++;
-               else if( healpix.npix==-1 && !(status==HealpixKey.READY || status==HealpixKey.ERROR) ) n+=10;
+         // Traitement des seuls losanges dont le status a chang
+         long now = System.currentTimeMillis();
+         while( (healpix=events.poll())!=null ) {
+            process(healpix);
+            nextSweep = Math.min(nextSweep, getDeadline(healpix,now));
+         }
 
-            }
-         } catch( Exception e) { e.printStackTrace(); return; }
+         // Parcours complet pour un nouvel affichage (re-priorisation) ou si un losange
+         // change d'tat de vie (purge)
+         boolean flagRescan;
+         synchronized( lockSleep ) { flagRescan=rescan; rescan=false; }
+         if( flagRescan || System.currentTimeMillis()>=nextSweep ) perhapsOneDeath=scanList();
 
+         int [] nb = new int[HealpixKey.NBSTATUS];
+         for( int i=0; i<nb.length; i++ ) nb[i]=nbStatus.get(i);
 
          loading= nb[HealpixKey.ASKING]>0 || nb[HealpixKey.TOBELOADFROMCACHE]>0
                || nb[HealpixKey.TOBELOADFROMNET]>0 || nb[HealpixKey.LOADINGFROMCACHE]>0
@@ -4859,6 +4951,7 @@ public class PlanBG extends PlanImage {
                
          purging= stillOnePurge || nb[HealpixKey.PURGING]>0;
 
+         int n = Math.max(0,nbWaiting.get());
          pourcent = n==0 ? -2 : n>=10 ? 1 : (10-n)*10.;
          readyAfterDraw= n==0;
 
@@ -4874,23 +4967,6 @@ public class PlanBG extends PlanImage {
 
          if( detectServerError(nb) ) error="Server not available";
 
-         // Eventuel arrt du chargement en cours si priorit dsormais plus faible
-         HealpixKey healpixMin=null,healpixNet=null;
-         int min = Integer.MAX_VALUE;
-         Enumeration<HealpixKey> e = pixList.elements();
-         while( e.hasMoreElements() ) {
-            HealpixKey healpix = e.nextElement();
-            int status = healpix.getStatus();
-            if( status!=HealpixKey.TOBELOADFROMNET && status!=HealpixKey.LOADINGFROMNET ) continue;
-            if( status==HealpixKey.LOADINGFROMNET ) healpixNet=healpix;
-            if( healpix.priority<min ) {
-               min=healpix.priority;
-               healpixMin=healpix;
-            }
-         }
-
-         if( healpixNet!=null && healpixNet!=healpixMin ) healpixNet.abort();
-
          if( nb[HealpixKey.TOBELOADFROMCACHE]>0 ) cacheLoader.wakeUp();
          if( nb[HealpixKey.TOBELOADFROMNET]>0 )   {
             if( POOLTEST ) {
@@ -4909,33 +4985,189 @@ public class PlanBG extends PlanImage {
          if( perhapsOneDeath ) shouldRefresh();
 
       }
-   }
 
+      /** Parcours complet de la liste des losanges : purge des losanges morts, re-priorisation
+       * des files de chargement, recalage des compteurs par status et calcul de la prochaine
+       * chance de vie
+       * @return true si au-moins un losange est en fin de vie
+       */
+      private boolean scanList() {
+         boolean perhapsOneDeath=false;
+         int [] nb = new int[HealpixKey.NBSTATUS];
+//         boolean flagVerbose =  aladin.calque.hasHpxGrid();
+         boolean flagVerbose =  aladin.levelTrace>=5;
+
+         boolean first=true;
+         int n=0;
+         long now = System.currentTimeMillis();
+         long next = Long.MAX_VALUE;
+         
+         // Pour l'ventuel arrt du chargement en cours si sa priorit est dsormais plus faible
+         HealpixKey healpixMin=null,healpixNet=null;
+         int min = Integer.MAX_VALUE;
+
+         // Suppression des losanges demands avant que le MOC ne soit connu
+         if( moc!=null ) removeHealpixOutsideMoc();
+
+         try {
+            ArrayList<HealpixKey> list = new ArrayList<>(pixList.size());
+            Enumeration<HealpixKey> e = pixList.elements();
+            while( e.hasMoreElements() ) list.add(e.nextElement());
+
+            // Le tri n'est utile que pour le dbuging, l'ordre de chargement est assur par les files
+            if( flagVerbose ) try { Collections.sort(list); } catch( Exception e1 ) { }
+
+            Iterator<HealpixKey> it = list.iterator();
+            while( it.hasNext() ) {
+               final HealpixKey healpix = it.next();
+               int status = healpix.getStatus();
+
+               // Un peu de dbuging si besoin
+               if( flagVerbose && status!=HealpixKey.ERROR ) {
+                  System.out.println((first?"\n":"")+healpix);
+                  first=false;
+               }
 
-   class MyEnum implements Enumeration<HealpixKey> {
-      HealpixKey [] tab;
-      int size;
-      int pos;
+               // Purge ?
+               int live = healpix.getLive();
+               if( live==HealpixKey.DEATH ) { purge(healpix); continue; }
+               if( live==HealpixKey.MAYBEDEATH ) perhapsOneDeath=true;
+               else if( status==HealpixKey.READY ) healpix.purgeFils();
+
+               status = process(healpix);
+
+               // Losange rseau de plus forte priorit, et losange rseau en cours de chargement
+               if( status==HealpixKey.TOBELOADFROMNET || status==HealpixKey.LOADINGFROMNET ) {
+                  if( status==HealpixKey.LOADINGFROMNET ) healpixNet=healpix;
+                  if( healpix.priority<min ) {
+                     min=healpix.priority;
+                     healpixMin=healpix;
+                  }
+               }
 
-      MyEnum(Hashtable<String, HealpixKey> pixList) {
-         tab = new HealpixKey[ pixList.size() ];
-         Enumeration<HealpixKey> e = pixList.elements();
-         int i;
-         for( i=0; e.hasMoreElements() && i<tab.length; i++ ) tab[i] = e.nextElement();
-         size = i;
-         try { Arrays.sort(tab,0,size); } catch( Exception e1 ) { }
-         pos=0;
+               if( status!=HealpixKey.UNKNOWN ) nb[status]++;
+               if( !(status==HealpixKey.READY || status==HealpixKey.ERROR) ) n+=getWeight(healpix);
+               next = Math.min(next, getDeadline(healpix,now));
+            }
+         } catch( Exception e) { e.printStackTrace(); return false; }
+
+         // Recalage des compteurs (losanges retirs de pixList sans changement de status...)
+         for( int i=0; i<nb.length; i++ ) nbStatus.set(i,nb[i]);
+         nbWaiting.set(n);
+         stillOnePurge=perhapsOneDeath;
+         nextSweep=next;
+
+         // Eventuel arrt du chargement en cours si priorit dsormais plus faible
+         if( healpixNet!=null && healpixNet!=healpixMin ) healpixNet.abort();
+
+         return perhapsOneDeath;
+      }
+
+      /** Traitement d'un losange en fonction de son status : dcision de son mode de chargement,
+       * mise en file de chargement, criture dans le cache
+       * @return le status du losange, ventuellement modifi
+       */
+      private int process(HealpixKey healpix) {
+         int status = healpix.getStatus();
+         switch( status ) {
+            case HealpixKey.ASKING:
+               if( !healpix.allSky && healpix.priority>=1000 ) healpix.setOld();
+               else {
+                  if( useCache && healpix.isCached() ) healpix.setStatus(status=HealpixKey.TOBELOADFROMCACHE);
+                  else healpix.setStatus(status=HealpixKey.TOBELOADFROMNET);
+               }
+               break;
+            case HealpixKey.READY:
+               if( useCache ) healpix.write();
+               break;
+         }
+
+         // Mise en file (ou re-priorisation) des losanges  charger
+         if( status==HealpixKey.TOBELOADFROMCACHE || status==HealpixKey.TOBELOADFROMNET ) enqueue(healpix,status);
+         return status;
+      }
+
+      /** Poids d'un losange pas encore prt dans le calcul du pourcentage d'avancement */
+      private int getWeight(HealpixKey healpix) {
+         return healpix.priority<250 ? 1 : healpix.npix==-1 ? 10 : 0;
+      }
+
+      /** Date (ms)  laquelle l'tat de vie du losange (cf. HealpixKey.getLive()) va changer,
+       * Long.MAX_VALUE s'il n'est pas concern */
+      private long getDeadline(HealpixKey healpix,long now) {
+         long time = healpix.getLiveTime();
+         if( time==-1 ) return Long.MAX_VALUE;
+         int status = healpix.getStatus();
+         if( (status==HealpixKey.ERROR || status==HealpixKey.LOADINGFROMNET) && healpix.parente==0 ) return Long.MAX_VALUE;
+         long t = healpix.timer+time;             // INLIFE => MAYBEDEATH
+         if( t<now ) t+=3000;                     // MAYBEDEATH => DEATH
+         if( healpix.fils!=null ) t = Math.min(t,now+time+3000);   // Purge des fils
+         return Math.max(t,now)+1;
       }
 
-      public boolean hasMoreElements() {
-         return pos<size;
+      /** Mise en file de chargement d'un losange, ou re-mise en file si sa priorit a chang
+       * depuis (l'ancienne entre devient alors caduque) */
+      private void enqueue(HealpixKey healpix,int status) {
+         TileJob job = healpix.queueJob;
+         int type = status==HealpixKey.TOBELOADFROMCACHE ? 0 : 1;
+         if( job!=null && job.priority==healpix.priority && job.type==type ) return;
+         if( job==null ) healpix.timeQueued = System.currentTimeMillis();
+         job = new TileJob(healpix,type,seqJob++);
+         healpix.queueJob=job;
+         PriorityBlockingQueue<TileJob> queue = type==0 ? cacheQueue : netQueue;
+         queue.offer(job);
+
+         // Trop d'entres caduques (re-priorisations successives sans chargement) => nettoyage
+         if( queue.size()>2*pixList.size()+100 ) {
+            Iterator<TileJob> it = queue.iterator();
+            while( it.hasNext() ) {
+               TileJob j = it.next();
+               if( j.key.queueJob!=j ) it.remove();
+            }
+         }
       }
 
-      public HealpixKey nextElement() {
-         return tab[pos++];
+      /** Retourne le prochain losange  charger depuis le cache (type=0) ou le rseau (type=1)
+       * par ordre de priorit, null si aucun. Les entres caduques sont ignores */
+      HealpixKey nextTile(int type) {
+         PriorityBlockingQueue<TileJob> queue = type==0 ? cacheQueue : netQueue;
+         int status = type==0 ? HealpixKey.TOBELOADFROMCACHE : HealpixKey.TOBELOADFROMNET;
+         TileJob job;
+         while( (job=queue.poll())!=null ) {
+            HealpixKey healpix = job.key;
+            if( healpix.queueJob!=job ) continue;
+            healpix.queueJob=null;
+            if( healpix.getStatus()==status ) return healpix;
+         }
+         return null;
       }
+
+      /** Nombre d'entres en attente dans la file cache (type=0) ou rseau (type=1) */
+      int getQueueSize(int type) { return (type==0 ? cacheQueue : netQueue).size(); }
    }
 
+   /** Entre d'une file de chargement : la priorit du losange est fige au moment de la mise
+    * en file afin de ne pas perturber l'ordre de la file */
+   static final class TileJob implements Comparable<TileJob> {
+      final HealpixKey key;
+      final int priority;
+      final int type;       // 0-cache, 1-rseau
+      final long seq;       // ordre de mise en file ( priorit gale)
+
+      TileJob(HealpixKey key,int type,long seq) {
+         this.key=key;
+         this.priority=key.priority;
+         this.type=type;
+         this.seq=seq;
+      }
+
+      public int compareTo(TileJob o) {
+         if( priority!=o.priority ) return priority<o.priority ? -1 : 1;
+         return seq<o.seq ? -1 : seq>o.seq ? 1 : 0;
+      }
+   }
+
+
    static private int THREADID = 0;
    private boolean oLoading = false;
    static private final int MAXTIMETOBELOADFROMNET = 1000;      // Temps maximum autoris pour prendre en charge plus d'un losange distant
@@ -4989,63 +5221,30 @@ public class PlanBG extends PlanImage {
                // On ne charge que si on a le temps...
                if( !aladin.view.mustDrawFast() ) {
                   try {
-                     ArrayList<HealpixKey> list = new ArrayList<>();
-                     //                     Enumeration<HealpixKey> e = pixList.elements();
-                     Enumeration<HealpixKey> e = new MyEnum(pixList);
-
-
-                     //                     int min = Integer.MAX_VALUE;
-                     //                     HealpixKey minHealpix=null;
-                     //                     if( e.hasMoreElements() ) System.out.println("Load :");
-
-                     while( e.hasMoreElements() ) {
-                        final HealpixKey healpix = e.nextElement();
-                        int status = healpix.getStatus();
-
-                        // Du cache on charge immdiatement et en priorit
-                        if( type==0 && status==HealpixKey.TOBELOADFROMCACHE ) {
-                           healpix.loadFromCache();
-                           if( !healpix.allSky ) setTileOrder(healpix.getLosangeOrder());
-                           flagLoad=true;
-//                           Aladin.trace(5,"PlanBG.Loader ("+label+") loading "+healpix);
+                     HealpixKey h;
 
-                           //System.out.println("   Load "+healpix);
-
-                           // Du net on va voir si on a le temps
-                        } else if( type==1 && status==HealpixKey.TOBELOADFROMNET ) {
-                           list.add(healpix);
-                        }
-                     }
-
-                     // Quelque chose du Net ?
-                     long t = System.currentTimeMillis();
-                     if( list.size()>0 ) {
-                        Collections.sort(list);
-                        for( HealpixKey h :  list ) {
-                           h.waitLock();
-                           if( h.getStatus()!=HealpixKey.TOBELOADFROMNET) {
-                              h.unLock();
-                              continue;   // ca a chang, tant pis !
-                           }
-
-                           //System.out.println("   Load "+h);
-                           if( type==0 ) h.loadFromCache();
-                           else h.loadFromNet();
+                     // Chargement par ordre de priorit des losanges en file (cache ou rseau)
+                     while( encore && (h=loader.nextTile(type))!=null ) {
+                        h.waitLock();
+                        int status = type==0 ? HealpixKey.TOBELOADFROMCACHE : HealpixKey.TOBELOADFROMNET;
+                        if( h.getStatus()!=status ) {
                            h.unLock();
+                           continue;   // ca a chang, tant pis !
+                        }
 
-                           if( !h.allSky ) setTileOrder(h.getLosangeOrder());
-                           //                           Aladin.trace(5,"PlanBG.Loader ("+label+") loading "+h);
+                        if( type==0 ) h.loadFromCache();
+                        else h.loadFromNet();
+                        h.unLock();
 
-                           // Trop long pour un autre ? =>  a sera pour le prochain tour
-//                           if( System.currentTimeMillis() - t > MAXTIMETOBELOADFROMNET ) break;
-                        }
+                        if( h.getStatus()==HealpixKey.READY ) addTimeQueue( System.currentTimeMillis()-h.timeQueued );
+                        if( !h.allSky ) setTileOrder(h.getLosangeOrder());
                         flagLoad = true;
                      }
                   } catch( Exception e) { if( Aladin.levelTrace>=3 ) e.printStackTrace(); }
                }
 
-               if( flagLoad ) loader.wakeUp();
-               else {
+               // Les changements de status des losanges chargs rveillent d'eux-mmes le HealpixLoader
+               if( !flagLoad ) {
 //                  Aladin.trace(5,"PlanBG.Loader ("+label+") sleeping...");
                   try {
                      setPause(true);
@@ -5092,6 +5291,16 @@ public class PlanBG extends PlanImage {
    protected int nbCreated=0;            // Nombre de losanges crs (sans compter les fils)
    protected int nbAborted=0;            // Nombre de losanges interrompus
    protected int nbFree=0;               // Nombre de losanges supprims
+   protected long cumulTimeQueue=0;      // Temps cumul entre la mise en file et l'arrive des losanges
+   protected long maxTimeQueue=0;        // Temps max entre la mise en file et l'arrive d'un losange
+   protected int nbTimeQueue=0;          // Nombre de losanges arrivs via les files de chargement
+
+   /** Mmorise le dlai entre la mise en file de chargement et l'arrive d'un losange */
+   synchronized protected void addTimeQueue(long t) {
+      cumulTimeQueue+=t;
+      if( t>maxTimeQueue ) maxTimeQueue=t;
+      nbTimeQueue++;
+   }
 
    /** Reset des statistiques */
    protected void resetStats() {
@@ -5100,6 +5309,8 @@ public class PlanBG extends PlanImage {
       nbLoadNet=nbLoadCache=nbWriteCache=0;
       nByteReadNet=nByteReadCache=nByteWriteCache=0L;
       nbImgCreated=nbImgInBuf=nbCreated=nbFree=nbAborted=nbImgDraw=0;
+      cumulTimeQueue=maxTimeQueue=0L;
+      nbTimeQueue=0;
       
       // On en profite pour resetter la stratgie gzip/nogzip 
       resetGzippedMode();
@@ -5113,7 +5324,9 @@ public class PlanBG extends PlanImage {
             +" "+streamJpegPixel()+"\n"+
             ".CacheR: "+nbLoadCache+" => "+Util.round(nByteReadCache/(1024*1024.),2)+"Mb in ~" +Util.round(avgLoadCache(),0)+"ms\n" +
             ".CacheW: "+nbWriteCache+" => "+Util.round(nByteWriteCache/(1024*1024.),2)+"Mb in ~" +Util.round(avgWriteCache(),0)+"ms\n" +
-            ".Img created: "+nbImgCreated+"    reused:"+nbImgInBuf+"    drawn "+nbImgDraw+" in ~"+Util.round(avgDraw(),0)+"ms\n"
+            ".Img created: "+nbImgCreated+"    reused:"+nbImgInBuf+"    drawn "+nbImgDraw+" in ~"+Util.round(avgDraw(),0)+"ms\n" +
+            ".Queue : cache="+(loader==null ? 0 : loader.getQueueSize(0))+" net="+(loader==null ? 0 : loader.getQueueSize(1))
+            +"    arrival in ~"+(nbTimeQueue==0 ? 0 : cumulTimeQueue/nbTimeQueue)+"ms (max "+maxTimeQueue+"ms)\n"
             ;
    }
    
@@ -23,6 +23,7 @@ package cds.aladin;
 
 import java.awt.Color;
 import java.awt.Rectangle;
+import java.util.Arrays;
 
 import cds.tools.Util;
 
@@ -218,11 +219,9 @@ public final class PlanContour extends PlanTool {
    }
 
 
-   /** remplit le tableau pixels avec l'image du plan de base liss au besoin
-    *  fixe les valeurs de height et width
-    *  @return true en cas de succes, false si une Exception a ete souleve */
-   protected boolean getPixels() {
-
+   /** Repere l'image de base, fixe orgWidth et orgHeight, et ajuste le zoom courant a l'image
+    *  @return false s'il n'y a pas d'image de base */
+   private boolean initImage() {
 //       p = calque.getPlanBase();
        p = pimg==null ? calque.getPlanBase() : pimg;
        if ( p == null ) return false;
@@ -240,6 +239,117 @@ public final class PlanContour extends PlanTool {
 
        if( (zoomv.x+zoomv.width)>orgWidth) zoomv.width = orgWidth - zoomv.x;
        if( (zoomv.y+zoomv.height)>orgHeight) zoomv.height = orgHeight - zoomv.y;
+       return true;
+   }
+
+   /** Prepare la grille des valeurs sur laquelle le ContourEngine va travailler. Applique
+    *  le meme decoupage (zoom courant), le meme lissage et la meme moyenne glissee que getPixels(),
+    *  mais a la volee, ligne par ligne, et sur les valeurs des pixels d'origine lorsqu'elles sont
+    *  disponibles (exprimees dans l'echelle 0..256 des cuts, sans quantification).
+    *  Fixe les valeurs de height et width
+    *  @return la grille, ou null s'il n'y a pas d'image de base */
+   private PixelGrid createGrid() {
+       if( !initImage() ) return null;
+       PlanImage pi = (PlanImage)p;
+
+       int x0 = useOnlyCurrentZoom ? zoomv.x : 0;
+       int y0 = useOnlyCurrentZoom ? zoomv.y : 0;
+       width  = useOnlyCurrentZoom ? zoomv.width : orgWidth;
+       height = useOnlyCurrentZoom ? zoomv.height : orgHeight;
+       int s = useSmoothing ? smoothingLevel : 1;
+       width/=s;
+       height/=s;
+
+       // Pixels d'origine si possible, sinon les pixels 8 bits
+       byte [] orig = null;
+       if( !(pi instanceof PlanImageRGB) && pi.pixelMax>pi.pixelMin ) {
+          try {
+             pi.setLockCacheFree(true);
+             if( pi.hasOriginalPixels() && pi.pixelsOriginFromCache() ) orig = pi.pixelsOrigin;
+          } finally { pi.setLockCacheFree(false); }
+          if( orig!=null && orig.length!=orgWidth*orgHeight*pi.npix ) orig=null;
+       }
+
+       PixelGrid grid = new PixelGrid(pi,orig,x0,y0,s,width,height,reduceNoise);
+       if( reduceNoise ) {
+          width=width-1;
+          height=height-1;
+       }
+
+       return grid;
+   }
+
+   /** Grille des valeurs de l'image vue par le ContourEngine. Les lignes vont du haut vers le bas
+    *  comme dans le tableau des pixels 8 bits */
+   private final class PixelGrid extends ContourEngine.Grid {
+      private final PlanImage pi;
+      private final byte [] pix8;        // pixels 8 bits (si pas de pixels d'origine)
+      private final byte [] orig;        // pixels d'origine (format FITS), ou null
+      private final int x0,y0;           // origine de la zone traitee dans l'image
+      private final int s;               // cote du carre de lissage (1 si pas de lissage)
+      private final int baseWidth;       // largeur apres lissage
+      private final boolean noise;       // true s'il faut faire la moyenne glissee
+      private final double min,r,gap;    // passage des valeurs d'origine a l'echelle des cuts
+
+      // Lignes lissees de travail propres a chaque thread (moyenne glissee)
+      private final ThreadLocal<double[][]> work = new ThreadLocal<double[][]>() {
+         protected double[][] initialValue() { return new double[][] { new double[baseWidth], new double[baseWidth], {-1} }; }
+      };
+
+      PixelGrid(PlanImage pi,byte [] orig,int x0,int y0,int s,int baseWidth,int baseHeight,boolean noise) {
+         super(noise ? baseWidth-1 : baseWidth, noise ? baseHeight-1 : baseHeight);
+         this.pi=pi;
+         this.orig=orig;
+         this.pix8 = orig==null ? pi.getBufPixels8() : null;
+         this.x0=x0;
+         this.y0=y0;
+         this.s=s;
+         this.baseWidth=baseWidth;
+         this.noise=noise;
+         int range = pi.isTransparent() ? 255 : 256;
+         min = pi.pixelMin;
+         r = range/(pi.pixelMax-pi.pixelMin);
+         gap = pi.isTransparent() ? 1 : 0;
+      }
+
+      void getRow(int y,double [] row) {
+         if( !noise ) { getBaseRow(y,row); return; }
+
+         // Moyenne glissee sur 2x2 pixels, la derniere ligne lissee etant conservee pour la ligne suivante
+         double [][] w = work.get();
+         double [] r0,r1;
+         if( w[2][0]==y ) { r0=w[1]; r1=w[0]; }
+         else { r0=w[0]; r1=w[1]; getBaseRow(y,r0); }
+         getBaseRow(y+1,r1);
+         w[0]=r0; w[1]=r1; w[2][0]=y+1;
+         for( int x=0; x<width; x++ ) row[x] = (r0[x]+r0[x+1]+r1[x]+r1[x+1])/4;
+      }
+
+      /** Ligne y apres lissage eventuel (somme des s x s pixels) */
+      private void getBaseRow(int y,double [] row) {
+         Arrays.fill(row,0,baseWidth,0);
+         for( int j=0; j<s; j++ ) {
+            int yo = y0+s*y+j;
+            for( int x=0, xo=x0; x<baseWidth; x++ ) {
+               for( int i=0; i<s; i++, xo++ ) row[x] += getValue(xo,yo);
+            }
+         }
+      }
+
+      /** Valeur du pixel (xo,yo) (yo compte depuis le haut), NaN si indefinie */
+      private double getValue(int xo,int yo) {
+         if( orig==null ) return pix8[yo*orgWidth+xo] & 0xFF;
+         double c = pi.getPixVal(orig,pi.bitpix,(orgHeight-yo-1)*orgWidth+xo);
+         return gap + (c-min)*r;
+      }
+   }
+
+   /** remplit le tableau pixels avec l'image du plan de base liss au besoin
+    *  fixe les valeurs de height et width
+    *  @return true en cas de succes, false si une Exception a ete souleve */
+   protected boolean getPixels() {
+
+       if( !initImage() ) return false;
 
        try {
 
@@ -326,6 +436,21 @@ public final class PlanContour extends PlanTool {
         // initialisation du tableau contours
         contours = new PointD[levels.length][];
 
+        // Algorithme par defaut => calcul parallele de tous les niveaux en une passe
+        if( cAlgo instanceof ContourPlot ) {
+           try {
+              PixelGrid grid = createGrid();
+              if( grid==null ) return false;
+              p.sendLog("Contour","["+p.getLogInfo()+"]");
+              adjustLevels();
+              contours = new ContourEngine(grid).getContours(levels,this);
+              nbLevelsComputed = levels.length;
+           }
+           catch(  OutOfMemoryError e ) {Aladin.error = e.toString(); aladin.gc(); return false;}
+           catch(  Exception exc  ) {Aladin.error = exc.toString();  return false;}
+           return true;
+        }
+
    	if (!getPixels()) {
    	  //System.out.println("Pas assez de memoire pour les contours");
    	  return false;
@@ -369,6 +494,14 @@ public final class PlanContour extends PlanTool {
     * (les differents contours pour un meme niveau sont separes par un objet "null")
     */
    private PointD[] getContour(double level) {
+        if( cAlgo instanceof ContourPlot ) {
+           try {
+              return new ContourEngine(createGrid()).getContours(new double[] { level },this)[0];
+           } catch( Exception e ) {
+              if( Aladin.levelTrace>=3 ) e.printStackTrace();
+              return new PointD[0];
+           }
+        }
    	cAlgo.setLevel(level);
 
    	return cAlgo.getContours();
@@ -665,6 +798,14 @@ public final class PlanContour extends PlanTool {
         setPourcent( (1-partDessin)*100*((nbLevelsComputed+p)/orgLevels.length) );
     }
 
+    /** methode appelee par le ContourEngine qui traite tous les niveaux a la fois
+     * @param p  - pourcentage de l'ensemble des contours deja effectue (0<=p<=1)
+     */
+    protected void updatePourcentAll(double p) {
+        if(mustAdjustContour) return;
+        setPourcent( (1-partDessin)*100*p );
+    }
+
    /** Generation du label du plan.
     * Retourne le label en fonction de l'etat courant du plan
     * Il s'agit simplement d'ajouter des "..." quand le plan est en
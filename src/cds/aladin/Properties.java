@@ -1708,7 +1708,7 @@ public class Properties extends JFrame implements ActionListener, ChangeListener
          // modification de l'poque
       } else if (src==epochSlider) {
          try {
-            plan.setEpoch(epochSlider.getValue()+"");
+            plan.setEpoch(epochSlider.getValue()+"",true);
             epField.setText( plan.getEpoch().toString("J"));
             aladin.calque.repaintAll();
          } catch( Exception e1 ) { e1.printStackTrace(); }
@@ -371,6 +371,7 @@ public class ServerFile extends Server implements XMLConsumer {
                   localFile=true;
                   Aladin.trace(3,"Opening "+getNameWithoutBrackets(f));
                   in = new MyInputStream(new FileInputStream( getNameWithoutBrackets(f) ));
+                  in.setFileName( getNameWithoutBrackets(f) );
                }
                else {
                   // Dans le cas d'une continuation (FITS EXTENSION)
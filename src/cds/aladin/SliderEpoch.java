@@ -72,7 +72,7 @@ public class SliderEpoch extends SliderPlusMoins {
       Plan [] p = getPlanCatalog();
       if( p==null  ) return;
       for( Plan p1 : p ) {
-         try { p1.setEpoch((slider.getValue()+inc)+"");
+         try { p1.setEpoch((slider.getValue()+inc)+"",true);
          } catch( Exception e ) { }
       }
       if( aladin.view.coteDist!=null ) aladin.view.getCurrentView().createCoteDist();
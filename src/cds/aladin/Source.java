@@ -71,6 +71,7 @@ public class Source extends Position implements Comparator {
    protected byte sourceType=SQUARE;    //Type de representation de la source par d�faut (CARRE, ...)
    protected String info;       // Information supplementaire associee a la source (en plus de id)
    private Legende leg;       // La legende associee a la source
+   int row=-1;                // Indice de la ligne de la source dans le ColumnStore de sa legende, -1 si aucune, -row-2 si a redecoder
    private String oid=null;     // L'OID de la source s'il a ete defini
 
    /**** variables li�s aux filtres ****/
@@ -176,7 +177,14 @@ public class Source extends Position implements Comparator {
    }
 
    /** Positionne la l�gende associ�e � la source */
-   protected void setLeg(Legende leg) { this.leg = leg; }
+   protected void setLeg(Legende leg) {
+      if( leg!=this.leg ) row=-1;
+      this.leg = leg;
+   }
+
+   /** Signale une modification de la chaine info : la ligne de la source dans le ColumnStore
+    * de sa legende sera redecodee a la prochaine lecture */
+   protected void infoChanged() { if( row>=0 ) row=-row-2; }
 
    /** Accroit ou d�croit la taille du type de source */
    void increaseSourceSize(int sens) { 
@@ -244,6 +252,7 @@ public class Source extends Position implements Comparator {
 
        while( nbInfo<nbFields ) {
            this.info = new String(this.info)+"\t ";
+           infoChanged();
            nbInfo++;
            if( Aladin.levelTrace>=3) System.err.println("Source.fixInfo() =>  pour "+id);
        }
@@ -318,13 +327,18 @@ public class Source extends Position implements Comparator {
    */
    public void setInfo(String info) { 
       this.info = info; 
+      infoChanged();
       oid="";
    }
 
   /** Modification de la legende associee a la source
    * @param leg la nouvelle legende
    */
-   protected void setLegende(Legende leg) {  this.leg=leg; oid=""; }
+   protected void setLegende(Legende leg) {
+      if( leg!=this.leg ) row=-1;
+      this.leg=leg;
+      oid="";
+   }
 
    // Affichage de l'info lie a la source
    protected void info(Aladin aladin) { aladin.mesure.setInfo(this); }
@@ -1169,6 +1183,24 @@ public class Source extends Position implements Comparator {
       	return ret.trim();
     }
 
+    /** Retourne la valeur numerique du champ a la position index, lue dans le stockage
+     * en colonnes de la legende. NaN si la valeur est nulle, absente ou non numerique
+     */
+    protected double getDoubleValue(int index) {
+       ColumnStore cs = getColumnStore();
+       if( cs!=null && cs.isNumeric(index) ) return cs.getDouble(this,index);
+       String s = getValue(index);
+       if( s==null || s.length()==0 ) return Double.NaN;
+       try { return Double.parseDouble(s); } catch( NumberFormatException e ) { return Double.NaN; }
+    }
+
+    /** Retourne le stockage en colonnes de la legende, null s'il n'y en a pas */
+    private ColumnStore getColumnStore() {
+       Legende lg = getLeg();
+       if( lg==null || info==null ) return null;
+       return lg.getColumnStore();
+    }
+
     /** Retourne le type d'objet */
     public String getObjType() { return "Source"; }
 
@@ -1225,6 +1257,7 @@ public class Source extends Position implements Comparator {
           else nInfo.append("\t"+s);
        }
        info = nInfo.toString();
+       infoChanged();
 
        return true;
     }
@@ -1553,17 +1586,17 @@ public class Source extends Position implements Comparator {
       if( a.getLeg()!=sortSource.getLeg() ) return 1;
       if( b.getLeg()!=sortSource.getLeg() ) return -1;
 
-      String aVal = a.getValue(sortNField);
-      String bVal = b.getValue(sortNField);
       if( !sortNumeric ) {
+         String aVal = a.getValue(sortNField);
+         String bVal = b.getValue(sortNField);
          if( sortSens==1 ) return aVal.compareTo(bVal);
          else return bVal.compareTo(aVal);
       } else {
-         double aNVal,bNVal;
-         if( aVal.length()==0 ) aNVal=Double.MAX_VALUE;
-         else aNVal = Double.valueOf(aVal).doubleValue();
-         if( bVal.length()==0 ) bNVal=Double.MAX_VALUE;
-         else bNVal = Double.valueOf(bVal).doubleValue();
+         // Lecture directe dans les colonnes typees (valeurs nulles ou non numeriques a la fin)
+         double aNVal = a.getDoubleValue(sortNField);
+         double bNVal = b.getDoubleValue(sortNField);
+         if( Double.isNaN(aNVal) ) aNVal=Double.MAX_VALUE;
+         if( Double.isNaN(bNVal) ) bNVal=Double.MAX_VALUE;
          if( aNVal==bNVal ) return 0;
          return aNVal>bNVal ? sortSens : -sortSens;
       }
@@ -150,6 +150,7 @@ public class SourceTag extends Source  {
       }
       
       info = "<&_A|Tags>\t"+raj+"\t"+dej+"\t"+id+"\t"+planBase.label+"\t"+c.getRA()+"\t"+c.getDE()+"\t"+x+"\t"+y;
+      infoChanged();
    }
    
    /** Cet objet a des proprits spcifiques */
@@ -1506,8 +1506,8 @@ public class TreeObjDir extends TreeObj implements Propable {
       Moc moc;
       try { 
          moc = scan(url); 
-         if( mo.moc==null ) mo.moc=moc;
-         else mo.moc = mo.moc.union(moc);
+         Moc moc1 = mo.getMoc();     // ventuellement dcod  la demande (dump binaire mapp)
+         aladin.directory.multiProp.setMoc(mo, moc1==null ? moc : moc1.union(moc));   // => mise  jour de l'index spatial
       } catch( Exception e ) { if( aladin.levelTrace>=3 )  e.printStackTrace();  }
       
       // Mmorisation de la surface couverte
@@ -204,7 +204,13 @@ public class BuilderConcat extends BuilderTiles {
          doHpxFinder=false;
          if( liveIn ) context.warning("Source HiPS does provide weight tiles => ignored");
       }
-      if( doHpxFinder ) context.info("HpxFinder will be also concatenated (mode="+mode+")");
+      if( doHpxFinder ) {
+         context.info("HpxFinder will be also concatenated (mode="+mode+")");
+         if( HpxFinderBin.exists(outputPathIndex) ) {
+            HpxFinderBin.delete(outputPathIndex);
+            context.warning("Binary HpxFinder index removed (obsolete) => rebuild it by INDEX action with finderBin=true");
+         }
+      }
 
 
       
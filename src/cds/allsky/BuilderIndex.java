@@ -22,10 +22,27 @@
 package cds.allsky;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cds.aladin.Aladin;
 import cds.aladin.Calib;
@@ -44,7 +61,6 @@ import cds.tools.pixtools.Util;
 public class BuilderIndex extends Builder {
 
    private int [] borderSize= {0,0,0,0};
-   private String currentfile = null;
    private boolean partitioning;
    private double maxRatio;
    private int [] hdu = null;
@@ -233,7 +249,25 @@ public class BuilderIndex extends Builder {
       if (!f.exists()) f.mkdir();
       String pathDest = context.getHpxFinderPath();
 
-      create(input, pathDest, order);
+      // Seul l'index binaire est disponible => rgnration pralable des tuiles texte
+      HpxFinderBin bin = HpxFinderBin.open(pathDest);
+      if( bin!=null ) {
+         int binOrder = bin.getOrder();
+         bin.close();
+         if( binOrder==order && !(new File(cds.tools.Util.concatDir(pathDest,"Norder"+order))).isDirectory() ) {
+            int n = HpxFinderBin.export(pathDest);
+            context.info("HpxFinder text tiles restored from the binary index ("+n+" tiles)");
+            flagAppend=false;
+         }
+      }
+
+      createIndex(input, pathDest, order);
+
+      // Index binaire demand, ou dj prsent (=> mis  jour)
+      if( !context.isTaskAborting() && (context.isFinderBin() || HpxFinderBin.exists(pathDest)) ) {
+         int n = HpxFinderBin.build(pathDest, order);
+         context.info("Binary HpxFinder index "+HpxFinderBin.FILE_FINDERBIN+" generated ("+n+" progenitors)");
+      }
    }
 
    // Initialisation des statistiques
@@ -261,90 +295,95 @@ public class BuilderIndex extends Builder {
       }
    }
    
-   // Cration si ncessaire du fichier pass en paramtre et ouverture en criture
-   private RandomAccessFile openFile(String filename) throws Exception {
-      File f = new File( filename );
-      if( !f.exists() ) cds.tools.Util.createPath(filename);
-      return new RandomAccessFile(f,"rw");
+   // Taille max (en caractres) des lignes d'index gardes en mmoire avant d'tre dverses sur disque
+   static private final long MAXBUFFER = 32*1024*1024;
+
+   /** Ligne JSON  insrer dans la tuile npix du HpxFinder */
+   static private final class Entry {
+      final long npix;
+      final String line;
+      Entry(long npix,String line) { this.npix=npix; this.line=line; }
    }
 
-   // Insertion d'un nouveau fichier d'origine dans la tuile d'index repre par out
-   private void createAFile(RandomAccessFile out, String filename, Coord center, long cellMem, 
-         String stc, String fitsVal)
-         throws IOException {
-
-      try {
-         // Dtermination d'un nom de produit  partir du filename
-         // 1.Suppression du path
-         int o1 = filename.lastIndexOf('/');
-         int o1b = filename.lastIndexOf('\\');
-         if( o1b>o1 ) o1=o1b;
-
-         // 2.Suppression d'une extension ?
-         int o2 = filename.lastIndexOf('.');
-
-         // 3.Suppression du suffixe [x,y-wxh] si ncessaire (dans le cas o il n'y a pas d'extension
-         // car sinon ce suffixe aura dj t supprim)
-         if( o2==-1 || o2<=o1 ) {
-            int o3 = filename.charAt(filename.length()-1)==']' ? filename.lastIndexOf('['):-1;
-            if( o3>o2 ) o2=o3;
-         }
-
-         if( o2==-1 || o2<=o1 ) o2 = filename.length();
-         String name = filename.substring(o1+1,o2);
+   // Evnements de l'indexation d'un fichier original, pris en compte dans l'ordre de parcours des fichiers
+   static private final int EV_HDU    = 0;   // Une HDU calibre de plus
+   static private final int EV_INSERT = 1;   // Lignes  insrer (rejetes si msg!=null et que ce n'est pas la premire image)
+   static private final int EV_STAT   = 2;   // Mise  jour des statistiques
+   static private final int EV_BAD    = 3;   // Fichier cart (msg)
+   static private final int EV_TRACE  = 4;   // Problme sur le fichier (msg)
+   static private final int EV_ABORT  = 5;   // Abandon de la tche
+
+   static private final class Event {
+      int type;
+      String msg;
+      ArrayList<Entry> entries;
+      int code,width,height,depth,nbyte,deltaBlocFile;
+      Event(int type,String msg) { this.type=type; this.msg=msg; }
+   }
 
-         if( fitsVal==null ) fitsVal="";
+   /** Indexation d'un fichier original (calcule en parallle, puis prise en compte dans l'ordre) */
+   private final class FileTask implements Callable<ArrayList<Event>> {
+      File file;
+      File [] list;        // Rpertoire d'appartenance (pour la barre de progression)
+      int index;           // Position dans ce rpertoire
+      int order;
+      Future<ArrayList<Event>> future;
+
+      FileTask(File file,File [] list,int index,int order) {
+         this.file=file;
+         this.list=list;
+         this.index=index;
+         this.order=order;
+      }
 
-         String line = "{ \"name\": \""+name+"\", \"path\": \""+filename+"\", " +
-               "\"ra\": \""+center.al+"\", \"dec\": \""+center.del+"\", " +
-               "\"cellmem\": \""+cellMem+"\", " +
-               "\"stc\": \""+stc+"\""+fitsVal+" }\n";
-         
-         // Estimation du nombre d'entres
-         int nbEntries = (int)( out.length()/line.length()) +1;
-         if( maxOverlays<nbEntries ) maxOverlays=nbEntries;
+      public ArrayList<Event> call() throws Exception { return indexFile(file,order); }
+   }
 
-         if( flagAppend ) out.seek( out.length() );
-         else {
-            if( checkIn(out,line) ) {
-//             System.out.print("Ligne dj prsente dans la tuile => "+line);
-             return;
-               
+   private ExecutorService pool;               // Threads d'indexation
+   private LinkedList<FileTask> pending;       // Fichiers en cours d'indexation, dans l'ordre de parcours
+   private int window;                         // Nombre max de fichiers en cours d'indexation
+   private File [] lastList;                   // Dernier rpertoire pris en compte (barre de progression)
+   private int nbFiles;                        // Nombre de HDU calibres trouves dans le rpertoire (mode Pilot)
+
+   private ArrayList<Entry> buffer;            // Lignes d'index en attente d'criture
+   private long bufferSize;                    // Taille du buffer (en caractres)
+   private ArrayList<File> runs;               // Portions du buffer dj dverses sur disque (tries)
+
+   // Parcours des fichiers originaux, indexation en parallle, puis criture
+   // de chaque tuile HpxFinder en une seule fois
+   private void createIndex(String pathSource, String pathDest, int order) throws Exception {
+      int nbProc = Runtime.getRuntime().availableProcessors();
+      int nbThread = context.getMaxNbThread()>0 ? Math.min(context.getMaxNbThread(),nbProc) : nbProc;
+      pool = Executors.newFixedThreadPool(nbThread);
+      pending = new LinkedList<>();
+      window = 8*nbThread;
+      lastList = null;
+      nbFiles = 0;
+      buffer = new ArrayList<>();
+      bufferSize = 0L;
+      runs = new ArrayList<>();
+      try {
+         if( create(pathSource, order) ) {
+            while( !pending.isEmpty() ) {
+               if( !replay( pending.removeFirst() ) ) break;
             }
-//            String s;
-//            while( (s=out.readLine())!=null ) {
-//               if( (s+"\n").equals(line) ) {
-////                  System.out.print("Ligne dj prsente dans la tuile => "+line);
-//                  return;       // dj prsent dans la tuile d'index
-//               }
-//            }
-         }
-         out.write( line.getBytes() );
-         out.close();
-         out=null;
-      } finally { if( out!=null ) out.close(); }
-   }
-   
-   // Recherche rapide d'une chaine dans le fichier out
-   // Charge tout d'abord, puis compare ensuite.
-   private boolean checkIn(RandomAccessFile out, String line) throws IOException {
-      long size = out.length();
-      byte [] buf = new byte[(int)size];
-      out.readFully(buf);
-      int start=0;
-      for( int i=0; i<buf.length; i++ ) {
-         if( (char)buf[i]=='\n' ) {
-            if( (new String(buf,start,i-start+1)).equals(line) ) return true;
-            start=i+1;
          }
+         writeIndex(pathDest, order);
+      } finally {
+         for( FileTask t : pending ) t.future.cancel(true);
+         pending.clear();
+         pool.shutdownNow();
+         pool=null;
+         for( File f : runs ) f.delete();
+         runs=null;
+         buffer=null;
       }
-      return false;
    }
-         
+
    // Pour chaque fichiers FITS, cherche la liste des losanges couvrant la
-   // zone. Cr (ou complte) un fichier texte "d'index" contenant le chemin vers
-   // les fichiers FITS
-   private boolean create(String pathSource, String pathDest, int order) throws Exception {
+   // zone. L'indexation de chaque fichier est confie aux threads d'indexation,
+   // son rsultat est pris en compte dans l'ordre du parcours (voir replay())
+   private boolean create(String pathSource, int order) throws Exception {
 
       // pour chaque fichier dans le sous rpertoire
       File main = new File(pathSource);
@@ -352,129 +391,347 @@ public class BuilderIndex extends Builder {
       ArrayList<File> dir = new ArrayList<>();
       File[] list = context.isInputFile ? new File[]{ main } : main.listFiles();
       if (list == null) return true;
-      
-      // Limitation du nombre de fichiers dans le cas d'un Pilot
-      int nbPilot = context.nbPilot;
 
       int i=0;
-      int nbFiles=0;
-      
-      context.setProgress(0,list.length-1);
       for( File file : list ) {
-         
-         // S'agit-il d'un Pilot ?
-         if( nbPilot>=0 && nbFiles>nbPilot ) {
-            context.warning("Test Pilot limited to "+nbPilot+" images => partial HiPS");
-            return false;
-         }
-         
          if( context.isTaskAborting() ) throw new Exception("Task abort !");
-         context.setProgress(i++);
-         if( !context.isInputFile && file.isDirectory() ) { dir.add(file); continue; }
-         currentfile = file.getPath();
-         
-         Fits fitsfile = new Fits();
-         boolean flagDefaultHDU = hdu==null;
-         boolean flagAllHDU = hdu!=null && hdu.length>0 && hdu[0]==-1;
-         int cellSize = Constante.ORIGCELLWIDTH;
-         int firstDepth=0;
-         
-         // Multi Extension ou non ?
-         for( int j=0; flagAllHDU || flagDefaultHDU ||  j<hdu.length; j++ ) {
-            int ext = flagDefaultHDU ? 0 : flagAllHDU ? j : hdu[j];
+         if( !context.isInputFile && file.isDirectory() ) { dir.add(file); i++; continue; }
+         FileTask t = new FileTask(file,list,i++,order);
+         t.future = pool.submit(t);
+         pending.add(t);
+         while( pending.size()>window ) {
+            if( !replay( pending.removeFirst() ) ) return false;
+         }
+      }
 
-            // L'image sera mosaique en cellSize x cellSize pour viter de
-            // saturer la mmoire par la suite
+      list=null;
+      if( dir.size()>0 ) {
+         for( File f1 : dir ) {
+            if( !f1.isDirectory() ) continue;
+//            System.out.println("Look into dir " + f1.getPath());
             try {
-               int code = fitsfile.loadHeaderFITS(currentfile+ (ext==0?"":"["+ext+"]"));
-               if( flagAllHDU && (code & Fits.HDU0SKIP) != 0 ) continue;
+               if( !create(f1.getPath(), order) ) return false;
+            } catch( Exception e ) {
+               if( context.isTaskAborting() ) throw e;
+               Aladin.trace(3,e.getMessage() + " " + f1.getPath());
+               continue;
+            }
+         }
+      }
+      return true;
+   }
+
+   // Prise en compte du rsultat de l'indexation d'un fichier, dans l'ordre du parcours
+   // @return false s'il faut s'arrter l (mode Pilot)
+   private boolean replay(FileTask t) throws Exception {
+
+      if( t.list!=lastList ) {
+         context.setProgress(0,t.list.length-1);
+         lastList=t.list;
+         nbFiles=0;
+      }
+
+      // S'agit-il d'un Pilot ?
+      int nbPilot = context.nbPilot;
+      if( nbPilot>=0 && nbFiles>nbPilot ) {
+         context.warning("Test Pilot limited to "+nbPilot+" images => partial HiPS");
+         return false;
+      }
+
+      if( context.isTaskAborting() ) throw new Exception("Task abort !");
+      context.setProgress(t.index);
+
+      String currentfile = t.file.getPath();
+      ArrayList<Event> events;
+      try {
+         events = t.future.get();
+      } catch( Exception e ) {
+         Throwable e1 = e.getCause()!=null ? e.getCause() : e;
+         Aladin.trace(3,e1.getMessage() + " " + currentfile);
+         return true;
+      }
 
-               // S'agit-il d'une image calibre ?
-               if( fitsfile.calib==null ) {
-                  if( flagDefaultHDU ) break;
-                  else continue;
+      for( Event ev : events ) {
+         switch( ev.type ) {
+            case EV_HDU:
+               nbFiles++;
+               break;
+            case EV_INSERT:
+               // Test du rapport largeur/longueur des pixels, sauf pour la premire image
+               if( ev.msg!=null && statNbFile>0 ) {
+                  addBadFile(currentfile,ev.msg);
+                  return true;
                }
-               
-              nbFiles++;
-
-               if( firstDepth==0 ) firstDepth=fitsfile.depth;
-               else if( fitsfile.depth!=firstDepth ) continue;
-
-               Aladin.trace(4,"HiPS indexing "+currentfile+ (ext==0?"":"["+ext+"]..."));
-
-               try {
-
-                  // Test sur l'image entire
-                  if( !partitioning ) {
-                     testAndInsert(fitsfile, pathDest, currentfile, null, order);
-                     updateStat(file, code, fitsfile.width, fitsfile.height, fitsfile.depth, fitsfile.bitpix==0 ? 4 : Math.abs(fitsfile.bitpix) / 8, 0);
-
-                  // Dcoupage en blocs de tailles fixes sauf les derniers des lignes et des colonnes
-                  // pour qu'ils ne soient pas trop petits
-                  } else {
-                     //                     context.info("Scanning by cells "+cellSize+"x"+cellSize+"...");
-                     int width = fitsfile.width - borderSize[3];
-                     int height = fitsfile.height - borderSize[2];
-                     
-                     for( int x=borderSize[1]; x<width; x+=fitsfile.widthCell ) {
-
-                        for( int y=borderSize[0]; y<height; y+=fitsfile.heightCell ) {
-                           fitsfile.widthCell = x + cellSize > width || width-x<2*cellSize ? 
-                                 width - x : cellSize;
-                           fitsfile.heightCell = y + cellSize > height || height-y<2*cellSize ? 
-                                 height - y : cellSize;
-                           
-//                           if( fitsfile.widthCell!=cellSize || fitsfile.heightCell!=cellSize ) {
-//                              System.out.println(currentfile +" "+x+","+y+" "+fitsfile.widthCell+"x"+fitsfile.heightCell);
-//                           }
-                           fitsfile.depthCell = fitsfile.depth = 1;
-                           fitsfile.xCell=x;
-                           fitsfile.yCell=y;
-                           fitsfile.zCell=0;
-                           fitsfile.ext = ext;
-                           String currentCell = fitsfile.getCellSuffix();
-                           testAndInsert(fitsfile, pathDest, currentfile, currentCell, order);
-                        }
-                     }
+               for( Entry e : ev.entries ) addEntry(e);
+               break;
+            case EV_STAT:
+               updateStat(t.file, ev.code, ev.width, ev.height, ev.depth, ev.nbyte, ev.deltaBlocFile);
+               break;
+            case EV_BAD:
+               addBadFile(currentfile,ev.msg);
+               return true;
+            case EV_TRACE:
+               Aladin.trace(3,ev.msg + " " + currentfile);
+               return true;
+            case EV_ABORT:
+               context.taskAbort();
+               break;
+         }
+      }
+      return true;
+   }
+
+   // Indexation d'un fichier original (MEF ventuel, partitionnement ventuel)
+   // => liste des vnements  prendre en compte dans l'ordre
+   private ArrayList<Event> indexFile(File file, int order) {
+      ArrayList<Event> events = new ArrayList<>();
+      String currentfile = file.getPath();
+
+      Fits fitsfile = new Fits();
+      boolean flagDefaultHDU = hdu==null;
+      boolean flagAllHDU = hdu!=null && hdu.length>0 && hdu[0]==-1;
+      int cellSize = Constante.ORIGCELLWIDTH;
+      int firstDepth=0;
+
+      // Multi Extension ou non ?
+      for( int j=0; flagAllHDU || flagDefaultHDU ||  j<hdu.length; j++ ) {
+         int ext = flagDefaultHDU ? 0 : flagAllHDU ? j : hdu[j];
+
+         // L'image sera mosaique en cellSize x cellSize pour viter de
+         // saturer la mmoire par la suite
+         try {
+            int code = fitsfile.loadHeaderFITS(currentfile+ (ext==0?"":"["+ext+"]"));
+            if( flagAllHDU && (code & Fits.HDU0SKIP) != 0 ) continue;
+
+            // S'agit-il d'une image calibre ?
+            if( fitsfile.calib==null ) {
+               if( flagDefaultHDU ) break;
+               else continue;
+            }
+
+            events.add( new Event(EV_HDU,null) );
+
+            if( firstDepth==0 ) firstDepth=fitsfile.depth;
+            else if( fitsfile.depth!=firstDepth ) continue;
 
+            Aladin.trace(4,"HiPS indexing "+currentfile+ (ext==0?"":"["+ext+"]..."));
 
-                     updateStat(file, code, width, height, fitsfile.depth, fitsfile.bitpix==0 ? 4 : Math.abs(fitsfile.bitpix) / 8, 1);
+            try {
+
+               // Test sur l'image entire
+               if( !partitioning ) {
+                  events.add( testAndInsert(fitsfile, currentfile, null, order) );
+                  events.add( statEvent(code, fitsfile.width, fitsfile.height, fitsfile.depth, fitsfile.bitpix==0 ? 4 : Math.abs(fitsfile.bitpix) / 8, 0) );
+
+               // Dcoupage en blocs de tailles fixes sauf les derniers des lignes et des colonnes
+               // pour qu'ils ne soient pas trop petits
+               } else {
+                  int width = fitsfile.width - borderSize[3];
+                  int height = fitsfile.height - borderSize[2];
+
+                  for( int x=borderSize[1]; x<width; x+=fitsfile.widthCell ) {
+
+                     for( int y=borderSize[0]; y<height; y+=fitsfile.heightCell ) {
+                        fitsfile.widthCell = x + cellSize > width || width-x<2*cellSize ? 
+                              width - x : cellSize;
+                        fitsfile.heightCell = y + cellSize > height || height-y<2*cellSize ? 
+                              height - y : cellSize;
+
+                        fitsfile.depthCell = fitsfile.depth = 1;
+                        fitsfile.xCell=x;
+                        fitsfile.yCell=y;
+                        fitsfile.zCell=0;
+                        fitsfile.ext = ext;
+                        String currentCell = fitsfile.getCellSuffix();
+                        events.add( testAndInsert(fitsfile, currentfile, currentCell, order) );
+                     }
                   }
-               } catch( Exception e1 ) {
-                  addBadFile(currentfile,e1.getMessage());
-                  break;
+
+                  events.add( statEvent(code, width, height, fitsfile.depth, fitsfile.bitpix==0 ? 4 : Math.abs(fitsfile.bitpix) / 8, 1) );
                }
-            } catch( MyInputStreamCachedException e ) {
-               context.taskAbort();
-            }  catch (Exception e) {
-               Aladin.trace(3,e.getMessage() + " " + currentfile);
+            } catch( Exception e1 ) {
+               events.add( new Event(EV_BAD,e1.getMessage()) );
                break;
             }
-            if( flagDefaultHDU ) break;
+         } catch( MyInputStreamCachedException e ) {
+            events.add( new Event(EV_ABORT,null) );
+         }  catch (Exception e) {
+            events.add( new Event(EV_TRACE,e.getMessage()) );
+            break;
          }
+         if( flagDefaultHDU ) break;
       }
+      return events;
+   }
 
-      list=null;
-      if( dir.size()>0 ) {
-         for( File f1 : dir ) {
-            if( !f1.isDirectory() ) continue;
-            currentfile = f1.getPath();
-//            System.out.println("Look into dir " + currentfile);
+   private Event statEvent(int code, int width,int height,int depth,int nbyte,int deltaBlocFile) {
+      Event ev = new Event(EV_STAT,null);
+      ev.code=code;
+      ev.width=width;
+      ev.height=height;
+      ev.depth=depth;
+      ev.nbyte=nbyte;
+      ev.deltaBlocFile=deltaBlocFile;
+      return ev;
+   }
+
+   // Ajout d'une ligne d'index au buffer, dvers sur disque s'il devient trop gros
+   private void addEntry(Entry e) throws IOException {
+      buffer.add(e);
+      bufferSize += e.line.length();
+      if( bufferSize>MAXBUFFER ) spill();
+   }
+
+   // Tri (stable) du buffer par tuile, et dversement sur disque
+   private void spill() throws IOException {
+      sortBuffer();
+      File f = File.createTempFile("HpxFinder", ".run", new File(context.getOutputPath()));
+      f.deleteOnExit();
+      runs.add(f);
+      DataOutputStream out = null;
+      try {
+         out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(f), 64*1024) );
+         for( Entry e : buffer ) {
+            byte [] b = e.line.getBytes("UTF-8");
+            out.writeLong(e.npix);
+            out.writeInt(b.length);
+            out.write(b);
+         }
+      } finally { if( out!=null ) out.close(); }
+      buffer.clear();
+      bufferSize=0L;
+   }
+
+   private void sortBuffer() {
+      Collections.sort(buffer, new Comparator<Entry>() {
+         public int compare(Entry a, Entry b) { return Long.compare(a.npix,b.npix); }
+      });
+   }
+
+   /** Lecture squentielle d'une portion trie (disque ou buffer mmoire) */
+   private final class Run {
+      int rank;                 // Rang de la portion (ordre d'arrive des lignes)
+      DataInputStream in;       // Portion dverse sur disque
+      int pos;                  // Position dans le buffer mmoire
+      Entry current;
+
+      Run(int rank,File f) throws IOException {
+         this.rank=rank;
+         in = new DataInputStream( new BufferedInputStream( new FileInputStream(f), 64*1024) );
+      }
+      Run(int rank) { this.rank=rank; }
+
+      boolean next() throws IOException {
+         if( in==null ) {
+            current = pos<buffer.size() ? buffer.get(pos++) : null;
+         } else {
             try {
-               if( !create(currentfile, pathDest, order) ) return false;
-            } catch( Exception e ) {
-               Aladin.trace(3,e.getMessage() + " " + currentfile);
-               continue;
+               long npix = in.readLong();
+               byte [] b = new byte[ in.readInt() ];
+               in.readFully(b);
+               current = new Entry(npix, new String(b,"UTF-8"));
+            } catch( EOFException e ) { current=null; }
+         }
+         if( current==null ) close();
+         return current!=null;
+      }
+
+      void close() throws IOException {
+         if( in!=null ) { in.close(); in=null; }
+      }
+   }
+
+   // Fusion des portions tries et criture de chaque tuile HpxFinder en une seule fois
+   private void writeIndex(String pathDest, int order) throws Exception {
+      sortBuffer();
+      PriorityQueue<Run> queue = new PriorityQueue<>(runs.size()+1, new Comparator<Run>() {
+         public int compare(Run a, Run b) {
+            int c = Long.compare(a.current.npix, b.current.npix);
+            return c!=0 ? c : Integer.compare(a.rank, b.rank);
+         }
+      });
+      ArrayList<Run> all = new ArrayList<>();
+      try {
+         for( int i=0; i<runs.size(); i++ ) all.add( new Run(i,runs.get(i)) );
+         all.add( new Run(runs.size()) );
+         for( Run r : all ) if( r.next() ) queue.add(r);
+
+         ArrayList<String> lines = new ArrayList<>();
+         while( !queue.isEmpty() ) {
+            if( context.isTaskAborting() ) throw new Exception("Task abort !");
+            long npix = queue.peek().current.npix;
+            lines.clear();
+            while( !queue.isEmpty() && queue.peek().current.npix==npix ) {
+               Run r = queue.poll();
+               lines.add(r.current.line);
+               if( r.next() ) queue.add(r);
             }
+            writeTile(pathDest, order, npix, lines);
          }
+      } finally {
+         for( Run r : all ) r.close();
       }
-      return true;
    }
-   
-   private void testAndInsert(Fits fitsfile, String pathDest, String currentFile,
+
+   // Ecriture des lignes d'une tuile HpxFinder, aprs celles dj prsentes, sans doublons
+   // (sauf en mode ajout pur => index vierge)
+   private void writeTile(String pathDest, int order, long npix, ArrayList<String> lines) throws Exception {
+      String hpxname = cds.tools.Util.concatDir(pathDest,Util.getFilePath("", order,npix));
+      File f = new File( hpxname );
+      if( !f.exists() ) cds.tools.Util.createPath(hpxname);
+
+      long size = f.length();
+      HashSet<String> in = null;
+      if( !flagAppend ) in = readLines(f);
+
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      for( String line : lines ) {
+
+         // Estimation du nombre d'entres
+         int nbEntries = (int)( size/line.length()) +1;
+         if( maxOverlays<nbEntries ) maxOverlays=nbEntries;
+
+         // Ligne dj prsente dans la tuile ?
+         if( in!=null && !in.add(line) ) continue;
+
+         byte [] b = line.getBytes();
+         buf.write(b);
+         size += b.length;
+      }
+
+      FileOutputStream out = null;
+      try {
+         out = new FileOutputStream(f,true);
+         buf.writeTo(out);
+      } finally { if( out!=null ) out.close(); }
+   }
+
+   // Lecture des lignes (avec leur '\n') dj prsentes dans une tuile HpxFinder
+   private HashSet<String> readLines(File f) throws IOException {
+      HashSet<String> set = new HashSet<>();
+      if( f.length()==0 ) return set;
+      RandomAccessFile in = null;
+      try {
+         in = new RandomAccessFile(f,"r");
+         byte [] buf = new byte[(int)in.length()];
+         in.readFully(buf);
+         int start=0;
+         for( int i=0; i<buf.length; i++ ) {
+            if( (char)buf[i]=='\n' ) {
+               set.add( new String(buf,start,i-start+1) );
+               start=i+1;
+            }
+         }
+      } finally { if( in!=null ) in.close(); }
+      return set;
+   }
+
+   // Dtermination des tuiles HpxFinder concernes par l'image (ou la cellule de l'image)
+   // et de la ligne d'index correspondante => vnement EV_INSERT
+   private Event testAndInsert(Fits fitsfile, String currentFile,
          String suffix, int order) throws Exception {
-      String hpxname;
-      RandomAccessFile out;
+      Event ev = new Event(EV_INSERT,null);
+      ev.entries = new ArrayList<>();
       Coord center = new Coord();
       String fitsVal=null;
 
@@ -518,13 +775,15 @@ public class BuilderIndex extends Builder {
 //      System.out.println();
       
       // On teste le rapport largeur/longeur du pixel si ncessaire
-      // sauf s'il n'y a qu'une image ou que la projection est CAR
-      if( !isRECT && maxRatio>0 && statNbFile>0 ) {
+      // sauf s'il n'y a qu'une image (vrifi lors de la prise en compte, voir replay())
+      // ou que la projection est CAR
+      if( !isRECT && maxRatio>0 ) {
          double w = Coord.getDist(corner[0], corner[1])/fitsfile.width;
          double h = Coord.getDist(corner[1], corner[2])/fitsfile.height;
          //         System.out.println("w="+Coord.getUnit(w)+" h="+Coord.getUnit(h));
-         if( h>w*maxRatio || w>h*maxRatio ) throw 
-         new Exception("Suspicious image calibration (pixel size=" +Coord.getUnit(w)+"x"+Coord.getUnit(h)+") => see -maxRatio=xx parameter");
+         if( h>w*maxRatio || w>h*maxRatio ) {
+            ev.msg = "Suspicious image calibration (pixel size=" +Coord.getUnit(w)+"x"+Coord.getUnit(h)+") => see -maxRatio=xx parameter";
+         }
       }
 
       // On calcul galement les coordonnes du centre de l'image
@@ -626,17 +885,44 @@ public class BuilderIndex extends Builder {
          // vrifie la validit du losange trouv
          if( !isInImage(fitsfile, Util.getCorners(order, npix), isRECT)) continue;
 
-         hpxname = cds.tools.Util.concatDir(pathDest,Util.getFilePath("", order,npix));
-         out = openFile(hpxname);
-
          // ajoute le chemin du fichier Source FITS,
          // suivi ventuellement de la dfinition de la cellule en question
          // (mode mosaic), void du HDU particulier
          String filename = currentFile + (suffix == null ? "" : suffix);
 
-         createAFile(out, filename, center, cellMem, stc.toString(), fitsVal);
-         out.close();
+         ev.entries.add( new Entry(npix, getLine(filename, center, cellMem, stc.toString(), fitsVal)) );
       }
+      return ev;
+   }
+
+   // Gnration de la ligne JSON d'index pour un fichier d'origine
+   static String getLine(String filename, Coord center, long cellMem, String stc, String fitsVal) {
+
+      // Dtermination d'un nom de produit  partir du filename
+      // 1.Suppression du path
+      int o1 = filename.lastIndexOf('/');
+      int o1b = filename.lastIndexOf('\\');
+      if( o1b>o1 ) o1=o1b;
+
+      // 2.Suppression d'une extension ?
+      int o2 = filename.lastIndexOf('.');
+
+      // 3.Suppression du suffixe [x,y-wxh] si ncessaire (dans le cas o il n'y a pas d'extension
+      // car sinon ce suffixe aura dj t supprim)
+      if( o2==-1 || o2<=o1 ) {
+         int o3 = filename.charAt(filename.length()-1)==']' ? filename.lastIndexOf('['):-1;
+         if( o3>o2 ) o2=o3;
+      }
+
+      if( o2==-1 || o2<=o1 ) o2 = filename.length();
+      String name = filename.substring(o1+1,o2);
+
+      if( fitsVal==null ) fitsVal="";
+
+      return "{ \"name\": \""+name+"\", \"path\": \""+filename+"\", " +
+            "\"ra\": \""+center.al+"\", \"dec\": \""+center.del+"\", " +
+            "\"cellmem\": \""+cellMem+"\", " +
+            "\"stc\": \""+stc+"\""+fitsVal+" }\n";
    }
 
    private boolean isInImage(Fits f, Coord[] corners,boolean isCAR) {
@@ -100,7 +100,10 @@ public class BuilderJpg extends BuilderTiles {
       context.info("Map pixel cut ["+ip(cut[0],bz,bs)+" .. "+ip(cut[1],bz,bs)+"] to ["+getMinCM()+"..255] ("+context.getTransfertFct()+")");
 
       context.info("Tile aggregation method="+context.getJpegMethod());
-      build();
+
+      // Tuiles dj gnres par l'action TILES (mode fusionn) => uniquement le Allsky
+      if( context.isFusedDone(fmt) ) context.info(fmt+" tiles already generated during TILES action (fused mode)");
+      else build();
       if( !context.isTaskAborting() ) {
          //         (new BuilderAllsky(context)).createAllSkyColor(context.getOutputPath(),3,fmt,64,0);
          //         context.writePropertiesFile();
@@ -24,6 +24,7 @@ package cds.allsky;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.Vector;
 
 import cds.aladin.Localisation;
@@ -96,17 +97,19 @@ final public class BuilderMap  extends Builder {
    
    protected void exportHpx() throws Exception {
       
+      String mapFile = output+Util.FS+"Map.fits";
       OutputStream f = null;
+      RandomAccessFile raf = null;
       try {
-         f=new FileOutputStream( output+Util.FS+"Map.fits" );
+         f=new FileOutputStream( mapFile );
          int size=0;
 
-         int orderLosange = (int)CDSHealpix.log2(losangeWidth);
+         final int orderLosange = (int)CDSHealpix.log2(losangeWidth);
          int orderMap = (int)CDSHealpix.log2(nside);
-         int nbits=Math.abs(bitpix)/8;
+         final int nbits=Math.abs(bitpix)/8;
 
-         int orderTile = (int)CDSHealpix.log2( nside / losangeWidth);
-         long nbHpxPix = (long) (12 * Math.pow(4, orderTile));
+         final int orderTile = (int)CDSHealpix.log2( nside / losangeWidth);
+         long nbHpxPix = 12L << (2*orderTile);
          boolean ring = false;
          int lenLine=1024;
 
@@ -125,77 +128,62 @@ final public class BuilderMap  extends Builder {
          end = Save.getEndBourrage(size);
          f.write(end);
          size += end.length;
-
-         // Sauvegarde des pixels (on parcourt les pixels Healpix dans l'ordre)
-         // et on crit ligne par ligne (lenLigne valeurs  chaque fois)
-         byte [] buf = new byte[lenLine*nbits];
-         int pos=0;
-         // nb pixels par losange
-         int nbPix = losangeWidth*losangeWidth;
-         byte [] nan = new byte[nbPix*nbits];
-         for (int i = 0 ; i < nbPix ; i++) PlanImage.setPixVal(nan, bitpix, i, Double.NaN);
-         
-         int[] hpx2xy = cds.tools.pixtools.Util.createHpx2xy(orderLosange);
-         
-         for (int i = 0 ; i < nbHpxPix ; i++) {
-            boolean found = true;
-            double val;
-            // rcupre le losange de niveau orderTile
-            String filename = cds.tools.pixtools.Util.getFilePath(output, orderTile, i);
-            Fits los = new Fits();
-            try {
-               los.loadFITS(filename+".fits");
-            } catch (FileNotFoundException e) {
-               // ne rien dire, il va y en avoir plein si c'est partiel !
-               found=false;
-            }
-            if (!found) {
-               // on finit d'crire ce qu'il restait dans le buffer
-               f.write(buf,0,pos); size+=pos; pos=0;
-               // on ajoute tout le losange en nan
-               f.write(nan); pos=0; size+=nan.length; 
-
-               if( size>Math.pow(2, 30)) {
-                   size -= 322827*2880;
-               }
+         f.close();
+         f=null;
+
+         // Sauvegarde des pixels : la tuile i de niveau orderTile occupe les pixels HEALPix
+         // [i*nbPix..(i+1)*nbPix[ de la map => les tuiles sont converties en parallle, par
+         // paquets de tuiles conscutives, et crites directement  leur position dans le fichier
+         final int nbPix = losangeWidth*losangeWidth;
+         final int[] hpx2xy = cds.tools.pixtools.Util.createHpx2xy(orderLosange);
+         long dataSize = nbHpxPix*nbPix*nbits;
+         raf = new RandomAccessFile(mapFile,"rw");
+         MapTileEngine engine = new MapTileEngine(context,raf.getChannel(),size,nbPix*nbits,nbHpxPix,false) {
+            void process(long firstTile,int nb,byte [] buf) throws Exception {
+               for( int k=0; k<nb; k++ ) fillTile(firstTile+k, orderTile, nbPix, hpx2xy, buf, k*nbPix);
             }
-            else {
-               for( int ipix = 0 ; ipix < nbPix ; ipix++) {
-                  //                  int[] xy = cds.tools.pixtools.Util.hpx2XY(ipix+1,N);
-                  //                  val = los.getPixelDouble(xy[0],losangeWidth-1-xy[1]);
-                  int idx = hpx2xy[ipix];
-                  int yy = idx/losangeWidth;
-                  int xx = idx-yy*losangeWidth;
-                  val = los.getPixelFull(xx,yy);
-                  if( bitpix<0 && los.isBlankPixel(val) ) val=Double.NaN;
-//                  val = los.getPixelDouble(xx,yy);
-                  PlanImage.setPixVal(buf, bitpix, pos++, val);
-
-                  if( pos==lenLine ) {
-                     f.write(buf); pos=0; size+=buf.length;
-                     if( size>Math.pow(2, 30)) {
-                         size -= 322827*2880;
-                     }
-                  }
-               }
-            }
-         }
-         if( pos>0 ) {
-             f.write(buf,0,pos);
-             size+=pos;
-             if( size>Math.pow(2, 30)) {
-                 size -= 322827*2880;
-             }
-         }
+         };
+         engine.run();
 
-         end = Save.getEndBourrage(size);
-         f.write(end);
-         size += end.length;
+         // Bourrage final
+         end = Save.getEndBourrage( (int)((size+dataSize)%2880) );
+         raf.seek(size+dataSize);
+         raf.write(end);
+         raf.setLength(size+dataSize+end.length);
 
-         System.out.println("Size : " + size);
+         System.out.println("Size : " + (size+dataSize+end.length));
 
-      } finally { f.close(); }
+      } finally {
+         if( f!=null ) f.close();
+         if( raf!=null ) raf.close();
+      }
+   }
+   
+   /** Conversion d'un losange en pixels HEALPix NESTED (ordre de la map)
+    * @param npix numro du losange au niveau orderTile
+    * @param buf buffer de destination
+    * @param offset indice du premier pixel du losange dans buf (en nombre de valeurs)
+    */
+   private void fillTile(long npix, int orderTile, int nbPix, int [] hpx2xy, byte [] buf, int offset) throws Exception {
+      String filename = cds.tools.pixtools.Util.getFilePath(output, orderTile, npix);
+      Fits los = new Fits();
+      try {
+         los.loadFITS(filename+".fits");
+      } catch (FileNotFoundException e) {
+         // ne rien dire, il va y en avoir plein si c'est partiel !
+         // => tout le losange en nan
+         for( int ipix = 0 ; ipix < nbPix ; ipix++) PlanImage.setPixVal(buf, bitpix, offset+ipix, Double.NaN);
+         return;
+      }
+      for( int ipix = 0 ; ipix < nbPix ; ipix++) {
+         int idx = hpx2xy[ipix];
+         int yy = idx/losangeWidth;
+         int xx = idx-yy*losangeWidth;
+         double val = los.getPixelFull(xx,yy);
+         if( bitpix<0 && los.isBlankPixel(val) ) val=Double.NaN;
+         PlanImage.setPixVal(buf, bitpix, offset+ipix, val);
+      }
+      los.free();
    }
-
 
 }
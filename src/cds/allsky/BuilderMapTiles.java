@@ -418,6 +418,17 @@ public class BuilderMapTiles extends Builder {
                context.setTileOrder(tileOrder);
             }
 
+            // Map complte en NESTED, une seule valeur par pixel et pas de sous-chantillonnage
+            // => chaque tuile correspond  une zone contigu de la map => gnration parallle
+            if( step == nbStep - 1 && !isPartial && isNested && div == 0
+                  && sizeRecord == nbValPerSegment * sizeFieldVal
+                  && nbRecord * nbValPerSegment >= nbTiles * nbPixPerTile
+                  && nbPixPerTile * sizeFieldVal <= Integer.MAX_VALUE ) {
+               buildParallel(f, path, tileWidth, hpx2xy, nbTiles, sizeFieldVal, badData, blankOrig, cutOrig, cut,
+                     bitpix, blank, bzero, bscale, nbValPerSegment);
+               break;
+            }
+
             posSample = 0;
             count = 0;
             cRecordInBuf = nbRecordInBuf;
@@ -525,6 +536,47 @@ public class BuilderMapTiles extends Builder {
       cache.close();
    }
 
+   // Gnration parallle des tuiles (voir MapTileEngine) : chaque tuile est lue d'un bloc
+   // dans la map, convertie puis crite directement, sans passer par le cache des tuiles
+   private void buildParallel(RandomAccessFile f, final String path, final int tileWidth, final int [] hpx2xy,
+         long nbTiles, final int sizeFieldVal, final double badData, final double blankOrig,
+         final double [] cutOrig, final double [] cut, final int bitpix, final double blank,
+         final double bzero, final double bscale, final int nbValPerSegment) throws Exception {
+      final int nbPixPerTile = tileWidth * tileWidth;
+      context.info("Parallel tile generation (" + nbTiles + " tiles)...");
+      MapTileEngine engine = new MapTileEngine(context, f.getChannel(), initialOffsetHpx,
+            nbPixPerTile * sizeFieldVal, nbTiles, true) {
+         void process(long firstTile, int nb, byte [] buf) throws Exception {
+            for( int k = 0; k < nb; k++ ) {
+               Fits fits = new Fits(tileWidth, tileWidth, bitpix);
+               fits.setBlank(blank);
+               fits.setBzero(bzero);
+               fits.setBscale(bscale);
+               int offset = k * nbPixPerTile * sizeFieldVal;
+               for( int i = 0; i < nbPixPerTile; i++ ) {
+                  double val = getVal(buf, bitpixOrig, offset + i * sizeFieldVal);
+                  if( val == badData ) val = blankOrig;
+
+                  // Changement de bitpix et/ou d'chelle
+                  if( bitpix != bitpixOrig ) {
+                     val = Double.isNaN(val) || val == blankOrig ? blank
+                           : val <= cutOrig[2] ? cut[2] : val >= cutOrig[3] ? cut[3] : (val - cutOrig[2]) * context.coef + cut[2];
+                     if( bitpix > 0 && (long) val == blank && val != blank ) val += 0.5;
+                  }
+                  Fits.setPixValDouble(fits.pixels, bitpix, hpx2xy[i], val);
+               }
+               String file = cds.tools.pixtools.Util.getFilePath(path, maxOrder, firstTile + k) + ".fits";
+               Util.createPath(file);
+               fits.addDataSum();
+               fits.writeFITS(file);
+            }
+            updateStat( (getNbDone() + nb) * nbPixPerTile / nbValPerSegment );
+         }
+      };
+      engine.run();
+      updateStat(nbRecord);
+   }
+
    static final public long getNpix(byte[] t, int bitpix, int pos) {
       try {
          switch( bitpix ) {
@@ -47,6 +47,7 @@ public class BuilderMoc extends Builder {
    
    protected String ext=null; // Extension  traiter, null si non encore affecte.
    protected int frameCube=-1; // Numro de la frame  utiliser pour gnrer le MOC dans le cas d'un gros cube (depth>10)
+   protected SMoc tileMoc=null; // MOC dj accumul pendant la gnration des tuiles (cf BuilderTiles), null si aucun
 
    public BuilderMoc(Context context) {
       super(context);
@@ -65,6 +66,10 @@ public class BuilderMoc extends Builder {
 
    public SMoc getMoc() { return moc; }
 
+   /** Positionne le MOC accumul pendant la gnration des tuiles => il ne sera pas
+    * ncessaire de parcourir (et relire) l'arborescence des tuiles */
+   public void setTileMoc(SMoc tileMoc) { this.tileMoc = tileMoc; }
+
    /** Cration d'un Moc associ  l'arborescence trouve dans le rpertoire path */
    protected void createMoc(String path) throws Exception {
       
@@ -124,17 +129,25 @@ public class BuilderMoc extends Builder {
       isMocHight = mocOrder>fileOrder && ext!=null && ext.equals("fits");
       
       moc.setMocOrder(mocOrder);
+      
+      // MOC dj calcul pendant la gnration des tuiles ?
+      if( tileMoc!=null && tileMoc.getMocOrder()!=mocOrder ) {
+         context.warning("MOC accumulated during tile generation not usable (mocOrder="+tileMoc.getMocOrder()+") => tile scan");
+         tileMoc=null;
+      }
+      if( tileMoc!=null ) moc=tileMoc;
 
       String outputFile = path + FS + Constante.FILE_MOC;
       
       long t = System.currentTimeMillis();
       context.info("MOC generation ("+(isMocHight?"deep resolution":"regular resolution")+" mocOrder="+moc.getMocOrder()
+            +(tileMoc!=null?" accumulated during tile generation":"")
             +(maxSize!=-1?" <"+cds.tools.Util.getUnitDisk(maxSize):"")
             +")...");
       
       String  frame = getFrame();
       moc.setSpaceSys(frame);
-      generateMoc(moc,fileOrder, path);
+      if( tileMoc==null ) generateMoc(moc,fileOrder, path);
       adjustSize(moc,true);
       moc.write(outputFile);
       
@@ -174,6 +187,7 @@ public class BuilderMoc extends Builder {
    
    /** Demande d'affichage des statistiques (via Task()) */
    public void showStatistics() {
+      if( startTime==0L ) return;   // Pas de parcours des tuiles (MOC accumul pendant leur gnration)
       long now = System.currentTimeMillis();
       long cTime = now-startTime;
       if( cTime<2000 ) return;
@@ -262,13 +276,25 @@ public class BuilderMoc extends Builder {
          throw e;
       } finally { if( dis!=null ) dis.close(); }
       
+      context.createHealpixOrder( (int) CDSHealpix.log2(fits.width) );
+      addPixelMoc(context,moc,fileOrder,fits,npix);
+   }
+
+   /** Ajout au MOC des cellules (au niveau mocOrder) couvertes par les pixels non vides d'une tuile.
+    * Ncessite d'avoir au pralable initialis context.createHealpixOrder(tileOrder)
+    * (utilis galement par BuilderTiles pour accumuler le MOC pendant la gnration des tuiles)
+    * @param moc le MOC  complter
+    * @param fileOrder l'ordre de la tuile
+    * @param fits la tuile
+    * @param npix le numro healpix de la tuile
+    */
+   static protected void addPixelMoc(Context context,SMoc moc,int fileOrder, Fits fits, long npix) throws Exception {
       long nside = fits.width;
       long min = nside * nside * npix;
       int mocOrder = moc.getMocOrder();
       int tileOrder = (int) CDSHealpix.log2(nside);
       
       int div = (fileOrder+tileOrder - mocOrder) *2;
-      context.createHealpixOrder( tileOrder );
       
       long oNpix=-1;  
       for( int y=0; y<fits.height; y++ ) {
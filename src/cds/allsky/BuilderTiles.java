@@ -21,15 +21,22 @@
 
 package cds.allsky;
 
+import java.awt.image.ColorModel;
 import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 
 import cds.aladin.Aladin;
+import cds.aladin.CanvasColorMap;
 import cds.aladin.MyInputStream;
 import cds.fits.CacheFits;
 import cds.fits.Fits;
@@ -50,8 +57,21 @@ public class BuilderTiles extends Builder {
    private Context.JpegMethod method;
 
    // Liste des Threads de calcul
-   protected ArrayList<ThreadBuilder> threadList = new ArrayList<>();
+   protected CopyOnWriteArrayList<ThreadBuilder> threadList = new CopyOnWriteArrayList<>();
+   
+   // Pool des threads de calcul dans le cas de l'ordonnanceur fork/join (null sinon)
+   protected ForkJoinPool forkJoinPool=null;
+   protected HpxFinderBin finderBin=null;      // Index HpxFinder binaire s'il existe (partag par les threads)
    private Mode coaddMode=Mode.REPLACETILE;
+   private String [] fusedFmt=null;            // Formats preview gnrs en mme temps que les tuiles FITS (mode fusionn)
+   private double [] fusedCut;                 // Intervalle de pixels pour les tuiles preview du mode fusionn
+   private byte [] fusedTcm;                   // Table de couleur (fonction de transfert) pour le mode fusionn
+   private volatile boolean fusedPartial;      // true si des tuiles existantes ont t reprises sans passer par write() (mode fusionn)
+   private ConcurrentHashMap<Thread,SMoc> tileMoc=null; // MOC des tuiles accumul par thread pendant la gnration, null si non utilis
+   private volatile boolean tileMocError;      // true si l'accumulation du MOC a chou (=> parcours classique par BuilderMoc)
+   private int tileMocOrder;                   // Ordre du MOC accumul
+   private boolean tileMocDeep;                // true si le MOC est calcul au niveau des pixels (mocOrder > ordre des tuiles)
+   private int tileMocFrame;                   // Frame prise en compte pour un gros cube, -1 pour toutes
 
    protected int ordermin = 3;
    protected int ordermax;
@@ -114,9 +134,19 @@ public class BuilderTiles extends Builder {
          context.info("Tile aggregation method="+Context.JpegMethod.MEAN);
          if( context.live ) context.info("Live HiPS => Weight tiles saved for potential future additions"); 
       }
+      initFusedPreview();
+      initTileMoc();
 
       build();
       
+      // Les tuiles preview ont t gnres en mme temps que les tuiles FITS, sauf si
+      // des tuiles existantes (et leur descendance) ont t reprises telles quelles
+      // => la passe ddie habituelle est alors ncessaire
+      if( fusedFmt!=null && !context.isTaskAborting() ) {
+         if( fusedPartial ) context.info("Existing tiles kept => "+context.getFusedPreview()+" tiles will be generated in a dedicated pass");
+         else for( String fmt : fusedFmt ) context.setFusedDone(fmt);
+      }
+
       // Mise  jour des proprits lies au traitement
       if( !context.isColor() ) {
          if( context.bitpix!=-1 ) context.setPropriete(Constante.KEY_HIPS_PIXEL_BITPIX,context.bitpix+"");
@@ -143,11 +173,80 @@ public class BuilderTiles extends Builder {
       context.setPropriete(Constante.KEY_HIPS_PROCESS_HIERARCHY, context.getJpegMethod().toString().toLowerCase());
       
       if( !context.isTaskAborting() ) { (new BuilderAllsky(context)).run(); context.done("ALLSKY file done"); }
-      if( !context.isTaskAborting() ) { (b=new BuilderMoc(context)).run(); b=null; }
+      if( !context.isTaskAborting() ) {
+         BuilderMoc builderMoc = new BuilderMoc(context);
+         builderMoc.setTileMoc( getTileMoc() );
+         (b=builderMoc).run(); b=null;
+      }
       
       context.removeListReport();
    }
 
+   /** Prparation de l'accumulation du MOC pendant la gnration des tuiles terminales (un MOC
+    * par thread, fusionns  la fin) afin d'viter le parcours, et en mode "deep resolution"
+    * la relecture, de toutes les tuiles par BuilderMoc. Uniquement possible si aucune tuile
+    * n'existe au pralable (elles ne seraient pas toutes parcourues, notamment en mode KEEPTILE).
+    * Le mocOrder est dtermin comme le fait BuilderMoc.createMoc() */
+   private void initTileMoc() {
+      tileMoc=null;
+      tileMocError=false;
+      int fileOrder = context.getOrder();
+      if( (new File(context.getOutputPath()+FS+"Norder"+fileOrder)).exists() ) {
+         context.info("Pre-existing tiles => MOC will be generated by scanning the tiles");
+         return;
+      }
+      int tileOrder = context.getTileOrder();
+      int mocOrder = context.getMocOrder();
+      if( mocOrder==-1 ) mocOrder = Math.max(fileOrder, Constante.DEFAULTMOCORDER);
+      if( mocOrder>tileOrder+fileOrder ) mocOrder=tileOrder+fileOrder;
+      tileMocOrder = mocOrder;
+      tileMocDeep = mocOrder>fileOrder && !context.isColor();
+      tileMocFrame = context.getDepth()>10 ? context.getDepth()/2 : -1;
+      if( tileMocDeep ) context.createHealpixOrder(tileOrder);
+      tileMoc = new ConcurrentHashMap<>();
+   }
+
+   /** Ajout d'une tuile terminale au MOC accumul par le thread courant */
+   private void addTileMoc(Fits f, long npix, int z) {
+      if( tileMoc==null || tileMocError || f==null ) return;
+      if( tileMocFrame>=0 && z!=tileMocFrame ) return;
+      Thread t = Thread.currentThread();
+      try {
+         SMoc m = tileMoc.get(t);
+         if( m==null ) {
+            m = new SMoc();
+            m.setMocOrder(tileMocOrder);
+            m.bufferOn();
+            tileMoc.put(t,m);
+         }
+         if( tileMocDeep ) {
+            f.reloadBitmap();
+            BuilderMoc.addPixelMoc(context,m,ordermax,f,npix);
+         } else m.add(ordermax,npix);
+      } catch( Exception e ) {
+         e.printStackTrace();
+         tileMocError=true;
+      }
+   }
+
+   /** Fusion des MOCs accumuls par les diffrents threads, null si non disponible */
+   private SMoc getTileMoc() {
+      if( tileMoc==null ) return null;
+      try {
+         if( tileMocError ) return null;
+         SMoc moc = new SMoc();
+         moc.setMocOrder(tileMocOrder);
+         for( SMoc m : tileMoc.values() ) {
+            m.bufferOff();
+            moc.add(m);
+         }
+         return moc;
+      } catch( Exception e ) {
+         e.printStackTrace();
+         return null;
+      } finally { tileMoc=null; }
+   }
+
    //   public boolean isAlreadyDone() {
    //      if( !context.actionPrecedeAction(Action.INDEX, Action.TILES)) return false;
    //      context.info("Pre-existing HEALPix FITS survey seems to be ready");
@@ -315,7 +414,7 @@ public class BuilderTiles extends Builder {
       //      if( context.cacheFits!=null && context.cacheFits.getStatNbOpen()>0 ) context.stat(context.cacheFits+"");
    }
 
-   Hashtable<Thread,ArrayList<Fits>> memPerThread;
+   protected MemoryGovernor memGovernor;      // Rservations mmoire et suivi des tuiles en cours de construction
 
    // Initialisation des statistiques
    private void initStat(int nbThread) {
@@ -324,7 +423,7 @@ public class BuilderTiles extends Builder {
       statTotalTime=statNodeTotalTime=0L;
       startTime = System.currentTimeMillis();
       totalTime=0L;
-      memPerThread = new Hashtable<>();
+      memGovernor = new MemoryGovernor(context);
    }
 
    //   private long maxMem=0;
@@ -356,15 +455,7 @@ public class BuilderTiles extends Builder {
    //   }
 
    // Suivi de mmoire d'un Thread particulier : suppression du Thread
-   private void rmThread(Thread t) {
-      Long key = new Long(t.hashCode());
-      synchronized( memPerThread ) {
-         ArrayList<Fits> m = memPerThread.get(key);
-         if( m!=null ) for( Fits f : m ) f.free();
-         memPerThread.remove(key);
-//         ThreadBuilderTile.nbThreads--;
-      }
-   }
+   private void rmThread(Thread t) { memGovernor.rmThread(t); }
 
    // Suivi de mmoire d'un Thread particulier : ajout d'un Fits
    protected void addFits(Thread t,Fits f) {
@@ -374,79 +465,20 @@ public class BuilderTiles extends Builder {
             throw new Exception();
          } catch( Exception e) { e.printStackTrace(); }
       }
-      synchronized( memPerThread ) {
-         ArrayList<Fits> m = memPerThread.get(t);
-         if( m==null ) {
-            m=new  ArrayList<>();
-            memPerThread.put(t,m);
-         }
-         m.add(f);
-      }
+      memGovernor.addFits(t,f);
    }
 
    // Suivi de mmoire d'un Thread particulier : retrait d'un Fits
+   // (le Fits peut avoir t calcul par un autre thread si le losange a t dlgu)
    protected void rmFits(Thread t,Fits f) {
-      synchronized( memPerThread ) {
-         ArrayList<Fits> m = memPerThread.get(t);
-         if( m==null ) return;
-         m.remove(f);
-      }
-   }
-   
-   // Libre les bitmaps des Fits en cours de construction pour faire de la place
-   protected long releaseBitmap() {
-      long size=0L;
-      synchronized( memPerThread ) {
-         for( Thread t : memPerThread.keySet() ) {
-            ArrayList<Fits> m = memPerThread.get(t);
-            for( Fits f : m ) {
-               try {
-                  if( f.isReleasable() ) size += f.releaseBitmap();
-               } catch( Exception e ) {  }
-            }
-         }
-      }
-      return size;
-   }
-
-   private long getUsedMem() {
-      long mem=0L;
-      try {
-         synchronized( memPerThread ) {
-            for( Thread t : memPerThread.keySet() ) {
-               ArrayList<Fits> m = memPerThread.get(t);
-               mem += getUsedMem(m);
-            }
-         }
-      } catch( Exception e ) { }
-      return mem;
+      if( f==null ) return;
+      memGovernor.rmFits(t,f);
    }
 
-   private String showMem() {
-      try {
-         StringBuffer s = new StringBuffer();
-         synchronized( memPerThread ) {
-            for( Thread t : memPerThread.keySet() ) {
-               ArrayList<Fits> m = memPerThread.get(t);
-               if( s.length()>0 ) s.append(", ");
-               s.append(t.getName()+":"+m.size()+"tiles"+"/"+cds.tools.Util.getUnitDisk( getUsedMem(m) ));
-            }
-         }
-         return s.toString();
-      } catch( Exception e ) {
-          return null;
-      }
-   }
+   // Libre les bitmaps des Fits en cours de construction pour faire de la place
+   protected long releaseBitmap() { return memGovernor.releaseBitmap(); }
 
-   // Suivi de mmoire d'un Thread particulier : retourne la mmoire utilis (en bytes)
-   private long getUsedMem(ArrayList<Fits> m) {
-      if( m==null ) return 0L;
-      long mem=0L;
-      try {
-         for( Fits f : m ) mem += f.getMem();
-      } catch( Exception e ) { }
-      return mem;
-   }
+   private String showMem() { return memGovernor.showMem(); }
 
    // Mise  jour des stats
    protected void updateStat(int deltaNbThread,int deltaTile,int deltaEmptyTile,long timeTile,int deltaNodeTile,long timeNodeTile) {
@@ -585,16 +617,33 @@ public class BuilderTiles extends Builder {
 
       activateCache(size,2L*size/3L);
 
-      // Lancement des threads de calcul
-      launchThreadBuilderHpx(nbThread);
+      // Index HpxFinder binaire utilisable ?
+      finderBin = HpxFinderBin.open(context.getHpxFinderPath());
+      if( finderBin!=null ) {
+         if( finderBin.getOrder()!=ordermax ) { finderBin.close(); finderBin=null; }
+         else context.info("Binary HpxFinder index used ("+finderBin.getNbRecord()+" progenitors)");
+      }
 
-      // Attente de la fin du travail
-      while( /* !stopped && */ !fifo.isEmpty() || stillWorking() ) {
-         cds.tools.Util.pause(1000);
-         infoInCaseOfProblem();
+      try {
+         // Ordonnancement par vol de tches (fork/join)
+         if( isForkJoin() ) buildForkJoin(nbThread);
+
+         else {
+
+            // Lancement des threads de calcul
+            launchThreadBuilderHpx(nbThread);
+
+            // Attente de la fin du travail
+            while( /* !stopped && */ !fifo.isEmpty() || stillWorking() ) {
+               cds.tools.Util.pause(1000);
+               infoInCaseOfProblem();
+            }
+
+            destroyThreadBuilderHpx();
+         }
+      } finally {
+         if( finderBin!=null ) { finderBin.close(); finderBin=null; }
       }
-      
-      destroyThreadBuilderHpx();
 //      if( stopped ) return;
       
       if( !context.isTaskAborting() ) {
@@ -603,6 +652,11 @@ public class BuilderTiles extends Builder {
             context.stat("Tile overlay stats : max overlays="+ThreadBuilderTile.statMaxOverlays+", " +
                   ThreadBuilderTile.statOnePass+" in one step, "+
                   ThreadBuilderTile.statMultiPass+" in multi steps");
+         if( ThreadBuilderTile.statGridCells.get()>0 )
+            context.stat("Grid resampling stats : max residual="+cds.tools.Util.myRound(ThreadBuilderTile.getStatMaxResidual()+"",4)+" pix, "+
+                  ThreadBuilderTile.statGridExactCells.get()+"/"+ThreadBuilderTile.statGridCells.get()+" cells computed exactly (tolerance="+
+                  context.getGridTolerance()+" pix)");
+         if( memGovernor!=null && memGovernor.getStatReserve()>0 ) context.stat("Memory governor stats : "+memGovernor);
          if( context.cacheFits!=null ) Aladin.trace(3,"Cache FITS status: "+ context.cacheFits);
          Aladin.trace(3,"Healpix survey build in "+cds.tools.Util.getTemps((System.currentTimeMillis()-t)*1000L));
       }
@@ -685,36 +739,20 @@ public class BuilderTiles extends Builder {
 
       // si on n'est pas dans le Moc, il faut retourner le fichier
       // pour la construction de l'arborescence...
-      if( !context.isInMocTree(order,npix) ) return findLeaf(file);
+      if( !context.isInMocTree(order,npix) ) return keptTile( findLeaf(file) );
       
       // si le losange a dj t calcul on le renvoie directement
       // ou que l'on n'a pas besoin de descendre plus loin dans c"ette branche
       if( coaddMode==Mode.KEEPTILE ) {
-         Fits oldOut = findLeaf(hpx,file,path,order,npix, z);
-         if( oldOut!=null ) {
-            SMoc moc = context.getRegion();
-            SMoc a = new SMoc(order+"/"+npix);
-            a.setSys( context.getFrameCode() );
-            moc = moc.intersection(a);
-            moc.setMocOrder(ordermax);
-            int nbTiles = (int)moc.getNbValues();
-            updateStat(0,0,nbTiles,0,nbTiles/4,0);
-            return oldOut;
-         }
+         Fits oldOut = findKeptTile(hpx,file,path,order,npix, z);
+         if( oldOut!=null ) return oldOut;
       }
 
       Fits f = null;
 
       // Cration d'un losange terminal
       if( order==ordermax )  {
-         hpx.threadBuilder.setInfo("createLeavveHpx "+file+"...");
-         try { f = createLeaveHpx(hpx,file,path,order,npix,z); }
-         catch( Exception e ) {
-            hpx.threadBuilder.setInfo("createLeavveHpx error "+file+"...");
-            System.err.println("BuilderTiles.createLeave error: "+file);
-            e.printStackTrace();
-            return null;
-         }
+         f = createLeave(hpx,file,path,order,npix,z);
 
          // Cration des branches filles, et cumul des rsultats
       } else {
@@ -754,13 +792,7 @@ public class BuilderTiles extends Builder {
             if( item[i].hasBeenUsed() ) fils[i] = item[i].getFits();
          }
 
-         hpx.threadBuilder.setInfo("createNodeHpx "+file+"...");
-         try { f = createNodeHpx(file,path,order,npix,fils,z); }
-         catch( Exception e ) {
-            System.err.println("BuilderTiles.createNodeHpx error: "+file);
-            e.printStackTrace();
-            return null;
-         }
+         f = createNode(hpx,file,path,order,npix,fils,z);
       }
 
       // On soulage la mmoire RAM des losanges qui ne vont pas servir tout de suite
@@ -769,6 +801,203 @@ public class BuilderTiles extends Builder {
       return f;
    }
    
+   /** Rcupration d'un losange dj calcul en mode KEEPTILE (mise  jour des stats
+    * pour toute sa descendance), null si non trouv */
+   private Fits findKeptTile(ThreadBuilderTile hpx, String file, String path,int order,long npix, int z) throws Exception {
+      Fits oldOut = keptTile( findLeaf(hpx,file,path,order,npix, z) );
+      if( oldOut==null ) return null;
+      SMoc moc = context.getRegion();
+      SMoc a = new SMoc(order+"/"+npix);
+      a.setSys( context.getFrameCode() );
+      moc = moc.intersection(a);
+      moc.setMocOrder(ordermax);
+      int nbTiles = (int)moc.getNbValues();
+      updateStat(0,0,nbTiles,0,nbTiles/4,0);
+      return oldOut;
+   }
+   
+   /** Cration d'un losange terminal, null en cas d'erreur */
+   private Fits createLeave(ThreadBuilderTile hpx, String file, String path,int order,long npix, int z) {
+      hpx.threadBuilder.setInfo("createLeavveHpx "+file+"...");
+      try {
+         Fits f = createLeaveHpx(hpx,file,path,order,npix,z);
+         addTileMoc(f,npix,z);
+         return f;
+      } catch( Exception e ) {
+         hpx.threadBuilder.setInfo("createLeavveHpx error "+file+"...");
+         System.err.println("BuilderTiles.createLeave error: "+file);
+         e.printStackTrace();
+         return null;
+      }
+   }
+   
+   /** Cration d'un losange intermdiaire  partir de ses 4 fils, null en cas d'erreur */
+   private Fits createNode(ThreadBuilderTile hpx, String file, String path,int order,long npix, Fits fils[], int z) {
+      hpx.threadBuilder.setInfo("createNodeHpx "+file+"...");
+      try { return createNodeHpx(file,path,order,npix,fils,z); }
+      catch( Exception e ) {
+         System.err.println("BuilderTiles.createNodeHpx error: "+file);
+         e.printStackTrace();
+         return null;
+      }
+   }
+   
+   /** true si l'arbre des tuiles est calcul par l'ordonnanceur fork/join
+    * (pas pour BuilderMirror qui ajuste lui-mme son nombre de threads) */
+   protected boolean isForkJoin() {
+      return context.isForkJoinScheduler() && !(this instanceof BuilderMirror);
+   }
+   
+   /** Calcul de l'arbre des tuiles par vol de tches (fork/join). Chaque branche
+    * de la fifo initiale devient une tche racine, chaque losange intermdiaire
+    * dlgue ses 4 fils sous la forme de sous-tches que les threads libres peuvent voler,
+    * et le losange parent est calcul en continuation par le thread qui termine le dernier
+    * fils => ni attente active des fils, ni suspension de threads.
+    */
+   private void buildForkJoin(int nbThread) throws Exception {
+      initStat(nbThread);
+      context.createHealpixOrder(context.getTileOrder());
+      ThreadBuilderTile.hasShape = new HashMap<>();
+      
+      forkJoinPool = new ForkJoinPool(nbThread, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+         public ForkJoinWorkerThread newThread(ForkJoinPool pool) { return new ForkJoinBuilder(pool); }
+      }, null, false);
+      
+      try {
+         ArrayList<TileTask> roots = new ArrayList<>();
+         Item item;
+         while( (item=getNextNpix())!=null ) {
+            TileTask task = new TileTask(null,context.getOutputPath(),item.order,item.npix,item.z,-1);
+            roots.add(task);
+            forkJoinPool.execute(task);
+         }
+
+         // Attente de la fin du travail
+         while( !forkJoinPool.awaitQuiescence(1,TimeUnit.SECONDS) ) infoInCaseOfProblem();
+         
+         for( TileTask task : roots ) {
+            try { task.join(); }
+            catch( Throwable e ) {
+               Aladin.trace(1,"*** fork/join branch "+task.order+"/"+task.npix+" exception !!! ("+e.getMessage()+")");
+               e.printStackTrace();
+               context.taskAbort();
+            }
+         }
+      } finally {
+         forkJoinPool.shutdownNow();
+         memGovernor.rmDeadThreads();
+      }
+   }
+   
+   /** Thread de calcul de l'ordonnanceur fork/join. Son ThreadBuilder associ n'est jamais
+    * dmarr, il sert uniquement au suivi (info, mode) pour les stats et le debug */
+   class ForkJoinBuilder extends ForkJoinWorkerThread {
+      ThreadBuilderTile threadBuilderTile;
+      ThreadBuilder status;
+      
+      ForkJoinBuilder(ForkJoinPool pool) {
+         super(pool);
+         synchronized( lockObj ) { setName("Builder"+threadId++); }
+         threadBuilderTile = new ThreadBuilderTile(context,BuilderTiles.this);
+         status = new ThreadBuilder(getName(),threadBuilderTile);
+         status.suspendable=false;
+         threadList.add(status);
+      }
+      
+      protected void onStart() {
+         super.onStart();
+         status.mode=ThreadBuilder.EXEC;
+      }
+      
+      protected void onTermination(Throwable exception) {
+         status.mode=ThreadBuilder.DIED;
+         status.info="Thread died";
+         
+         // Un thread inactif peut tre arrt par le pool en cours de calcul : ses tuiles
+         // restantes peuvent encore tre attendues par un losange pre calcul par un autre
+         // thread (rmFits() les retrouve), elles ne seront libres qu'en fin de calcul
+         if( getPool().isShutdown() ) rmThread(this);
+         super.onTermination(exception);
+      }
+   }
+   
+   /** Tche fork/join de calcul d'un losange et de sa descendance.
+    * Pour un losange intermdiaire, la tche se termine aprs avoir lanc ses 4 fils,
+    * et c'est onCompletion(...) qui calcule le losange une fois les 4 fils prts
+    * (continuation) puis le remonte  son parent. */
+   class TileTask extends CountedCompleter<Fits> {
+      private static final long serialVersionUID = 1L;
+      private final TileTask parent;
+      private final String path;
+      private final int order;
+      private final long npix;
+      private final int z;
+      private final int quad;       // Indice du fils dans le losange parent (-1 pour une racine)
+      private Fits [] fils=null;    // Les 4 fils, uniquement pour un losange intermdiaire
+      private Fits fits=null;       // Le losange calcul
+      
+      TileTask(TileTask parent, String path, int order, long npix, int z, int quad) {
+         super(parent);
+         this.parent=parent;
+         this.path=path;
+         this.order=order;
+         this.npix=npix;
+         this.z=z;
+         this.quad=quad;
+      }
+      
+      public Fits getRawResult() { return fits; }
+      
+      private ThreadBuilderTile getThreadBuilderTile() {
+         return ((ForkJoinBuilder)Thread.currentThread()).threadBuilderTile;
+      }
+      
+      public void compute() {
+         if( context.isTaskAborting() ) throw new RuntimeException("Task abort !");
+         ThreadBuilderTile hpx = getThreadBuilderTile();
+         String file = Util.getFilePath(path,order,npix,z);
+         
+         try {
+            // Mme logique que createHpx(...) pour les cas sans descente
+            if( !context.isInMocTree(order,npix) ) { fits = keptTile( findLeaf(file) ); tryComplete(); return; }
+            if( coaddMode==Mode.KEEPTILE ) {
+               fits = findKeptTile(hpx,file,path,order,npix,z);
+               if( fits!=null ) { tryComplete(); return; }
+            }
+         } catch( Exception e ) {
+            throw new RuntimeException(e.getMessage(),e);
+         }
+         
+         // Losange terminal
+         if( order==ordermax ) {
+            fits = createLeave(hpx,file,path,order,npix,z);
+            tryComplete();
+            return;
+         }
+         
+         // Losange intermdiaire => 3 fils dlgus (volables), le dernier trait directement
+         fils = new Fits[4];
+         setPendingCount(3);
+         for( int i=0; i<3; i++ ) new TileTask(this,path,order+1,npix*4+i,z,i).fork();
+         hpx.threadBuilder.setInfo("CreateHpx go to next order => "+(order+1)+"/"+(npix*4+3)+"...");
+         new TileTask(this,path,order+1,npix*4+3,z,3).compute();
+      }
+      
+      public void onCompletion(CountedCompleter<?> caller) {
+         if( fils!=null ) {
+            if( context.isTaskAborting() ) throw new RuntimeException("Task abort !");
+            String file = Util.getFilePath(path,order,npix,z);
+            fits = createNode(getThreadBuilderTile(),file,path,order,npix,fils,z);
+            fils=null;
+         }
+         
+         if( parent!=null ) parent.fils[quad] = fits;
+         else rmFits(Thread.currentThread(), fits);
+         
+         if( order==3 && z==0 ) setProgressBar((int)npix);
+      }
+   }
+   
 //   // Gnration des 4 fils en parallle
 //   private void multiThreadCreateHpx(ThreadBuilderTile hpx, Fits [] fils, String path,int order,long npix, int z) throws Exception {
 //      Item [] item = new Item[3];
@@ -1022,6 +1251,7 @@ public class BuilderTiles extends Builder {
    
    /** Retourne le nombre de threads actifs */
    protected int getNbThreads() {
+      if( forkJoinPool!=null ) return forkJoinPool.getPoolSize();
       int nb=0;
       try {
          for( ThreadBuilder tb : threadList ) {
@@ -1069,6 +1299,7 @@ public class BuilderTiles extends Builder {
    }
 
    int getNbThreadRunning() {
+      if( forkJoinPool!=null ) return forkJoinPool.getActiveThreadCount();
       int n=0;
       Iterator<ThreadBuilder> it = threadList.iterator();
       while( it.hasNext() ) {
@@ -1125,7 +1356,7 @@ public class BuilderTiles extends Builder {
       if( !inTree ||
             fils[0]==null && fils[1]==null && fils[2]==null && fils[3]==null) {
          if( isColor ) return null;
-         Fits f = findLeaf(file);
+         Fits f = keptTile( findLeaf(file) );
          addFits(Thread.currentThread(),f);
          return f;
       }
@@ -1280,6 +1511,59 @@ public class BuilderTiles extends Builder {
       else {
          out.addDataSum();
          out.writeFITS(filename);
+         if( fusedFmt!=null ) writeFusedPreview(file,out);
+      }
+   }
+
+   /** Mmorise qu'une tuile existante est reprise telle quelle, sans passer par write() :
+    * ses tuiles preview (et celles de sa descendance) ne seront pas gnres en mode fusionn
+    * @return la tuile elle-mme */
+   private Fits keptTile(Fits f) {
+      if( f!=null ) fusedPartial=true;
+      return f;
+   }
+
+   /** Prparation du mode fusionn : les tuiles JPEG et/ou PNG sont gnres directement
+    *  partir des tuiles FITS en mmoire (terminales et intermdiaires), sans seconde
+    * descente de l'arborescence ni relecture des tuiles FITS. L'intervalle de pixels doit donc
+    * tre connu ds maintenant (pixelCut fourni ou estim sur l'chantillon initial) */
+   private void initFusedPreview() throws Exception {
+      fusedFmt=null;
+      fusedPartial=false;
+      ArrayList<String> list = context.getFusedPreview();
+      if( list==null || list.size()==0 || context.isColor() ) return;
+
+      double [] cut = context.getCut();
+      if( cut==null || cut[0]==cut[1] ) {
+         context.warning("No valid pixel cut => fused "+list+" tile generation ignored (done in a dedicated pass)");
+         return;
+      }
+
+      // Les tuiles FITS intermdiaires sont calcules par moyenne, les autres mthodes
+      // ncessitent la seconde passe habituelle
+      if( context.getJpegMethod()!=Context.JpegMethod.MEAN ) {
+         context.warning("Tile aggregation method "+context.getJpegMethod()+" => fused "+list+" tile generation ignored (done in a dedicated pass)");
+         return;
+      }
+
+      ColorModel cm = context.getFct()==null ? null : CanvasColorMap.getCM(0, 128, 255,false,
+            0/*PlanImage.CMGRAY*/, context.getFct().code());
+      fusedTcm = cm==null ? null : cds.tools.Util.getTableCM(cm,2);
+      fusedCut = cut;
+      fusedFmt = list.toArray(new String[list.size()]);
+      double bz = context.bzero;
+      double bs = context.bscale;
+      context.info("Fused mode => "+list+" tiles generated from the in-memory FITS tiles, pixel cut ["
+            +ip(cut[0],bz,bs)+" .. "+ip(cut[1],bz,bs)+"] ("+context.getTransfertFct()+")");
+   }
+
+   /** Gnration des tuiles preview du mode fusionn  partir de la tuile FITS qui vient d'tre crite.
+    * On n'utilise pas Fits.writeCompressed() qui changerait le nom de fichier associ  la tuile
+    * (utilis pour recharger ses pixels s'ils ont t librs) */
+   private void writeFusedPreview(String file, Fits out) throws Exception {
+      for( String fmt : fusedFmt ) {
+         String ext = fmt.equals("png") ? ".png" : ".jpg";
+         out.writePreviewFile(file+ext,fusedCut[0],fusedCut[1],fusedTcm,fmt);
       }
    }
 
@@ -1300,7 +1584,7 @@ public class BuilderTiles extends Builder {
       if( !isInList && coaddMode!=Mode.REPLACETILE ) {
          oldOut = findLeaf(file);
          if( !(oldOut==null && context.isMocDescendant(order,npix) ) ) {
-            addFits(Thread.currentThread(), oldOut);
+            addFits(Thread.currentThread(), keptTile(oldOut));
             return oldOut;
          }
       }
@@ -1313,7 +1597,7 @@ public class BuilderTiles extends Builder {
             if( oldOut==null ) oldOut = findLeaf(file);
             if( oldOut!=null && coaddMode==Mode.KEEPTILE ) {
                out=null;
-               addFits(Thread.currentThread(), oldOut);
+               addFits(Thread.currentThread(), keptTile(oldOut));
                return oldOut;
             }
             if( oldOut!=null ) {
@@ -43,7 +43,7 @@ public class CacheFitsWriter extends CacheFits {
       Util.createPath(name);
       f.fits.addDataSum();
       f.fits.writeFITS(name);
-      map.remove(name);
+      super.remove(name);
    }
    
    /** Ajout direct d'un Fits dans la gestion du cache */
@@ -54,6 +54,7 @@ public class CacheFitsWriter extends CacheFits {
          FitsFile f = new FitsFile();
          f.fits = fits;
          map.put(filename,f);
+         account(f);
          statNbOpen++;
       }
    }
@@ -116,6 +116,12 @@ public class Context {
    public int dataArea = Constante.SHAPE_UNKNOWN; // Type d'observable (totalit, en ellipse ou en rectangle)
    public double maxRatio = Constante.PIXELMAXRATIO; // Rapport max tolrable entre hauteur et largeur d'une image source
    protected boolean fading=false;           // Activation du fading entre les images originales
+   protected boolean mmap=false;             // Projection mmoire (memory-mapped) des pixels des images originales
+   protected boolean finderBin=false;        // Gnration de l'index HpxFinder binaire (HpxFinder/Finder.bin)
+   protected ArrayList<String> fusedPreview=null; // Formats preview (jpeg,png) gnrs pendant l'action TILES (mode fusionn), null si aucun
+   protected ArrayList<String> fusedDone=new ArrayList<>(); // Formats preview dj gnrs par le mode fusionn
+   protected int gridStep=0;                 // Pas de la grille de points de contrle pour la projection inverse (0 = calcul exact pour chaque pixel)
+   protected double gridTolerance=0.01;      // Erreur max tolre sur l'interpolation de la grille (en pixels des images originales)
    protected boolean mixing=true;            // Activation du mlange des pixels des images originales
    protected boolean fake=false;             // Activation du mode "just-print norun"
    protected boolean cdsLint=false;          // Activation du mode "cds" pour LINT (plus de vrif)
@@ -144,6 +150,7 @@ public class Context {
    private JpegMethod jpegMethod = JpegMethod.MEDIAN;
    protected Mode mode=Mode.getDefault();   // Methode de traitement par dfaut
    protected int maxNbThread=-1;             // Nombre de threads de calcul max impos par l'utilisateur
+   protected boolean forkJoin=false;         // true si l'arbre des tuiles est calcul par vol de tches (scheduler=forkjoin)
    protected String creator=null;          // Le nom de la personne qui a fait le HiPS
    protected String status=null;             // status du HiPs (private|public clonable|unclonable|clonableOnce)
    protected String hipsCheckCode=null;                // La ligne CRC associ au HiPS
@@ -305,6 +312,7 @@ public class Context {
    public boolean isInMoc(int order,long npix) { return moc==null || moc.isIntersecting(order,npix); }
    public boolean isMocDescendant(int order,long npix) { return moc==null || moc.isIncluding(order,npix); }
    public int getMaxNbThread() { return maxNbThread; }
+   public boolean isForkJoinScheduler() { return forkJoin; }
    public int getMocOrder() { return mocOrder; }
    public int getTMocOrder() { return mocTimeOrder; }
    public long getMocMaxSize() { return mocMaxSize; }
@@ -333,8 +341,52 @@ public class Context {
    public void setHipsId(String s) { hipsId= canonHipsId(s); }
    public void setLabel(String s)     { label=s; }
    public void setMaxNbThread(int max) { maxNbThread = max; }
+   public void setScheduler(String s) throws Exception {
+      if( s.equalsIgnoreCase("forkjoin") ) forkJoin=true;
+      else if( s.equalsIgnoreCase("fifo") ) forkJoin=false;
+      else throw new Exception("Unknown scheduler ["+s+"] (=> only \"fifo\" or \"forkjoin\")");
+   }
    public void setFading(boolean fading) { this.fading = fading; }
    public void setFading(String s) { fading = s.equalsIgnoreCase("false") ? false : true; }
+   public void setMmap(String s) { mmap = s.equalsIgnoreCase("false") ? false : true; }
+   public boolean isMmap() { return mmap; }
+   
+   /** Retourne true si les pixels de cette image originale seront projets en mmoire plutt que chargs
+    * (FITS non compress, et aucun filtre modifiant les pixels : skyval, expTime, pixelGood, dataArea).
+    * Utilis  la fois par CacheFits (ouverture) et par le calcul des rservations mmoire */
+   public boolean isMappable(String name) {
+      if( !mmap || skyvalName!=null || expTimeName!=null || pixelGood!=null
+            || dataArea!=Constante.SHAPE_UNKNOWN ) return false;
+      int i = name.lastIndexOf('[');
+      String s = (i>0 ? name.substring(0,i) : name).toLowerCase();
+      return !s.endsWith(".gz") && !s.endsWith(".fz") && !s.endsWith(".hhh")
+            && !s.endsWith(".jpg") && !s.endsWith(".png");
+   }
+   public void setFinderBin(String s) { finderBin = s.equalsIgnoreCase("false") ? false : true; }
+   public boolean isFinderBin() { return finderBin; }
+
+   /** Ajoute un format preview ("jpeg" ou "png")  gnrer directement pendant l'action TILES */
+   public void addFusedPreview(String fmt) {
+      if( fusedPreview==null ) fusedPreview = new ArrayList<>();
+      if( !fusedPreview.contains(fmt) ) fusedPreview.add(fmt);
+   }
+   public ArrayList<String> getFusedPreview() { return fusedPreview; }
+
+   /** Mmorise que les tuiles preview du format indiqu ont dj t gnres par l'action TILES */
+   public void setFusedDone(String fmt) { if( !fusedDone.contains(fmt) ) fusedDone.add(fmt); }
+   public boolean isFusedDone(String fmt) { return fusedDone.contains(fmt); }
+   public int getGridStep() { return gridStep; }
+   public double getGridTolerance() { return gridTolerance; }
+   public void setGridStep(String s) throws Exception {
+      int n = Integer.parseInt(s);
+      if( n<0 || n==1 ) throw new Exception("Grid step must be 0 (exact computation) or >=2 ["+s+"]");
+      gridStep=n;
+   }
+   public void setGridTolerance(String s) throws Exception {
+      double t = Double.parseDouble(s);
+      if( t<0 ) throw new Exception("Grid tolerance must be positive ["+s+"]");
+      gridTolerance=t;
+   }
    public void setMixing(String s) { mixing = s.equalsIgnoreCase("false") ? false : true; }
    public void setPartitioning(String s) {
       try {
@@ -30,6 +30,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.TimeZone;
 import java.util.Vector;
@@ -197,10 +198,14 @@ public class HipsGen {
         } else if (opt.equalsIgnoreCase("hips_pixel_bitpix")) { context.setBitpix(Integer.parseInt(val));
         } else if (opt.equalsIgnoreCase("hips_frame"))   { context.setFrameName(val);
         } else if (opt.equalsIgnoreCase("maxThread"))    { context.setMaxNbThread(Integer.parseInt(val));
+        } else if (opt.equalsIgnoreCase("scheduler"))    { context.setScheduler(val);
         } else if (opt.equalsIgnoreCase("skyval"))       { context.setSkyval(val);
         } else if (opt.equalsIgnoreCase("skyvalues"))    { context.setSkyValues(val);
         } else if (opt.equalsIgnoreCase("exptime"))      { context.setExpTime(val);
         } else if (opt.equalsIgnoreCase("fading"))       { context.setFading(val);
+        } else if (opt.equalsIgnoreCase("mmap"))         { context.setMmap(val);
+        } else if (opt.equalsIgnoreCase("gridStep"))     { context.setGridStep(val);
+        } else if (opt.equalsIgnoreCase("gridTol"))      { context.setGridTolerance(val);
         } else if (opt.equalsIgnoreCase("mixing"))       { context.setMixing(val);
         } else if (opt.equalsIgnoreCase("color"))        { context.setColor(val);
         } else if (opt.equalsIgnoreCase("inRed"))        { context.setRgbInput(val, 0); flagRGB=true;
@@ -214,6 +219,7 @@ public class HipsGen {
         } else if (opt.equalsIgnoreCase("luptonS"))      { context.setRgbLuptonS(val);
         } else if (opt.equalsIgnoreCase("img"))          { context.setImgEtalon(val);
         } else if (opt.equalsIgnoreCase("fitskeys"))     { context.setIndexFitskey(val);
+        } else if (opt.equalsIgnoreCase("finderBin"))    { context.setFinderBin(val);
         } else if (opt.equalsIgnoreCase("hips_status"))  { context.setStatus(val);
         } else if (opt.equalsIgnoreCase("target"))       { context.setTarget(val);
         } else if (opt.equalsIgnoreCase("targetRadius")) { context.setTargetRadius(val);
@@ -507,6 +513,15 @@ public class HipsGen {
                     return;
                 }
             }
+            // Groupe d'actions fusionnes (ex: fits,jpeg,png) => les tuiles preview
+            // sont gnres en mme temps que les tuiles FITS
+            else if( arg.indexOf(',')>0 ) {
+                try { setFusedActions(arg); }
+                catch (Exception e) {
+                    context.error(e.getMessage());
+                    return;
+                }
+            }
             // les autres mots sont supposes des actions (si +ieurs, seule la
             // dernire est garde)
             else {
@@ -677,8 +692,8 @@ public class HipsGen {
                     else if( a==Action.DETAILS ) { actions.add(i, Action.CLEANDETAILS); i++; }
                     else if( a==Action.TILES )   { actions.add(i, Action.CLEANTILES);   i++; }
                     else if( a==Action.MAPTILES ){ actions.add(i, Action.CLEANTILES);   i++; }
-                    else if( a==Action.JPEG )    { actions.add(i, Action.CLEANJPEG);    i++; }
-                    else if( a==Action.PNG )     { actions.add(i, Action.CLEANPNG);     i++; }
+                    else if( a==Action.JPEG )    { actions.add(getCleanIndex(i,"jpeg"), Action.CLEANJPEG); i++; }
+                    else if( a==Action.PNG )     { actions.add(getCleanIndex(i,"png"), Action.CLEANPNG);   i++; }
                     else if( a==Action.RGB )     { actions.add(i, Action.CLEAN);        i++; }
                     else if( a==Action.CUBE )    { actions.add(i, Action.CLEAN);        i++; }
                     else if( a==Action.CHECKCODE ) context.setCheckForce(true);
@@ -743,6 +758,42 @@ public class HipsGen {
 
     }
 
+    /** Position d'insertion du nettoyage pralable d'un format preview : avant l'action TILES
+     * en mode fusionn (les tuiles preview y sont gnres), sinon juste avant l'action elle-mme */
+    private int getCleanIndex(int i, String fmt) {
+        ArrayList<String> fused = context.getFusedPreview();
+        if( fused==null || !fused.contains(fmt) ) return i;
+        int j = actions.indexOf(Action.CLEANTILES);
+        return j>=0 && j<i ? j : i;
+    }
+
+    /** Traitement d'un groupe d'actions fusionnes, ex: "fits,jpeg,png" ou "TILES,PNG".
+     * L'action TILES (alias fits) est obligatoire, les actions JPEG et PNG seront ralises
+     *  partir des tuiles FITS en mmoire pendant l'action TILES */
+    private void setFusedActions(String arg) throws Exception {
+        ArrayList<Action> group = new ArrayList<>();
+        for( String s : arg.split(",") ) {
+            s = s.trim();
+            if( s.length()==0 ) continue;
+            Action a;
+            if( s.equalsIgnoreCase("fits") ) a=Action.TILES;
+            else {
+                try { a = Action.valueOf(s.toUpperCase()); }
+                catch( Exception e ) { throw new Exception("Unknown action ["+s+"] in ["+arg+"] !"); }
+            }
+            if( a!=Action.TILES && a!=Action.JPEG && a!=Action.PNG ) {
+                throw new Exception("Only TILES (fits), JPEG and PNG actions can be fused ["+arg+"] !");
+            }
+            if( !group.contains(a) ) group.add(a);
+        }
+        if( !group.contains(Action.TILES) ) throw new Exception("Fused actions require TILES (fits) action ["+arg+"] !");
+        for( Action a : group ) {
+            if( a==Action.JPEG ) context.addFusedPreview("jpeg");
+            else if( a==Action.PNG ) context.addFusedPreview("png");
+            actions.add(a);
+        }
+    }
+
     // Positionnement du frame par dfaut (equatorial, sauf s'il y a dj
     // un HiPS existant, auquel cas il faut regarder dans ses proprits,
     // et s'il n'y en a a pas, c'est du galactic
@@ -820,7 +871,11 @@ public class HipsGen {
               "   UPDATE     "+Action.UPDATE.doc() + "\n"+
               "   CHECK      "+Action.CHECK.doc() + "\n" +
               "   CHECKDATASUM  "+Action.CHECKDATASUM.doc() + "\n" +
-              "   LINT       "+Action.LINT.doc() + "\n"
+              "   LINT       "+Action.LINT.doc() + "\n" +
+              "\n" +
+              "   TILES,JPEG,PNG (or fits,jpeg,png) Fused actions => preview tiles directly built from\n" +
+              "              the in-memory FITS tiles during TILES action (requires a known pixelCut;\n" +
+              "              dedicated pass if existing tiles are kept, e.g. incremental runs)\n"
               );
         System.out.println(
                         "Required parameter:\n"+
@@ -871,6 +926,8 @@ public class HipsGen {
                         //                  "   hhh=[path/]image[.ext] widthxheigth [wCellxhCell] Generation of .hhh files for CAR image"+ "\n" +
                         //                  "                       possibly splitted as an array of cells"+ "\n" +
                         "   maxThread=nn        Max number of computing threads" + "\n" +
+                        "   scheduler=fifo|forkjoin Tile tree scheduling, forkjoin for work stealing" + "\n" +
+                        "                       (TILES,JPEG,PNG,TREE,CONCAT - default fifo)" + "\n" +
                         "   target=ra +dec      Default HiPS target (ICRS deg)" + "\n"+
                         "   targetRadius=rad    Default HiPS radius view (deg)" + "\n"+
                         "   pilot=nnn           Pilot test limited to the nnn first original images." + "\n" +
@@ -883,6 +940,8 @@ public class HipsGen {
                         ".INDEX action:\n"+
                         "   fitskeys=list       Fits key list (blank separator) designing metadata FITS keyword value " + "\n" +
                         "                       to memorized in the HiPS index" + "\n" +
+                        "   finderBin=true|false True for also generating a compact memory-mapped binary index" + "\n" +
+                        "                       (HpxFinder/Finder.bin), automatically used by TILES (default false)" + "\n" +
                         ".TILES action:\n"+
                         "   shape=...           Shape of the observations (ellipse|rectangle)" + "\n" +
                         "   border=...          Margins (in pixels) to ignore in the original observations\n" +
@@ -893,6 +952,12 @@ public class HipsGen {
                         "   exptime=key         Fits key to use for adjusting variation of exposition" + "\n" +
                         "   fading=true|false   False to avoid fading effect on overlapping original images " + "\n" +
                         "                       (default is false)" + "\n" +
+                        "   mmap=true|false     True for memory-mapped access to uncompressed original FITS pixels" + "\n" +
+                        "                       (no heap copy, for survey larger than RAM - default false)" + "\n" +
+                        "   gridStep=nn         Inverse projection interpolated on a control point grid every nn" + "\n" +
+                        "                       tile pixels (ex: 16) instead of computed for each pixel (default 0)" + "\n" +
+                        "   gridTol=pix         Max residual of this interpolation in original pixels, exact" + "\n" +
+                        "                       computation beyond it (default 0.01)" + "\n" +
                         "   mixing=true|false   False to avoid mixing effect on overlapping original\n" +
                         "                       images (default is true [pixel average])" + "\n" +
                         "   pixelGood=min [max] Range of pixel values kept" + "\n" +
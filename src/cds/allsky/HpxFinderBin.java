@@ -0,0 +1,410 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.allsky;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import cds.aladin.Coord;
+import cds.tools.pixtools.Util;
+
+/**
+ * Index HpxFinder binaire (fichier HpxFinder/Finder.bin), quivalent compact des tuiles texte
+ * de l'ordre de l'index. Il est projet en mmoire (lecture seule) et partag par tous les
+ * threads de calcul des tuiles, ce qui vite l'analyse d'une ligne JSON par progniteur.
+ *
+ * Format (big endian) :
+ * <pre>
+ * En-tte      : MAGIC, VERSION, order, nbString, nbTile, nbRecord (int)
+ * Chanes      : nbString+1 offsets (int) puis les chanes concatnes (UTF-8)
+ * Tuiles       : nbTile npix (long) tris, puis nbTile+1 indices du premier enregistrement (int)
+ * Enregistrements : pathId, stcId, extraId (int), cellMem (long), ra, dec (double)
+ * </pre>
+ * stcId=-1 signifie que la ligne d'origine n'a pas le format standard : extraId dsigne
+ * alors la ligne complte. cellMem=-1 signifie que l'information est absente.
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+public final class HpxFinderBin {
+
+   static final public String FILE_FINDERBIN = "Finder.bin";
+
+   static final private int MAGIC   = 0x48505846;   // "HPXF"
+   static final private int VERSION = 1;
+   static final private int HEADER  = 6*4;
+   static final private int RECSIZE = 3*4 + 3*8;
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   private ByteBuffer buf;          // Fichier projet en mmoire
+   private int order;               // Ordre des tuiles indexes
+   private int nbString,nbTile,nbRecord;
+   private int posOffsets;          // Position des offsets des chanes
+   private int posStrings;          // Position des chanes
+   private int posNpix;             // Position des npix des tuiles
+   private int posFirst;            // Position des indices du premier enregistrement de chaque tuile
+   private int posRecords;          // Position des enregistrements
+
+   private HpxFinderBin(ByteBuffer buf) throws IOException {
+      this.buf=buf;
+      if( buf.getInt(0)!=MAGIC ) throw new IOException("Not a binary HpxFinder index");
+      if( buf.getInt(4)!=VERSION ) throw new IOException("Unsupported binary HpxFinder index version ["+buf.getInt(4)+"]");
+      order    = buf.getInt(8);
+      nbString = buf.getInt(12);
+      nbTile   = buf.getInt(16);
+      nbRecord = buf.getInt(20);
+      posOffsets = HEADER;
+      posStrings = posOffsets + (nbString+1)*4;
+      posNpix    = posStrings + buf.getInt(posOffsets+nbString*4);
+      posFirst   = posNpix + nbTile*8;
+      posRecords = posFirst + (nbTile+1)*4;
+      if( posRecords + (long)nbRecord*RECSIZE != buf.capacity() ) throw new IOException("Binary HpxFinder index corrupted");
+   }
+
+   /** Chemin du fichier d'index binaire associ au rpertoire HpxFinder */
+   static public String getFilename(String hpxFinderPath) {
+      return cds.tools.Util.concatDir(hpxFinderPath,FILE_FINDERBIN);
+   }
+
+   /** true si le rpertoire HpxFinder dispose d'un index binaire */
+   static public boolean exists(String hpxFinderPath) {
+      return new File( getFilename(hpxFinderPath) ).isFile();
+   }
+
+   /** Suppression de l'index binaire (devenu obsolte) s'il existe */
+   static public void delete(String hpxFinderPath) {
+      File f = new File( getFilename(hpxFinderPath) );
+      if( f.isFile() ) f.delete();
+   }
+
+   /** Ouverture (projection en mmoire) de l'index binaire du rpertoire HpxFinder
+    * @return null s'il n'y en a pas, ou s'il est inutilisable
+    */
+   static public HpxFinderBin open(String hpxFinderPath) {
+      File f = new File( getFilename(hpxFinderPath) );
+      if( !f.isFile() || f.length()<HEADER || f.length()>Integer.MAX_VALUE ) return null;
+      RandomAccessFile raf = null;
+      try {
+         raf = new RandomAccessFile(f,"r");
+         FileChannel channel = raf.getChannel();
+         return new HpxFinderBin( channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) );
+      } catch( Exception e ) {
+         System.err.println("Binary HpxFinder index ignored ["+f+"]: "+e.getMessage());
+         return null;
+      } finally {
+         if( raf!=null ) try { raf.close(); } catch( Exception e ) {}
+      }
+   }
+
+   /** Libration de la projection mmoire (effective au prochain GC) */
+   public void close() { buf=null; }
+
+   /** Ordre des tuiles indexes */
+   public int getOrder() { return order; }
+
+   /** Nombre de progniteurs (enregistrements) */
+   public int getNbRecord() { return nbRecord; }
+
+   /** Indice de la tuile npix, ou -1 si elle n'est pas indexe */
+   public int find(long npix) {
+      int lo=0, hi=nbTile-1;
+      while( lo<=hi ) {
+         int mid = (lo+hi)>>>1;
+         long v = buf.getLong(posNpix + mid*8);
+         if( v<npix ) lo=mid+1;
+         else if( v>npix ) hi=mid-1;
+         else return mid;
+      }
+      return -1;
+   }
+
+   /** Indice du premier enregistrement de la tuile d'indice tile */
+   public int getStart(int tile) { return buf.getInt(posFirst + tile*4); }
+
+   /** Indice qui suit le dernier enregistrement de la tuile d'indice tile */
+   public int getEnd(int tile) { return buf.getInt(posFirst + (tile+1)*4); }
+
+   /** Chemin (avec suffixe de cellule ventuel) du progniteur de l'enregistrement rec */
+   public String getPath(int rec) { return getString( buf.getInt(posRecords + rec*RECSIZE) ); }
+
+   /** Mmoire requise pour ouvrir une cellule du progniteur, -1 si inconnue */
+   public long getCellMem(int rec) { return buf.getLong(posRecords + rec*RECSIZE + 12); }
+
+   /** Ligne de l'index texte quivalente  l'enregistrement rec (avec son '\n') */
+   public String getLine(int rec) {
+      int pos = posRecords + rec*RECSIZE;
+      int stcId = buf.getInt(pos+4);
+      int extraId = buf.getInt(pos+8);
+      if( stcId==-1 ) return getString(extraId);
+      return BuilderIndex.getLine(getString(buf.getInt(pos)),
+            new Coord(buf.getDouble(pos+20),buf.getDouble(pos+28)), buf.getLong(pos+12),
+            getString(stcId), extraId==-1 ? null : getString(extraId));
+   }
+
+   private String getString(int id) {
+      int start = buf.getInt(posOffsets + id*4);
+      int end = buf.getInt(posOffsets + (id+1)*4);
+      byte [] b = new byte[end-start];
+      ByteBuffer dup = buf.duplicate();      // position propre au thread appelant
+      dup.position(posStrings+start);
+      dup.get(b);
+      return new String(b,UTF8);
+   }
+
+
+   /** Gnration de l'index binaire  partir des tuiles texte de l'ordre order du rpertoire HpxFinder
+    * @return le nombre de progniteurs (enregistrements) indexs
+    */
+   static public int build(String hpxFinderPath, int order) throws Exception {
+      File dir = new File( cds.tools.Util.concatDir(hpxFinderPath,"Norder"+order) );
+      if( !dir.isDirectory() ) throw new Exception("HpxFinder order dir not found ["+dir+"]");
+
+      // Recensement des tuiles
+      ArrayList<long []> tiles = new ArrayList<>();
+      File [] dirs = dir.listFiles();
+      if( dirs!=null ) {
+         for( File d : dirs ) {
+            if( !d.isDirectory() || !d.getName().startsWith("Dir") ) continue;
+            File [] list = d.listFiles();
+            if( list==null ) continue;
+            for( File f : list ) {
+               String name = f.getName();
+               if( !f.isFile() || !name.startsWith("Npix") ) continue;
+               try { tiles.add( new long[]{ Long.parseLong(name.substring(4)) } ); }
+               catch( NumberFormatException e ) { }   // Autre fichier (cube, extension...)
+            }
+         }
+      }
+      long [] npixs = new long[ tiles.size() ];
+      for( int i=0; i<npixs.length; i++ ) npixs[i] = tiles.get(i)[0];
+      tiles=null;
+      Arrays.sort(npixs);
+
+      // Lecture des tuiles et constitution des tables
+      Strings strings = new Strings();
+      int [] first = new int[ npixs.length+1 ];
+      Records records = new Records();
+      for( int i=0; i<npixs.length; i++ ) {
+         first[i] = records.size;
+         File f = new File( Util.getFilePath(hpxFinderPath,order,npixs[i]) );
+         BufferedReader in = null;
+         try {
+            in = new BufferedReader( new InputStreamReader( new FileInputStream(f)) );
+            String s;
+            while( (s=in.readLine())!=null ) records.add(strings, s+"\n");
+         } finally { if( in!=null ) in.close(); }
+      }
+      first[ npixs.length ] = records.size;
+
+      // Ecriture dans un fichier temporaire, puis remplacement
+      File fout = new File( getFilename(hpxFinderPath) );
+      File ftmp = new File( fout.getPath()+".tmp" );
+      DataOutputStream out = null;
+      try {
+         out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(ftmp), 64*1024) );
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(order);
+         out.writeInt(strings.size());
+         out.writeInt(npixs.length);
+         out.writeInt(records.size);
+         strings.write(out);
+         for( long npix : npixs ) out.writeLong(npix);
+         for( int n : first ) out.writeInt(n);
+         records.write(out);
+      } finally { if( out!=null ) out.close(); }
+      if( ftmp.length()>Integer.MAX_VALUE ) {
+         ftmp.delete();
+         throw new Exception("Binary HpxFinder index too large (>2GB) => keep text index only");
+      }
+      fout.delete();
+      if( !ftmp.renameTo(fout) ) throw new Exception("Cannot create binary HpxFinder index ["+fout+"]");
+      return records.size;
+   }
+
+   /** Rgnration des tuiles texte  partir de l'index binaire (les tuiles existantes sont remplaces)
+    * @return le nombre de tuiles crites
+    */
+   static public int export(String hpxFinderPath) throws Exception {
+      HpxFinderBin bin = open(hpxFinderPath);
+      if( bin==null ) throw new Exception("No binary HpxFinder index in ["+hpxFinderPath+"]");
+      try {
+         for( int tile=0; tile<bin.nbTile; tile++ ) {
+            long npix = bin.buf.getLong(bin.posNpix + tile*8);
+            String filename = Util.getFilePath(hpxFinderPath,bin.order,npix);
+            cds.tools.Util.createPath(filename);
+            OutputStream out = null;
+            try {
+               out = new BufferedOutputStream( new FileOutputStream(filename) );
+               for( int rec=bin.getStart(tile), end=bin.getEnd(tile); rec<end; rec++ ) {
+                  out.write( bin.getLine(rec).getBytes() );
+               }
+            } finally { if( out!=null ) out.close(); }
+         }
+         return bin.nbTile;
+      } finally { bin.close(); }
+   }
+
+   /** Table des chanes (ddoublonnes) en cours de construction */
+   static private final class Strings {
+      HashMap<String,Integer> ids = new HashMap<>();
+      ArrayList<byte []> list = new ArrayList<>();
+
+      int size() { return list.size(); }
+
+      int getId(String s) {
+         Integer id = ids.get(s);
+         if( id==null ) {
+            id = list.size();
+            ids.put(s,id);
+            list.add( s.getBytes(UTF8) );
+         }
+         return id;
+      }
+
+      void write(DataOutputStream out) throws IOException {
+         int offset=0;
+         for( byte [] b : list ) { out.writeInt(offset); offset+=b.length; }
+         out.writeInt(offset);
+         for( byte [] b : list ) out.write(b);
+      }
+   }
+
+   /** Enregistrements en cours de construction */
+   static private final class Records {
+      int size=0;
+      int [] ids = new int[3*1024];
+      long [] cellMem = new long[1024];
+      double [] coo = new double[2*1024];
+
+      // Ajout d'une ligne de l'index texte (avec son '\n')
+      void add(Strings strings, String line) {
+         if( size==cellMem.length ) {
+            ids = Arrays.copyOf(ids, ids.length*2);
+            cellMem = Arrays.copyOf(cellMem, cellMem.length*2);
+            coo = Arrays.copyOf(coo, coo.length*2);
+         }
+         String [] v = parse(line);
+         if( v!=null ) {
+            try {
+               double ra = Double.parseDouble(v[1]);
+               double dec = Double.parseDouble(v[2]);
+               long mem = Long.parseLong(v[3]);
+               String extra = v[5].length()==0 ? null : v[5];
+
+               // Seulement si la ligne peut tre reconstitue  l'identique
+               if( line.equals( BuilderIndex.getLine(v[0], new Coord(ra,dec), mem, v[4], extra) ) ) {
+                  ids[3*size]   = strings.getId(v[0]);
+                  ids[3*size+1] = strings.getId(v[4]);
+                  ids[3*size+2] = extra==null ? -1 : strings.getId(extra);
+                  cellMem[size] = mem;
+                  coo[2*size]   = ra;
+                  coo[2*size+1] = dec;
+                  size++;
+                  return;
+               }
+            } catch( NumberFormatException e ) { }
+         }
+
+         // Ligne conserve telle quelle
+         ids[3*size]   = strings.getId( getRawPath(line) );
+         ids[3*size+1] = -1;
+         ids[3*size+2] = strings.getId(line);
+         cellMem[size] = getRawCellMem(line);
+         coo[2*size] = coo[2*size+1] = Double.NaN;
+         size++;
+      }
+
+      void write(DataOutputStream out) throws IOException {
+         for( int i=0; i<size; i++ ) {
+            out.writeInt(ids[3*i]);
+            out.writeInt(ids[3*i+1]);
+            out.writeInt(ids[3*i+2]);
+            out.writeLong(cellMem[i]);
+            out.writeDouble(coo[2*i]);
+            out.writeDouble(coo[2*i+1]);
+         }
+      }
+   }
+
+   static final private String [] FIELDS = { "path", "ra", "dec", "cellmem", "stc" };
+
+   // Dcoupage d'une ligne au format standard (voir BuilderIndex.getLine())
+   // => path, ra, dec, cellmem, stc, suite ventuelle (mots cls FITS), ou null si autre format
+   static private String [] parse(String line) {
+      if( !line.startsWith("{ \"name\": \"") || !line.endsWith(" }\n") ) return null;
+      String [] v = new String[6];
+      int pos = line.indexOf('"',11);
+      for( int i=0; i<FIELDS.length; i++ ) {
+         String key = "\", \""+FIELDS[i]+"\": \"";
+         if( pos<0 || !line.startsWith(key,pos) ) return null;
+         pos += key.length();
+         int end = line.indexOf('"',pos);
+         if( end<0 ) return null;
+         v[i] = line.substring(pos,end);
+         pos = end;
+      }
+      v[5] = line.substring(pos+1,line.length()-3);
+      return v;
+   }
+
+   // Chemin du progniteur pour une ligne d'un autre format (ancien format : un chemin par ligne)
+   static private String getRawPath(String line) {
+      String s = line.endsWith("\n") ? line.substring(0,line.length()-1) : line;
+      if( s.length()==0 || s.charAt(0)!='{' ) return s;
+      int o = s.indexOf("path");
+      int o1 = s.indexOf(':',o);
+      int o2 = s.indexOf('"',o1+1);
+      int o3 = s.indexOf('"',o2+1);
+      return o<0 || o1<0 || o2<0 || o3<0 ? s : s.substring(o2+1,o3);
+   }
+
+   // Mmoire requise pour une cellule pour une ligne d'un autre format, -1 si absente
+   static private long getRawCellMem(String line) {
+      int o = line.indexOf("cellmem");
+      if( line.length()>0 && line.charAt(0)=='{' && o>-1 ) {
+         int o1 = line.indexOf(':',o);
+         int o2 = line.indexOf('"',o1+1);
+         int o3 = line.indexOf('"',o2+1);
+         try {
+            return Integer.parseInt( line.substring(o2+1,o3) );
+         } catch( Exception e ) {}
+      }
+      return -1;
+   }
+}
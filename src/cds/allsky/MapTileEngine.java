@@ -0,0 +1,153 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.allsky;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moteur de conversion parallle entre la partie DATA d'une map HEALPix FITS
+ * (NESTED, complte) et les tuiles HiPS du mme ordre.
+ *
+ * Dans une telle map, les pixels de la tuile n occupent une zone contigu de la map
+ * qui commence  dataOffset + n*tileBytes. Les tuiles sont donc traites par paquets
+ * de tuiles conscutives, chaque thread prenant le paquet suivant disponible, et les
+ * changes avec la map se font par lecture/criture positionne (FileChannel.read/write
+ *  une position donne) sans passer par un flux squentiel.
+ * La mmoire utilise est borne : un buffer d'un paquet par thread.
+ *
+ * - en criture (export Map.fits, voir BuilderMap), process() remplit le buffer
+ *   qui est ensuite crit dans la map
+ * - en lecture (gnration des tuiles, voir BuilderMapTiles), le buffer est lu dans la map
+ *   avant l'appel  process()
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+abstract class MapTileEngine {
+
+   static final int CHUNKSIZE = 4*1024*1024;    // Taille vise d'un paquet de tuiles (en octets)
+
+   private Context context;
+   private FileChannel channel;     // Map HEALPix FITS
+   private long dataOffset;         // Position du premier pixel dans la map
+   private int tileBytes;           // Nombre d'octets d'une tuile dans la map
+   private long nbTiles;            // Nombre de tuiles
+   private boolean read;            // true: map -> tuiles, false: tuiles -> map
+   private int tilesPerChunk;       // Nombre de tuiles par paquet
+   private AtomicLong next = new AtomicLong(0);   // Prochaine tuile  traiter
+   private AtomicLong done = new AtomicLong(0);   // Nombre de tuiles traites
+
+   /**
+    * @param context contexte HipsGen (nombre de threads, interruption)
+    * @param channel map HEALPix FITS ouverte (en criture si read==false)
+    * @param dataOffset position du premier pixel HEALPix dans la map
+    * @param tileBytes nombre d'octets d'une tuile dans la map
+    * @param nbTiles nombre de tuiles
+    * @param read true pour lire la map, false pour l'crire
+    */
+   MapTileEngine(Context context,FileChannel channel,long dataOffset,int tileBytes,long nbTiles,boolean read) {
+      this.context=context;
+      this.channel=channel;
+      this.dataOffset=dataOffset;
+      this.tileBytes=tileBytes;
+      this.nbTiles=nbTiles;
+      this.read=read;
+      tilesPerChunk = Math.max(1, CHUNKSIZE/tileBytes);
+   }
+
+   /** Traitement d'un paquet de tuiles conscutives, appel en parallle par les threads.
+    * La tuile firstTile+k occupe les octets [k*tileBytes..(k+1)*tileBytes[ du buffer
+    * @param firstTile numro de la premire tuile du paquet
+    * @param nb nombre de tuiles du paquet
+    * @param buf les pixels lus dans la map (mode lecture), ou  crire dans la map (mode criture)
+    */
+   abstract void process(long firstTile,int nb,byte [] buf) throws Exception;
+
+   /** Nombre de tuiles dj traites */
+   long getNbDone() { return done.get(); }
+
+   /** Lancement du traitement de toutes les tuiles, retour lorsque tout est termin */
+   void run() throws Exception {
+      int nbProc = Runtime.getRuntime().availableProcessors();
+      int nbThread = context.getMaxNbThread()>0 ? Math.min(context.getMaxNbThread(),nbProc) : nbProc;
+      long nbChunk = (nbTiles+tilesPerChunk-1)/tilesPerChunk;
+      if( nbThread>nbChunk ) nbThread=(int)nbChunk;
+      if( nbThread<1 ) return;
+
+      ExecutorService pool = Executors.newFixedThreadPool(nbThread);
+      ArrayList<Future<Object>> list = new ArrayList<>(nbThread);
+      try {
+         for( int i=0; i<nbThread; i++ ) {
+            list.add( pool.submit(new Callable<Object>() {
+               public Object call() throws Exception { work(); return null; }
+            }));
+         }
+         for( Future<Object> f : list ) {
+            try { f.get(); }
+            catch( ExecutionException e ) {
+               next.set(nbTiles);     // On arrte les autres threads
+               Throwable t = e.getCause();
+               if( t instanceof Exception ) throw (Exception)t;
+               throw e;
+            }
+         }
+      } finally {
+         pool.shutdownNow();
+      }
+   }
+
+   // Boucle d'un thread : prise du prochain paquet libre, lecture, traitement, criture
+   private void work() throws Exception {
+      byte [] buf = new byte[tilesPerChunk*tileBytes];
+      ByteBuffer bb = ByteBuffer.wrap(buf);
+      while( true ) {
+         if( context.isTaskAborting() ) throw new Exception("Task abort !");
+         long first = next.getAndAdd(tilesPerChunk);
+         if( first>=nbTiles ) break;
+         int nb = (int)Math.min(tilesPerChunk, nbTiles-first);
+         long pos = dataOffset + first*tileBytes;
+         bb.clear();
+         bb.limit(nb*tileBytes);
+
+         if( read ) {
+            while( bb.hasRemaining() ) {
+               if( channel.read(bb, pos+bb.position())<0 ) throw new EOFException();
+            }
+         }
+         process(first,nb,buf);
+         if( !read ) {
+            bb.position(0);
+            while( bb.hasRemaining() ) channel.write(bb, pos+bb.position());
+         }
+         done.addAndGet(nb);
+      }
+   }
+}
@@ -0,0 +1,286 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.allsky;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cds.fits.CacheFits;
+import cds.fits.Fits;
+import cds.tools.Util;
+
+/**
+ * Gestionnaire de mmoire du calcul des tuiles. Chaque thread rserve la mmoire dont il
+ * a besoin pour une tuile (progniteurs + tuile produite) avant de la calculer, et la rend
+ * ensuite. S'il n'y a pas assez de place, le gestionnaire libre d'abord les bitmaps des
+ * tuiles en cours de construction, puis les fichiers non utiliss du cache FITS, et si
+ * cela ne suffit pas, le thread est mis en attente jusqu' ce que d'autres rservations
+ * soient rendues.
+ *
+ * Il assure galement le suivi des tuiles en cours de construction de chaque thread
+ * (anciennement BuilderTiles.memPerThread).
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+public class MemoryGovernor {
+
+   static final private long MARGIN = 40*1024L*1024L;   // Marge de scurit sur la mmoire libre
+   static final private long MAXWAIT = 1000L;           // Attente max avant de rvaluer la mmoire libre (ms)
+
+   private Context context;
+   private final ReentrantLock lock = new ReentrantLock();
+   private final Condition released = lock.newCondition();
+   private long reserved=0L;             // Total des rservations en cours (octets)
+   private int nbHolders=0;              // Nombre de rservations en cours
+   private final ArrayList<Reservation> holders = new ArrayList<>();  // Rservations en cours
+
+   // Rservation en cours. La mmoire libre au moment de l'accord permet d'estimer la part
+   // de la rservation dj alloue, qui ne doit plus tre dcompte de la mmoire libre
+   private static class Reservation {
+      long size;         // Taille rserve (octets)
+      long free;         // Mmoire libre au moment de l'accord
+      long used=0L;      // Part dj alloue (max observ de la baisse de la mmoire libre)
+
+      Reservation(long size,long free) { this.size=size; this.free=free; }
+
+      // Part de la rservation non encore alloue
+      long getPending(long freeMem) {
+         if( free-freeMem>used ) used=free-freeMem;
+         return used>=size ? 0L : size-used;
+      }
+   }
+
+   // Tuiles en cours de construction, par thread
+   private final ConcurrentHashMap<Thread,Set<Fits>> tiles = new ConcurrentHashMap<>();
+
+   // Statistiques
+   private final AtomicLong statReserve = new AtomicLong();
+   private final AtomicLong statWait = new AtomicLong();
+   private final AtomicLong statWaitTime = new AtomicLong();
+   private final AtomicLong statForced = new AtomicLong();
+   private final AtomicLong statEvictBitmap = new AtomicLong();
+   private final AtomicLong statEvictCache = new AtomicLong();
+   private long statMaxReserved=0L;
+
+   public MemoryGovernor(Context context) {
+      this.context=context;
+   }
+
+   /** Rservation de rqMem octets sans attente. Si la mmoire disponible est insuffisante,
+    * libre les bitmaps des tuiles puis le cache. S'il n'y a personne  attendre, la
+    * rservation est accorde en dpassement
+    * @return la rservation,  rendre par release(), ou -1 s'il faudrait attendre
+    */
+   public long tryReserve(long rqMem) {
+      lock.lock();
+      try {
+         if( getAvailable()<rqMem ) evict( rqMem-getAvailable() );
+         if( getAvailable()<rqMem && nbHolders>0 ) return -1L;
+         statReserve.incrementAndGet();
+         if( getAvailable()<rqMem ) statForced.incrementAndGet();
+         return grant(rqMem);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /** Rservation de rqMem octets. Si la mmoire disponible est insuffisante,
+    * libre les bitmaps des tuiles puis le cache, et si canWait, attend que d'autres
+    * rservations soient rendues. Une rservation n'est jamais refuse : s'il n'y a
+    * personne  attendre (ou si !canWait), elle est accorde en dpassement
+    * @return la rservation,  rendre par release()
+    */
+   public long reserve(long rqMem, boolean canWait) throws Exception {
+      statReserve.incrementAndGet();
+      lock.lock();
+      try {
+         if( getAvailable()<rqMem ) evict( rqMem-getAvailable() );
+
+         if( getAvailable()<rqMem ) {
+            if( !canWait || nbHolders==0 ) statForced.incrementAndGet();
+            else {
+               statWait.incrementAndGet();
+               long t0 = System.currentTimeMillis();
+               if( Context.getVerbose()>3 ) context.info(Thread.currentThread().getName()+" is waiting more memory (need "+
+                     Util.getUnitDisk(rqMem)+", reserved "+Util.getUnitDisk(reserved)+")...");
+               try {
+                  while( nbHolders>0 && getAvailable()<rqMem ) {
+                     if( context.isTaskAborting() ) throw new Exception("Task abort !");
+
+                     // Rveil  chaque restitution, ou au bout de MAXWAIT pour tenir compte
+                     // de la mmoire rendue par le GC
+                     if( !released.await(MAXWAIT, TimeUnit.MILLISECONDS) ) evict( rqMem-getAvailable() );
+                  }
+               } finally {
+                  statWaitTime.addAndGet( System.currentTimeMillis()-t0 );
+               }
+            }
+         }
+         return grant(rqMem);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   // Enregistrement d'une rservation (sous verrou)
+   private long grant(long rqMem) {
+      holders.add( new Reservation(rqMem,CacheFits.getFreeMem()) );
+      reserved += rqMem;
+      nbHolders++;
+      if( reserved>statMaxReserved ) statMaxReserved=reserved;
+      return rqMem;
+   }
+
+   /** Restitution d'une rservation */
+   public void release(long mem) {
+      lock.lock();
+      try {
+         for( int i=0; i<holders.size(); i++ ) {
+            if( holders.get(i).size==mem ) { holders.remove(i); break; }
+         }
+         reserved -= mem;
+         nbHolders--;
+         released.signalAll();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /** Mmoire disponible pour une nouvelle rservation (octets) : la mmoire libre,
+    * moins la part des rservations en cours qui n'a pas encore t alloue (celle
+    * dj alloue est dj dduite de la mmoire libre) (sous verrou) */
+   private long getAvailable() {
+      long freeMem = CacheFits.getFreeMem();
+      long pending = 0L;
+      for( Reservation r : holders ) pending += r.getPending(freeMem);
+      return freeMem - MARGIN - pending;
+   }
+
+   // Libration d'au moins rqMem octets : d'abord les bitmaps des tuiles en cours
+   // de construction, puis les fichiers non utiliss du cache
+   private long evict(long rqMem) {
+      long size = releaseBitmap();
+      if( size>0 ) {
+         statEvictBitmap.addAndGet(size);
+         if( Context.getVerbose()>3 ) context.info("Need more RAM: output Fits bitmap release => "+Util.getUnitDisk(size));
+      }
+      if( size<rqMem && context.cacheFits!=null ) {
+         long size1 = context.cacheFits.release(rqMem-size);
+         statEvictCache.addAndGet(size1);
+         size += size1;
+      }
+      return size;
+   }
+
+   /** Suivi des tuiles : ajout d'une tuile en cours de construction par le thread t */
+   public void addFits(Thread t,Fits f) {
+      Set<Fits> m = tiles.get(t);
+      if( m==null ) {
+         Set<Fits> m1 = Collections.newSetFromMap( new ConcurrentHashMap<Fits,Boolean>() );
+         m = tiles.putIfAbsent(t,m1);
+         if( m==null ) m=m1;
+      }
+      m.add(f);
+   }
+
+   /** Suivi des tuiles : retrait d'une tuile (elle peut avoir t calcule par un autre thread
+    * si le losange a t dlgu) */
+   public void rmFits(Thread t,Fits f) {
+      Set<Fits> m = tiles.get(t);
+      if( m!=null && m.remove(f) ) return;
+      for( Set<Fits> m1 : tiles.values() ) {
+         if( m1.remove(f) ) return;
+      }
+   }
+
+   /** Suivi des tuiles : fin d'un thread, libration des tuiles qu'il dtenait encore */
+   public void rmThread(Thread t) {
+      Set<Fits> m = tiles.remove(t);
+      if( m!=null ) for( Fits f : m ) f.free();
+   }
+
+   /** Suivi des tuiles : libration des tuiles encore dtenues par des threads termins
+    * dont le suivi avait t conserv (threads fork/join arrts en cours de calcul) */
+   public void rmDeadThreads() {
+      for( Thread t : tiles.keySet() ) {
+         if( !t.isAlive() ) rmThread(t);
+      }
+   }
+
+   /** Libre les bitmaps des tuiles en cours de construction pour faire de la place
+    * @return le nombre d'octets librs */
+   public long releaseBitmap() {
+      long size=0L;
+      for( Set<Fits> m : tiles.values() ) {
+         for( Fits f : m ) {
+            try {
+               if( f.isReleasable() ) size += f.releaseBitmap();
+            } catch( Exception e ) {  }
+         }
+      }
+      return size;
+   }
+
+   /** Mmoire occupe par les tuiles en cours de construction (octets) */
+   public long getUsedMem() {
+      long mem=0L;
+      for( Set<Fits> m : tiles.values() ) mem += getUsedMem(m);
+      return mem;
+   }
+
+   private long getUsedMem(Set<Fits> m) {
+      long mem=0L;
+      try {
+         for( Fits f : m ) mem += f.getMem();
+      } catch( Exception e ) { }
+      return mem;
+   }
+
+   /** Occupation mmoire des tuiles par thread (debug) */
+   public String showMem() {
+      StringBuilder s = new StringBuilder();
+      for( Map.Entry<Thread,Set<Fits>> e : tiles.entrySet() ) {
+         if( s.length()>0 ) s.append(", ");
+         s.append(e.getKey().getName()+":"+e.getValue().size()+"tiles"+"/"+Util.getUnitDisk( getUsedMem(e.getValue()) ));
+      }
+      return s.toString();
+   }
+
+   /** Nombre de rservations demandes */
+   public long getStatReserve() { return statReserve.get(); }
+
+   public String toString() {
+      return statReserve.get()+" reservations (max "+Util.getUnitDisk(statMaxReserved)+" reserved), "
+            +statWait.get()+" waits ("+Util.getTemps(statWaitTime.get()*1000L)+"), "
+            +statForced.get()+" overcommits, evictions: bitmaps="+Util.getUnitDisk(statEvictBitmap.get())
+            +" cache="+Util.getUnitDisk(statEvictCache.get());
+   }
+}
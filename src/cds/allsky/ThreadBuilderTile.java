@@ -36,6 +36,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import cds.aladin.Coord;
 import cds.aladin.Localisation;
@@ -137,68 +138,35 @@ final public class ThreadBuilderTile {
       return needMem(nbThreads*rqMem);
    }
    
-   private Object objRel = new Object();
-
-   private void checkMem(int nbProgen, long rqMem, boolean monopass ) throws Exception {
+   // Rservation auprs du gestionnaire de mmoire de la place requise pour le calcul
+   // d'une tuile (rqMem pour les progniteurs + la tuile elle-mme). A rendre par
+   // builderTiles.memGovernor.release()
+   private long reserveMem(int nbProgen, long rqMem, boolean monopass ) throws Exception {
       rqMem += 2*tileSide*tileSide*context.getNpix();
       if( nbProgen>Constante.MAXOVERLAY ) {
          rqMem += 2*tileSide*tileSide*8;
       }
-//      System.out.println("required "+cds.tools.Util.getUnitDisk(rqMem)+"/"+cds.tools.Util.getUnitDisk(CacheFits.getFreeMem()));
-      if( !needMem(rqMem) ) return;
-      synchronized( objRel ) {
-         if( !needMem(rqMem) ) return;
-
-         // On fait d'abord le mnage dans les Fits  gnrer
-         long sizeReleaseBitmap;
-         if( (sizeReleaseBitmap=builderTiles.releaseBitmap())>0 ) {
-            System.gc();
-            cds.tools.Util.pause(100);
-            if( context.getVerbose()>3 ) context.info("Need more RAM: output Fits bitmap release => "+cds.tools.Util.getUnitDisk(sizeReleaseBitmap));
-            if( !needMem(rqMem) ) return;
-         }
-         
-         if( builderTiles.getNbThreadRunning()<=1 ) {
-            context.cacheFits.forceClean();
-            if( context.getVerbose()>3 ) context.warning(Thread.currentThread().getName()+" needs "+
-                  cds.tools.Util.getUnitDisk(rqMem)+" but can not stop (last thread running) !");
-            return;
-         }
-         try {
-            if( !builderTiles.arret(this,"not enough free RAM => thread temporary suspended by ThreadBuilder.checkMem(nbProgen="+nbProgen+",rqMem="+cds.tools.Util.getUnitDisk(rqMem)+",monopass="+monopass+")") ) {
-               if( context.getVerbose()>3 ) context.warning(Thread.currentThread().getName()+" needs "+
-                     cds.tools.Util.getUnitDisk(rqMem)+" but can not stop (sub thread) !");
-               return;
-            } 
-            if( context.getVerbose()>3 ) context.info(Thread.currentThread().getName()+" suspended");
-            while( needMem(rqMem) ) {
-               try {
-                  if( context.getVerbose()>3 ) context.info(Thread.currentThread().getName()+" is waiting more memory (need "+
-                        cds.tools.Util.getUnitDisk(rqMem)+")...");
-
-                  cds.tools.Util.pause((int)( 1000*(1+Math.random()*5)));
-                  context.cacheFits.forceClean();
-                  if( builderTiles.getNbThreadRunning()<=0 ) {
-                     if( context.getVerbose()>3 ) context.warning(Thread.currentThread().getName()+" resumes (last thread)");
-                     break;
-                  }
-               } catch( Exception e ) { }
-               if( context.isTaskAborting() ) throw new Exception("Task abort !");
-            }
-         } finally {
-            if( builderTiles.reprise(this) ) {
-               if( context.getVerbose()>3 ) context.info(Thread.currentThread().getName()+" restarted");
-            }
-        }
+
+      // Cas courant : la place est disponible (ventuellement aprs libration), pas d'attente
+      long mem = builderTiles.memGovernor.tryReserve(rqMem);
+      if( mem>=0 ) return mem;
+
+      // En mode fork/join, pas d'attente : le travail en attente peut tre vol par les autres threads
+      boolean canWait = builderTiles.forkJoinPool==null
+            && builderTiles.arret(this,"waiting for RAM reservation (nbProgen="+nbProgen+",rqMem="+cds.tools.Util.getUnitDisk(rqMem)+",monopass="+monopass+")");
+      try {
+         return builderTiles.memGovernor.reserve(rqMem, canWait);
+      } finally {
+         if( canWait ) builderTiles.reprise(this);
       }
    }
-   
 
    /** Dtermination de la mmoire requise pour ouvrir n fichiers originaux de downFiles  partir de la position deb */
    protected long getReqMem(ArrayList<SrcFile> downFiles,int deb, int n) {
       long mem=0L;
       for( int i=0; i<n && deb<downFiles.size(); i++,deb++ ) {
          SrcFile file = downFiles.get(deb);   
+         if( context.isMappable(file.name) ) continue;  // pixels projets en mmoire, hors du tas
          mem += file.cellMem;
       }
       return mem;
@@ -229,11 +197,13 @@ final public class ThreadBuilderTile {
          if( !context.live && (!mixing || n<Constante.MAXOVERLAY  || !requiredMem(mixing ? n : 1, 1 /*nbThreads */)) ) {
 
             statOnePass++;
-            long mem = getReqMem(downFiles, 0, n);
-            checkMem(mixing ? n : 1, mem, true);
-            
-            threadBuilder.setInfo("createLeavveHpx onepass memOk "+order+"/"+npix_file+"...");
-            out = buildHealpix1(bt,order,npix_file,z,downFiles,0,n,null);
+            long mem = reserveMem(mixing ? n : 1, getReqMem(downFiles, 0, n), true);
+            try {
+               threadBuilder.setInfo("createLeavveHpx onepass memOk "+order+"/"+npix_file+"...");
+               out = buildHealpix1(bt,order,npix_file,z,downFiles,0,n,null);
+            } finally {
+               builderTiles.memGovernor.release(mem);
+            }
 
             // Trop de progniteurs, on va travailler en plusieurs couches de peinture
             // en mmorisant le poids de chaque pixel  chaque couche
@@ -252,11 +222,13 @@ final public class ThreadBuilderTile {
                int fin = deb+Constante.MAXOVERLAY;
                if( fin>=n ) fin=n;
                
-               long mem = getReqMem(downFiles,deb,fin); //n);
-               checkMem( fin-deb, mem, false);
-               
-               threadBuilder.setInfo("createLeavveHpx multipass memOk "+order+"/"+npix_file+"...");
-               f = buildHealpix1(bt,order,npix_file,z,downFiles,deb,fin,fWeight);
+               long mem = reserveMem( fin-deb, getReqMem(downFiles,deb,fin), false);
+               try {
+                  threadBuilder.setInfo("createLeavveHpx multipass memOk "+order+"/"+npix_file+"...");
+                  f = buildHealpix1(bt,order,npix_file,z,downFiles,deb,fin,fWeight);
+               } finally {
+                  builderTiles.memGovernor.release(mem);
+               }
                if( f!=null ) {
                   if( out==null ) {
                      out=f;
@@ -372,6 +344,21 @@ final public class ThreadBuilderTile {
    static long statOnePass=0L;
    static long statMultiPass=0L;
    static int statMaxOverlays=0;
+   // Stats de l'interpolation par grille, mises  jour par tous les threads de calcul
+   static final AtomicLong statMaxResidual = new AtomicLong(Double.doubleToLongBits(0)); // Rsidu max (pixels originaux, bits du double)
+   static final AtomicLong statGridCells = new AtomicLong();      // Nombre de cellules de grille interpoles
+   static final AtomicLong statGridExactCells = new AtomicLong(); // Nombre de cellules de grille calcules exactement (rsidu > tolrance)
+   
+   /** Rsidu max de l'interpolation par grille, toutes tuiles confondues */
+   static double getStatMaxResidual() { return Double.longBitsToDouble( statMaxResidual.get() ); }
+   
+   // Mise  jour du rsidu max (les bits d'un double positif sont ordonns comme le double lui-mme)
+   static private void updateStatMaxResidual(double r) {
+      long bits = Double.doubleToLongBits(r);
+      long cur;
+      while( bits>(cur=statMaxResidual.get()) && !statMaxResidual.compareAndSet(cur,bits) );
+   }
+   protected double tileMaxResidual;  // Rsidu max de l'interpolation pour la dernire tuile calcule
 
    final static private double toDeg = 180./Math.PI;
    final static private double PI2 = Math.PI/2.;
@@ -450,29 +437,40 @@ final public class ThreadBuilderTile {
          final HealpixNestedFast hn = Healpix.getNestedFast(orderPix);
 //         final VerticesAndPathComputer vpc = hn.newVerticesAndPathComputer(); // For thread safety issues
 
+         // Projection inverse par interpolation sur une grille de points de contrle
+         int gridStep = context.getGridStep();
+         TileGrid tileGrid = gridStep>0 && out.width>2 ? new TileGrid(hn,min,out.width,gridStep,gal2ICRS) : null;
+         SrcGrid [] srcGrids = tileGrid!=null ? new SrcGrid[overlay] : null;
+         tileMaxResidual=0;
+
          for (int y = 0; y < out.height; y++) {
             for (int x = 0; x < out.width; x++) {
-               index = min + context.xy2hpx(y * out.width + x);
                
-               // recherche les coordonnes du pixels HPX (METHODE REINECKE)
+               // En mode grille, la position cleste du pixel n'est calcule qu'en cas de besoin
+               boolean cooDone = tileGrid==null;
+               if( cooDone ) {
+                  index = min + context.xy2hpx(y * out.width + x);
+               
+                  // recherche les coordonnes du pixels HPX (METHODE REINECKE)
 //               healpix.essentials.Pointing pt = hpx.pix2ang(index);
 //               radec[1] = (PI2 - pt.theta)*toRad;
 //               radec[0] = pt.phi*toRad;
                
-               // ON TRAVAILLE DIRECTEMENT AVEC vpc POUR EVITER LES ALLOCATIONS INUTILES
+                  // ON TRAVAILLE DIRECTEMENT AVEC vpc POUR EVITER LES ALLOCATIONS INUTILES
 //               radec = CDSHealpix.pix2ang_nest(orderPix, index);
 //               CDSHealpix.polarToRadec( radec, radec );
                
-               hn.center(index,radec);
-               if( gal2ICRS ) {
-                  radec[0] *= toDeg;
-                  radec[1] *= toDeg;
-                  radec = context.gal2ICRSIfRequired(radec);
-                  coo.al = radec[0]; 
-                  coo.del = radec[1];
-               } else {
-                  coo.al = radec[0]*toDeg;
-                  coo.del = radec[1]*toDeg;
+                  hn.center(index,radec);
+                  if( gal2ICRS ) {
+                     radec[0] *= toDeg;
+                     radec[1] *= toDeg;
+                     radec = context.gal2ICRSIfRequired(radec);
+                     coo.al = radec[0]; 
+                     coo.del = radec[1];
+                  } else {
+                     coo.al = radec[0]*toDeg;
+                     coo.del = radec[1]*toDeg;
+                  }
                }
 
                int nbPix=0;
@@ -511,7 +509,18 @@ final public class ThreadBuilderTile {
                      // Dtermination du pixel dans l'image  traiter
                      try {
 //                        isCAR = file.fitsfile.calib.getProj()==Calib.CAR;
-                        file.fitsfile.calib.GetXY(coo,false);
+                        SrcGrid grid = null;
+                        if( tileGrid!=null ) {
+                           grid = srcGrids[i-deb];
+                           if( grid==null ) grid = srcGrids[i-deb] = new SrcGrid(tileGrid,file.fitsfile);
+                        }
+                        if( grid==null || !grid.getXY(x,y,coo) ) {
+                           if( !cooDone ) {
+                              tileGrid.getCoo(x,y,radec,coo);
+                              cooDone=true;
+                           }
+                           file.fitsfile.calib.GetXY(coo,false);
+                        }
                         
                      // gasp !
                      } catch( Exception e ) {
@@ -648,10 +657,164 @@ final public class ThreadBuilderTile {
          empty=true;
          if( weight!=null ) for( int i=0; i<weight.length; i++ ) weight[i]=0;
       }
+      
+      if( tileMaxResidual>0 ) updateStatMaxResidual(tileMaxResidual);
+      if( tileMaxResidual>0 && context.getVerbose()>3 ) {
+         context.info("Tile "+order+"/"+npix_file+" grid resampling max residual="+cds.tools.Util.myRound(tileMaxResidual+"",4)+" pix");
+      }
 
       if( context.isTaskAborting() ) throw new Exception("Task abort !");
       return (!empty) ? out : null;
    }
+   
+   /**
+    * Grille de points de contrle d'une tuile pour la projection inverse : un noeud tous les
+    * "step" pixels (plus la dernire ligne et la dernire colonne) et le centre de chaque cellule
+    * qui sert  contrler l'erreur de l'interpolation. Les positions clestes sont calcules une
+    * seule fois par tuile et partages par tous les fichiers originaux (voir SrcGrid)
+    */
+   private class TileGrid {
+      HealpixNestedFast hn;
+      long min;               // Premier pixel Healpix de la tuile
+      int width;              // Taille de la tuile
+      boolean gal2ICRS;
+      int n;                  // Nombre de noeuds par ct
+      int [] pos;             // Position des noeuds (en x comme en y)
+      int [] cell;            // Indice de la cellule pour chaque position de la tuile
+      double [] nodeAl,nodeDel; // Coordonnes des noeuds (n x n)
+      double [] midAl,midDel;   // Coordonnes des centres des cellules ((n-1) x (n-1))
+      
+      TileGrid(HealpixNestedFast hn,long min,int width,int step,boolean gal2ICRS) {
+         this.hn=hn;
+         this.min=min;
+         this.width=width;
+         this.gal2ICRS=gal2ICRS;
+         
+         n = (width-2)/step+2;
+         pos = new int[n];
+         for( int k=0; k<n; k++ ) pos[k] = Math.min(k*step, width-1);
+         cell = new int[width];
+         for( int k=0,c=0; k<width; k++ ) {
+            if( c<n-2 && k>=pos[c+1] ) c++;
+            cell[k]=c;
+         }
+         
+         double [] radec = new double[2];
+         Coord coo = new Coord();
+         nodeAl = new double[n*n];
+         nodeDel = new double[n*n];
+         for( int j=0; j<n; j++ ) {
+            for( int k=0; k<n; k++ ) {
+               getCoo(pos[k],pos[j],radec,coo);
+               nodeAl[j*n+k]=coo.al;
+               nodeDel[j*n+k]=coo.del;
+            }
+         }
+         midAl = new double[(n-1)*(n-1)];
+         midDel = new double[(n-1)*(n-1)];
+         for( int j=0; j<n-1; j++ ) {
+            for( int k=0; k<n-1; k++ ) {
+               getCoo(midPos(k),midPos(j),radec,coo);
+               midAl[j*(n-1)+k]=coo.al;
+               midDel[j*(n-1)+k]=coo.del;
+            }
+         }
+      }
+      
+      // Position du pixel central de la cellule c
+      int midPos(int c) { return (pos[c]+pos[c+1])/2; }
+      
+      // Position cleste (ICRS) du centre du pixel (x,y) de la tuile
+      void getCoo(int x,int y,double [] radec,Coord coo) {
+         long index = min + context.xy2hpx(y * width + x);
+         hn.center(index,radec);
+         if( gal2ICRS ) {
+            radec[0] *= toDeg;
+            radec[1] *= toDeg;
+            double [] r = context.gal2ICRSIfRequired(radec);
+            coo.al = r[0];
+            coo.del = r[1];
+         } else {
+            coo.al = radec[0]*toDeg;
+            coo.del = radec[1]*toDeg;
+         }
+      }
+   }
+   
+   /**
+    * Projection dans un fichier original des points de contrle d'une tuile (voir TileGrid).
+    * La position (x,y) d'un pixel de la tuile est obtenue par interpolation bilinaire des
+    * noeuds de sa cellule, sauf si l'un des noeuds n'est pas projetable ou si l'erreur
+    * constate au centre de la cellule dpasse la tolrance => calcul exact (Calib.GetXY)
+    */
+   private class SrcGrid {
+      TileGrid g;
+      double [] nodeX,nodeY;  // Positions des noeuds dans l'image originale (NaN si hors projection)
+      boolean [] exact;       // true si la cellule doit tre calcule exactement
+      
+      SrcGrid(TileGrid g,Fits f) {
+         this.g=g;
+         int n=g.n;
+         double tol = context.getGridTolerance();
+         Coord coo = new Coord();
+         nodeX = new double[n*n];
+         nodeY = new double[n*n];
+         for( int k=0; k<n*n; k++ ) {
+            coo.al = g.nodeAl[k];
+            coo.del = g.nodeDel[k];
+            try {
+               f.calib.GetXY(coo,false);
+               nodeX[k]=coo.x;
+               nodeY[k]=coo.y;
+            } catch( Exception e ) { nodeX[k]=nodeY[k]=Double.NaN; }
+         }
+         
+         exact = new boolean[(n-1)*(n-1)];
+         int nbExact=0;
+         double maxResidual=0;
+         for( int j=0; j<n-1; j++ ) {
+            for( int k=0; k<n-1; k++ ) {
+               int c = j*(n-1)+k;
+               coo.al = g.midAl[c];
+               coo.del = g.midDel[c];
+               double r;
+               try {
+                  f.calib.GetXY(coo,false);
+                  double x=coo.x, y=coo.y;
+                  if( !interpolate(k,j,g.midPos(k),g.midPos(j),coo) ) r=Double.NaN;
+                  else r = Math.hypot(coo.x-x, coo.y-y);
+               } catch( Exception e ) { r=Double.NaN; }
+               
+               if( Double.isNaN(r) || r>tol ) { exact[c]=true; nbExact++; }
+               if( r>maxResidual ) maxResidual=r;
+            }
+         }
+         if( maxResidual>tileMaxResidual ) tileMaxResidual=maxResidual;
+         statGridCells.addAndGet(exact.length);
+         statGridExactCells.addAndGet(nbExact);
+      }
+      
+      // Interpolation bilinaire dans la cellule (k,j) de la position du pixel (x,y) de la tuile
+      private boolean interpolate(int k,int j,int x,int y,Coord coo) {
+         int n=g.n;
+         int i0 = j*n+k;
+         double x0=nodeX[i0], x1=nodeX[i0+1], x2=nodeX[i0+n], x3=nodeX[i0+n+1];
+         if( Double.isNaN(x0) || Double.isNaN(x1) || Double.isNaN(x2) || Double.isNaN(x3) ) return false;
+         double fx = (double)(x-g.pos[k])/(g.pos[k+1]-g.pos[k]);
+         double fy = (double)(y-g.pos[j])/(g.pos[j+1]-g.pos[j]);
+         double a = (1-fx)*(1-fy), b = fx*(1-fy), c = (1-fx)*fy, d = fx*fy;
+         coo.x = a*x0 + b*x1 + c*x2 + d*x3;
+         coo.y = a*nodeY[i0] + b*nodeY[i0+1] + c*nodeY[i0+n] + d*nodeY[i0+n+1];
+         return true;
+      }
+      
+      /** Position (x,y) dans l'image originale du pixel (x,y) de la tuile, false si le calcul exact est requis */
+      boolean getXY(int x,int y,Coord coo) {
+         int k = g.cell[x], j = g.cell[y];
+         if( exact[j*(g.n-1)+k] ) return false;
+         return interpolate(k,j,x,y,coo);
+      }
+   }
 
    static private final double OVERLAY_PROPORTION = 1/6.;
    
@@ -992,7 +1155,12 @@ final public class ThreadBuilderTile {
             return Integer.parseInt( s.substring(o2+1,o3) ); 
          } catch( Exception e ) {}
       }
-      return Constante.ORIGCELLWIDTH*Constante.ORIGCELLWIDTH* (context.bitpixOrig==0?32:Math.abs(context.bitpixOrig)/8);   // Approximation en l'absence de l'info
+      return getDefaultCellMem();
+   }
+
+   // Approximation de la mmoire requise pour une cellule en l'absence de l'info
+   private long getDefaultCellMem() {
+      return Constante.ORIGCELLWIDTH*Constante.ORIGCELLWIDTH* (context.bitpixOrig==0?32:Math.abs(context.bitpixOrig)/8);
    }
 
 
@@ -1006,6 +1174,11 @@ final public class ThreadBuilderTile {
     * @return
     */
    boolean askLocalFinder(BuilderTiles bt, ArrayList<SrcFile> downFiles, String path, int order, long npix, double blank) {
+
+      // Index binaire disponible ?
+      HpxFinderBin bin = bt==null ? null : bt.finderBin;
+      if( bin!=null && bin.getOrder()==order ) return askFinderBin(bin, downFiles, npix);
+
       String hpxfilename = path + cds.tools.Util.FS + Util.getFilePath("", order, npix);
       File f = new File(hpxfilename);
       String line = null;
@@ -1049,6 +1222,24 @@ final public class ThreadBuilderTile {
    }
 
 
+   // Liste des fichiers originaux pour le losange npix  partir de l'index binaire
+   private boolean askFinderBin(HpxFinderBin bin, ArrayList<SrcFile> downFiles, long npix) {
+      int tile = bin.find(npix);
+      if( tile<0 ) return false;
+      for( int rec=bin.getStart(tile), end=bin.getEnd(tile); rec<end; rec++ ) {
+         String fitsfilename = bin.getPath(rec);
+         long cellMem = bin.getCellMem(rec);
+         if( cellMem<0 ) cellMem = getDefaultCellMem();
+         Fits fitsfile = new Fits();
+         fitsfile.setFilename(fitsfilename);
+         SrcFile file = new SrcFile(fitsfilename,cellMem);
+         file.fitsfile = fitsfile;
+         downFiles.add(file);
+      }
+      return true;
+   }
+
+
    // retourne le polygone|cercle associ au fichier ou null si aucun
    // Soit il s'agit du mme nom de fichier avec l'extension ".fov"
    // soit c'est le premier rpertoire parent qui a un fichier associ avec l'extension ".fov"
@@ -25,10 +25,16 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import cds.aladin.Aladin;
 import cds.allsky.CacheFitsWriter;
@@ -48,7 +54,12 @@ import cds.tools.Util;
  * Rq: Le rajouti d'Anas sur la soustraction du skyvalName ne devrait pas tre dans cette classe (selon moi)
  * => A voir si on le dplace
  *
+ * Accs concurrents : seul l'emplacement du fichier en cours de chargement est bloqu, les autres
+ * threads qui demandent ce mme fichier attendent la fin de son chargement (future), et la
+ * libration des fichiers les plus lourds et les plus anciens se fait de manire incrmentale.
+ *
  * @author Pierre Fernique [CDS]
+ * @version 1.3 - octobre 2026
  * @version 1.2 - novembre 2014
  * @version 1.1 - juillet 2012
  * @version 1.0 - sept 2011
@@ -61,7 +72,9 @@ public class CacheFits {
    private long maxMem;             // Taille max (en octets)
    private int nextId;              // prochain identificateur unique de fichier
    volatile private boolean cacheOutOfMem;   // En cas de dbordement mmoire, on vire totalement le cache
-   protected HashMap<String, FitsFile> map;             // Table des fichiers
+   protected ConcurrentHashMap<String, FitsFile> map;   // Table des fichiers
+   private AtomicLong memUsed = new AtomicLong();      // Taille occupe par les fichiers du cache (estime au chargement)
+   private ReentrantLock cleanLock = new ReentrantLock(); // Un seul nettoyage  la fois
    //   private TreeMap<String,FitsFile> sortedMap;        // Table tri par ordre de dernier accs
    Context context;
    private Hashtable<String, double[]> cutCache = new Hashtable<>();
@@ -89,7 +102,7 @@ public class CacheFits {
       cacheOutOfMem = maxMem==0;
       nextId = 0;
       statNbFree = statNbOpen = statNbFind = 0;
-      map = new HashMap<>(MAXFILE+MAXFILE/100);
+      map = new ConcurrentHashMap<>(MAXFILE+MAXFILE/100);
       //      sortedMap = new TreeMap<String, FitsFile>( new ValueComparator(map) );
    }
 
@@ -156,39 +169,49 @@ public class CacheFits {
    public Fits getFits(String fileName,int mode,boolean flagLoad,boolean keepHeader) throws Exception,MyInputStreamCachedException {
       if( cacheOutOfMem )  return open(fileName,mode,flagLoad,keepHeader).fits;
 
-      synchronized( lockObj  ) {
-         FitsFile f = find(fileName);
-
-         // Trouv, je le mets  jour
-         if( f!=null ) {
-            f.update();
-            statNbFind++;
-         }
+      FitsFile f = find(fileName);
+      boolean loaded=false;
 
-         // Pas trouv, je l'ajoute
-         else {
-            if( isOver() ) clean();
-            try {
-               f=add(fileName,mode,flagLoad,keepHeader);
-            } catch( OutOfMemoryError e ) {
-               System.out.println("CacheFits.getFits("+fileName+") out of memory... clean and try again...");
-               if( maxMem<0 ) maxMem*=2;
-               else maxMem /= 2;
-               try {
-                  clean();
-                  f=add(fileName,mode,flagLoad,keepHeader);
-               } catch( OutOfMemoryError e1 ) {
-                  System.out.println("CacheFits.getFits("+fileName+") out of memory... double error... removing the cache...");
-                  e1.printStackTrace();
-                  reset();
-                  cacheOutOfMem=true;
-                  return open(fileName,mode,flagLoad,keepHeader).fits;
-               }
-            }
+      // Pas trouv, je rserve son emplacement et je le charge moi-mme
+      if( f==null ) {
+         if( isOver() ) clean();
+         FitsFile f1 = new FitsFile(fileName,mode,flagLoad,keepHeader);
+         f = map.putIfAbsent(fileName,f1);
+         if( f==null ) {
+            f=f1;
             statNbOpen++;
+            f.future.run();
+            loaded=true;
          }
+      }
 
-         return f.fits;
+      // Trouv (ventuellement en cours de chargement par un autre thread), je le mets  jour
+      if( !loaded ) {
+         f.update();
+         statNbFind++;
+      }
+
+      try {
+         return f.getFits();
+      } catch( OutOfMemoryError e1 ) {
+         System.out.println("CacheFits.getFits("+fileName+") out of memory... double error... removing the cache...");
+         e1.printStackTrace();
+         reset();
+         cacheOutOfMem=true;
+         return open(fileName,mode,flagLoad,keepHeader).fits;
+      }
+   }
+
+   // Chargement effectif d'un fichier pour son emplacement dans le cache
+   private Fits load(String fileName,int mode,boolean flagLoad,boolean keepHeader) throws Exception,MyInputStreamCachedException {
+      try {
+         return open(fileName,mode,flagLoad,keepHeader).fits;
+      } catch( OutOfMemoryError e ) {
+         System.out.println("CacheFits.getFits("+fileName+") out of memory... clean and try again...");
+         if( maxMem<0 ) maxMem*=2;
+         else maxMem /= 2;
+         clean();
+         return open(fileName,mode,flagLoad,keepHeader).fits;
       }
    }
 
@@ -197,16 +220,16 @@ public class CacheFits {
       return map.get(name);
    }
 
-   // Ajoute un fichier Fits au cache. Celui-ci est totalement charg en mmoire
-   private FitsFile add(String name,int mode,boolean flagLoad,boolean keepHeader) throws Exception,MyInputStreamCachedException {
-      FitsFile f = open(name,mode,flagLoad,keepHeader);
-      map.put(name, f);
-      return f;
+   // Prise en compte de la taille d'un fichier qui vient d'tre ajout au cache
+   protected void account(FitsFile f) {
+      f.mem = f.getMem();
+      memUsed.addAndGet(f.mem);
    }
 
    // Suppression d'un fichier Fits de cache.
    protected void remove(String name) throws Exception {
-      map.remove(name);
+      FitsFile f = map.remove(name);
+      if( f!=null ) memUsed.addAndGet(-f.mem);
    }
 
    private boolean firstChangeOrig=true;
@@ -260,9 +283,19 @@ public class CacheFits {
          f.fits.loadPreview(fileName,true, (mode&HHH)==0, format);
       }
       else {
-         f.fits.loadFITS(fileName, false, flagLoad);
+         
+         // Projection mmoire des pixels plutt que chargement, sauf si un filtre doit les modifier
+         // (mme critre que pour les rservations mmoire, cf. Context.isMappable())
+         boolean mmap = context!=null && context.isMappable(fileName) && f.fits.isReleasable();
+         f.fits.loadFITS(fileName, false, flagLoad && !mmap);
+         if( mmap && f.fits.isReleasable() && !f.fits.mapBitmap() && flagLoad ) f.fits.reloadBitmap();
+         
          if( context!=null ) {
             flagChangeOrig = f.fits.bzero!=context.bZeroOrig || f.fits.bscale!=context.bScaleOrig;
+            if( flagChangeOrig && f.fits.isMapped() ) {
+               f.fits.unmapBitmap();
+               f.fits.reloadBitmap();
+            }
             if( flagChangeOrig && firstChangeOrig ) {
                context.warning("All original data sets do no used the same BZERO & BSCALE factors => rescaling will be applied => "+fileName);
                firstChangeOrig=false;
@@ -316,9 +349,12 @@ public class CacheFits {
          //         return mem>getFreeMem()+maxMem;
          return getFreeMem()<-maxMem;
       }
-      return getMem()>maxMem;
+      return memUsed.get()>maxMem;
    }
 
+   /** Retourne la taille mmoire des fichiers chargs dans le cache (comptabilit interne) */
+   public long getMemUsed() { return memUsed.get(); }
+
    /** Retourne la taille occupe par le cache */
    public long getMem() {
       long mem=0L;
@@ -331,108 +367,106 @@ public class CacheFits {
 //         mem += f.fits.getMem();
 //      }
       
-      try { for( FitsFile f: map.values() ) mem += f.fits.getMem(); } catch( Exception e ) { };
+      try { for( FitsFile f: map.values() ) mem += f.getMem(); } catch( Exception e ) { };
 
       return mem;
    }
 
    // Force le nettoyage du clean
-   public void forceClean() {
-      synchronized( lockObj  ) {  clean(); }
-   }
-
+   public void forceClean() { clean(); }
 
-   volatile boolean deja=false;
    
-   // Supprime les plus vieux lments du cache pour
-   // qu'il y ait un peu de place libre
+   // Supprime les plus vieux et les plus gros lments du cache pour
+   // qu'il y ait un peu de place libre. La table n'est pas recopie, seuls les
+   // fichiers ncessaires sont retirs, et les autres threads continuent  accder au cache
    protected void clean() {
       
-      synchronized( lockObj ) {
-         long mem = getMem();
+      // Un nettoyage est dj en cours par un autre thread => inutile d'en faire un deuxime
+      if( !cleanLock.tryLock() ) return;
+      
+      try {
+         long mem = memUsed.get();
          long freeMem = getFreeMem();
+         int mapsize = map.size();
          
-         boolean tooManyFile = map.size()>MAXFILE;
+         boolean tooManyFile = mapsize>MAXFILE;
          boolean tooManyMem = maxMem<0 && freeMem<-maxMem || maxMem>=0 && mem>maxMem;
          if( !tooManyFile && !tooManyMem ) return;
          
-//         if( !isOver() ) return;
+         // Ce qu'il faut librer : le dpassement, plus un quart du cache pour ne pas revenir ici trop vite
+         long rqMem = !tooManyMem ? 0L : (maxMem<0 ? -maxMem-freeMem : mem-maxMem) + mem/4L;
+         int rqFile = !tooManyFile ? 0 : mapsize - 2*MAXFILE/3;
          
-         long totMem=0L;
-         long m=0;
-         int nb=0;
-         boolean encore=true;
          long now = System.currentTimeMillis();
-         long delay=5000;
+         int nb = statNbFree;
+         long totMem = evict(rqMem,rqFile);
+         nb = statNbFree-nb;
 
-         int i;
-         try {
-            cacheOutOfMem=true;
-
-            HashMap<String,String> libere = new  HashMap<>(map.size());
-            HashMap<String,FitsFile> map1 = new  HashMap<>(map.size());
-
-            // en premier tour, on supprime les fits non utiliss
-            // depuis plus de 5s, et si pas assez de mmoire, on ne regarde plus la date
-            for( i=0; i<2 && encore; i++) {
-               int mapsize=map.size();
-
-               for( String key: map.keySet() ) {
-                  FitsFile f = map.get(key);
-                  if( f.fits.hasUsers() ) continue;
-                  if( i==0 && now-f.timeAccess<delay ) continue;
-                  m = f.getMem();
-                  totMem+=m;
-                  nb++;
-                  statNbFree++;
-
-                  libere.put(key,"");
-                  if( totMem>mem/2L && mapsize-nb < 2*MAXFILE/3 ) { encore=false; break; }
-               }
+         long duree = System.currentTimeMillis() - now;
+         if( context!=null ) {
+            context.stat("Cache: freeRAM="+Util.getUnitDisk(freeMem)+" => "+nb+" files released ("+Util.getUnitDisk(totMem)+") in "+Util.getTemps(duree*1000L)
+            +" => cache="+Util.getUnitDisk(memUsed.get()));
+         }
+      } finally {
+         cleanLock.unlock();
+      }
+   }
 
-               for( String key: map.keySet() ) {
-                  if( libere.get(key)!=null ) continue;
-                  FitsFile f = map.get(key);
-                  map1.put(key,f);
-               }
-               
-               // Obligatoire d'appeler le remove dans le cas d'un cacheFitsWriter
-               if( this instanceof CacheFitsWriter ) {
-                  for( String key: libere.keySet() ) try { remove(key); } catch( Exception e ) {}
-               }
-               
-               map=map1;
-
-               //         Enumeration<String> e = map.keys();
-               //         while( e.hasMoreElements() ) {
-               //            String key = e.nextElement();
-               //            FitsFile f = map.get(key);
-               //            if( f.fits.hasUsers() ) continue;
-               //            if( i==0 && now-f.timeAccess<delay ) continue;
-               //            m = f.getMem();
-               //            totMem+=m;
-               //            nb++;
-               //            statNbFree++;
-               //            //            map.remove(key);
-               //            try { remove(key); } catch( Exception e1 ) { }
-               //            if( totMem> mem/2L && map.size()<2*MAXFILE/3 ) { encore=false; break; }
-               //         }
-            }
+   /** Libre au moins rqMem octets du cache (fichiers non utiliss),  la demande
+    * du gestionnaire de mmoire, mme si le cache n'est pas en surcapacit
+    * @return le nombre d'octets effectivement librs
+    */
+   public long release(long rqMem) {
+      if( rqMem<=0 || !cleanLock.tryLock() ) return 0L;
+      try { return evict(rqMem,0); }
+      finally { cleanLock.unlock(); }
+   }
 
-            //      sortedMap.clear();
-            gc();
-         } finally {
-            cacheOutOfMem=false;
+   // Retire du cache les fichiers chargs et non utiliss jusqu' librer rqMem octets et rqFile fichiers
+   // ( appeler sous cleanLock)
+   private long evict(long rqMem, int rqFile) {
+      long totMem=0L;
+      int nb=0;
+      long now = System.currentTimeMillis();
+      final long delay=5000;
+
+      // Les candidats sont les fichiers chargs et non utiliss, les fichiers
+      // accds depuis moins de 5s en dernier, puis par poids dcroissant (mmoire x ge)
+      ArrayList<Map.Entry<String,FitsFile>> candidates = new ArrayList<>();
+      for( Map.Entry<String,FitsFile> e : map.entrySet() ) {
+         FitsFile f = e.getValue();
+         if( !f.isLoaded() || f.fits.hasUsers() ) continue;
+         long age = now-f.timeAccess;
+         f.recent = age<delay;
+         f.weight = (double)(f.mem+1) * (age+1);
+         candidates.add(e);
+      }
+      Collections.sort(candidates, new Comparator<Map.Entry<String,FitsFile>>() {
+         public int compare(Map.Entry<String,FitsFile> a, Map.Entry<String,FitsFile> b) {
+            FitsFile a1 = a.getValue(), b1 = b.getValue();
+            if( a1.recent!=b1.recent ) return a1.recent ? 1 : -1;
+            return Double.compare(b1.weight, a1.weight);
          }
+      });
 
-         long duree = System.currentTimeMillis() - now;
-         String s1 = i>1 ? "s":"";
-         long freeRam = getFreeMem();
-         if( context!=null ) {
-            context.stat("Cache: freeRAM="+Util.getUnitDisk(freeMem)+" => "+nb+" files released ("+Util.getUnitDisk(totMem)+") in "+i+" step"+s1+" in "+Util.getTemps(duree*1000L)
-            +" => freeRAM="+Util.getUnitDisk(freeRam));
+      for( Map.Entry<String,FitsFile> e : candidates ) {
+         if( totMem>=rqMem && nb>=rqFile ) break;
+         String key = e.getKey();
+         FitsFile f = e.getValue();
+         if( f.fits.hasUsers() ) continue;
+
+         // Obligatoire d'appeler le remove dans le cas d'un cacheFitsWriter
+         if( this instanceof CacheFitsWriter ) {
+            try { remove(key); } catch( Exception e1 ) { continue; }
+         } else {
+            if( !map.remove(key,f) ) continue;
+            memUsed.addAndGet(-f.mem);
          }
+         totMem+=f.mem;
+         nb++;
+         statNbFree++;
       }
+      return totMem;
    }
 
    // Reset totalement le cache
@@ -447,6 +481,7 @@ public class CacheFits {
          }
          
       } else map.clear();
+      memUsed.set(0L);
 
       gc();
    }
@@ -753,6 +788,10 @@ public class CacheFits {
    protected class FitsFile {
       public Fits fits;
       long timeAccess;
+      long mem;                  // Taille prise en compte dans le cache (mesure au chargement)
+      FutureTask<Fits> future;   // Chargement du fichier (null si le Fits est fourni directement)
+      boolean recent;            // Pour le tri lors du nettoyage : accd rcemment
+      double weight;             // Pour le tri lors du nettoyage : mmoire x ge
 
       private int id;
 
@@ -761,9 +800,46 @@ public class CacheFits {
          id=nextId++;
       }
 
-      //      public void free() {
-      //         if( fits!=null ) fits.free();
-      //      }
+      // Emplacement d'un fichier qui sera charg par le premier thread qui le demande
+      FitsFile(final String name,final int mode,final boolean flagLoad,final boolean keepHeader) {
+         this();
+         future = new FutureTask<>(new Callable<Fits>() {
+            public Fits call() throws Exception {
+               try {
+                  fits = load(name,mode,flagLoad,keepHeader);
+                  account(FitsFile.this);
+                  return fits;
+               } catch( Exception | Error e ) {
+                  map.remove(name,FitsFile.this);   // On libre l'emplacement pour une prochaine tentative
+                  throw e;
+               }
+            }
+         });
+      }
+
+      /** true si le fichier est charg en mmoire */
+      boolean isLoaded() {
+         return fits!=null && (future==null || future.isDone());
+      }
+
+      /** Retourne le Fits, en attendant si ncessaire la fin de son chargement par un autre thread */
+      Fits getFits() throws Exception {
+         if( future==null ) return fits;
+         boolean interrupted=false;
+         try {
+            while( true ) {
+               try { return future.get(); }
+               catch( InterruptedException e ) { interrupted=true; }
+            }
+         } catch( ExecutionException e ) {
+            Throwable t = e.getCause();
+            if( t instanceof Exception ) throw (Exception)t;
+            if( t instanceof Error ) throw (Error)t;
+            throw e;
+         } finally {
+            if( interrupted ) Thread.currentThread().interrupt();
+         }
+      }
 
       public long getMem() {
          if( fits==null ) return 0L;
@@ -774,7 +850,7 @@ public class CacheFits {
 
       public String toString() {
          long now = System.currentTimeMillis();
-         return "["+id+"] age="+(now-timeAccess)+" => "+fits.getFileNameExtended();
+         return "["+id+"] age="+(now-timeAccess)+" => "+(fits==null ? "loading..." : fits.getFileNameExtended());
       }
    }
 
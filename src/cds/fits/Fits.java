@@ -40,6 +40,8 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Hashtable;
@@ -106,6 +108,8 @@ final public class Fits {
 
    
    public long bitmapOffset = -1; // Repre le positionnement du bitmap des pixels (voir releaseBitmap());
+   private ByteBuffer mapped=null; // Bitmap des pixels projet en mmoire depuis le fichier (voir mapBitmap())
+   private PixelView view=null;    // Accs typ aux pixels (voir getPixelView())
 
    // Dans le cas o il s'agit d'une cellule sur l'image (seule une portion de
    // l'image sera accessible)
@@ -1298,15 +1302,26 @@ final public class Fits {
    public void writeCompressed(String file, double pixelMin, double pixelMax,
          byte[] tcm, String format) throws Exception {
       createDir(file);
+      writePreviewFile(file, pixelMin, pixelMax, tcm, format);
+      setReleasable(false);
+      this.setFilename(file);
+   }
+
+   /**
+    * Gnration d'un fichier JPEG ou PNG sans modifier le nom de fichier associ
+    * (contrairement  writeCompressed()). Le codage est crit directement sur le FileChannel
+    */
+   public void writePreviewFile(String file, double pixelMin, double pixelMax,
+         byte[] tcm, String format) throws Exception {
       FileOutputStream fos = null;
       try {
          fos = new FileOutputStream(new File(file));
-         writePreview(fos, pixelMin, pixelMax, tcm, format);
-         setReleasable(false);
+         if( PreviewEncoder.isSupported(this) ) {
+            PreviewEncoder.get().write(this, fos.getChannel(), pixelMin, pixelMax, tcm, format);
+         } else writePreviewAwt(fos, pixelMin, pixelMax, tcm, format);
       } finally {
          if( fos!=null ) fos.close();
       }
-      this.setFilename(file);
    }
    
    private static Toolkit kit = null;
@@ -1364,8 +1379,22 @@ final public class Fits {
 //   }
 
 
+   /**
+    * Gnration d'un JPEG ou PNG sur le flux os. Passe par l'encodeur PreviewEncoder
+    * (sans Toolkit AWT, ImageWriter rutilis par thread), sauf pour les images ouvertes
+    * en mode "mosaic" (cellule)
+    */
    public void writePreview(OutputStream os, double pixelMin,
          double pixelMax, byte[] tcm, String format) throws Exception {
+      if( PreviewEncoder.isSupported(this) ) {
+         PreviewEncoder.get().write(this, os, pixelMin, pixelMax, tcm, format);
+      } else writePreviewAwt(os, pixelMin, pixelMax, tcm, format);
+   }
+
+   /** Ancienne gnration du JPEG ou PNG via le Toolkit AWT (MemoryImageSource + drawImage),
+    * utilise pour les cellules et conserve comme rfrence (cf. bench PreviewEncoderBench) */
+   void writePreviewAwt(OutputStream os, double pixelMin,
+         double pixelMax, byte[] tcm, String format) throws Exception {
       Image imgSrc;
       BufferedImage imgTarget;
       int[] rgb = this.rgb;
@@ -1562,6 +1591,8 @@ final public class Fits {
       if( filename == null || bitmapOffset == -1 ) throw new Exception(
             "FITS stream not compatible (not a true file [" + filename + "])");
 
+      if( mapped!=null && isInCell(x,y,z) ) return getPixelValue(x,y,z);
+
       if( fDirectAccess==null ) fDirectAccess = new RandomAccessFile(filename, "r");
       int n = Math.abs(bitpix) / 8;
       byte [] pixels = new byte[n];
@@ -1578,15 +1609,13 @@ final public class Fits {
     *  partir du bas) sous forme d'un double
     */
    public double getPixelFull(int x, int y) {
-      double pix = getPixValDouble(pixels, bitpix, (y - yCell) * widthCell
-            + (x - xCell));
+      double pix = getPixelValue(x,y,zCell);
       if( isBlankPixel(pix) ) return pix;
       return bscale * pix  + bzero;
    }
 
    public double getPixelFull(int x, int y, int z) {
-      double pix = getPixValDouble(pixels, bitpix, (z-zCell)*widthCell*heightCell + (y - yCell) * widthCell
-            + (x - xCell));
+      double pix = getPixelValue(x,y,z);
       if( isBlankPixel(pix) ) return pix;
       return bscale * pix  + bzero;
    }
@@ -1596,11 +1625,37 @@ final public class Fits {
     * d'un double
     */
    public double getPixelDouble(int x, int y) {
-      return getPixValDouble(pixels, bitpix, (y - yCell) * widthCell + (x - xCell));
+      return getPixelValue(x,y,zCell);
    }
 
    public double getPixelDouble(int x, int y, int z) {
-      return getPixValDouble(pixels, bitpix, (z-zCell)*widthCell*heightCell + (y - yCell) * widthCell + (x - xCell));
+      return getPixelValue(x,y,z);
+   }
+
+   // Valeur du pixel (x,y,z) via l'accs typ, que le bitmap soit en mmoire ou projet
+   private double getPixelValue(int x, int y, int z) {
+      ByteBuffer mapped = this.mapped;
+      PixelView v = getPixelView();
+      if( v==null ) return getPixValDouble(pixels, bitpix, (z-zCell)*widthCell*heightCell + (y - yCell) * widthCell + (x - xCell));
+      int i = mapped!=null ? getMappedIndex(x,y,z) : (z-zCell)*widthCell*heightCell + (y - yCell) * widthCell + (x - xCell);
+      try { return v.get(i); }
+      catch( IndexOutOfBoundsException e ) { return DEFAULT_BLANK; }
+   }
+
+   /**
+    * Retourne l'accs typ aux pixels (pixels[] ou bitmap projet en mmoire), null si
+    * les pixels ne sont pas disponibles (JPEG, PNG, bitmap libr)
+    */
+   public PixelView getPixelView() {
+      PixelView v = view;
+      ByteBuffer mapped = this.mapped;
+      byte [] pixels = this.pixels;
+      Object source = mapped!=null ? mapped : pixels;
+      if( v!=null && v.isBackedBy(source, bitpix) ) return v;
+      if( source==null || bitpix==0 ) return null;
+      v = mapped!=null ? PixelView.create(mapped, bitpix) : PixelView.create(pixels, bitpix);
+      view = v;
+      return v;
    }
 
    /**
@@ -1608,10 +1663,12 @@ final public class Fits {
     * d'un entier
     */
    public int getPixelInt(int x, int y) {
+      if( mapped!=null ) return (int)getPixelValue(x,y,zCell);
       return getPixValInt(pixels, bitpix, (y - yCell) * widthCell + (x - xCell));
    }
 
    public int getPixelInt(int x, int y,int z) {
+      if( mapped!=null ) return (int)getPixelValue(x,y,z);
       return getPixValInt(pixels, bitpix, (z-zCell)*widthCell*heightCell + (y - yCell) * widthCell + (x - xCell));
    }
 
@@ -1760,10 +1817,13 @@ final public class Fits {
       double r = range / (max - min);
       range--;
       byte pixOut;
+      PixelView v = mapped==null ? getPixelView() : null;
+      double [] row = new double[widthCell];
 
       for( int y = 0; y < heightCell; y++ ) {
+         if( v!=null ) v.getRow(y*widthCell, row, 0, widthCell);
          for( int x = 0; x < widthCell; x++ ) {
-            double pixIn = getPixelDouble(x + xCell, y + yCell);
+            double pixIn = v!=null ? row[x] : getPixelDouble(x + xCell, y + yCell);
             if( isBlankPixel(pixIn) ) pixOut = 0;
             else {
                int pix = ((gap + (pixIn <= min ? 0x00 : pixIn >= max ? range
@@ -1791,10 +1851,13 @@ final public class Fits {
       double r = range / (max - min);
       range--;
       int pixOut;
+      PixelView v = mapped==null ? getPixelView() : null;
+      double [] row = new double[widthCell];
 
       for( int y = 0; y < heightCell; y++ ) {
+         if( v!=null ) v.getRow(y*widthCell, row, 0, widthCell);
          for( int x = 0; x < widthCell; x++ ) {
-            double pixIn = getPixelDouble(x + xCell, y + yCell);
+            double pixIn = v!=null ? row[x] : getPixelDouble(x + xCell, y + yCell);
             if( isBlankPixel(pixIn) ) pixOut = 0;
             else {
                pixOut = ((gap + (pixIn <= min ? 0x00 : pixIn>Integer.MAX_VALUE ? Integer.MAX_VALUE
@@ -2069,6 +2132,7 @@ final public class Fits {
     */
    synchronized public long releaseBitmap() throws Exception {
       if( bitpix == 0 ) return 0; // De fait du JPEG
+      if( mapped!=null ) return 0; // Projet en mmoire, rien  librer
       if( hasUsers() ) return 0; // Pas possible, qq s'en sert
       if( filename==null ) return 0;
       testBitmapReleaseFeature();
@@ -2085,7 +2149,7 @@ final public class Fits {
     */
    synchronized public void reloadBitmap() throws Exception {
       if( bitpix == 0 ) return; // De fait du JPEG
-      if( pixels != null ) return;
+      if( pixels != null || mapped != null ) return;
       if( filename==null ) return;
       if( !bitmapReleaseDone ) throw new Exception("no releaseBitmap done before");
       testBitmapReleaseFeature();
@@ -2121,6 +2185,48 @@ final public class Fits {
       bitmapReleaseDone = false;
    }
 
+   /**
+    * Projection en mmoire (memory-mapped) du bitmap des pixels directement depuis le fichier
+    * FITS local (non compress) en lieu et place de son chargement dans pixels[]. Seules les
+    * frames et les lignes de la cellule sont projetes. Les accs via getPixelDouble(), getPixelFull(),
+    * getPixelInt() et getPixelDirectAccess() se font alors sans recopie, releaseBitmap() et
+    * reloadBitmap() ne cotent plus rien et le bitmap n'occupe pas de mmoire dans le tas
+    * (pixels[] reste  null).
+    * @return true si la projection a pu tre faite, sinon le Fits est inchang
+    */
+   synchronized public boolean mapBitmap() throws Exception {
+      if( mapped!=null ) return true;
+      if( bitpix==0 ) return false;
+      testBitmapReleaseFeature();
+      int n = Math.abs(bitpix) / 8;
+      long offset = bitmapOffset + ((long)zCell*width*height + (long)yCell*width) * n;
+      long size = ((long)(depthCell-1)*width*height + (long)heightCell*width) * n;
+      if( size<=0 || size>Integer.MAX_VALUE ) return false;
+
+      try( FileChannel f = FileChannel.open(new File(filename).toPath()) ) {
+         if( offset+size > f.size() ) return false;
+         mapped = f.map(FileChannel.MapMode.READ_ONLY, offset, size);  // FITS => big endian par dfaut
+      }
+      pixels = null;
+      bitmapReleaseDone = false;
+      return true;
+   }
+
+   /** Suppression de la projection mmoire du bitmap => ncessite un reloadBitmap() ultrieur */
+   synchronized public void unmapBitmap() {
+      if( mapped==null ) return;
+      mapped = null;
+      bitmapReleaseDone = true;
+   }
+
+   /** Retourne true si le bitmap des pixels est projet en mmoire (voir mapBitmap()) */
+   public boolean isMapped() { return mapped!=null; }
+
+   // Indice du pixel (x,y,z) (coordonnes dans l'image complte) dans le bitmap projet
+   private int getMappedIndex(int x, int y, int z) {
+      return (z-zCell)*width*height + (y-yCell)*width + x;
+   }
+
    private void testBitmapReleaseFeature() throws Exception {
       if( filename == null || bitmapOffset == -1 ) throw new Exception(
             "FITS stream not compatible (not a true file [" + filename + "])");
@@ -2137,6 +2243,8 @@ final public class Fits {
    /** Pour aider le GC */
    public void free() {
       pixels = null;
+      mapped = null;
+      view = null;
       rgb = null;
       calib = null;
       headerFits = headerFits0 = null;
@@ -2210,6 +2318,7 @@ final public class Fits {
       }
 
       double c;
+      PixelView vIn = pIn==pixels && mapped==null ? getPixelView() : PixelView.create(pIn, bitpix);
 
       if( !autocut && (minCut != 0. || maxCut != 0.) ) {
          range[2] = min = minCut;
@@ -2222,7 +2331,7 @@ final public class Fits {
          for( i = margeH; i < height - margeH; i++ ) {
             for( j = margeW; j < width - margeW; j++ ) {
                for( int z = margeZ; z< depth - margeZ; z++ ) {
-                  c = getPixValDouble(pIn, bitpix, z*height*width+ i*width + j);
+                  c = vIn.get(z*height*width+ i*width + j);
 
                   // On ecarte les valeurs sans signification
                   if( isBlankPixel(c) ) { nblank++; continue; }
@@ -2277,7 +2386,7 @@ final public class Fits {
          int[] bean = new int[nbean];
          for( i = margeH; i < height - margeH; i++ ) {
             for( k = margeW; k < width - margeW; k++ ) {
-               c = getPixValDouble(pIn, bitpix, i * width + k);
+               c = vIn.get(i * width + k);
                if( isBlankPixel(c) ) continue;
 
                j = (int) ((c - min) / l);
@@ -2532,16 +2641,12 @@ final public class Fits {
       int taille = widthCell * heightCell * depthCell;
 
       if( a.pixels != null && pixels != null ) {
-//         double max = getMax(bitpix);
-         for( int i = 0; i < taille; i++ ) {
-            double v1 = getPixValDouble(pixels, bitpix, i);
-            double v2 = a.getPixValDouble(a.pixels, a.bitpix, i);
-            double v;
-                 if( mode==AVG ) v = isBlankPixel(v1) ? v2 : a.isBlankPixel(v2) ? v1 : (v1 + v2) / 2;
-            else if( mode==MUL ) v = isBlankPixel(v1) || isBlankPixel(v2)? v1 :  v1 * v2;
-            else if( mode==DIV ) v = isBlankPixel(v1) || isBlankPixel(v2)? v1 :  v1 / v2;
-            else v = isBlankPixel(v1) ? v2 : a.isBlankPixel(v2) ? v1 : (v1 + v2);
-            setPixValDouble(pixels, bitpix, i, v);
+         PixelView v = getPixelView();
+         PixelView va = a.getPixelView();
+         int w = widthCell;
+         double [] buf = new double[w], aBuf = new double[w];
+         for( int i = 0; i < taille; i+=w ) {
+            v.coaddRow(i, va, i, Math.min(w, taille-i), mode, blank, a.blank, buf, aBuf);
          }
       }
       if( a.rgb != null && rgb != null ) {
@@ -2615,16 +2720,25 @@ final public class Fits {
       int taille = widthCell * heightCell * depthCell;
 
       if( a.pixels != null && pixels != null ) {
-         for( int i = 0; i < taille; i++ ) {
-            double v1 = getPixValDouble(pixels, bitpix, i);
-            double v2 = a.getPixValDouble(a.pixels, a.bitpix, i);
-            double fct1 = weightOut[i] / (weightOut[i] + weightIn[i]);
-            double fct2 = weightIn[i] / (weightOut[i] + weightIn[i]);
-            weightOut[i] += weightIn[i];
-            weightIn[i] = 0;
-            double v = isBlankPixel(v1) ? v2 : a.isBlankPixel(v2) ? v1 :
-               v1 * fct1 + v2 * fct2;
-            setPixValDouble(pixels, bitpix, i, v);
+         PixelView pv = getPixelView();
+         PixelView pva = a.getPixelView();
+         int w = widthCell;
+         double [] buf = new double[w], aBuf = new double[w];
+         for( int deb = 0; deb < taille; deb+=w ) {
+            int n = Math.min(w, taille-deb);
+            pv.getRow(deb, buf, 0, n);
+            pva.getRow(deb, aBuf, 0, n);
+            for( int k = 0, i = deb; k < n; k++, i++ ) {
+               double v1 = buf[k];
+               double v2 = aBuf[k];
+               double fct1 = weightOut[i] / (weightOut[i] + weightIn[i]);
+               double fct2 = weightIn[i] / (weightOut[i] + weightIn[i]);
+               weightOut[i] += weightIn[i];
+               weightIn[i] = 0;
+               buf[k] = isBlankPixel(v1) ? v2 : a.isBlankPixel(v2) ? v1 :
+                  v1 * fct1 + v2 * fct2;
+            }
+            pv.setRow(deb, buf, 0, n);
          }
       }
       if( a.rgb != null && rgb != null ) {
@@ -0,0 +1,290 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.fits;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Accs typ aux pixels FITS (big endian) d'un bitmap, sans switch sur le bitpix ni
+ * reconstruction des octets  chaque pixel. Il y a une implantation par bitpix (8, 16, 32, 64,
+ * -32, -64) qui s'appuie sur la vue correspondante du ByteBuffer (ShortBuffer, FloatBuffer...).
+ * Les oprations par ligne (getRow, setRow, coaddRow, minMax) bouclent dans la classe
+ * concrte de manire  ce que le JIT puisse les "inliner" et les vectoriser.
+ *
+ * Rq : les accs sont absolus (pas de position), une mme vue peut donc tre lue par plusieurs
+ * threads simultanment.
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+public abstract class PixelView {
+
+   protected final Object source;   // Tableau byte[] ou ByteBuffer sous-jacent
+   protected final int bitpix;      // Codage des pixels
+
+   protected PixelView(Object source,int bitpix) {
+      this.source=source;
+      this.bitpix=bitpix;
+   }
+
+   /** Cration d'une vue type sur un tableau de pixels FITS */
+   static public PixelView create(byte [] t,int bitpix) {
+      return create(t,ByteBuffer.wrap(t),bitpix);
+   }
+
+   /** Cration d'une vue type sur un buffer de pixels FITS (par exemple projet en mmoire) */
+   static public PixelView create(ByteBuffer b,int bitpix) {
+      return create(b,b,bitpix);
+   }
+
+   static private PixelView create(Object source,ByteBuffer b,int bitpix) {
+      b = b.duplicate().order(ByteOrder.BIG_ENDIAN);
+      switch( bitpix ) {
+         case   8: return new Byte8(source,b);
+         case  16: return new Short16(source,b.asShortBuffer());
+         case  32: return new Int32(source,b.asIntBuffer());
+         case  64: return new Long64(source,b.asLongBuffer());
+         case -32: return new Float32(source,b.asFloatBuffer());
+         case -64: return new Double64(source,b.asDoubleBuffer());
+      }
+      throw new IllegalArgumentException("Unsupported bitpix ["+bitpix+"]");
+   }
+
+   /** Retourne true si la vue porte sur ce tableau ou ce buffer avec ce bitpix */
+   public boolean isBackedBy(Object source,int bitpix) {
+      return source!=null && this.source==source && this.bitpix==bitpix;
+   }
+
+   /** Codage des pixels */
+   public int getBitpix() { return bitpix; }
+
+   /** Nombre de pixels */
+   abstract public int length();
+
+   /** Valeur du pixel d'indice i */
+   abstract public double get(int i);
+
+   /** Positionnement de la valeur du pixel d'indice i (mme conversion que Fits.setPixValDouble()) */
+   abstract public void set(int i,double v);
+
+   /** Lecture de n pixels  partir de l'indice offset dans dst[dstOffset..] */
+   abstract public void getRow(int offset,double [] dst,int dstOffset,int n);
+
+   /** Ecriture de n pixels  partir de l'indice offset depuis src[srcOffset..] */
+   abstract public void setRow(int offset,double [] src,int srcOffset,int n);
+
+   /**
+    * Recherche du min et du max de n pixels  partir de l'indice offset en ignorant les
+    * valeurs NaN et blank. minmax[0] et minmax[1] sont mis  jour s'ils ont dj t
+    * initialiss (count>0 en entre)
+    * @return le nouveau nombre de pixels pris en compte (count + ceux de la ligne)
+    */
+   abstract public long minMax(int offset,int n,double blank,double [] minmax,long count);
+
+   /**
+    * Coaddition de n pixels de la vue a ( partir de aOffset) sur ceux de cette vue ( partir
+    * de offset), suivant le mode Fits.AVG, Fits.ADD, Fits.MUL ou Fits.DIV
+    * @param blank valeur BLANK de cette vue
+    * @param aBlank valeur BLANK de la vue a
+    * @param buf,aBuf buffers de travail d'au moins n cases
+    */
+   public final void coaddRow(int offset,PixelView a,int aOffset,int n,int mode,
+         double blank,double aBlank,double [] buf,double [] aBuf) {
+      getRow(offset,buf,0,n);
+      a.getRow(aOffset,aBuf,0,n);
+      for( int i=0; i<n; i++ ) {
+         double v1 = buf[i];
+         double v2 = aBuf[i];
+         boolean b1 = Double.isNaN(v1) || v1==blank;
+         if( mode==Fits.MUL || mode==Fits.DIV ) {
+            if( b1 || Double.isNaN(v2) || v2==blank ) continue;
+            buf[i] = mode==Fits.MUL ? v1*v2 : v1/v2;
+         } else {
+            if( b1 ) buf[i] = v2;
+            else if( !(Double.isNaN(v2) || v2==aBlank) ) buf[i] = mode==Fits.AVG ? (v1+v2)/2 : v1+v2;
+         }
+      }
+      setRow(offset,buf,0,n);
+   }
+
+   /** Pixels 8 bits non signs */
+   static final class Byte8 extends PixelView {
+      private final ByteBuffer b;
+      Byte8(Object source,ByteBuffer b) { super(source,8); this.b=b; }
+      public int length() { return b.capacity(); }
+      public double get(int i) { return b.get(i) & 0xFF; }
+      public void set(int i,double v) { b.put(i,(byte)(0xFF & (int)v)); }
+      public void getRow(int offset,double [] dst,int dstOffset,int n) {
+         for( int i=0; i<n; i++ ) dst[dstOffset+i] = b.get(offset+i) & 0xFF;
+      }
+      public void setRow(int offset,double [] src,int srcOffset,int n) {
+         for( int i=0; i<n; i++ ) b.put(offset+i,(byte)(0xFF & (int)src[srcOffset+i]));
+      }
+      public long minMax(int offset,int n,double blank,double [] minmax,long count) {
+         double min=minmax[0], max=minmax[1];
+         for( int i=0; i<n; i++ ) {
+            double c = b.get(offset+i) & 0xFF;
+            if( c==blank ) continue;
+            if( count++==0 ) { min=max=c; continue; }
+            if( c<min ) min=c; else if( c>max ) max=c;
+         }
+         minmax[0]=min; minmax[1]=max;
+         return count;
+      }
+   }
+
+   /** Pixels entiers 16 bits */
+   static final class Short16 extends PixelView {
+      private final ShortBuffer b;
+      Short16(Object source,ShortBuffer b) { super(source,16); this.b=b; }
+      public int length() { return b.capacity(); }
+      public double get(int i) { return b.get(i); }
+      public void set(int i,double v) { b.put(i,(short)(int)v); }
+      public void getRow(int offset,double [] dst,int dstOffset,int n) {
+         for( int i=0; i<n; i++ ) dst[dstOffset+i] = b.get(offset+i);
+      }
+      public void setRow(int offset,double [] src,int srcOffset,int n) {
+         for( int i=0; i<n; i++ ) b.put(offset+i,(short)(int)src[srcOffset+i]);
+      }
+      public long minMax(int offset,int n,double blank,double [] minmax,long count) {
+         double min=minmax[0], max=minmax[1];
+         for( int i=0; i<n; i++ ) {
+            double c = b.get(offset+i);
+            if( c==blank ) continue;
+            if( count++==0 ) { min=max=c; continue; }
+            if( c<min ) min=c; else if( c>max ) max=c;
+         }
+         minmax[0]=min; minmax[1]=max;
+         return count;
+      }
+   }
+
+   /** Pixels entiers 32 bits */
+   static final class Int32 extends PixelView {
+      private final IntBuffer b;
+      Int32(Object source,IntBuffer b) { super(source,32); this.b=b; }
+      public int length() { return b.capacity(); }
+      public double get(int i) { return b.get(i); }
+      public void set(int i,double v) { b.put(i,(int)v); }
+      public void getRow(int offset,double [] dst,int dstOffset,int n) {
+         for( int i=0; i<n; i++ ) dst[dstOffset+i] = b.get(offset+i);
+      }
+      public void setRow(int offset,double [] src,int srcOffset,int n) {
+         for( int i=0; i<n; i++ ) b.put(offset+i,(int)src[srcOffset+i]);
+      }
+      public long minMax(int offset,int n,double blank,double [] minmax,long count) {
+         double min=minmax[0], max=minmax[1];
+         for( int i=0; i<n; i++ ) {
+            double c = b.get(offset+i);
+            if( c==blank ) continue;
+            if( count++==0 ) { min=max=c; continue; }
+            if( c<min ) min=c; else if( c>max ) max=c;
+         }
+         minmax[0]=min; minmax[1]=max;
+         return count;
+      }
+   }
+
+   /** Pixels entiers 64 bits */
+   static final class Long64 extends PixelView {
+      private final LongBuffer b;
+      Long64(Object source,LongBuffer b) { super(source,64); this.b=b; }
+      public int length() { return b.capacity(); }
+      public double get(int i) { return b.get(i); }
+      public void set(int i,double v) { b.put(i,(long)v); }
+      public void getRow(int offset,double [] dst,int dstOffset,int n) {
+         for( int i=0; i<n; i++ ) dst[dstOffset+i] = b.get(offset+i);
+      }
+      public void setRow(int offset,double [] src,int srcOffset,int n) {
+         for( int i=0; i<n; i++ ) b.put(offset+i,(long)src[srcOffset+i]);
+      }
+      public long minMax(int offset,int n,double blank,double [] minmax,long count) {
+         double min=minmax[0], max=minmax[1];
+         for( int i=0; i<n; i++ ) {
+            double c = b.get(offset+i);
+            if( c==blank ) continue;
+            if( count++==0 ) { min=max=c; continue; }
+            if( c<min ) min=c; else if( c>max ) max=c;
+         }
+         minmax[0]=min; minmax[1]=max;
+         return count;
+      }
+   }
+
+   /** Pixels rels simple prcision */
+   static final class Float32 extends PixelView {
+      private final FloatBuffer b;
+      Float32(Object source,FloatBuffer b) { super(source,-32); this.b=b; }
+      public int length() { return b.capacity(); }
+      public double get(int i) { return b.get(i); }
+      public void set(int i,double v) { b.put(i,(float)v); }
+      public void getRow(int offset,double [] dst,int dstOffset,int n) {
+         for( int i=0; i<n; i++ ) dst[dstOffset+i] = b.get(offset+i);
+      }
+      public void setRow(int offset,double [] src,int srcOffset,int n) {
+         for( int i=0; i<n; i++ ) b.put(offset+i,(float)src[srcOffset+i]);
+      }
+      public long minMax(int offset,int n,double blank,double [] minmax,long count) {
+         double min=minmax[0], max=minmax[1];
+         for( int i=0; i<n; i++ ) {
+            double c = b.get(offset+i);
+            if( Double.isNaN(c) || c==blank ) continue;
+            if( count++==0 ) { min=max=c; continue; }
+            if( c<min ) min=c; else if( c>max ) max=c;
+         }
+         minmax[0]=min; minmax[1]=max;
+         return count;
+      }
+   }
+
+   /** Pixels rels double prcision */
+   static final class Double64 extends PixelView {
+      private final DoubleBuffer b;
+      Double64(Object source,DoubleBuffer b) { super(source,-64); this.b=b; }
+      public int length() { return b.capacity(); }
+      public double get(int i) { return b.get(i); }
+      public void set(int i,double v) { b.put(i,v); }
+      public void getRow(int offset,double [] dst,int dstOffset,int n) {
+         for( int i=0; i<n; i++ ) dst[dstOffset+i] = b.get(offset+i);
+      }
+      public void setRow(int offset,double [] src,int srcOffset,int n) {
+         for( int i=0; i<n; i++ ) b.put(offset+i,src[srcOffset+i]);
+      }
+      public long minMax(int offset,int n,double blank,double [] minmax,long count) {
+         double min=minmax[0], max=minmax[1];
+         for( int i=0; i<n; i++ ) {
+            double c = b.get(offset+i);
+            if( Double.isNaN(c) || c==blank ) continue;
+            if( count++==0 ) { min=max=c; continue; }
+            if( c<min ) min=c; else if( c>max ) max=c;
+         }
+         minmax[0]=min; minmax[1]=max;
+         return count;
+      }
+   }
+}
@@ -0,0 +1,181 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+package cds.fits;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Encodeur des tuiles preview (JPEG, PNG) sans passer par le Toolkit AWT. Les pixels 8 bits
+ * (Fits.toPix8()) ou RGB (Fits.rgb) remplissent directement le raster d'une BufferedImage,
+ * et l'image est code par un ImageWriter dans un buffer mmoire crit en une fois sur la sortie
+ * (OutputStream ou FileChannel).
+ *
+ * L'ImageWriter, ses paramtres, la BufferedImage et le buffer de sortie sont rutiliss
+ * d'une tuile  l'autre : il y a un encodeur par thread (cf. get()).
+ *
+ * Le rsultat est identique  l'ancienne mthode (MemoryImageSource + drawImage) : niveaux
+ * de gris via la mme table que Fits.getCM(), pixel 0 transparent pour le PNG.
+ *
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 - octobre 2026 - cration
+ */
+public final class PreviewEncoder {
+
+   static private final ThreadLocal<PreviewEncoder> LOCAL = new ThreadLocal<PreviewEncoder>() {
+      protected PreviewEncoder initialValue() { return new PreviewEncoder(); }
+   };
+
+   /** Retourne l'encodeur associ au thread courant */
+   static public PreviewEncoder get() { return LOCAL.get(); }
+
+   /** Retourne true si la Fits peut tre code par cet encodeur (pas de cellule "mosaic") */
+   static public boolean isSupported(Fits f) {
+      return f.xCell==0 && f.yCell==0 && f.widthCell==f.width && f.heightCell==f.height;
+   }
+
+   /** Buffer de sortie dont on peut rcuprer le contenu sans recopie */
+   static private final class Buffer extends ByteArrayOutputStream {
+      Buffer() { super(64*1024); }
+      ByteBuffer wrap() { return ByteBuffer.wrap(buf,0,count); }
+      void writeOut(OutputStream os) throws java.io.IOException { os.write(buf,0,count); }
+   }
+
+   private ImageWriter jpegWriter,pngWriter;
+   private ImageWriteParam jpegParam,pngParam;
+   private BufferedImage rgbImg,argbImg;
+   private final Buffer buf = new Buffer();
+
+   private PreviewEncoder() { }
+
+   /** Codage de la Fits en JPEG ou PNG sur le flux os */
+   public void write(Fits f, OutputStream os, double pixelMin, double pixelMax, byte [] tcm, String format) throws Exception {
+      encode(f,pixelMin,pixelMax,tcm,format);
+      buf.writeOut(os);
+   }
+
+   /** Codage de la Fits en JPEG ou PNG sur le canal ch (typiquement un FileChannel) */
+   public void write(Fits f, WritableByteChannel ch, double pixelMin, double pixelMax, byte [] tcm, String format) throws Exception {
+      encode(f,pixelMin,pixelMax,tcm,format);
+      ByteBuffer b = buf.wrap();
+      while( b.hasRemaining() ) ch.write(b);
+   }
+
+   /** Codage dans le buffer interne */
+   private void encode(Fits f, double pixelMin, double pixelMax, byte [] tcm, String format) throws Exception {
+      boolean png = format.equals("png");
+      BufferedImage img = getImage(f.width,f.height,png);
+      int [] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+      int w = f.width;
+      int h = f.height;
+
+      // Image couleur : les lignes de rgb[] sont comptes depuis le bas (Fits.RGBASFITS)
+      if( f.bitpix==0 || f.pixMode==Fits.PIX_RGB || f.pixMode==Fits.PIX_ARGB ) {
+         int [] rgb = f.rgb;
+         for( int y=0; y<h; y++ ) {
+            int src = (Fits.RGBASFITS ? h-y-1 : y)*w;
+            int dst = y*w;
+            if( png ) for( int x=0; x<w; x++ ) { int c=rgb[src+x]; data[dst+x] = (c>>>24)==0 ? 0 : c; }
+            else for( int x=0; x<w; x++ ) data[dst+x] = opaque(rgb[src+x]);
+         }
+
+      // Image en niveaux de gris : mmes tables que Fits.getCM(PIX_255|PIX_256)
+      } else {
+         byte [] pix8 = f.toPix8(pixelMin, pixelMax, tcm, png ? Fits.PIX_255 : Fits.PIX_256);
+         int n = w*h;
+         if( png ) {
+            for( int i=0; i<n; i++ ) {
+               int c = pix8[i]&0xFF;
+               data[i] = c==0 ? 0 : GRAY[c-1] | 0xFF000000;
+            }
+         } else {
+            for( int i=0; i<n; i++ ) data[i] = GRAY[ pix8[i]&0xFF ];
+         }
+      }
+
+      ImageWriter writer = png ? getPngWriter() : getJpegWriter();
+      ImageWriteParam param = png ? pngParam : jpegParam;
+      buf.reset();
+      MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(buf);
+      try {
+         writer.setOutput(out);
+         writer.write(null, new IIOImage(img, null, null), param);
+      } finally {
+         writer.setOutput(null);
+         out.close();
+      }
+   }
+
+   // Niveaux de gris en RGB (0xRRGGBB)
+   static private final int [] GRAY = new int[256];
+   static { for( int i=0; i<256; i++ ) GRAY[i] = i<<16 | i<<8 | i; }
+
+   /** Equivalent du dessin d'un pixel ARGB sur le fond noir d'une image RGB */
+   static private int opaque(int c) {
+      int a = (c>>>24)&0xFF;
+      if( a==0xFF ) return c&0xFFFFFF;
+      if( a==0 ) return 0;
+      int r = ((c>>16)&0xFF)*a/255, g = ((c>>8)&0xFF)*a/255, b = (c&0xFF)*a/255;
+      return r<<16 | g<<8 | b;
+   }
+
+   private BufferedImage getImage(int w,int h,boolean png) {
+      if( png ) {
+         if( argbImg==null || argbImg.getWidth()!=w || argbImg.getHeight()!=h ) {
+            argbImg = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+         }
+         return argbImg;
+      }
+      if( rgbImg==null || rgbImg.getWidth()!=w || rgbImg.getHeight()!=h ) {
+         rgbImg = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      }
+      return rgbImg;
+   }
+
+   private ImageWriter getJpegWriter() {
+      if( jpegWriter==null ) {
+         jpegWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+         jpegParam = jpegWriter.getDefaultWriteParam();
+         jpegParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+         jpegParam.setCompressionQuality(0.95f);
+      }
+      return jpegWriter;
+   }
+
+   private ImageWriter getPngWriter() {
+      if( pngWriter==null ) {
+         pngWriter = ImageIO.getImageWritersByFormatName("png").next();
+         pngParam = pngWriter.getDefaultWriteParam();
+      }
+      return pngWriter;
+   }
+}
@@ -24,6 +24,10 @@ package cds.mocmulti;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 
 import cds.aladin.MyProperties;
 import cds.moc.Moc;
@@ -37,16 +41,37 @@ import cds.moc.TMoc;
  * Binary "dumper" dedicated for MultiMoc
  * Writter and reader for MultiMoc as a binary dump
  * @version 1.0 - sept 2011
+ * @version 1.1 - oct 2026 - spatial index (MocIndex runs) saved with each MOC (MC13)
+ * @version 1.2 - oct 2026 - table of contents + MOC bodies memory-mapped and decoded on demand (MC14)
  * @author Pierre Fernique [CDS]
+ * 
+ * MC14 layout: magic code, position of the table of contents (long), MOC bodies (writeSpecificDataRange() bytes),
+ * table of contents (coordsys, nb of items, and for each item: dates, ID, MOC type, MOC orders,
+ * body position and size, properties, spatial index runs), end magic code.
+ * At loading time, the table of contents is read entirely, but the MOC bodies stay in the
+ * memory-mapped file until a scan requires them (see MocCache).
+ * 
+ * As a mapped file can not be deleted or replaced on some systems (Windows) as long as
+ * the mapping is alive, a new dump which can not replace the current one is written as a
+ * new version "path.N" beside it. load(path) always reads the last version.
  */
 public final class BinaryDump {
    
    static private boolean debug=false;
-   static private final byte BINVERSION[]  = { 'M','C','1','2' };  // Binary magic code
+   static private final byte BINVERSION[]  = { 'M','C','1','4' };  // Binary magic code
+   static private final byte BINVERSION13[]= { 'M','C','1','3' };  // Previous binary magic code (without TOC)
+   static private final byte BINVERSION12[]= { 'M','C','1','2' };  // Previous binary magic code (without spatial index)
    static private final long MAGICODE = 2021042317L;
+   static private final int TOCBUFSIZE = 64*1024;         // Buffer size for reading the table of contents
+   static private final long MAXCHUNK = 256L*1024*1024;   // Max size of each memory-mapped chunk of MOC bodies
+   
+   private long cacheSize = MocCache.DEFAULTSIZE;         // Max memory of the MOCs decoded on demand
    
    public BinaryDump() { }
    
+   /** Max memory used by the MOCs decoded on demand (MC14 dump) */
+   public void setCacheSize(long cacheSize) { this.cacheSize=cacheSize; }
+   
    
    /** Load a MultiMoc from a binary dump file
     * @param path filename of the binary dump file
@@ -55,24 +80,31 @@ public final class BinaryDump {
     */
    public MultiMoc load(String path) throws Exception {
       long deb = System.currentTimeMillis();
+      long heap = debug ? getUsedHeap() : 0L;
       BufReader buf;
-      File f = new File(path);
+      File f = getLastVersion(path);
+      if( f==null ) throw new Exception("MultiMoc binary dump not found ["+path+"]");
       RandomAccessFile rf = new RandomAccessFile(f,"r");
       byte version[] = new byte[4];
 
       rf.readFully(version);
       String va = new String(version);
       String vb = new String(BINVERSION);
-      if( !va.equals(vb) ) {
+      boolean lazy = va.equals(vb);
+      boolean withIndex = lazy || va.equals(new String(BINVERSION13));
+      if( !withIndex && !va.equals(new String(BINVERSION12)) ) {
          rf.close();
          throw new Exception("MultiMoc binary dump not compatible (found ["+va+"], required ["+vb+"]");
       }
 
-      buf = new BufReader(rf);
       MultiMoc moc;
       try {
-         moc = parseDump(buf);
-      rf.close();
+         if( lazy ) moc = parseLazyDump(rf);
+         else {
+            buf = new BufReader(rf);
+            moc = parseDump(buf,withIndex);
+         }
+         rf.close();
          rf=null;
       } catch( Exception e ) {
          e.printStackTrace();
@@ -81,10 +113,18 @@ public final class BinaryDump {
 
       long fin = System.currentTimeMillis();
       long duree = fin-deb;
-      if( debug ) System.out.println("MultiMoc binary dump read in "+(duree/1000.)+"s => "+Unite.getUnitDisk( moc.getMem(),0));
+      if( debug ) System.out.println("MultiMoc binary dump ["+va+"] read in "+(duree/1000.)+"s => "+Unite.getUnitDisk( moc.getMem(),0)
+                                    +" (heap used: +"+Unite.getUnitDisk( getUsedHeap()-heap,0)+")");
       
       return moc;
    }
+   
+   /** Heap currently used (after a GC request), for the loading report */
+   static private long getUsedHeap() {
+      Runtime rt = Runtime.getRuntime();
+      rt.gc();
+      return rt.totalMemory()-rt.freeMemory();
+   }
 
    
    /** Save a MultiMoc as a binary dump file
@@ -100,12 +140,17 @@ public final class BinaryDump {
          tmp = new File(path+".tmp"+(System.currentTimeMillis()%1000));
          RandomAccessFile rf = new RandomAccessFile(tmp,"rw");
          rf.write(BINVERSION);
-         createDump(mMoc,rf);
+         createLazyDump(mMoc,rf);
          rf.close();
 
-         File f = new File(path);
-         f.delete();
-         tmp.renameTo(f);
+         // Suppression des versions prcdentes. Celles encore mappes (Windows) ne peuvent
+         // l'tre => la nouvelle version est crite  ct, avec un numro suprieur
+         int last=-1;
+         for( File f : getVersions(path) ) {
+            if( !f.delete() ) last = Math.max(last,getVersion(path,f));
+         }
+         File f = new File( last<0 ? path : path+"."+(last+1) );
+         if( !tmp.renameTo(f) ) throw new Exception("Cannot write MultiMoc binary dump ["+f+"]");
          size=f.length();
          tmp=null;
       } finally {
@@ -118,11 +163,58 @@ public final class BinaryDump {
                                                 +" Dump="+Unite.getUnitDisk( size,0));
    }
    
-   /** Binary parsing of a MultiMoc stored in a Buf
-    * @param buf Binary buf containing the MultiMoc
+   /** Existing versions of a binary dump: the file itself and its "path.N" versions */
+   static private ArrayList<File> getVersions(String path) {
+      ArrayList<File> list = new ArrayList<>();
+      File f = new File(path);
+      File dir = f.getAbsoluteFile().getParentFile();
+      String [] names = dir==null ? null : dir.list();
+      if( names==null ) return list;
+      for( String name : names ) {
+         File f1 = new File(dir,name);
+         if( getVersion(path,f1)>=0 ) list.add(f1);
+      }
+      return list;
+   }
+   
+   /** Version number of a binary dump file (0 for path itself, N for "path.N"), -1 if it is not a version of path */
+   static private int getVersion(String path,File f) {
+      String base = new File(path).getName();
+      String name = f.getName();
+      if( name.equals(base) ) return 0;
+      if( !name.startsWith(base+".") ) return -1;
+      try { return Integer.parseInt(name.substring(base.length()+1)); }
+      catch( NumberFormatException e ) { return -1; }
+   }
+   
+   /** Last version of a binary dump, null if there is none. The previous versions
+    * are removed if possible */
+   static private File getLastVersion(String path) {
+      File last=null;
+      int n=-1;
+      ArrayList<File> list = getVersions(path);
+      for( File f : list ) {
+         int v = getVersion(path,f);
+         if( v>n ) { n=v; last=f; }
+      }
+      for( File f : list ) if( f!=last ) f.delete();
+      return last;
+   }
+   
+   /** Binary parsing of a MultiMoc stored in a Buf with the MC12 layout (see createDump())
+    * @param buf Binary buf containing the MultiMoc, just after the magic code
+    * @return a valid MultiMoc
+    * @deprecated use load(String) which also supports the MC13 and MC14 layouts
+    */
+   @Deprecated
+   public MultiMoc parseDump(BufReader buf) throws Exception { return parseDump(buf,false); }
+
+   /** Binary parsing of a MultiMoc stored in a Buf (MC12 and MC13 dumps, see load())
+    * @param buf Binary buf containing the MultiMoc, just after the magic code
+    * @param withIndex true if the spatial index runs follow each MOC (MC13), otherwise they are computed
     * @return a valid MultiMoc
     */
-   public MultiMoc parseDump(BufReader buf) throws Exception {
+   public MultiMoc parseDump(BufReader buf,boolean withIndex) throws Exception {
       int b=0;
       
       MultiMoc mMoc = new MultiMoc();
@@ -137,24 +229,84 @@ public final class BinaryDump {
          Moc moc = null;
          byte typeMoc = buf.readByte();
          if( typeMoc!=NOMOC ) {
-            
-                 if( typeMoc==SMOC ) moc = new SMoc();
-            else if( typeMoc==TMOC ) moc = new TMoc();
-            else if( typeMoc==STMOC) moc = new STMoc();
-            else throw new Exception("Unknown MOC type => ["+typeMoc+"]");
-                 
-            if( moc instanceof Moc1D ) {
-               ((Moc1D)moc).setMocOrder( buf.readInteger() );
-               
-            } else {
-              ((Moc2D)moc).setMocOrder1( buf.readInteger() );
-              ((Moc2D)moc).setMocOrder2( buf.readInteger() );
-            }
-            
+            checkType(typeMoc);
+            int order1 = buf.readInteger();
+            int order2 = typeMoc==STMOC ? buf.readInteger() : -1;
             int nbBytes = buf.readInteger();
             byte [] a = new byte[nbBytes];
-            for( int j=0; j<a.length; j++ ) a[j] = buf.readByte();
-            moc.readSpecificDataRange( nbBytes/8, a, Moc.COMPRESS_SINGLETON);
+            buf.readBytes(a);
+            moc = createMoc(typeMoc,order1,order2,a);
+         }
+         
+         // Lecture de ses proprits
+         long dateProp = buf.readLong();
+         int n = buf.readInteger();
+         MyProperties prop = n>0 ? new MyProperties() : null;
+         for( int j=0; j<n; j++ ) {
+            String key = buf.readString();
+            String value = buf.readString();
+            prop.put(key, value);
+         }
+         
+         // Lecture des cellules de l'index spatial (sinon calcules)
+         if( withIndex ) {
+            n = buf.readInteger();
+            int [] runs = n<0 ? null : new int[n];
+            for( int j=0; j<n; j++ ) runs[j] = buf.readInteger();
+            mMoc.add(new MocItem(mocId,moc,prop,dateMoc,dateProp), runs);
+         } else mMoc.add(mocId,moc,prop,dateMoc,dateProp);
+      }
+      long mc = buf.readLong();
+      if( mc!=MAGICODE ) throw new Exception("Multimoc dump error. Bad end MAGIC CODE");
+      return mMoc;
+   }
+   
+   /** Parsing of a MC14 binary dump: the table of contents (properties, MOC types and orders, spatial index runs)
+    * is entirely read, the MOC bodies are just memory-mapped, and will be decoded on demand (see MocCache)
+    * @param rf Binary dump file, just after the magic code
+    * @return a valid MultiMoc
+    */
+   private MultiMoc parseLazyDump(RandomAccessFile rf) throws Exception {
+      long tocPos = (new BufReader(rf)).readLong();
+      
+      // Lecture squentielle de la table des matires
+      rf.seek(tocPos);
+      BufReader buf = new BufReader(rf,TOCBUFSIZE);
+      FileChannel channel = rf.getChannel();
+      MocCache cache = new MocCache(cacheSize);
+      MappedByteBuffer chunk=null;
+      long chunkStart=0L, chunkEnd=0L;
+      
+      MultiMoc mMoc = new MultiMoc();
+      mMoc.clear();
+      mMoc.mocCache = cache;
+      buf.readString();
+      int nbMoc = buf.readInteger();
+      for( int i=0; i<nbMoc; i++ ) {
+         
+         // Lecture de la rfrence au MOC
+         long dateMoc = buf.readLong();
+         String mocId = buf.readString();
+         MocCache.Slice slice = null;
+         byte typeMoc = buf.readByte();
+         if( typeMoc!=NOMOC ) {
+            checkType(typeMoc);
+            int order1 = buf.readInteger();
+            int order2 = typeMoc==STMOC ? buf.readInteger() : -1;
+            long pos = buf.readLong();
+            int nbBytes = buf.readInteger();
+            if( pos<12 || pos+nbBytes>tocPos ) throw new Exception("Multimoc dump error. Bad MOC position for "+mocId);
+            
+            // Mapping par morceaux (les corps des MOCs sont contigus, dans l'ordre de la table des matires)
+            if( chunk==null || pos<chunkStart || pos+nbBytes>chunkEnd ) {
+               chunkStart = pos;
+               chunkEnd = Math.min(tocPos, pos+Math.max(nbBytes,MAXCHUNK));
+               chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd-chunkStart);
+            }
+            ByteBuffer body = chunk.duplicate();
+            body.position( (int)(pos-chunkStart) );
+            body.limit( (int)(pos-chunkStart)+nbBytes );
+            slice = new MocCache.Slice(typeMoc,order1,order2,body.slice(),cache);
          }
          
          // Lecture de ses proprits
@@ -166,12 +318,48 @@ public final class BinaryDump {
             String value = buf.readString();
             prop.put(key, value);
          }
-         mMoc.add(mocId,moc,prop,dateMoc,dateProp);
+         
+         // Lecture des cellules de l'index spatial
+         n = buf.readInteger();
+         int [] runs = n<0 ? null : new int[n];
+         for( int j=0; j<n; j++ ) runs[j] = buf.readInteger();
+         
+         MocItem mi = new MocItem(mocId,null,prop,dateMoc,dateProp);
+         mi.slice = slice;
+         if( slice!=null ) { slice.runs=runs; slice.withRuns=true; }
+         mMoc.add(mi, runs);
       }
       long mc = buf.readLong();
       if( mc!=MAGICODE ) throw new Exception("Multimoc dump error. Bad end MAGIC CODE");
       return mMoc;
    }
+   
+   static private void checkType(byte typeMoc) throws Exception {
+      if( typeMoc!=SMOC && typeMoc!=TMOC && typeMoc!=STMOC ) throw new Exception("Unknown MOC type => ["+typeMoc+"]");
+   }
+   
+   /** MOC creation from its binary body
+    * @param typeMoc SMOC, TMOC or STMOC
+    * @param order1 MOC order (space order for STMOC)
+    * @param order2 time order for STMOC (otherwise not used)
+    * @param a MOC body (see Moc.writeSpecificDataRange())
+    * @return the MOC
+    */
+   static Moc createMoc(byte typeMoc, int order1, int order2, byte [] a) throws Exception {
+      Moc moc;
+           if( typeMoc==SMOC ) moc = new SMoc();
+      else if( typeMoc==TMOC ) moc = new TMoc();
+      else if( typeMoc==STMOC) moc = new STMoc();
+      else throw new Exception("Unknown MOC type => ["+typeMoc+"]");
+      
+      if( moc instanceof Moc1D ) ((Moc1D)moc).setMocOrder( order1 );
+      else {
+         ((Moc2D)moc).setMocOrder1( order1 );
+         ((Moc2D)moc).setMocOrder2( order2 );
+      }
+      moc.readSpecificDataRange( a.length/8, a, Moc.COMPRESS_SINGLETON);
+      return moc;
+   }
 
    
 //   /** Binary parsing of a MultiMoc stored in a Buf
@@ -214,74 +402,97 @@ public final class BinaryDump {
 //   }
 
    
-   private static final byte NOMOC = 0;
-   private static final byte SMOC  = 1;
-   private static final byte TMOC  = 2;
-   private static final byte STMOC = 3;
+   static final byte NOMOC = 0;
+   static final byte SMOC  = 1;
+   static final byte TMOC  = 2;
+   static final byte STMOC = 3;
 
 
-   /** Generate the dump associated to a MultiMoc
+   /** Generate the dump associated to a MultiMoc with the MC12 layout (each MOC followed by
+    * its properties), readable by parseDump(BufReader)
     * @param mMoc MultiMoc to dump
-    * @return binary buffer 
-    * @seealso parseDump(Buf)
+    * @param rf binary dump file, just after the magic code
+    * @deprecated use save(MultiMoc,String) which writes the MC14 layout (MOCs decoded on demand)
     */
+   @Deprecated
    public void createDump(MultiMoc mMoc,RandomAccessFile rf) throws Exception {
       BufWriter buf = new BufWriter(rf);
-
       buf.memoString(mMoc.getCoordSys());
       buf.memoInteger(mMoc.size());
       for( MocItem mi : mMoc ) {
+         buf.memoLong(mi.dateMoc);
+         buf.memoString(mi.mocId);
+         byte typeMoc = getType(mi);
+         buf.memoByte(typeMoc);
+         if( typeMoc!=NOMOC ) {
+            memoOrders(buf,mi,typeMoc);
+            byte [] a = getBody(mi);
+            buf.memoInteger(a.length);
+            buf.flush();
+            rf.write(a);
+         }
+         memoProp(buf,mi);
+         buf.flush();
+      }
+      buf.memoLong(MAGICODE);
+      buf.flush();
+   }
+
+   /** Generate the dump associated to a MultiMoc (MC14 layout: MOC bodies, then table of contents)
+    * @param mMoc MultiMoc to dump
+    * @param rf binary dump file, just after the magic code
+    * @seealso parseLazyDump(RandomAccessFile)
+    */
+   private void createLazyDump(MultiMoc mMoc,RandomAccessFile rf) throws Exception {
+      BufWriter buf = new BufWriter(rf);
+      
+      // Rservation de la position de la table des matires
+      long posToc = rf.getFilePointer();
+      buf.memoLong(0L);
+      buf.flush();
+      
+      // Enregistrement des corps des MOCs
+      ArrayList<MocItem> list = new ArrayList<>(mMoc.size());
+      for( MocItem mi : mMoc ) list.add(mi);
+      long [] pos = new long[ list.size() ];
+      int [] len = new int[ list.size() ];
+      for( int i=0; i<pos.length; i++ ) {
+         byte [] a = getBody( list.get(i) );
+         if( a==null ) continue;
+         pos[i] = rf.getFilePointer();
+         len[i] = a.length;
+         rf.write(a);
+      }
+      long tocPos = rf.getFilePointer();
+
+      // Table des matires
+      buf.memoString(mMoc.getCoordSys());
+      buf.memoInteger(list.size());
+      for( int i=0; i<pos.length; i++ ) {
+         MocItem mi = list.get(i);
          
-         // Enregistrement d'un MOC
+         // Rfrence au MOC
          buf.memoLong(mi.dateMoc);
-         Moc moc = mi.moc;
          String mocId = mi.mocId;
          buf.memoString(mocId);
          
-         if( moc==null ) buf.memoByte(NOMOC);
-         else {
-            
-            
-            int nbCoding=-1;
-            
-            // SMOc et TMOC
-            if( moc instanceof SMoc ) {
-               buf.memoByte( SMOC );
-               buf.memoInteger( ((Moc1D)moc).getMocOrder() );
-               nbCoding = ((Moc1D)moc).seeRangeList().sz;   // Codage en range, par en Nuniq !!
-               
-            // TMOC
-            } else if( moc instanceof TMoc ) {
-               buf.memoByte( TMOC );
-               buf.memoInteger( ((Moc1D)moc).getMocOrder() );
-              
-            // STMOC
-            } else {
-               buf.memoByte(STMOC);
-               buf.memoInteger( ((Moc2D)moc).getMocOrder1() );
-               buf.memoInteger( ((Moc2D)moc).getMocOrder2() );
-            }
-            
-            if( nbCoding==-1) nbCoding = moc.getNbCoding();
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(nbCoding*8);
-            int nbBytes = moc.writeSpecificDataRange(byteStream,Moc.COMPRESS_SINGLETON);
-            buf.memoInteger(nbBytes);
-            byte [] a = byteStream.toByteArray();
-            for( int i=0; i<nbBytes; i++ ) buf.memoByte(a[i]);
+         byte typeMoc = getType(mi);
+         buf.memoByte(typeMoc);
+         if( typeMoc!=NOMOC ) {
+            memoOrders(buf,mi,typeMoc);
+            buf.memoLong(pos[i]);
+            buf.memoInteger(len[i]);
          }
 
          // Enregistrement de ses proprits
-         buf.memoLong(mi.dateProp);
-         MyProperties prop = mi.prop;
-         if( prop==null ) buf.memoInteger(0);
+         memoProp(buf,mi);
+         
+         // Enregistrement des cellules de l'index spatial (-1 => toujours candidat)
+         int [] runs = mMoc.getIndexRuns(mocId);
+         if( runs==null ) buf.memoInteger(-1);
          else {
-            int n = prop.size();
-            buf.memoInteger( n );
-            for( String key : prop.getKeys() ) {
-               buf.memoString(key);
-               String val = prop.get(key);
-               buf.memoString(val);
-            }
+            buf.memoInteger(runs.length);
+            for( int r : runs ) buf.memoInteger(r);
          }
          
          buf.flush();
@@ -289,7 +500,67 @@ public final class BinaryDump {
       // Marque de fin de fichier
       buf.memoLong(MAGICODE);
       buf.flush();
+      
+      // Position de la table des matires
+      long end = rf.getFilePointer();
+      rf.seek(posToc);
+      buf.memoLong(tocPos);
+      buf.flush();
+      rf.seek(end);
+   }
+   
+   /** Write the order(s) of the MOC of a MocItem, without decoding it */
+   static private void memoOrders(BufWriter buf,MocItem mi,byte typeMoc) throws Exception {
+      if( mi.moc==null ) {
+         buf.memoInteger( mi.slice.order1 );
+         if( typeMoc==STMOC ) buf.memoInteger( mi.slice.order2 );
+      } else if( typeMoc==STMOC ) {
+         buf.memoInteger( ((Moc2D)mi.moc).getMocOrder1() );
+         buf.memoInteger( ((Moc2D)mi.moc).getMocOrder2() );
+      } else buf.memoInteger( ((Moc1D)mi.moc).getMocOrder() );
+   }
 
+   /** Write the properties of a MocItem, preceded by their date */
+   static private void memoProp(BufWriter buf,MocItem mi) throws Exception {
+      buf.memoLong(mi.dateProp);
+      MyProperties prop = mi.prop;
+      if( prop==null ) buf.memoInteger(0);
+      else {
+         int n = prop.size();
+         buf.memoInteger( n );
+         for( String key : prop.getKeys() ) {
+            buf.memoString(key);
+            String val = prop.get(key);
+            buf.memoString(val);
+         }
+      }
+   }
+
+   /** Type of the MOC of a MocItem (NOMOC, SMOC, TMOC or STMOC), without decoding it */
+   static private byte getType(MocItem mi) {
+      if( mi.moc==null ) return mi.slice==null ? NOMOC : mi.slice.type;
+      if( mi.moc instanceof SMoc ) return SMOC;
+      if( mi.moc instanceof TMoc ) return TMOC;
+      return STMOC;
+   }
+   
+   /** Binary body of the MOC of a MocItem (copied from the memory-mapped dump if it is not yet decoded),
+    * null if there is no MOC */
+   static private byte [] getBody(MocItem mi) throws Exception {
+      if( mi.moc==null ) return mi.slice==null ? null : mi.slice.getBytes();
+      
+      Moc moc = mi.moc;
+      int nbCoding = moc instanceof SMoc ? ((Moc1D)moc).seeRangeList().sz  // Codage en range, par en Nuniq !!
+                                         : moc.getNbCoding();
+      ByteArrayOutputStream byteStream = new ByteArrayOutputStream(nbCoding*8);
+      int nbBytes = moc.writeSpecificDataRange(byteStream,Moc.COMPRESS_SINGLETON);
+      byte [] a = byteStream.toByteArray();
+      if( a.length!=nbBytes ) {
+         byte [] b = new byte[nbBytes];
+         System.arraycopy(a,0,b,0,nbBytes);
+         a=b;
+      }
+      return a;
    }
 
 //   /** Generate the dump associated to a MultiMoc
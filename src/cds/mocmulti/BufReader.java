@@ -29,6 +29,7 @@ import java.io.RandomAccessFile;
  */
 public final class BufReader {
    static private final int MAX = 512;
+   static private final int KEEPMAX = 256*1024;   // Taille max conserve lors d'une rallocation
    public byte [] buf;   // Le buffer
    protected int offset;    // La position courante dans le buffer
    protected int size;   // Le contenu courant du buffer
@@ -36,8 +37,11 @@ public final class BufReader {
    private RandomAccessFile in;
 
    /** Cration d'un buffer d'une taille donne */
-   public BufReader(RandomAccessFile in) {
-      buf = new byte[MAX];
+   public BufReader(RandomAccessFile in) { this(in,MAX); }
+   
+   /** Cration d'un buffer d'une taille donne (plus grand pour les longues lectures squentielles) */
+   public BufReader(RandomAccessFile in, int bufSize) {
+      buf = new byte[ Math.max(bufSize,MAX) ];
       offset=0;
       size=0;
       this.in=in;
@@ -65,6 +69,22 @@ public final class BufReader {
       return buf[offset++];
    }
    
+   /** Lecture d'un tableau de bytes */
+   public void readBytes(byte [] a) throws Exception {
+      if( a.length<=buf.length ) {
+         availability(a.length);
+         System.arraycopy(buf,offset,a,0,a.length);
+         offset+=a.length;
+         return;
+      }
+      
+      // Gros tableau => lecture directe, sans agrandir le buffer
+      int reste = size-offset;
+      System.arraycopy(buf,offset,a,0,reste);
+      offset=size=0;
+      in.readFully(a,reste,a.length-reste);
+   }
+   
    /** Lecture d'un entier */
    public short readShort() throws Exception {
       availability(2);
@@ -105,7 +125,7 @@ public final class BufReader {
       // Pas assez de place  la fin du buf ? => rallocation
       if( buf.length<offset+n ) {
          int reste = size-offset;
-         byte [] nbuf = new byte[ n>MAX?n:MAX];
+         byte [] nbuf = new byte[ Math.max(n,Math.min(buf.length,KEEPMAX)) ];
          if( reste>0 ) System.arraycopy(buf, offset, nbuf, 0, reste);
          size = reste;
          offset=0;
@@ -0,0 +1,137 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.mocmulti;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cds.moc.Moc;
+
+/**
+ * Size-bounded cache of the MOCs decoded on demand from a memory-mapped MultiMoc binary dump.
+ * Each MOC body stays in the mapped file (see Slice) as long as no scan needs it. Once decoded,
+ * it is kept in this cache until the total memory of the decoded MOCs exceeds the cache size,
+ * the least recently used MOCs being released first.
+ * 
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 oct 2026 creation
+ */
+public final class MocCache {
+   
+   /** Default cache size: 1/4 of the max heap, limited to 512MB */
+   static public final long DEFAULTSIZE = Math.min(512L*1024L*1024L, Runtime.getRuntime().maxMemory()/4);
+   
+   private long maxMem;                          // Max memory of the decoded MOCs
+   private long mem;                             // Current memory of the decoded MOCs
+   private LinkedHashMap<Slice,Moc> lru;         // Decoded MOCs (in access order)
+   private int nbDecode;                         // Number of decodings (stats)
+   
+   public MocCache() { this(DEFAULTSIZE); }
+   
+   public MocCache(long maxMem) {
+      this.maxMem=maxMem;
+      lru = new LinkedHashMap<>(1024,0.75f,true);
+      mem=0L;
+      nbDecode=0;
+   }
+   
+   /** Memory used by the decoded MOCs */
+   public synchronized long getMem() { return mem; }
+   
+   /** Number of MOCs currently decoded */
+   public synchronized int size() { return lru.size(); }
+   
+   /** Number of decodings since the creation (a MOC released then required again is counted twice) */
+   public synchronized int getNbDecode() { return nbDecode; }
+   
+   /** Release all the decoded MOCs */
+   public synchronized void clear() { lru.clear(); mem=0L; }
+   
+   /** Return the decoded MOC of a slice, decoding it if required */
+   Moc get(Slice slice) throws Exception {
+      synchronized( this ) {
+         Moc moc = lru.get(slice);
+         if( moc!=null ) return moc;
+      }
+      
+      // Dcodage hors verrou (au pire, deux threads dcodent le mme MOC)
+      Moc moc = BinaryDump.createMoc(slice.type, slice.order1, slice.order2, slice.getBytes());
+      
+      synchronized( this ) {
+         Moc moc1 = lru.get(slice);
+         if( moc1!=null ) return moc1;
+         nbDecode++;
+         lru.put(slice,moc);
+         mem += moc.getMem();
+         
+         // Libration des MOCs les plus anciennement utiliss
+         Iterator<Map.Entry<Slice,Moc>> it = lru.entrySet().iterator();
+         while( mem>maxMem && lru.size()>1 && it.hasNext() ) {
+            Map.Entry<Slice,Moc> e = it.next();
+            if( e.getKey()==slice ) continue;
+            mem -= e.getValue().getMem();
+            it.remove();
+         }
+      }
+      return moc;
+   }
+   
+   /** MOC body still stored in the memory-mapped binary dump */
+   static public final class Slice {
+      final byte type;              // MOC type (see BinaryDump SMOC, TMOC, STMOC)
+      final int order1, order2;     // MOC order (order2 only used for STMOC)
+      private ByteBuffer body;      // MOC body (writeSpecificDataRange() bytes)
+      private MocCache cache;       // Cache in charge of the decoded version
+      int [] runs;                  // Spatial index runs saved in the dump (see MocIndex.computeRuns())
+      boolean withRuns=false;       // true if runs is known (runs==null meaning "always candidate")
+      
+      Slice(byte type, int order1, int order2, ByteBuffer body, MocCache cache) {
+         this.type=type;
+         this.order1=order1;
+         this.order2=order2;
+         this.body=body;
+         this.cache=cache;
+      }
+      
+      /** The decoded MOC (from the cache if possible) */
+      public Moc getMoc() throws Exception { return cache.get(this); }
+      
+      /** true if it is a spatial MOC (SMOC or STMOC) */
+      public boolean isSpace() { return type==BinaryDump.SMOC || type==BinaryDump.STMOC; }
+      
+      /** true if it is a temporal MOC (TMOC or STMOC) */
+      public boolean isTime() { return type==BinaryDump.TMOC || type==BinaryDump.STMOC; }
+      
+      /** Size of the encoded body */
+      public int getNbBytes() { return body.capacity(); }
+      
+      /** Copy of the encoded body */
+      byte [] getBytes() {
+         byte [] a = new byte[ body.capacity() ];
+         body.duplicate().get(a);       // duplicate() => position propre  chaque thread
+         return a;
+      }
+   }
+}
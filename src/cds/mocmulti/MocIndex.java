@@ -0,0 +1,188 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.mocmulti;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import cds.moc.Moc;
+import cds.moc.SMoc;
+
+/**
+ * Coarse spatial index of a MultiMoc: for each HEALPix cell at order ORDER, the bitset
+ * of the ordinals of the MocItems whose space MOC intersects this cell. A scan by region
+ * first gets its candidates from the cells of the query, and only then runs the exact
+ * MOC tests on them.
+ * 
+ * The cells of a MocItem are memorized as runs [start,end[ (also used by BinaryDump)
+ * 
+ * The items indexed without space MOC are always candidates, so that a MOC set later without
+ * going through MultiMoc.setMoc() is still tested. The index can be updated (setMoc()) while
+ * scans are running, so its methods are synchronized.
+ * 
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 oct 2026 creation
+ */
+public final class MocIndex {
+   
+   static public final int ORDER  = 4;                  // Index HEALPix order
+   static public final int NBCELL = 12<<(2*ORDER);      // Number of cells at this order
+   
+   static private final int [] NONE = new int[0];
+   
+   private BitSet [] cells;                     // Items by cell (null if no item)
+   private BitSet always;                       // Items always candidate (space MOC not indexable or empty)
+   private BitSet noMoc;                        // Items indexed without space MOC (also always candidate)
+   private BitSet used;                         // Ordinals in use
+   private HashMap<String,Integer> ordinals;    // Ordinal of each MocItem ID
+   private ArrayList<int []> runs;              // Runs of each ordinal (null => always candidate)
+   
+   public MocIndex() { clear(); }
+   
+   /** Clear the index */
+   public synchronized void clear() {
+      cells = new BitSet[NBCELL];
+      always = new BitSet();
+      noMoc = new BitSet();
+      used = new BitSet();
+      ordinals = new HashMap<>(30000);
+      runs = new ArrayList<>(30000);
+   }
+   
+   /** Add or replace a MocItem, with its runs already computed (see computeRuns()) */
+   public synchronized void add(String mocId, int [] r) {
+      remove(mocId);
+      int ord = used.nextClearBit(0);
+      used.set(ord);
+      ordinals.put(mocId,ord);
+      while( runs.size()<=ord ) runs.add(NONE);
+      runs.set(ord,r);
+      if( r==null ) { always.set(ord); return; }
+      if( r.length==0 ) { noMoc.set(ord); return; }
+      for( int i=0; i<r.length; i+=2 ) {
+         for( int c=r[i]; c<r[i+1]; c++ ) {
+            if( cells[c]==null ) cells[c] = new BitSet();
+            cells[c].set(ord);
+         }
+      }
+   }
+   
+   /** Remove a MocItem */
+   public synchronized void remove(String mocId) {
+      Integer o = ordinals.remove(mocId);
+      if( o==null ) return;
+      int ord = o;
+      int [] r = runs.get(ord);
+      if( r==null ) always.clear(ord);
+      else if( r.length==0 ) noMoc.clear(ord);
+      else {
+         for( int i=0; i<r.length; i+=2 ) {
+            for( int c=r[i]; c<r[i+1]; c++ ) cells[c].clear(ord);
+         }
+      }
+      runs.set(ord,NONE);
+      used.clear(ord);
+   }
+   
+   /** Runs of a MocItem (null => always candidate), or NONE if not indexed */
+   public synchronized int [] getRuns(String mocId) {
+      Integer o = ordinals.get(mocId);
+      return o==null ? NONE : runs.get(o);
+   }
+   
+   /** Candidates for a query region, null if the index can not be used for it
+    * (no space MOC, empty or not indexable) */
+   public BitSet getCandidates(Moc moc) {
+      int [] r = computeRuns(moc);
+      if( r==null || r.length==0 ) return null;
+      return getCandidates(r);
+   }
+   
+   private synchronized BitSet getCandidates(int [] r) {
+      BitSet cand = (BitSet)always.clone();
+      cand.or(noMoc);
+      for( int i=0; i<r.length; i+=2 ) {
+         for( int c=r[i]; c<r[i+1]; c++ ) {
+            if( cells[c]!=null ) cand.or(cells[c]);
+         }
+      }
+      return cand;
+   }
+   
+   /** Candidates for a HEALPix cell */
+   public synchronized BitSet getCandidates(int order, long npix) {
+      BitSet cand = (BitSet)always.clone();
+      cand.or(noMoc);
+      int start,end;
+      if( order>=ORDER ) { start = (int)(npix>>>(2*(order-ORDER))); end=start+1; }
+      else { start = (int)(npix<<(2*(ORDER-order))); end = (int)((npix+1)<<(2*(ORDER-order))); }
+      for( int c=start; c<end; c++ ) {
+         if( cells[c]!=null ) cand.or(cells[c]);
+      }
+      return cand;
+   }
+   
+   /** true if the MocItem is a candidate (or unknown by the index) */
+   public synchronized boolean isCandidate(BitSet cand, String mocId) {
+      Integer o = ordinals.get(mocId);
+      return o==null || cand.get(o);
+   }
+   
+   /** Cells at order ORDER of the space MOC, as runs [start,end[
+    * @return the runs, NONE if there is no space MOC, null if it is empty or can not be indexed
+    */
+   static public int [] computeRuns(Moc moc) {
+      if( moc==null || !moc.isSpace() ) return NONE;
+      try {
+         SMoc m = (SMoc)moc.getSpaceMoc().clone();
+         if( m.getMocOrder()>ORDER ) m.setMocOrder(ORDER);
+         int order = m.getMocOrder();
+         int shift = 2*Math.abs(ORDER-order);
+         BitSet set = new BitSet(NBCELL);
+         Iterator<Long> it = m.valIterator();
+         while( it.hasNext() ) {
+            long v = it.next();
+            if( order>ORDER ) set.set( (int)(v>>>shift) );
+            else set.set( (int)(v<<shift), (int)((v+1)<<shift) );
+         }
+         if( set.isEmpty() ) return null;
+         
+         // Conversion en runs [start,end[
+         int [] r = new int[ 2*set.cardinality() ];
+         int n=0;
+         for( int start=set.nextSetBit(0); start>=0; start=set.nextSetBit(start) ) {
+            int end = set.nextClearBit(start);
+            r[n++]=start;
+            r[n++]=end;
+            start=end;
+         }
+         int [] r1 = new int[n];
+         System.arraycopy(r,0,r1,0,n);
+         return r1;
+      } catch( Exception e ) {
+         return null;
+      }
+   }
+}
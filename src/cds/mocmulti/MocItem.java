@@ -27,7 +27,8 @@ import cds.moc.Moc;
 
 public class MocItem {
    public String mocId;
-   public Moc moc;
+   public Moc moc;           // MOC dcod, null s'il est encore dans le dump binaire mapp => utiliser getMoc() ou hasMoc()
+   MocCache.Slice slice;     // MOC encore dans le dump binaire mapp (dcod  la demande), null sinon
    public MyProperties prop;
    public long dateMoc,dateProp;
    
@@ -63,7 +64,27 @@ public class MocItem {
       return dateProp!=0 ? dateProp : dateMoc;
    }
    
-   public MocItem copy() { return new MocItem(mocId,moc,prop,dateMoc,dateProp); }
+   /** Retourne le MOC, ventuellement dcod  la demande depuis le dump binaire (voir BinaryDump) */
+   public Moc getMoc() {
+      if( moc!=null || slice==null ) return moc;
+      try { return slice.getMoc(); }
+      catch( Exception e ) { e.printStackTrace(); return null; }
+   }
+   
+   /** true s'il y a un MOC associ, sans ncessiter son dcodage */
+   public boolean hasMoc() { return moc!=null || slice!=null; }
+   
+   /** true s'il s'agit d'un MOC spatial (SMOC ou STMOC), sans ncessiter son dcodage */
+   public boolean isSpace() { return moc!=null ? moc.isSpace() : slice!=null && slice.isSpace(); }
+   
+   /** true s'il s'agit d'un MOC temporel (TMOC ou STMOC), sans ncessiter son dcodage */
+   public boolean isTime() { return moc!=null ? moc.isTime() : slice!=null && slice.isTime(); }
+   
+   public MocItem copy() {
+      MocItem mi = new MocItem(mocId,moc,prop,dateMoc,dateProp);
+      mi.slice=slice;
+      return mi;
+   }
    
    public boolean equals(MocItem m) {
       if( this==m ) return true;
@@ -49,6 +49,7 @@ import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -96,6 +97,9 @@ public class MultiMoc implements Iterable<MocItem> {
    final private String COORDSYS ="C";   // Coordinate system (HEALPix convention => G=galactic, C=Equatorial, E=Ecliptic)
    
    protected HashMap<String, MocItem> map; // Liste des MocItem repr par leur ID (ex: CDS/P/2MASS/J)
+   protected MocIndex index;               // Index spatial grossier des MocItem (candidats des scans par rgion)
+   private PropIndex propIndex;            // Index invers des proprits (construit au premier filtrage, null sinon)
+   protected MocCache mocCache;            // Cache des MOCs dcods  la demande (dump binaire mapp), null sinon
 //   private ArrayList<String> tri;        // Liste des IDs afin de pouvoir les parcourirs en ordre alphanumrique
    protected int mocOrder=-1;              // Better MOC order
    private ArrayList<MyProperties> except = null;   // List of exceptions and associating rewriting rules
@@ -106,6 +110,7 @@ public class MultiMoc implements Iterable<MocItem> {
    
    public MultiMoc() {
       map = new HashMap<>(30000);
+      index = new MocIndex();
 //      tri = new ArrayList<>(30000);
 //      nbThomas2Vizier=0;
       nbConvertFromGtoC=0;
@@ -150,15 +155,56 @@ public class MultiMoc implements Iterable<MocItem> {
       MocItem mi = map.get(mocId);
       if( mi==null ) return;
       map.remove(mocId);
+      index.remove(mocId);
+      if( propIndex!=null ) {
+         propIndex.remove(mocId);
+         if( propIndex.isWorthRebuilding() ) propIndex=null;
+      }
 //      tri.remove(mocId);
    }
    
-   /** Add directly a MocItem */
+   /** Add directly a MocItem. For a MOC not yet decoded (binary dump), the spatial index runs
+    * saved in the dump are reused, otherwise the MOC is decoded to compute them */
    public void add(MocItem mi) {
+      int [] runs = mi.moc==null && mi.slice!=null && mi.slice.withRuns ? mi.slice.runs
+            : MocIndex.computeRuns(mi.getMoc());
+      add(mi, runs);
+   }
+   
+   /** Add directly a MocItem with its spatial index runs already known (see MocIndex.computeRuns()) */
+   protected void add(MocItem mi, int [] runs) {
       map.put(mi.mocId,mi);
+      index.add(mi.mocId, runs);
+      if( propIndex!=null ) {
+         propIndex.add(mi.mocId, mi.prop);
+         if( propIndex.isWorthRebuilding() ) propIndex=null;
+      }
 //      if( map.put(mi.mocId,mi)==null ) tri.add(mi.mocId);
    }
    
+   /** Replace the MOC of a MocItem (e.g. coverage computed by a scan) and update its
+    * spatial index entry if the item belongs to this MultiMoc */
+   public void setMoc(MocItem mi, Moc moc) {
+      mi.moc=moc;
+      mi.slice=null;
+      if( map.get(mi.mocId)==mi ) index.add(mi.mocId, MocIndex.computeRuns(moc));
+   }
+   
+   /** Return the property index, built at the first call (and after a reset due to too many removed items) */
+   protected synchronized PropIndex getPropIndex() {
+      if( propIndex==null ) {
+         PropIndex pi = new PropIndex();
+         for( MocItem mi : this ) pi.add(mi.mocId, mi.prop);
+         propIndex=pi;
+      }
+      return propIndex;
+   }
+   
+   /** Return the spatial index runs of a MocItem (see MocIndex.computeRuns()) */
+   protected int [] getIndexRuns(String mocId) {
+      return index.getRuns(mocId);
+   }
+   
    /** Return directly a MocItem */
    public MocItem getItem(String mocId) {
       return map.get(mocId);
@@ -167,7 +213,7 @@ public class MultiMoc implements Iterable<MocItem> {
    /** Return the MOC associated to a mocId, null if not found */
    public Moc getMoc(String mocId) {
       MocItem mi = map.get(mocId);
-      return mi==null ? null : mi.moc;
+      return mi==null ? null : mi.getMoc();
    }
    
    /** Return the Properties associated to a mocId, null if not found */
@@ -264,6 +310,9 @@ public class MultiMoc implements Iterable<MocItem> {
    /** Clear the multiMoc */
    public void clear() {
       map.clear();
+      index.clear();
+      propIndex=null;
+      if( mocCache!=null ) mocCache.clear();
 //      tri.clear();
    }
    
@@ -734,7 +783,7 @@ public class MultiMoc implements Iterable<MocItem> {
                   // Pas de changement ? => on le rutilise
                   if( (dateMoc==0L || dateMoc==mi.dateMoc) 
                         && prop!=null && mi.prop!=null && prop.equals(mi.prop) ) {
-                     add(mi);
+                     add(mi, r.oMM.getIndexRuns(mocId));
                      flagCreation=false;
                      r.nbReused++;
 //                     System.out.println("Rutilisation de "+mocId);
@@ -1262,10 +1311,13 @@ public class MultiMoc implements Iterable<MocItem> {
       boolean match=false;
       if( mask.charAt(0)=='!' ) { match=true; mask=mask.substring(1); }
       ArrayList<String> res = new ArrayList<>();
+      BitSet cand = index.getCandidates(order,npix);
       for( MocItem mi : this ) {
+         if( !index.isCandidate(cand, mi.mocId) ) continue;
          if( mask!=null && MyProperties.matchMask(mask, mi.mocId )==match ) continue;
          try {
-            if( mi.moc!=null && mi.moc.getSpaceMoc().isIntersecting(order, npix) ) res.add(mi.mocId);
+            Moc m = mi.getMoc();
+            if( m!=null && m.getSpaceMoc().isIntersecting(order, npix) ) res.add(mi.mocId);
          } catch( Exception e ) { continue; }
       }
       Collections.sort(res);
@@ -1323,223 +1375,6 @@ public class MultiMoc implements Iterable<MocItem> {
       return id;
    }
    
-   private String toDebug(HashMap<String,String[]> mapFilter, String listKey) {
-      StringBuilder r=null;
-      for( String s : mapFilter.get(listKey) ) {
-         if( r==null ) r = new StringBuilder(listKey+"="+s);
-         else r.append(","+s);
-      }
-      return r.toString();
-   }
-   
-   static private final boolean DEBUGMATCH = false;
-   
-   // Retourne true si les Proprits du MocItem mi correspondent aux contraintes passes dans le mapFilter
-   private boolean match(MocItem mi, HashMap<String,String[]> mapFilter, boolean casesens, boolean andLogic) {
-      if( mapFilter==null ) return true;
-      if( mi.prop==null ) return false;
-      
-      boolean rep=andLogic;
-
-      for( String listKey : mapFilter.keySet()) {
-         
-         boolean rep1=false;
-         
-         
-         // Dtermination de la logique si le premier caractre est '!' => AndLogic sinon OrLogic
-         String [] masks = mapFilter.get( listKey );
-         boolean internalAndLogic = masks!=null && masks.length>0 && masks[0].startsWith("!");
-         
-         if( DEBUGMATCH) System.out.println("Expr: "+toDebug(mapFilter,listKey)+" => andLogic="+internalAndLogic);
-         
-         // Plusieurs keywords (genre ID,CDS=...);
-         if( listKey.indexOf(',')>0 ) {
-            if( DEBUGMATCH) System.out.println("=> plusieurs keys...");
-            Tok tok = new Tok(listKey,",");
-            while( tok.hasMoreTokens() ) {
-               String key = tok.nextToken();
-               rep1 |= matchKey(mi,mapFilter,listKey,key,casesens,internalAndLogic);
-               if( !andLogic && !internalAndLogic && rep1 ) {
-                  if( DEBUGMATCH) System.out.println("   => matchKey("+key+",...)==true (orLogic) => return true)");
-                  return true;
-               }
-            }
-            
-         // Un seul keyword
-         } else {
-            if( DEBUGMATCH) System.out.println("=> une seule key...");
-            rep1 =  matchKey(mi,mapFilter,listKey,listKey,casesens,internalAndLogic);
-         }
-         
-         // Si que des OU et que c'est ok, on peut conclure que c'est bon
-         if( !andLogic && !internalAndLogic && rep1 ) return true;
-         
-         
-         if( andLogic ) {
-            rep &= rep1;
-            if( !rep ) return false;
-         }
-         
-      }
-
-      return rep;
-   }
-   
-   private boolean matchKey(MocItem mi, HashMap<String,String[]> mapFilter, 
-         String listKey, String key, boolean casesens, boolean andLogic) {
-      
-      // Jokers sur le nom du champ ?
-      if( key.indexOf('?')>=0 || key.indexOf('*')>=0 ) {
-         if( DEBUGMATCH) System.out.println("==> jokers ? * prsents dans ["+key+"]...");
-
-         boolean rep=false;
-         for( String mask : mapFilter.get(listKey) ) {
-            rep=false;
-            
-            if( DEBUGMATCH) System.out.println("   Test sur "+mask+"...");
-            
-            Iterator<String> it = mi.prop.getKeys().iterator();
-            while( it.hasNext() && !rep ) {
-               String k1 = it.next();
-               if( !MyProperties.matchMask(key, k1) ) continue;  // forage pour le cas de l'identificateur
-               boolean cs = k1.equals(KEY_ID) ? true : casesens;
-               rep |= matchList(mask,mi.prop.get(k1),cs, andLogic);
-            }
-            
-            if( DEBUGMATCH) System.out.println("   => matchList = "+rep+(!rep?" (return dans matchKey)":""));
-            if( !rep ) return false;
-         }
-         if( !rep ) return false;           // <= Ne faudrait-il pas ausii ici une logique OR ?
-         
-      // Nom de champ explicite ?
-      } else {
-         if( DEBUGMATCH) System.out.println("==> Champ explicite ["+key+"]...");
-         if( key.equals(KEY_ID) ) casesens=true;  // forage pour le cas de l'identificateur
-         boolean rep = matchProp(mapFilter.get(listKey),mi.prop.get(key),casesens, andLogic);
-         if( DEBUGMATCH) System.out.println("   matchProp = "+rep+(!rep?" (return dans matchKey)":""));
-         if( !rep) return false;
-      }
-      
-      if( DEBUGMATCH) System.out.println("MatchList return true");
-      return true;
-   }
-   
-   private boolean matchProp(String [] listMask, String vProp, boolean casesens, boolean andLogic) {
-      
-      // Le champ n'existe pas ? la rponse est true
-      // sauf si tous les masques sont "ne contient pas..."
-      if( vProp==null ) {
-         if( DEBUGMATCH) System.out.println("      vProp==null...");
-         return andLogic;
-      }
-
-      // Le champ existe => 
-      // Logic ET : toutes les propositions et tous les masques sont vrifis par au-moins une proposition
-      if( andLogic ) {
-         
-         for( String mask : listMask ) {
-            if( !matchAndList(mask,vProp, casesens) ) {
-               if( DEBUGMATCH) System.out.println("      matchAndProp("+mask+","+vProp+")==false, andLogic => return false");
-               return false;
-            } else {
-               if( DEBUGMATCH) System.out.println("      matchAndProp("+mask+","+vProp+")==true andLogic => continue");
-            }
-         }
-         if( DEBUGMATCH) System.out.println("      matchProp(allmask,"+vProp+")==true, andLogic => return true");
-         return true;
-      }
-
-      // logic OU : toutes les propositions et tous les masques (ex: Novae, Binaries*) aient au moins
-      //            un champ qui le vrifie (ex: champ xxx \t yyy \t ...)
-      for( String mask : listMask ) {
-         if( matchOrList(mask,vProp, casesens) ) {
-            if( DEBUGMATCH) System.out.println("      matchOrList("+mask+","+vProp+")==true, ordLogic => return true");
-            return true;
-         } else {
-            if( DEBUGMATCH) System.out.println("      matchOrList("+mask+","+vProp+")==false orLogic => continue");
-         }
-      }
-      if( DEBUGMATCH) System.out.println("      matchProp(allmask,"+vProp+")==false, orLogic => return false");
-      return false;
-   }
-   
-   private boolean matchList(String mask,String vProp, boolean casesens, boolean andLogic ) {
-      if( andLogic ) return matchAndList( mask, vProp, casesens);
-      return matchOrList( mask, vProp, casesens);
-   }
-
-   private boolean matchOrList(String mask,String vProp, boolean casesens ) {
-      if( vProp==null ) return false;
-      Tok st1 = new Tok(mask,",");
-      while( st1.hasMoreTokens() ) {
-         String mask1 = st1.nextToken();
-         Tok st = new Tok(vProp,"\t");
-         while( st.hasMoreTokens() ) {
-            String v = st.nextToken();
-            if( match(mask1,v,casesens)) {
-               if( DEBUGMATCH) System.out.println("      matchOrList("+mask1+","+v+")==true => return true");
-               return true;
-            }
-         }
-      }
-      if( DEBUGMATCH) System.out.println("      matchOrList(allMask,"+vProp+")==false => return false");
-      return false;
-   }
-   
-   private boolean matchAndList(String mask,String vProp, boolean casesens ) {
-      if( vProp==null ) return false;
-      Tok st1 = new Tok(mask,",");
-      while( st1.hasMoreTokens() ) {
-         String mask1 = st1.nextToken();
-         Tok st = new Tok(vProp,"\t");
-         
-         boolean rep=false;
-         while( st.hasMoreTokens() ) {
-            if( match(mask1,st.nextToken(),casesens)) { rep=true; break; }
-         }
-         if( DEBUGMATCH) if( !rep ) System.out.println("      matchAndList(oneMask,"+vProp+")==false => return false");
-         if( !rep ) return false;
-      }
-      if( DEBUGMATCH) System.out.println("      matchAndList(allMask,"+vProp+")==true => return true");
-      return true;
-   }
-   
-   private boolean match(String mask,String value, boolean casesens) {
-      boolean match=true;
-      if( mask.length()==0 ) {
-         if( MyProperties.matchMask(mask,value) ) return true;
-         return false;
-      }
-      char c = mask.charAt(0);
-      
-      // Ingalit ?
-      if( c=='>' || c=='<' ) {
-         mask = mask.substring(1);
-         boolean strict=true;
-         if( mask.startsWith("=") ) { strict=false;  mask = mask.substring(1); }
-         return MyProperties.testInequality(c,strict,mask,value);
-      }
-      
-      // Une diffrence plutt qu'une galit ?
-      if( mask.charAt(0)=='!' ) { match=false; mask=mask.substring(1); }
-      
-      // Intervalle ?
-      int i = mask.indexOf("..");
-      if( i>0 ) {
-         try {
-            Double min = Double.parseDouble( mask.substring(0,i).trim() );
-            Double max = Double.parseDouble( mask.substring(i+2).trim() );
-            Double val = Double.parseDouble( value.trim() );
-            return (min<=val && val<=max) == match;
-            
-         } catch( Exception e ) { }
-      }
-      
-      // Prise en compte de la case ?
-      if( !casesens ) { mask=mask.toUpperCase(); value=value.toUpperCase(); }
-      
-      return MyProperties.matchMask(mask,value) == match;
-   }
    
    /**
     * Vrifie que les properties associes  l'id pass en paramtre
@@ -1572,20 +1407,31 @@ public class MultiMoc implements Iterable<MocItem> {
       boolean scanTime = moc!=null && moc.isTime();
       boolean scanSpace = moc!=null && moc.isSpace();
       
+      // Pr-slection des candidats par l'index des proprits
+      PropIndex pi = mapFilter==null ? null : getPropIndex();
+      BitSet sel = pi==null ? null : pi.scan(mapFilter,casesens);
+      if( sel!=null && sel.isEmpty() ) return res;
+      
+      // Pr-slection des candidats par l'index spatial
+      BitSet cand = scanSpace ? index.getCandidates(moc) : null;
+      
       int n=0;
       for( MocItem mi : this ) {
-         if( mapFilter!=null && !match(mi,mapFilter,casesens,true)) continue;
+         if( cand!=null && !index.isCandidate(cand, mi.mocId) ) continue;
+         if( sel!=null && !pi.contains(sel, mi.mocId) ) continue;
          if( moc!=null ) {
-            if( mi.moc==null ) continue;
-            if( scanSpace && !mi.moc.isSpace() ) continue;
-            if( scanTime && !mi.moc.isTime() ) continue;
+            if( !mi.hasMoc() ) continue;
+            if( scanSpace && !mi.isSpace() ) continue;
+            if( scanTime && !mi.isTime() ) continue;
+            Moc m = mi.getMoc();    // <= dcodage ventuel  la demande (dump binaire mapp)
+            if( m==null ) continue;
             try {
                if( intersect==OVERLAPS ) {
-                  if( !moc.isIntersecting(mi.moc) ) continue;
+                  if( !moc.isIntersecting(m) ) continue;
                } else if( intersect==ENCLOSED ) {
-                  if( !mi.moc.isIncluding(moc) ) continue;
+                  if( !m.isIncluding(moc) ) continue;
                } else { // COVERS
-                  if( !moc.isIncluding(mi.moc) ) continue;
+                  if( !moc.isIncluding(m) ) continue;
                }
             }  catch( Exception e ) { continue; }
          }
@@ -1617,27 +1463,34 @@ public class MultiMoc implements Iterable<MocItem> {
    public ArrayList<String> scan( Moc moc, String expr, boolean casesens, int top, int intersect ) throws Exception {
       ArrayList<String> res = new ArrayList<>();
       
-      // Dtermination des IDs candidats
-      HashSet<String> candidateIds = scanExpr(expr,casesens);
-      if( candidateIds.size()==0 ) return res;
+      // Dtermination des IDs candidats (ensemble d'ordinaux de l'index des proprits)
+      PropIndex pi = getPropIndex();
+      BitSet candidateIds = scanExpr(expr,casesens);
+      if( candidateIds.isEmpty() ) return res;
 
       boolean scanTime = moc!=null && moc.isTime();
       boolean scanSpace = moc!=null && moc.isSpace();
 
+      // Pr-slection des candidats par l'index spatial
+      BitSet cand = scanSpace ? index.getCandidates(moc) : null;
+
       int n=0;
       for( MocItem mi : this ) {
-         if( !candidateIds.contains(mi.mocId) ) continue;
+         if( !pi.contains(candidateIds, mi.mocId) ) continue;
+         if( cand!=null && !index.isCandidate(cand, mi.mocId) ) continue;
          if( moc!=null ) {
-            if( mi.moc==null ) continue;
-            if( scanSpace && !mi.moc.isSpace() ) continue;
-            if( scanTime && !mi.moc.isTime() ) continue;
+            if( !mi.hasMoc() ) continue;
+            if( scanSpace && !mi.isSpace() ) continue;
+            if( scanTime && !mi.isTime() ) continue;
+            Moc m = mi.getMoc();    // <= dcodage ventuel  la demande (dump binaire mapp)
+            if( m==null ) continue;
             try {
             if( intersect==OVERLAPS ) {
-                  if( !moc.isIntersecting(mi.moc) ) continue;
+                  if( !moc.isIntersecting(m) ) continue;
             } else if( intersect==ENCLOSED ) {
-               if( !mi.moc.isIncluding(moc) ) continue;
+               if( !m.isIncluding(moc) ) continue;
             } else { // COVERS
-               if( !moc.isIncluding(mi.moc) ) continue;
+               if( !moc.isIncluding(m) ) continue;
             }
             }  catch( Exception e ) { continue; }
          }
@@ -1682,7 +1535,7 @@ public class MultiMoc implements Iterable<MocItem> {
    // 
    private class Op {
       String expr;           // Expression de slection
-      HashSet<String> res;   // Ensemble des IDs correspondants  l'expression
+      BitSet res;            // Ensemble des IDs correspondants  l'expression (ordinaux de l'index des proprits)
       int logic;             // oprateur  appliquer: 0-Union=||, 1-Intersection=&&,  2-Soustraction=&!,    
       boolean terminal=false;// true si l'expression de slection est terminal dans l'arbre des expressions 
                              // (pas d'oprateur ni de parenthse interne)
@@ -2023,11 +1876,7 @@ public class MultiMoc implements Iterable<MocItem> {
             && val.indexOf('*')<0 && val.indexOf('?')<0 && val.indexOf(',')<0) {
 
          // Est-ce qu'il n'y a que la contrainte sur l'ID ? alors je peux y accder directement
-         op.res = new HashSet<>( 10 );   // <= je cre une Hashset petite car ce ne sera probablement 
-                                               //    jamais elle qui sera conserv lors des oprations ensemblistes 
-         MocItem mi1 = getItem(val);
-//         System.out.println("Accs direct pour "+val);
-         if( mi1!=null ) op.res.add(mi1.mocId);
+         op.res = getPropIndex().get(val);
          return;
       }
       
@@ -2035,11 +1884,8 @@ public class MultiMoc implements Iterable<MocItem> {
       HashMap<String, String[]> mapFilters = new HashMap<>();
       mapFilters.put( key, new String[] { val } );
       
-      // Scanning du multimoc et mmorisation des lments qui correspondent
-      ArrayList<String> res = scan( (SMoc)null, mapFilters, casesens, -1, OVERLAPS);
-      op.res = new HashSet<>( Math.max(2*res.size(), size()) );   // <= Je cre une HashSet assez grande, car elle est susceptible
-                                                                        //    de contenir l'ensemble des rsultats. On pourrait affiner en
-      op.res.addAll( res );
+      // Evaluation par l'index des proprits
+      op.res = getPropIndex().scan(mapFilters, casesens);
    }
    
    /**
@@ -2048,31 +1894,12 @@ public class MultiMoc implements Iterable<MocItem> {
     * @param b     L'ensemble B
     * @param logic 0-UNION, 1-INTERSECTION, 2-EXCEPT (ex: ABC &! A => BC)
     * @return      L'ensemble rsultant (peut tre vide, mais jamais null)
-    * ATTENTION: l'ensemble retourn utilise l'un ou l'autre des ensembles initiaux
+    * ATTENTION: l'ensemble retourn est l'ensemble A modifi
     */
-   private HashSet<String> combine( HashSet<String> a, HashSet<String> b ,int logic) {
-      
-      int aSize = a.size();
-      int bSize = b.size();
-      
-      // Logique || => UNION
-      if( logic==0 ) {
-         if( bSize>aSize ) { b.addAll(a); return b; }
-         a.addAll(b);
-         return a;
-      }
-      
-      // Logique && => INTERSECTION
-      if( logic==1 ) {
-         
-         if( bSize>aSize ) { b.retainAll(a); return b; }
-         a.retainAll(b);
-         return a;
-      }
-      
-      // logique &! => EXCEPT
-      if( bSize>aSize) { b.removeAll(a); return b; }
-      a.removeAll(b);
+   private BitSet combine( BitSet a, BitSet b ,int logic) {
+      if( logic==0 )      a.or(b);       // Logique || => UNION
+      else if( logic==1 ) a.and(b);      // Logique && => INTERSECTION
+      else a.andNot(b);                  // logique &! => EXCEPT
       return a;
    }
    
@@ -2083,10 +1910,10 @@ public class MultiMoc implements Iterable<MocItem> {
     *           et qui ont une URL HiPS, mais sans prendre en compte les catalogues
     * @param s  L'expression ensembliste (voir ci-dessus)
     * @param casesens case sensitive or not (default is case sensitive) - never applied for ID field
-    * @return   L'ensemble des ID qui matchent l'expression
+    * @return   L'ensemble des ID qui matchent l'expression (ordinaux de l'index des proprits)
     * @throws Exception
     */
-   private HashSet<String> scanExpr(String s, boolean casesens ) throws Exception {
+   private BitSet scanExpr(String s, boolean casesens ) throws Exception {
       Op op = calculExpr( 0, new Stack<Op>(), s, casesens );
       return op.res;
    }
@@ -2127,6 +1954,12 @@ public class MultiMoc implements Iterable<MocItem> {
    public int size( int typeMoc ) {
       int size=0;
       for( MocItem mi : this ) {
+         
+         // MOC non encore dcod (dump binaire mapp) => type mmoris dans la table des matires
+         if( mi.moc==null && mi.slice!=null ) {
+            if( mi.slice.type==typeMoc+1 ) size++;     // BinaryDump: SMOC=1, TMOC=2, STMOC=3
+            continue;
+         }
          if( mi.moc==null ) continue;
          if( typeMoc==0 && mi.moc instanceof SMoc ) size++;
          else if( typeMoc==1 && mi.moc instanceof TMoc ) size++;
@@ -2144,6 +1977,7 @@ public class MultiMoc implements Iterable<MocItem> {
       for( MocItem mi : this ) {
          if( mi.moc!=null ) size += mi.moc.getMem();
       }
+      if( mocCache!=null ) size+=mocCache.getMem();   // MOCs dcods  la demande
       size+=getPropMem();
       return size;
    }
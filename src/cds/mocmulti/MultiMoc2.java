@@ -55,9 +55,11 @@ public class MultiMoc2 extends MultiMoc {
    public MultiMoc2() { super(); }
    
    public MultiMoc2( MultiMoc moc ) {
+      mocCache = moc.mocCache;
       for( MocItem mo : moc ) {
          MocItem2 mo2 = new MocItem2(mo.mocId, mo.moc, mo.prop, mo.dateMoc, mo.dateProp);
-         add(mo2);
+         mo2.slice = mo.slice;     // MOC non encore dcod (dump binaire mapp)
+         add(mo2, moc.getIndexRuns(mo.mocId));
       }
    }
    
@@ -0,0 +1,541 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.mocmulti;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import cds.aladin.MyProperties;
+import cds.aladin.Tok;
+
+/**
+ * Inverted index of the properties of a MultiMoc: for each property key, the list of the
+ * ordinals of the MocItems by value (multi-valued properties being split on TAB as
+ * for the property filtering). A property constraint (key=mask) is thus evaluated once
+ * per distinct value instead of once per MocItem, and:
+ *  - exact values are directly accessed,
+ *  - "xxx*" and "*xxx" masks use sorted arrays of the values (and of the reversed values),
+ *  - inequalities (>,>=,<,<=) and numerical intervals (min..max) use a sorted array of
+ *    the numerical values,
+ * Each of these structures exists in case sensitive and case insensitive versions.
+ * The results are BitSets of ordinals, the set algebra of the MultiMoc expressions
+ * being done directly on them.
+ * 
+ * The ordinals are never reused: a removed (or modified) MocItem just becomes "dead"
+ * until the next full rebuild (see isWorthRebuilding()). The properties modified in place
+ * are detected thanks to their modification counter (see MyProperties.getModCount()).
+ * 
+ * The matching rules are strictly the ones of the MultiMoc property filtering
+ * (see match(...) below)
+ * 
+ * @author Pierre Fernique [CDS]
+ * @version 1.0 oct 2026 creation
+ */
+public final class PropIndex {
+   
+   static private final String [] NONE = new String[0];
+   
+   private HashMap<String,Integer> ordinals;    // Ordinal of each MocItem ID
+   private ArrayList<String> ids;               // ID of each ordinal (null if dead)
+   private ArrayList<MyProperties> props;       // Properties of each ordinal
+   private int [] modCounts;                    // Modification counter of the properties when indexed
+   private BitSet live;                         // Live ordinals
+   private BitSet noProp;                       // Live ordinals without properties (never match a filter)
+   private int nbDead;                          // Number of dead ordinals
+   private HashMap<String,KeyIndex> keys;       // Index of each property key
+   
+   public PropIndex() {
+      ordinals = new HashMap<>(30000);
+      ids = new ArrayList<>(30000);
+      props = new ArrayList<>(30000);
+      modCounts = new int[30000];
+      live = new BitSet();
+      noProp = new BitSet();
+      keys = new HashMap<>();
+      nbDead=0;
+   }
+   
+   /** Add or replace the properties of a MocItem (null properties => never matches a filter) */
+   public synchronized void add(String mocId, MyProperties prop) {
+      remove(mocId);
+      int ord = ids.size();
+      ids.add(mocId);
+      props.add(prop);
+      ordinals.put(mocId,ord);
+      live.set(ord);
+      if( prop==null ) { noProp.set(ord); return; }
+      if( ord>=modCounts.length ) modCounts = Arrays.copyOf(modCounts,modCounts.length*2);
+      modCounts[ord] = prop.getModCount();
+      
+      HashSet<String> done = new HashSet<>();
+      for( String k : prop.getKeys() ) {
+         if( !done.add(k) ) continue;     // Cl redondante => valeurs dj concatnes par get()
+         String v = prop.get(k);
+         if( v==null ) continue;
+         KeyIndex ki = keys.get(k);
+         if( ki==null ) keys.put(k, ki=new KeyIndex() );
+         ki.add(ord,v);
+      }
+   }
+   
+   /** Remove a MocItem */
+   public synchronized void remove(String mocId) {
+      Integer o = ordinals.remove(mocId);
+      if( o==null ) return;
+      int ord = o;
+      ids.set(ord,null);
+      props.set(ord,null);
+      live.clear(ord);
+      noProp.clear(ord);
+      nbDead++;
+   }
+   
+   /** true if there are so many dead ordinals that the index should be rebuilt */
+   public synchronized boolean isWorthRebuilding() {
+      return nbDead>1000 && nbDead>live.cardinality();
+   }
+   
+   /** Set containing only one MocItem (empty if it is unknown) */
+   public synchronized BitSet get(String mocId) {
+      BitSet res = new BitSet();
+      Integer o = ordinals.get(mocId);
+      if( o!=null ) res.set(o);
+      return res;
+   }
+   
+   /** true if the MocItem belongs to the set */
+   public synchronized boolean contains(BitSet set, String mocId) {
+      Integer o = ordinals.get(mocId);
+      return o!=null && set.get(o);
+   }
+   
+   /** Re-index the properties which have been modified in place since their indexation */
+   private void refresh() {
+      for( int ord=live.nextSetBit(0); ord>=0; ord=live.nextSetBit(ord+1) ) {
+         MyProperties prop = props.get(ord);
+         if( prop!=null && prop.getModCount()!=modCounts[ord] ) add(ids.get(ord),prop);
+      }
+   }
+   
+   /**
+    * Evaluation of a property filter, with exactly the same logic as MultiMoc.scan(moc,mapFilter...):
+    * AND between the entries of the map, OR between the keys of an entry (ex: "ID,obs_title"),
+    * and for each key, AND logic if the first mask begins by '!', otherwise OR logic.
+    * @param mapFilter propKey="wildcard mask" list
+    * @param casesens case sensitive (never applied for ID field)
+    * @return the set of the matching ordinals
+    */
+   public synchronized BitSet scan(HashMap<String,String[]> mapFilter, boolean casesens) {
+      refresh();
+      BitSet res = (BitSet)live.clone();
+      if( mapFilter==null ) return res;
+      res.andNot(noProp);
+      
+      for( Map.Entry<String,String[]> e : mapFilter.entrySet() ) {
+         String listKey = e.getKey();
+         String [] masks = e.getValue();
+         boolean andLogic = masks!=null && masks.length>0 && masks[0].startsWith("!");
+         
+         BitSet rep1;
+         
+         // Plusieurs keywords (genre ID,CDS=...)
+         if( listKey.indexOf(',')>0 ) {
+            rep1 = new BitSet();
+            Tok tok = new Tok(listKey,",");
+            while( tok.hasMoreTokens() ) rep1.or( matchKey(tok.nextToken(),masks,casesens,andLogic) );
+            
+         // Un seul keyword
+         } else rep1 = matchKey(listKey,masks,casesens,andLogic);
+         
+         res.and(rep1);
+         if( res.isEmpty() ) break;
+      }
+      return res;
+   }
+   
+   /** Ordinals matching the masks for a key (which may contain jokers) */
+   private BitSet matchKey(String key, String [] masks, boolean casesens, boolean andLogic) {
+      
+      // Jokers sur le nom du champ => pour chaque masque, au-moins un des champs correspondants
+      if( key.indexOf('?')>=0 || key.indexOf('*')>=0 ) {
+         BitSet rep = null;
+         for( String mask : masks ) {
+            BitSet r = new BitSet();
+            for( Map.Entry<String,KeyIndex> e : keys.entrySet() ) {
+               String k1 = e.getKey();
+               if( !MyProperties.matchMask(key, k1) ) continue;
+               boolean cs = k1.equals(MultiMoc.KEY_ID) ? true : casesens;
+               r.or( matchList(e.getValue(),mask,cs,andLogic) );
+            }
+            if( rep==null ) rep=r;
+            else rep.and(r);
+            if( rep.isEmpty() ) break;
+         }
+         return rep==null ? new BitSet() : rep;
+      }
+      
+      // Nom de champ explicite
+      if( key.equals(MultiMoc.KEY_ID) ) casesens=true;
+      KeyIndex ki = keys.get(key);
+      
+      // Le champ n'existe pas ? la rponse est true sauf si tous les masques sont "ne contient pas..."
+      BitSet rep = new BitSet();
+      if( andLogic ) {
+         rep.or(live);
+         if( ki!=null ) rep.andNot(ki.owners(live));
+      }
+      if( ki==null ) return rep;
+      
+      BitSet r = null;
+      for( String mask : masks ) {
+         BitSet r1 = matchList(ki,mask,casesens,andLogic);
+         if( r==null ) r=r1;
+         else if( andLogic ) r.and(r1);
+         else r.or(r1);
+      }
+      if( r!=null ) rep.or(r);
+      return rep;
+   }
+   
+   /** Ordinals having the key, whose values match the list of masks (ex: Novae,Binaries*)
+    * @param andLogic true: each mask must be verified by at least one value,
+    *                 false: at least one mask must be verified by at least one value
+    */
+   private BitSet matchList(KeyIndex ki, String mask, boolean casesens, boolean andLogic) {
+      BitSet rep = null;
+      Tok st1 = new Tok(mask,",");
+      while( st1.hasMoreTokens() ) {
+         BitSet r = ki.match(st1.nextToken(),casesens,live);
+         if( rep==null ) rep=r;
+         else if( andLogic ) rep.and(r);
+         else rep.or(r);
+      }
+      if( rep==null ) rep = andLogic ? ki.owners(live) : new BitSet();
+      return rep;
+   }
+   
+   /** Value matching, the reference for all the index structures
+    * @param mask the mask (jokers *,?, ! as first char for negation, >, >=, <, <= for inequality, min..max for intervals)
+    * @param value the value to test
+    * @param casesens case sensitive or not
+    */
+   static public boolean match(String mask,String value, boolean casesens) {
+      boolean match=true;
+      if( mask.length()==0 ) {
+         if( MyProperties.matchMask(mask,value) ) return true;
+         return false;
+      }
+      char c = mask.charAt(0);
+      
+      // Ingalit ?
+      if( c=='>' || c=='<' ) {
+         mask = mask.substring(1);
+         boolean strict=true;
+         if( mask.startsWith("=") ) { strict=false;  mask = mask.substring(1); }
+         return MyProperties.testInequality(c,strict,mask,value);
+      }
+      
+      // Une diffrence plutt qu'une galit ?
+      if( mask.charAt(0)=='!' ) { match=false; mask=mask.substring(1); }
+      
+      // Intervalle ?
+      int i = mask.indexOf("..");
+      if( i>0 ) {
+         try {
+            Double min = Double.parseDouble( mask.substring(0,i).trim() );
+            Double max = Double.parseDouble( mask.substring(i+2).trim() );
+            Double val = Double.parseDouble( value.trim() );
+            return (min<=val && val<=max) == match;
+            
+         } catch( Exception e ) { }
+      }
+      
+      // Prise en compte de la case ?
+      if( !casesens ) { mask=mask.toUpperCase(); value=value.toUpperCase(); }
+      
+      return MyProperties.matchMask(mask,value) == match;
+   }
+   
+   /** Growable list of ordinals, the first element being the number of ordinals */
+   static private int [] addOrd(int [] list, int ord) {
+      if( list==null ) list = new int[2];
+      else if( list[0]+1==list.length ) list = Arrays.copyOf(list,list.length*2);
+      list[ ++list[0] ] = ord;
+      return list;
+   }
+   
+   /** Set the live ordinals of a list in a BitSet */
+   static private void setOrds(BitSet set, int [] list, BitSet live) {
+      for( int i=1; i<=list[0]; i++ ) {
+         int ord = list[i];
+         if( live.get(ord) ) set.set(ord);
+      }
+   }
+   
+   /** Value of the property for a numerical comparison, NaN if it is not a plain number
+    * (the dates and the other strings follow the generic rules) */
+   static private double numValue(String v) {
+      if( v.indexOf('T')>0 ) return Double.NaN;
+      try { return Double.parseDouble(v.trim()); }
+      catch( Exception e ) { return Double.NaN; }
+   }
+   
+   /** Index of one property key */
+   static private final class KeyIndex {
+      HashMap<String,int[]> values = new HashMap<>();   // Ordinals by value
+      int [] owners = null;                             // Ordinals having this key
+      
+      // Structures drives, reconstruites  la demande aprs ajout d'une nouvelle valeur
+      boolean dirty=true;
+      String [] sorted;                       // Values, sorted
+      String [] sortedRev;                    // Reversed values, sorted
+      HashMap<String,String[]> upper;         // Values by upper-cased value
+      String [] sortedUpper;                  // Upper-cased values, sorted
+      String [] sortedUpperRev;               // Reversed upper-cased values, sorted
+      double [] num;                          // Numerical values, sorted
+      String [] numValues;                    // Corresponding values
+      String [] others;                       // Values which are not plain numbers
+      
+      void add(int ord, String v) {
+         owners = addOrd(owners,ord);
+         Tok st = new Tok(v,"\t");
+         while( st.hasMoreTokens() ) {
+            String s = st.nextToken();
+            int [] list = values.get(s);
+            if( list==null ) dirty=true;
+            values.put(s, addOrd(list,ord) );
+         }
+      }
+      
+      BitSet owners(BitSet live) {
+         BitSet rep = new BitSet();
+         setOrds(rep,owners,live);
+         return rep;
+      }
+      
+      /** Build the derived structures */
+      private void build() {
+         if( !dirty ) return;
+         int n = values.size();
+         sorted = values.keySet().toArray(new String[n]);
+         Arrays.sort(sorted);
+         sortedRev = reverse(sorted);
+         
+         HashMap<String,ArrayList<String>> up = new HashMap<>();
+         for( String v : sorted ) {
+            String u = v.toUpperCase();
+            ArrayList<String> a = up.get(u);
+            if( a==null ) up.put(u, a=new ArrayList<>(1) );
+            a.add(v);
+         }
+         upper = new HashMap<>(up.size()*2);
+         for( Map.Entry<String,ArrayList<String>> e : up.entrySet() ) {
+            upper.put(e.getKey(), e.getValue().toArray(new String[e.getValue().size()]) );
+         }
+         sortedUpper = upper.keySet().toArray(new String[upper.size()]);
+         Arrays.sort(sortedUpper);
+         sortedUpperRev = reverse(sortedUpper);
+         
+         // Valeurs numriques tries
+         ArrayList<String> numList = new ArrayList<>();
+         ArrayList<String> otherList = new ArrayList<>();
+         for( String v : sorted ) {
+            if( Double.isNaN( numValue(v) ) ) otherList.add(v);
+            else numList.add(v);
+         }
+         final HashMap<String,Double> nv = new HashMap<>(numList.size()*2);
+         for( String v : numList ) nv.put(v, numValue(v) );
+         numValues = numList.toArray(new String[numList.size()]);
+         Arrays.sort(numValues, new Comparator<String>() {
+            public int compare(String a, String b) { return Double.compare(nv.get(a),nv.get(b)); }
+         });
+         num = new double[numValues.length];
+         for( int i=0; i<num.length; i++ ) num[i] = nv.get(numValues[i]);
+         others = otherList.toArray(new String[otherList.size()]);
+         dirty=false;
+      }
+      
+      /** Sorted reversed strings, the original string being the reverse of the reverse ;-) */
+      static private String [] reverse(String [] a) {
+         String [] r = new String[a.length];
+         for( int i=0; i<a.length; i++ ) r[i] = new StringBuilder(a[i]).reverse().toString();
+         Arrays.sort(r);
+         return r;
+      }
+      
+      /** Values of a sorted array beginning by a prefix */
+      static private int [] prefixRange(String [] sorted, String prefix) {
+         int i = Arrays.binarySearch(sorted,prefix);
+         if( i<0 ) i=-i-1;
+         int j=i;
+         while( j<sorted.length && sorted[j].startsWith(prefix) ) j++;
+         return new int[] { i, j };
+      }
+      
+      /** Add the ordinals of a value (or of all the values with the same upper-cased form) */
+      private void addValue(BitSet rep, String v, boolean casesens, BitSet live) {
+         if( casesens ) {
+            int [] list = values.get(v);
+            if( list!=null ) setOrds(rep,list,live);
+         } else {
+            String [] a = upper.get(v);
+            if( a!=null ) for( String v1 : a ) setOrds(rep,values.get(v1),live);
+         }
+      }
+      
+      /** Ordinals of the values matching the mask (see PropIndex.match(...)) */
+      BitSet match(String mask, boolean casesens, BitSet live) {
+         build();
+         BitSet rep = new BitSet();
+         
+         if( mask.length()>0 ) {
+            char c = mask.charAt(0);
+            
+            // Ingalit => tableau des valeurs numriques tries, et test classique pour les autres
+            if( c=='>' || c=='<' ) {
+               String ref = mask.substring(1);
+               boolean strict=true;
+               if( ref.startsWith("=") ) { strict=false; ref=ref.substring(1); }
+               double r;
+               try { r = Double.parseDouble(ref.trim()); } catch( Exception e ) { r=Double.NaN; }
+               if( !Double.isNaN(r) ) {
+                  int i,j;
+                  if( c=='>' ) { i = strict ? upperBound(r) : lowerBound(r); j=num.length; }
+                  else { i=0; j = strict ? lowerBound(r) : upperBound(r); }
+                  for( int k=i; k<j; k++ ) setOrds(rep,values.get(numValues[k]),live);
+                  for( String v : others ) if( PropIndex.match(mask,v,casesens) ) setOrds(rep,values.get(v),live);
+                  return rep;
+               }
+               return matchAll(mask,casesens,live);
+            }
+            
+            boolean neg = c=='!';
+            String m = neg ? mask.substring(1) : mask;
+            
+            // Intervalle numrique => idem
+            int i = m.indexOf("..");
+            if( i>0 ) {
+               try {
+                  double min = Double.parseDouble( m.substring(0,i).trim() );
+                  double max = Double.parseDouble( m.substring(i+2).trim() );
+                  int a = lowerBound(min), b = upperBound(max);
+                  if( !(min<=max) ) b=a;    // y compris NaN
+                  for( int k=0; k<num.length; k++ ) {
+                     if( (k>=a && k<b) != neg ) setOrds(rep,values.get(numValues[k]),live);
+                  }
+                  for( String v : others ) if( PropIndex.match(mask,v,casesens) ) setOrds(rep,values.get(v),live);
+                  return rep;
+               } catch( Exception e ) { }
+            }
+            
+            // Masque simple => valeurs correspondantes
+            if( !casesens ) m = m.toUpperCase();
+            String [] vals = matchMask(m,casesens);
+            if( vals!=null ) {
+               if( !neg ) {
+                  for( String v : vals ) addValue(rep,v,casesens,live);
+               } else {
+                  BitSet r = new BitSet();
+                  for( String v : vals ) addValue(r,v,casesens,live);
+                  
+                  // Ngation => toutes les valeurs autres que celles correspondantes
+                  HashSet<String> excl = new HashSet<>(Arrays.asList(vals));
+                  for( String v : casesens ? sorted : sortedUpper ) {
+                     if( !excl.contains(v) ) addValue(rep,v,casesens,live);
+                  }
+               }
+               return rep;
+            }
+         }
+         return matchAll(mask,casesens,live);
+      }
+      
+      /** Generic evaluation: one test per distinct value */
+      private BitSet matchAll(String mask, boolean casesens, BitSet live) {
+         BitSet rep = new BitSet();
+         for( String v : sorted ) if( PropIndex.match(mask,v,casesens) ) setOrds(rep,values.get(v),live);
+         return rep;
+      }
+      
+      /** Values (upper-cased if casesens==false) matching a mask without '!', thanks to the sorted arrays,
+       * or null if the mask is too complex (=> generic evaluation) */
+      private String [] matchMask(String m, boolean casesens) {
+         String [] s = casesens ? sorted : sortedUpper;
+         int n = m.length();
+         
+         // * => toutes
+         if( n==1 && m.charAt(0)=='*' ) return s;
+         
+         // xxx => accs direct
+         if( m.indexOf('*')<0 && m.indexOf('?')<0 ) {
+            boolean in = casesens ? values.containsKey(m) : upper.containsKey(m);
+            return in ? new String[] { m } : NONE;
+         }
+         
+         // *xxx => valeurs inverses tries
+         if( n>2 && m.charAt(0)=='*' && m.indexOf('*',1)<0 && m.indexOf('?',1)<0 ) {
+            String [] rev = casesens ? sortedRev : sortedUpperRev;
+            int [] r = prefixRange(rev, new StringBuilder(m.substring(1)).reverse().toString());
+            String [] res = new String[ r[1]-r[0] ];
+            for( int i=r[0]; i<r[1]; i++ ) res[i-r[0]] = new StringBuilder(rev[i]).reverse().toString();
+            return res;
+         }
+         
+         // xxx* => valeurs tries
+         String p = m.substring(0,n-1);
+         if( n>1 && m.charAt(n-1)=='*' && p.indexOf('*')<0 && p.indexOf('?')<0 && p.indexOf('\\')<0 ) {
+            int [] r = prefixRange(s,p);
+            return Arrays.copyOfRange(s,r[0],r[1]);
+         }
+         
+         return null;
+      }
+      
+      /** First index of the numerical values >= v */
+      private int lowerBound(double v) {
+         int lo=0, hi=num.length;
+         while( lo<hi ) {
+            int mid = (lo+hi)>>>1;
+            if( num[mid]<v ) lo=mid+1;
+            else hi=mid;
+         }
+         return lo;
+      }
+      
+      /** First index of the numerical values > v */
+      private int upperBound(double v) {
+         int lo=0, hi=num.length;
+         while( lo<hi ) {
+            int mid = (lo+hi)>>>1;
+            if( num[mid]<=v ) lo=mid+1;
+            else hi=mid;
+         }
+         return lo;
+      }
+   }
+}
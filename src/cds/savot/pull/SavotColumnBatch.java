@@ -0,0 +1,637 @@
+package cds.savot.pull;
+
+//Copyright 2002-2014 - UDS/CNRS
+//The SAVOT library is distributed under the terms
+//of the GNU General Public License version 3.
+//
+//This file is part of SAVOT.
+//
+//SAVOT is free software: you can redistribute it and/or modify
+//it under the terms of the GNU General Public License as published by
+//the Free Software Foundation, version 3 of the License.
+//
+//SAVOT is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU General Public License for more details.
+//
+//The GNU General Public License is available in COPYING file
+//along with SAVOT.
+//
+//SAVOT - Simple Access to VOTable - Parser
+//
+//Author, Co-Author:  Andre Schaaff (CDS), Laurent Bourges (JMMC)
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cds.savot.binary.SavotDataReader;
+import cds.savot.model.FieldSet;
+import cds.savot.model.SavotField;
+import cds.savot.model.SavotTable;
+import cds.savot.model.interpreter.BinaryFieldInterpreter;
+
+/**
+ * <p>
+ * Columnar batch of rows returned by {@link SavotPullParser#nextBatch(int)}
+ * </p>
+ * <p>
+ * Each column is stored in a vector typed according to the datatype of its
+ * FIELD: scalar float and double as double[], long as long[], short, int and
+ * unsignedByte as int[], boolean as boolean[]. Any other column (char,
+ * unicodeChar, bit, complex or arrays) is stored as a String[].
+ * </p>
+ * <p>
+ * The vectors are allocated once per table and recycled by the following
+ * batches of the same table: the values to keep must be copied before asking
+ * for the next batch.
+ * </p>
+ * <p>
+ * Null cells are flagged (see {@link #isNull(int, int)}). Their value is NaN
+ * for double columns, the VALUES null value (or 0) for integer columns, false
+ * for boolean columns and null (BINARY) or "" (TABLEDATA) for String columns.
+ * </p>
+ *
+ * @author Pierre Fernique [CDS]
+ */
+public final class SavotColumnBatch {
+
+    /* column types */
+    /** column stored as a String[] */
+    public static final int STRING = 0;
+    /** column stored as a double[] (float, double) */
+    public static final int DOUBLE = 1;
+    /** column stored as a long[] (long) */
+    public static final int LONG = 2;
+    /** column stored as an int[] (short, int, unsignedByte) */
+    public static final int INT = 3;
+    /** column stored as a boolean[] (boolean) */
+    public static final int BOOLEAN = 4;
+
+    /** table described by this batch */
+    private final SavotTable table;
+    /** column types (STRING, DOUBLE, LONG, INT or BOOLEAN) */
+    private final int[] types;
+    /** size in bytes of the BINARY serialization of a scalar column (0 for STRING columns) */
+    private final int[] nbBytes;
+    /** VALUES null attribute (trimmed, null if none) */
+    private final String[] strNulls;
+    /** VALUES null attribute of integer columns */
+    private final long[] nullValues;
+    /** true if the integer column has a VALUES null attribute */
+    private final boolean[] hasNullValue;
+    /** BINARY interpreters of the STRING columns (created on demand) */
+    private final BinaryFieldInterpreter<?>[] interpreters;
+    /** column vectors */
+    private final Object[] vectors;
+    /** null flags */
+    private final boolean[][] nulls;
+    /** vector size */
+    private int capacity = 0;
+    /** number of rows of the current batch */
+    private int nbRows = 0;
+    /** buffer for a BINARY scalar value */
+    private final byte[] buf = new byte[8];
+    /** buffer for the BINARY2 null flags of a row */
+    private final byte[] nullFlags;
+
+    /**
+     * Constructor
+     *
+     * @param table table (FIELD description)
+     * @param capacity initial number of rows of the vectors
+     */
+    SavotColumnBatch(final SavotTable table, final int capacity) {
+        this.table = table;
+        final FieldSet fields = table.getFields();
+        final int n = fields.getItemCount();
+        types = new int[n];
+        nbBytes = new int[n];
+        strNulls = new String[n];
+        nullValues = new long[n];
+        hasNullValue = new boolean[n];
+        interpreters = new BinaryFieldInterpreter<?>[n];
+        vectors = new Object[n];
+        nulls = new boolean[n][];
+        nullFlags = new byte[(n + 7) / 8];
+
+        for (int i = 0; i < n; i++) {
+            final SavotField field = fields.getItemAt(i);
+            final String datatype = field.getDataType() == null ? "" : field.getDataType();
+            types[i] = getColumnType(field);
+            if (types[i] != STRING) {
+                nbBytes[i] = getNbBytes(datatype);
+            }
+            if (field.getValues() != null && field.getValues().getNull() != null) {
+                final String s = field.getValues().getNull().trim();
+                if (s.length() != 0) {
+                    strNulls[i] = s;
+                    if (types[i] == LONG || types[i] == INT) {
+                        try {
+                            nullValues[i] = parseLong(s);
+                            hasNullValue[i] = true;
+                        } catch (NumberFormatException e) {
+                            // not an integer: ignored
+                        }
+                    }
+                }
+            }
+        }
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * Return the column type of a FIELD
+     *
+     * @param field FIELD
+     * @return STRING, DOUBLE, LONG, INT or BOOLEAN
+     */
+    public static int getColumnType(final SavotField field) {
+        final String arraysize = field.getArraySize() == null ? "" : field.getArraySize().trim();
+        if (arraysize.length() != 0 && !arraysize.equals("1")) {
+            return STRING;
+        }
+        final String datatype = field.getDataType();
+        if (datatype == null) {
+            return STRING;
+        }
+        if (datatype.equalsIgnoreCase("double") || datatype.equalsIgnoreCase("float")) {
+            return DOUBLE;
+        }
+        if (datatype.equalsIgnoreCase("long")) {
+            return LONG;
+        }
+        if (datatype.equalsIgnoreCase("int") || datatype.equalsIgnoreCase("short") || datatype.equalsIgnoreCase("unsignedByte")) {
+            return INT;
+        }
+        if (datatype.equalsIgnoreCase("boolean")) {
+            return BOOLEAN;
+        }
+        return STRING;
+    }
+
+    /**
+     * Size in bytes of a BINARY scalar value
+     *
+     * @param datatype FIELD datatype (numeric or boolean)
+     * @return number of bytes
+     */
+    private static int getNbBytes(final String datatype) {
+        if (datatype.equalsIgnoreCase("double") || datatype.equalsIgnoreCase("long")) {
+            return 8;
+        }
+        if (datatype.equalsIgnoreCase("float") || datatype.equalsIgnoreCase("int")) {
+            return 4;
+        }
+        if (datatype.equalsIgnoreCase("short")) {
+            return 2;
+        }
+        return 1; // unsignedByte, boolean
+    }
+
+    /**
+     * Allocate the vectors if they are too small for the given number of rows
+     *
+     * @param rows number of rows
+     */
+    void ensureCapacity(final int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case DOUBLE:
+                    vectors[i] = new double[rows];
+                    break;
+                case LONG:
+                    vectors[i] = new long[rows];
+                    break;
+                case INT:
+                    vectors[i] = new int[rows];
+                    break;
+                case BOOLEAN:
+                    vectors[i] = new boolean[rows];
+                    break;
+                default:
+                    vectors[i] = new String[rows];
+            }
+            nulls[i] = new boolean[rows];
+        }
+        capacity = rows;
+    }
+
+    /**
+     * Get the TABLE described by this batch (FIELD, PARAM, ...)
+     *
+     * @return SavotTable
+     */
+    public SavotTable getTable() {
+        return table;
+    }
+
+    /**
+     * Get the FIELD elements of the table
+     *
+     * @return FieldSet
+     */
+    public FieldSet getFields() {
+        return table.getFields();
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return int
+     */
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    /**
+     * Get the number of rows of the current batch
+     *
+     * @return int
+     */
+    public int getRowCount() {
+        return nbRows;
+    }
+
+    /**
+     * Set the number of rows of the current batch
+     *
+     * @param nbRows int
+     */
+    void setRowCount(final int nbRows) {
+        this.nbRows = nbRows;
+    }
+
+    /**
+     * Get the size of the vectors (greater or equal to the row count)
+     *
+     * @return int
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the type of a column
+     *
+     * @param col column index
+     * @return STRING, DOUBLE, LONG, INT or BOOLEAN
+     */
+    public int getColumnType(final int col) {
+        return types[col];
+    }
+
+    /**
+     * Get a DOUBLE column
+     *
+     * @param col column index
+     * @return double[] (only the getRowCount() first values are significant)
+     */
+    public double[] getDoubleColumn(final int col) {
+        return (double[]) vectors[col];
+    }
+
+    /**
+     * Get a LONG column
+     *
+     * @param col column index
+     * @return long[] (only the getRowCount() first values are significant)
+     */
+    public long[] getLongColumn(final int col) {
+        return (long[]) vectors[col];
+    }
+
+    /**
+     * Get an INT column
+     *
+     * @param col column index
+     * @return int[] (only the getRowCount() first values are significant)
+     */
+    public int[] getIntColumn(final int col) {
+        return (int[]) vectors[col];
+    }
+
+    /**
+     * Get a BOOLEAN column
+     *
+     * @param col column index
+     * @return boolean[] (only the getRowCount() first values are significant)
+     */
+    public boolean[] getBooleanColumn(final int col) {
+        return (boolean[]) vectors[col];
+    }
+
+    /**
+     * Get a STRING column
+     *
+     * @param col column index
+     * @return String[] (only the getRowCount() first values are significant)
+     */
+    public String[] getStringColumn(final int col) {
+        return (String[]) vectors[col];
+    }
+
+    /**
+     * Return true if the cell is null
+     *
+     * @param col column index
+     * @param row row index in the batch
+     * @return boolean
+     */
+    public boolean isNull(final int col, final int row) {
+        return nulls[col][row];
+    }
+
+    /**
+     * Parse an integer value (decimal or hexadecimal)
+     *
+     * @param s trimmed value
+     * @return long
+     * @throws NumberFormatException
+     */
+    private static long parseLong(final String s) throws NumberFormatException {
+        if (s.length() > 2 && s.charAt(0) == '0' && (s.charAt(1) == 'x' || s.charAt(1) == 'X')) {
+            return Long.parseLong(s.substring(2), 16);
+        }
+        return Long.parseLong(s);
+    }
+
+    /**
+     * Set a cell from its TABLEDATA text
+     *
+     * @param col column index
+     * @param row row index in the batch
+     * @param text TD content ("" if empty)
+     */
+    void setText(final int col, final int row, final String text) {
+        final String s;
+        boolean isNull = true;
+        switch (types[col]) {
+            case DOUBLE:
+                double d = Double.NaN;
+                s = text.trim();
+                if (s.length() != 0 && !s.equals(strNulls[col])) {
+                    try {
+                        d = Double.parseDouble(s);
+                        isNull = Double.isNaN(d);
+                    } catch (NumberFormatException e) {
+                        d = Double.NaN;
+                    }
+                }
+                ((double[]) vectors[col])[row] = d;
+                break;
+
+            case LONG:
+            case INT:
+                long l = hasNullValue[col] ? nullValues[col] : 0L;
+                s = text.trim();
+                if (s.length() != 0) {
+                    try {
+                        l = parseLong(s);
+                        isNull = hasNullValue[col] && l == nullValues[col];
+                    } catch (NumberFormatException e) {
+                        // null
+                    }
+                }
+                if (types[col] == LONG) {
+                    ((long[]) vectors[col])[row] = l;
+                } else {
+                    ((int[]) vectors[col])[row] = (int) l;
+                }
+                break;
+
+            case BOOLEAN:
+                s = text.trim();
+                final char c = s.length() == 0 ? '?' : s.charAt(0);
+                isNull = !(c == 'T' || c == 't' || c == '1' || c == 'F' || c == 'f' || c == '0');
+                ((boolean[]) vectors[col])[row] = c == 'T' || c == 't' || c == '1';
+                break;
+
+            default:
+                ((String[]) vectors[col])[row] = text;
+                isNull = text.length() == 0 || text.equals(strNulls[col]);
+        }
+        nulls[col][row] = isNull;
+    }
+
+    /**
+     * Read at most <code>rows</code> rows from decoded BINARY or BINARY2 data
+     *
+     * @param in decoded data
+     * @param rows maximum number of rows
+     * @param binary2 true for BINARY2 serialization (null flags before each row)
+     * @return number of rows read (less than rows only if the end of the data is reached)
+     * @throws IOException
+     */
+    int readBinary(final InputStream in, final int rows, final boolean binary2) throws IOException {
+        final int n = types.length;
+        int row = 0;
+        for (; row < rows; row++) {
+            if (binary2 && !readFully(in, nullFlags, nullFlags.length, true)) {
+                break;
+            }
+            boolean eof = false;
+            for (int col = 0; col < n && !eof; col++) {
+                final boolean nullFlag = binary2 && (nullFlags[col >> 3] & (0x80 >>> (col & 7))) != 0;
+                final boolean first = !binary2 && col == 0;
+
+                if (nbBytes[col] > 0) {
+                    if (!readFully(in, buf, nbBytes[col], first)) {
+                        eof = true;
+                    } else {
+                        setBinary(col, row, nullFlag);
+                    }
+                } else {
+                    final Object[] value = getInterpreter(col).decode(in);
+                    if (value == null) {
+                        if (!first) {
+                            throw new EOFException("Unexpected EOF: the row has not been read completely ; only " + col + " columns on " + n + " has been successfully read !");
+                        }
+                        eof = true;
+                    } else {
+                        setCell(col, row, value, nullFlag);
+                    }
+                }
+            }
+            if (eof) {
+                break;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Read at most <code>rows</code> rows from a BINARY or BINARY2 reader
+     * (cell objects, used for data given by an href)
+     *
+     * @param reader DataBinaryReader or DataBinary2Reader
+     * @param rows maximum number of rows
+     * @param nullBytes number of null flag bytes before each row (BINARY2), 0 otherwise
+     * @return number of rows read (less than rows only if the end of the data is reached)
+     * @throws IOException
+     */
+    int readRows(final SavotDataReader reader, final int rows, final int nullBytes) throws IOException {
+        final int n = types.length;
+        int row = 0;
+        while (row < rows && reader.next()) {
+            final Object[] cells = reader.getRow();
+            for (int col = 0; col < n; col++) {
+                boolean nullFlag = false;
+                if (nullBytes > 0) {
+                    final Object[] flags = (Object[]) cells[col >> 3];
+                    nullFlag = (((Number) flags[0]).intValue() & (0x80 >>> (col & 7))) != 0;
+                }
+                setCell(col, row, (Object[]) cells[col + nullBytes], nullFlag);
+            }
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * Read exactly <code>len</code> bytes
+     *
+     * @param in input stream
+     * @param b buffer
+     * @param len number of bytes
+     * @param eofAllowed true if the end of the stream is accepted before the first byte
+     * @return false if the end of the stream is reached before the first byte
+     * @throws IOException
+     */
+    private static boolean readFully(final InputStream in, final byte[] b, final int len, final boolean eofAllowed) throws IOException {
+        int pos = 0;
+        while (pos < len) {
+            final int nb = in.read(b, pos, len - pos);
+            if (nb < 0) {
+                if (pos == 0 && eofAllowed) {
+                    return false;
+                }
+                throw new EOFException("Unexpected EOF: " + len + " bytes expected, only " + pos + " read !");
+            }
+            pos += nb;
+        }
+        return true;
+    }
+
+    /**
+     * Set a scalar cell from its BINARY serialization (in buf)
+     *
+     * @param col column index
+     * @param row row index in the batch
+     * @param nullFlag BINARY2 null flag
+     */
+    private void setBinary(final int col, final int row, final boolean nullFlag) {
+        final byte[] b = buf;
+        boolean isNull = nullFlag;
+        switch (types[col]) {
+            case DOUBLE:
+                double d;
+                if (nbBytes[col] == 8) {
+                    d = Double.longBitsToDouble(getLong(b));
+                } else {
+                    d = Float.intBitsToFloat(getInt(b));
+                }
+                if (nullFlag) {
+                    d = Double.NaN;
+                }
+                ((double[]) vectors[col])[row] = d;
+                isNull = Double.isNaN(d);
+                break;
+
+            case LONG:
+                final long l = getLong(b);
+                ((long[]) vectors[col])[row] = l;
+                isNull |= hasNullValue[col] && l == nullValues[col];
+                break;
+
+            case INT:
+                final int i;
+                switch (nbBytes[col]) {
+                    case 4:
+                        i = getInt(b);
+                        break;
+                    case 2:
+                        i = (short) ((b[0] << 8) | (b[1] & 0xff));
+                        break;
+                    default:
+                        i = b[0] & 0xff;
+                }
+                ((int[]) vectors[col])[row] = i;
+                isNull |= hasNullValue[col] && i == nullValues[col];
+                break;
+
+            default: // BOOLEAN
+                final char c = (char) (b[0] & 0xff);
+                ((boolean[]) vectors[col])[row] = !nullFlag && (c == 'T' || c == 't' || c == '1');
+                isNull |= !(c == 'T' || c == 't' || c == '1' || c == 'F' || c == 'f' || c == '0');
+        }
+        nulls[col][row] = isNull;
+    }
+
+    /**
+     * Set a cell from its decoded value (array of one item for scalar columns)
+     *
+     * @param col column index
+     * @param row row index in the batch
+     * @param value decoded value
+     * @param nullFlag BINARY2 null flag
+     */
+    private void setCell(final int col, final int row, final Object[] value, final boolean nullFlag) {
+        final Object o = (value == null || value.length == 0) ? null : value[0];
+        boolean isNull = nullFlag || o == null;
+        switch (types[col]) {
+            case DOUBLE:
+                final double d = isNull ? Double.NaN : ((Number) o).doubleValue();
+                ((double[]) vectors[col])[row] = d;
+                isNull = Double.isNaN(d);
+                break;
+
+            case LONG:
+            case INT:
+                final long l = (o == null) ? (hasNullValue[col] ? nullValues[col] : 0L) : ((Number) o).longValue();
+                if (types[col] == LONG) {
+                    ((long[]) vectors[col])[row] = l;
+                } else {
+                    ((int[]) vectors[col])[row] = (int) l;
+                }
+                isNull |= hasNullValue[col] && l == nullValues[col];
+                break;
+
+            case BOOLEAN:
+                ((boolean[]) vectors[col])[row] = !isNull && ((Boolean) o).booleanValue();
+                break;
+
+            default:
+                ((String[]) vectors[col])[row] = nullFlag ? null : getInterpreter(col).convertToString(value);
+        }
+        nulls[col][row] = isNull;
+    }
+
+    /**
+     * Get (and create if needed) the BINARY interpreter of a column
+     *
+     * @param col column index
+     * @return BinaryFieldInterpreter
+     */
+    private BinaryFieldInterpreter<?> getInterpreter(final int col) {
+        if (interpreters[col] == null) {
+            try {
+                interpreters[col] = BinaryFieldInterpreter.createInterpreter(table.getFields().getItemAt(col));
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't create the binary interpreter of column " + col + " : " + e.getMessage(), e);
+            }
+        }
+        return interpreters[col];
+    }
+
+    private static int getInt(final byte[] b) {
+        return (b[0] << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+    }
+
+    private static long getLong(final byte[] b) {
+        return ((long) getInt(b) << 32) | ((b[4] & 0xff) << 24 | (b[5] & 0xff) << 16 | (b[6] & 0xff) << 8 | (b[7] & 0xff)) & 0xffffffffL;
+    }
+}
@@ -21,6 +21,7 @@ package cds.savot.pull;
 //SAVOT - Simple Access to VOTable - Parser
 //
 //Author, Co-Author:  Andre Schaaff (CDS), Laurent Bourges (JMMC)
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,6 +32,10 @@ import java.util.ArrayList;
 import org.xmlpull.v1.XmlPullParser;
 
 //VOTable internal data model
+import cds.savot.binary.Base64InputStream;
+import cds.savot.binary.DataBinaryReader;
+import cds.savot.binary.SavotDataReader;
+import cds.savot.binary2.DataBinary2Reader;
 import cds.savot.common.Markups;
 import cds.savot.common.SavotStatistics;
 import cds.savot.common.VOTableTag;
@@ -125,6 +130,12 @@ public final class SavotPullEngine implements Markups {
   private SavotVOTable _currentVOTable = new SavotVOTable();
   private SavotResource _currentResource = new SavotResource(); // RESOURCEREAD mode only
   private SavotTR _currentTR = new SavotTR(); 		  // ROWREAD mode only
+  // columnar batch reading (nextBatch() only)
+  private boolean batchRead = false;                  // parse() stops at the beginning of each data block
+  private VOTableTag batchData = null;                // data block being read (TABLEDATA, BINARY, BINARY2) or null
+  private SavotColumnBatch _currentBatch = null;      // batch of the current table
+  private InputStream batchStream = null;             // decoded inline BINARY/BINARY2 data
+  private SavotDataReader batchReader = null;         // BINARY/BINARY2 reader for data given by an href
   // used for statistics
   private int resourceCounter = 0;
   private int tableCounter = 0;
@@ -912,6 +923,10 @@ public final class SavotPullEngine implements Markups {
                                       _currentResource.getTables().addItem(currentTable);
                                       _currentVOTable.getResources().addItem(_currentResource);
                                   }
+                                  if (batchRead) {
+                                      // columnar reading: the rows will be read by nextBatch()
+                                      batchData = VOTableTag.TABLEDATA;
+                                  }
                                   break;
 
                               case PARAM:
@@ -1519,12 +1534,18 @@ public final class SavotPullEngine implements Markups {
                                   switch (lastFather()) {
                                       case BINARY:
                                           currentBinary.setStream(currentStream);
+                                          if (batchRead) {
+                                              batchData = VOTableTag.BINARY;
+                                          }
                                           if (trace) {
                                               System.err.println("STREAM from BINARY father = " + father);
                                           }
                                           break;
                                       case BINARY2:
                                           currentBinary2.setStream(currentStream);
+                                          if (batchRead) {
+                                              batchData = VOTableTag.BINARY2;
+                                          }
                                           if (trace) {
                                               System.err.println("STREAM from BINARY2 father = " + father);
                                           }
@@ -1760,6 +1781,11 @@ public final class SavotPullEngine implements Markups {
                   if (trace) {
                       System.err.println(">>>>>>>>>>>>>>> ROWREAD case : TR end");
                   }
+              } else if (batchData != null && (parsingType == ROWREAD)) {
+                  eventType = XmlPullParser.END_DOCUMENT;
+                  if (trace) {
+                      System.err.println(">>>>>>>>>>>>>>> ROWREAD case : " + batchData + " start");
+                  }
               } else if (resourceComplete && (parsingType == RESOURCEREAD)) {
                   eventType = XmlPullParser.END_DOCUMENT;
                   if (trace) {
@@ -1828,6 +1854,212 @@ public final class SavotPullEngine implements Markups {
       return _currentTR;
   }
 
+  /**
+   * Get the next batch of rows in columnar form (warning : ROWREAD mode only).
+   * TABLEDATA, BINARY and BINARY2 data are supported. A batch only contains
+   * rows of one table (see SavotColumnBatch.getTable()) and its vectors are
+   * recycled by the next call for the same table. Do not mix with getNextTR().
+   * 
+   * @param rows maximum number of rows of the batch
+   * @return a SavotColumnBatch with at least one row, or NULL at the end of the document
+   */
+  public SavotColumnBatch nextBatch(final int rows) {
+      try {
+          batchRead = true;
+          while (true) {
+              if (batchData == null) {
+                  // go to the beginning of the next data block
+                  parse(ROWREAD);
+                  if (batchData == null) {
+                      return null; // end of the document
+                  }
+                  startBatchData(rows);
+              }
+              _currentBatch.ensureCapacity(rows);
+
+              final int nb;
+              if (batchData == VOTableTag.TABLEDATA) {
+                  nb = readTableDataBatch(_currentBatch, rows);
+              } else if (batchReader != null) {
+                  nb = _currentBatch.readRows(batchReader, rows, batchData == VOTableTag.BINARY2 ? (_currentBatch.getColumnCount() + 7) / 8 : 0);
+              } else {
+                  nb = _currentBatch.readBinary(batchStream, rows, batchData == VOTableTag.BINARY2);
+              }
+              if (nb < rows) {
+                  endBatchData();
+              }
+              if (nb > 0) {
+                  _currentBatch.setRowCount(nb);
+                  return _currentBatch;
+              }
+          }
+      } catch (IOException ioe) {
+          logger.log(Level.SEVERE, "Exception nextBatch : ", ioe);
+      } catch (Exception e) {
+          logger.log(Level.SEVERE, "Exception nextBatch : ", e);
+      }
+      endBatchData();
+      return null;
+  }
+
+  /**
+   * Prepare the reading of the data block found by parse() : new batch for the
+   * current table, and for BINARY/BINARY2 the decoded data stream
+   * 
+   * @param rows number of rows per batch
+   * @throws IOException
+   */
+  private void startBatchData(final int rows) throws IOException {
+      _currentBatch = new SavotColumnBatch(currentTable, rows);
+      if (batchData == VOTableTag.TABLEDATA) {
+          return;
+      }
+
+      final SavotStream stream = currentStream;
+      final String href = stream.getHref();
+      if (href != null && href.trim().length() != 0) {
+          // external data: access managed by the binary readers
+          if (batchData == VOTableTag.BINARY2) {
+              batchReader = new DataBinary2Reader(stream, currentTable.getFields());
+          } else {
+              batchReader = new DataBinaryReader(stream, currentTable.getFields());
+          }
+          return;
+      }
+
+      final String content = stream.getContent() == null ? "" : stream.getContent();
+      final String encoding = stream.getEncoding() == null ? "" : stream.getEncoding().trim();
+      InputStream in = new ByteArrayInputStream(content.getBytes());
+      if (encoding.equalsIgnoreCase("base64")) {
+          in = new Base64InputStream(in);
+      } else if (encoding.equalsIgnoreCase("gzip")) {
+          in = new GZIPInputStream(in);
+      } else if (encoding.length() != 0) {
+          throw new IOException("Unknown encoding \"" + encoding + "\" ! It must be either \"base64\" or \"gzip\" !");
+      }
+      batchStream = in;
+  }
+
+  /**
+   * End of the reading of the current data block
+   */
+  private void endBatchData() {
+      batchData = null;
+      try {
+          if (batchStream != null) {
+              batchStream.close();
+          }
+          if (batchReader != null) {
+              batchReader.close();
+          }
+      } catch (IOException ioe) {
+          logger.log(Level.INFO, "Exception SavotPullEngine.endBatchData: ", ioe);
+      }
+      batchStream = null;
+      batchReader = null;
+  }
+
+  /**
+   * Fill the batch with the next TR of the current TABLEDATA. The TD contents
+   * are directly converted into the column vectors (no SavotTR/SavotTD instances).
+   * The END_TAG of TABLEDATA is left to parse().
+   * 
+   * @param batch batch to fill
+   * @param rows maximum number of rows
+   * @return number of rows read (less than rows only at the end of the TABLEDATA)
+   * @throws Exception
+   */
+  private int readTableDataBatch(final SavotColumnBatch batch, final int rows) throws Exception {
+      final XmlPullParser parser = this.xmlParser;
+      if (parser == null) {
+          return 0;
+      }
+      final ArrayList<VOTableTag> father = fatherTags;
+      final SavotStatistics stats = statistics;
+      final int nbCols = batch.getColumnCount();
+
+      int row = 0;
+      int col = 0;
+      String text = null;
+      boolean inTD = false;
+
+      int eventType = parser.getEventType();
+      VOTableTag tag = (eventType == XmlPullParser.START_TAG || eventType == XmlPullParser.END_TAG) ? getTag(parser.getName()) : null;
+
+      while (true) {
+          switch (eventType) {
+              case XmlPullParser.START_TAG:
+                  if (tag == VOTableTag.TR) {
+                      col = 0;
+                  } else if (tag == VOTableTag.TD) {
+                      inTD = true;
+                      text = null;
+                  }
+                  break;
+
+              case XmlPullParser.TEXT:
+                  if (inTD) {
+                      text = (text == null) ? parser.getText() : text.concat(parser.getText());
+                  }
+                  break;
+
+              case XmlPullParser.END_TAG:
+                  if (tag == VOTableTag.TD) {
+                      if (col < nbCols) {
+                          batch.setText(col, row, text == null ? "" : text);
+                      }
+                      col++;
+                      inTD = false;
+                  } else if (tag == VOTableTag.TR) {
+                      // missing TDs are null
+                      for (; col < nbCols; col++) {
+                          batch.setText(col, row, "");
+                      }
+                      stats.iTRInc();
+                      row++;
+                  } else if (tag == VOTableTag.TABLEDATA) {
+                      return row;
+                  }
+                  break;
+
+              case XmlPullParser.END_DOCUMENT:
+                  close();
+                  return row;
+
+              default:
+              // do nothing
+          }
+
+          // next event (same father management as parse()):
+          eventType = parser.next();
+          tag = null;
+          if (eventType == XmlPullParser.START_TAG) {
+              tag = getTag(parser.getName());
+              father.add(tag);
+          } else if (eventType == XmlPullParser.END_TAG) {
+              tag = getTag(parser.getName());
+              father.remove(father.size() - 1);
+          }
+
+          if (row == rows) {
+              return row;
+          }
+      }
+  }
+
+  /**
+   * Return the VOTable tag of an element name (with the namespace fix of parse())
+   * 
+   * @param name element name
+   * @return VOTableTag
+   */
+  private VOTableTag getTag(final String name) {
+      if (this.withNamespace(name)) {
+          return VOTableTag.parseTag(name.split(":")[1]);
+      }
+      return VOTableTag.parseTag(name);
+  }
+
   /**
    * Get a reference to V0TABLE object
    * 
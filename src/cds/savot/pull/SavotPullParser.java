@@ -220,6 +220,18 @@ public final class SavotPullParser {
         return engine.getNextTR();
     }
 
+    /**
+     * Get the next batch of rows in columnar form (sequential mode only).
+     * The column vectors are typed according to the FIELD datatypes and are
+     * recycled by the next call for the same table (TABLEDATA, BINARY and BINARY2).
+     * 
+     * @param rows maximum number of rows of the batch
+     * @return a SavotColumnBatch, or null at the end of the document
+     */
+    public SavotColumnBatch nextBatch(final int rows) {
+        return engine.nextBatch(rows);
+    }
+
     /**
      * Get a reference to V0TABLE object
      * 
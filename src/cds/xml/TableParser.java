@@ -22,10 +22,22 @@
 package cds.xml;
 
 import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import cds.aladin.Aladin;
 import cds.aladin.MyInputStream;
@@ -153,6 +165,8 @@ final public class TableParser implements XMLConsumer {
    private boolean flagXY;	          // true si il s'agit d'un catalogue en XYPOS
    private boolean flagNOCOO;         // true si l s'agit d'un catalogue sans aucune position
    private String[] record;			  // Buffer pour lire chaque enregistrement
+   private TableRecord binRecord;     // Idem mais typ dans le cas des tables binaires (BINARY, BINARY2, BINTABLE)
+   private TableRecord textRecord = new TableRecord(); // Enveloppe de record[] pour consumeRecord()
    private Vector<String> vRecord;			  // Idem mais lorsqu'on ne connait pas encore le nombre de champs
    private int row;                   // Numro du champ courant
    private boolean flagNewTable;	  // true si c'est le premier flux d'une table
@@ -177,6 +191,11 @@ final public class TableParser implements XMLConsumer {
    private Field timeField;           // Le field associ  la colonne de temps la plus probable;
    private boolean first=true;        // Pour n'afficher qu'une fois un message d'alerte sur TCB/BARYCENTER
    private boolean flagInterrupt=false; // true s'il y a demande d'interruption de parsing   
+   private boolean flagEOD;           // true si le parsing CSV s'est arrt sur un tag [EOD] (SkyCat)
+   private int nbCSVRecord;           // Nombre d'enregistrements CSV trouvs par le dernier dataParse(...)
+
+   static private final long PARALLEL_MINSIZE = 32L*1024*1024; // Taille min. d'un fichier CSV pour la lecture parallle
+   static private final int CHUNK = 8*1024*1024;               // Taille nominale d'un bloc de lecture parallle
       
    class TimeFrame {
       String id=null;                  // Identifier
@@ -383,6 +402,7 @@ final public class TableParser implements XMLConsumer {
          prec = new int[nbField];
          
          if( inBinary2 ) nullMask = new byte[( nbField+7)/8 ];
+         binRecord = new TableRecord(nbField);
          nField=nRecord = 0;
 
          boolean variableField=false;
@@ -486,16 +506,16 @@ final public class TableParser implements XMLConsumer {
          }
 
          // Est-ce un champ null ?
-         if( inBinary2 && isNull(nullMask,nField) ) record[nField]="null";
+         if( inBinary2 && isNull(nullMask,nField) ) binRecord.setString(nField,"null");
 
          // Sinon
-         else record[nField] = getBinField(b,position, len[nField]==-1 ? lenv /*nbBytes */ : len[nField], type[nField],prec[nField], 0., 1.,false,0);
+         else setBinField(binRecord,nField,b,position, len[nField]==-1 ? lenv /*nbBytes */ : len[nField], type[nField],prec[nField], 0., 1.,false,0);
 
-//         System.out.print(" "+nbBytes+"/"+record[nField]);
+//         System.out.print(" "+nbBytes+"/"+binRecord.getString(nField));
          position = nextPosition;
          nField++;
          if( nField==nbField ) {
-            consumeRecord(record,nRecord++);
+            consumeRecord(binRecord,nRecord++);
 //            System.out.println();
             
             // Demande d'interruption de lecture
@@ -737,6 +757,7 @@ final public class TableParser implements XMLConsumer {
             byte [] buf = new byte[ (nRecord<1000 ? nRecord:1000) * sizeRecord ];
 
             record = new String[ nField ];
+            binRecord = flagBin ? new TableRecord(nField) : null;
             offset=buf.length;
             for( int i=0; i<nRecord; i++, offset+=sizeRecord ) {
 
@@ -767,14 +788,15 @@ final public class TableParser implements XMLConsumer {
                      // cas BINAIRE
                   } else {
                      //                     String val =
-                     record[j] = getBinField(buf,offset+pos[j],len[j],type[j],prec[j],
+                     setBinField(binRecord,j,buf,offset+pos[j],len[j],type[j],prec[j],
                            flagTzeroTscal?tzero[j]:0., flagTzeroTscal?tscal[j]:1., tnull[j]!=null,tinull[j]);
                      //                     System.out.println("Lecture champ "+(j+1)+" pos="+pos[j]+" type="+len[j]+type[j]+" => "+val);
                   }
                }
 
                // "Consommation" de l'enregistrement courant
-               consumeRecord(record,i);
+               if( flagBin ) consumeRecord(binRecord,i);
+               else consumeRecord(record,i);
                
                // Interruption demande ?
                if( flagInterrupt ) break;
@@ -921,6 +943,89 @@ final public class TableParser implements XMLConsumer {
    }
    
    static private Charset utf16 = Charset.forName("UTF-16");
+
+   /**
+    * Dcodage d'un champ d'octets dans la cellule col de l'enregistrement typ. Les scalaires
+    * numriques et boolens sont mmoriss sans mise en forme (mme rsultat que fmtInt(), fmtLong()
+    * et fmt() une fois converti en String), les autres champs sont mis en forme par getBinField()
+    * @param r l'enregistrement typ
+    * @param col l'indice de la cellule
+    * @param t le tableau des octets
+    * @param i le premier octet concern
+    * @param n le nombre d'lments
+    * @param type la lettre code FITS BINTABLE
+    * @param prec la prcision  afficher
+    * @param tzero pour un ventuel changement d'chelle
+    * @param tscale pour un ventuel changement d'chelle
+    * @param hasNull s'il y a une valeur indfinie positionne
+    * @param tnull valeur indfinie (uniquement pour les types B,I, et J
+    */
+   final private void setBinField(TableRecord r,int col,byte t[],int i, int n, char type,
+         int prec, double tzero,double tscale, boolean hasNull,int tnull) {
+      if( n==1 ) {
+         long a;
+         switch(type) {
+            case 'L': r.setBoolean(col, t[i]!=0); return;
+            case 'B': setInt(r,col, ((t[i])&0xFF),prec,tzero,tscale,hasNull,tnull); return;
+            case 'I': setInt(r,col, getShort(t,i),prec,tzero,tscale,hasNull,tnull); return;
+            case 'J': setInt(r,col, getInt(t,i),prec,tzero,tscale,hasNull,tnull); return;
+            case 'K': a = (((long)getInt(t,i))<<32)
+                  | ((getInt(t,i+4))&0xFFFFFFFFL);
+            setLong(r,col,a,prec,tzero,tscale,hasNull,tnull); return;
+            case 'E': setDouble(r,col, Float.intBitsToFloat( getInt(t,i) ),tzero,tscale ); return;
+            case 'D': a = (((long)getInt(t,i))<<32)
+                  | ((getInt(t,i+4))& 0xFFFFFFFFL);
+            setDouble(r,col, Double.longBitsToDouble(a),tzero,tscale ); return;
+         }
+      }
+      r.setString(col, getBinField(t,i,n,type,prec,tzero,tscale,hasNull,tnull) );
+   }
+
+   /** Version type de fmtInt() */
+   final private void setInt(TableRecord r,int col,long x,int prec,double tzero,double tscale,
+         boolean hasNull,int tnull)  {
+      if( hasNull && tnull==x ) { r.setString(col,""); return; }
+      double y=x;
+      if( tscale!=1. ) y*=tscale;
+      if( tzero!=0.  ) y+=tzero;
+      if( prec>=0 ) y= Util.round(y,prec);
+
+      if( y!=x ) r.setDouble(col,y);
+      else r.setLong(col,x);
+   }
+
+   /** Version type de fmtLong() */
+   final private void setLong(TableRecord r,int col,long x,int prec,double tzero,double tscale,
+         boolean hasNull,int tnull)  {
+      if( hasNull && tnull==x ) { r.setString(col,""); return; }
+      if( tscale==1 && tzero==0 ) { r.setLong(col,x); return; }
+
+      // Calcul entier (la prcision n'est pas prise en compte)
+      if( (long)tscale==tscale && (long)tzero==tzero ) {
+         long y=x;
+         if( tscale!=1. ) y*=(long)tscale;
+         if( tzero!=0.  ) y+=(long)tzero;
+         r.setLong(col,y);
+         return;
+      }
+
+      // Calcul rel
+      double y=x;
+      if( tscale!=1. ) y*=tscale;
+      if( tzero!=0.  ) y+=tzero;
+      if( prec>=0 ) y= Util.round(y,prec);
+
+      if( y!=x ) r.setDouble(col,y);
+      else r.setLong(col,x);
+   }
+
+   /** Version type de fmt() */
+   final private void setDouble(TableRecord r,int col,double x,double tzero,double tscale)  {
+      if( Double.isNaN(x) ) { r.setString(col,""); return; }
+      if( tscale!=1. ) x*=tscale;
+      if( tzero!=0.  ) x+=tzero;
+      r.setDouble(col,x);
+   }
    
 
    /**
@@ -1111,6 +1216,10 @@ final public class TableParser implements XMLConsumer {
       refposition = new Hashtable<>(10);
       typeFmt = dis.getType();
 
+      // Gros fichier CSV/TSV local => lecture parallle par blocs
+      File file = getParallelFile(dis,endTag);
+      if( file!=null ) return parseCSVFile(file);
+
       return (xmlparser.parse(dis,endTag) && error==null /* && nField>1 */ );
    }
    
@@ -1137,6 +1246,7 @@ final public class TableParser implements XMLConsumer {
       record=null;
       vRecord=null;
       flagNewTable=true;
+      flagEOD=false;
       astroCoordsID=null;
       inAstroCoords=false;
       inSEDGroup=false;
@@ -2552,11 +2662,19 @@ final public class TableParser implements XMLConsumer {
     * les coordonnes en fonction des valeurs nRA,nDEC ou nX,nY suivant le flagXY ou non
     */
    private void consumeRecord(String rec[],int nbRecord) {
+      textRecord.wrap(rec);
+      consumeRecord(textRecord,nbRecord);
+   }
+
+   /** Idem pour un enregistrement typ, seules les valeurs ncessaires au calcul de la position
+    * et de l'horodatage sont mises en forme. L'enregistrement est transmis tel quel  un
+    * TableParserTypedConsumer */
+   private void consumeRecord(TableRecord rec,int nbRecord) {
       
       // Un horadatage associ ?
       double jdTime = Double.NaN;
       boolean timeValue=false;
-      if( nTime>=0 && (timeValue=hasSomething(rec[nTime]) ) ) {
+      if( nTime>=0 && (timeValue=hasSomething(rec.getString(nTime)) ) ) {
          
          // Premire valeur de temps => on en profite pour dtecter le codage temporel le plus probable
          if( timeFormat==-1 ) {
@@ -2570,7 +2688,7 @@ final public class TableParser implements XMLConsumer {
             }
             
             if( timeFormat==-1 ) {
-               String s = rec[nTime].trim();;
+               String s = rec.getString(nTime).trim();;
                if( s.length()>0 ) { 
                   try { t=Double.parseDouble( s ); } catch( Exception e1) {}
                /* if( timeField.datatype!=null && timeField.isNumDataType() ) numeric=true;
@@ -2595,7 +2713,7 @@ final public class TableParser implements XMLConsumer {
                   // Si c'est une chaine de caractres, la prsence d'un "T" va faire penser  de l'ISO
                   // sinon on ne sait pas trop...
                } else {
-                  if( rec[nTime].indexOf('T')>0 ) timeFormat=ISOTIME;
+                  if( rec.getString(nTime).indexOf('T')>0 ) timeFormat=ISOTIME;
                   else timeFormat=YMD;
                }
             }
@@ -2621,7 +2739,7 @@ final public class TableParser implements XMLConsumer {
          }
 
          if( timeValue ) {
-            String valTime = rec[nTime];
+            String valTime = rec.getString(nTime);
             try {
                jdTime = srcTimeFrame.getJDTime( valTime );
             } catch( Exception e) {
@@ -2636,24 +2754,24 @@ final public class TableParser implements XMLConsumer {
          if( Double.isNaN(J2000) ) J2000 = (new Astrotime("J2000")).getJyr();
 
          if( flagNOCOO ) {
-            consumer.setRecord(0,0,jdTime, rec);
+            setRecord(0,0,jdTime, rec);
          
          // Coordonnes en XY
          } else if( flagXY ) {
-            double x = Double.parseDouble(rec[nX]);
-            double y = Double.parseDouble(rec[nY]);
-            consumer.setRecord(x,y,jdTime, rec);
+            double x = Double.parseDouble(rec.getString(nX));
+            double y = Double.parseDouble(rec.getString(nY));
+            setRecord(x,y,jdTime, rec);
 
             // Coordonnes en RA/DEC
          } else {
             String ra,dec;
             
             // Champs diffrents
-            if( nRA!=nDEC ) { ra=rec[nRA]; dec=rec[nDEC]; }
+            if( nRA!=nDEC ) { ra=rec.getString(nRA); dec=rec.getString(nDEC); }
 
             // Mme champ => on va devoir dcouper
             else {
-               String s = rec[nRA];
+               String s = rec.getString(nRA);
                int i = s.indexOf('+');
                int j=i;
                if( i<0 ) i=j =s.indexOf('-');
@@ -2679,8 +2797,8 @@ final public class TableParser implements XMLConsumer {
                // Y a-t-il des mouvements propres ?
                double pmra=0, pmdec=0;
                if( nPMRA!=-1 && nPMDEC!=-1 ) {
-                  String sPMRA = rec[nPMRA];
-                  String sPMDEC = rec[nPMDEC];
+                  String sPMRA = rec.getString(nPMRA);
+                  String sPMDEC = rec.getString(nPMDEC);
 
                   // Eventuel changement d'unit pour le PM
                   // Attention pmdec peut tre exprim en mas/y ou ms/y si dj multipli par cosd
@@ -2703,7 +2821,7 @@ final public class TableParser implements XMLConsumer {
                         } catch( Exception e) {
                            // Il faut reinitialiser parce que mu1 a chang d'unit malgr l'chec !
                            mu1.setUnit(sPMRA);
-                           mu1.setValue(rec[nPMRA]);
+                           mu1.setValue(rec.getString(nPMRA));
                            mu1.convertTo(new Unit("ms/yr"));
                            double v = 15*mu1.getValue()*Math.cos(c.getLat()*Math.PI/180);
                            mu1 = new Unit(v+"mas/yr");
@@ -2719,7 +2837,7 @@ final public class TableParser implements XMLConsumer {
                         } catch( Exception e2 ) {
                            System.err.println("Table PM converting error "+ (nbRecord!=-1 ? "(record "+(nbRecord+1)+")":"") +": "+e2);
                            if( aladin.levelTrace>=3 ) e2.printStackTrace();
-                           consumer.setRecord(c.getLon(),c.getLat(),jdTime, rec);
+                           setRecord(c.getLon(),c.getLat(),jdTime, rec);
                            return;
                         }
                      }
@@ -2733,9 +2851,9 @@ final public class TableParser implements XMLConsumer {
                targetCoo.toEpoch( trgAstroFrame.getEpoch() );
                targetCoo.convertTo(trgAstroFrame);
 //               if( pmra!=0 ) System.out.println("AFTER c="+targetCoo);
-               consumer.setRecord(targetCoo.getLon(),targetCoo.getLat(),jdTime, rec);
+               setRecord(targetCoo.getLon(),targetCoo.getLat(),jdTime, rec);
 
-            }  else consumer.setRecord(c.getLon(),c.getLat(),jdTime, rec);
+            }  else setRecord(c.getLon(),c.getLat(),jdTime, rec);
          }
          
          // Interruption demande (on a attendu la fin de l'enregistrement courant
@@ -2752,6 +2870,12 @@ final public class TableParser implements XMLConsumer {
 
    }
    
+   /** Transmission de l'enregistrement au consumer, sous forme type s'il le supporte */
+   private void setRecord(double ra,double dec,double jdTime,TableRecord rec) {
+      if( consumer instanceof TableParserTypedConsumer ) ((TableParserTypedConsumer)consumer).setRecord(ra,dec,jdTime,rec);
+      else consumer.setRecord(ra,dec,jdTime,rec.getStrings());
+   }
+
    // Vire le prfixe numrique sur une unit
    // ex: 10-2yr => yr
    private String cleanUnitPrefix(String unit) {
@@ -2923,10 +3047,10 @@ final public class TableParser implements XMLConsumer {
     * @param ch,cur,end  dsignation de l'emplacement courant
     * @param rs le caractre de sparation des enregistrements
     */
-   private boolean vide(char ch[],int cur, int end,char rs) {
+   static private boolean vide(char ch[],int cur, int end,char rs) {
       if( ch[cur]=='#' ) return true;	//commentaire
       while( cur<end && (ch[cur]==' ' || ch[cur]=='\t' || ch[cur]=='\r') ) cur++;
-      return ch[cur]==rs;
+      return cur>=end || ch[cur]==rs;
    }
 
    /** Dans le mode CSV, retourne true si c'est une ligne de tirets (sans blancs
@@ -3124,6 +3248,7 @@ final public class TableParser implements XMLConsumer {
          // Cas SkyCat
          if( row==1 && record[0].equals("[EOD]") ) {
             consumer.tableParserInfo("   -Stop parsing at SkyCat [EOD] tag");
+            flagEOD=true;
             cur=end;
             break;
          }
@@ -3154,6 +3279,333 @@ final public class TableParser implements XMLConsumer {
          s = getStringTrim(ch,start,length>200?200:length);
          throw new Exception("Data parsing error (no record found):\n \n["+s+"...]");
       }
+      nbCSVRecord=nbRecord;
+   }
+
+   /** Pool partag par les lectures CSV parallles, cr  la premire utilisation */
+   static private ForkJoinPool pool;
+
+   static synchronized private ForkJoinPool getPool() {
+      if( pool==null ) pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      return pool;
+   }
+
+   /** Retourne le fichier local  lire en parallle, ou null si le flux doit tre pars
+    * squentiellement (flux distant, compress, XML, entte rcrite (SExtractor, IPAC),
+    * flux dj entam, ou trop petit pour que cela vaille le coup)
+    */
+   private File getParallelFile(MyInputStream dis,String endTag) {
+      if( endTag!=null || dis.getFileName()==null || dis.getPos()!=0 ) return null;
+      if( (typeFmt & (MyInputStream.CSV|MyInputStream.BSV))==0 ) return null;
+      if( (typeFmt & (MyInputStream.XML|MyInputStream.VOTABLE|MyInputStream.ASTRORES
+            |MyInputStream.GZ|MyInputStream.BZIP2|MyInputStream.SEXTRA|MyInputStream.IPAC
+            |MyInputStream.AJTOOL|MyInputStream.FITST|MyInputStream.FITSB))!=0 ) return null;
+      if( Runtime.getRuntime().availableProcessors()<2 ) return null;
+      File f = new File(dis.getFileName());
+      if( !f.isFile() || f.length()<PARALLEL_MINSIZE ) return null;
+      return f;
+   }
+
+   /** Parsing parallle d'un gros fichier CSV/TSV local. Le fichier est projet en mmoire (mmap)
+    * et dcoup en blocs sur des frontires d'enregistrements (en respectant les guillemets
+    * du CSV mode Excel). Le premier bloc est pars classiquement par dataParse(...) afin de
+    * traiter l'entte et de dterminer les colonnes de position, de mouvement propre et de temps.
+    * Les blocs suivants sont dcoups en champs en parallle (voir CSVChunk), puis leurs enregistrements
+    * sont transmis au consumer squentiellement, dans l'ordre du fichier.
+    * @param file le fichier  parser
+    * @return true si ok
+    */
+   private boolean parseCSVFile(File file) throws Exception {
+      char rs = recsep!=null ? recsep.charAt(0) : '\n';
+      char cs[] = colsep!=null ? colsep.toCharArray() : "\t".toCharArray();
+      boolean excelCSV = cs.length>0 && cs[0]==',';
+      long t0 = System.currentTimeMillis();
+
+      try( FileChannel fc = FileChannel.open(file.toPath(),StandardOpenOption.READ) ) {
+         final long size = fc.size();
+         long [] bounds = getChunkBounds(fc,size,(byte)rs,excelCSV);
+         Aladin.trace(3,"TableParser: parallel CSV parsing of "+file
+               +" ("+size+" bytes, "+(bounds.length-1)+" chunks)");
+
+         // Premier bloc => entte et premiers enregistrements
+         char [] ch = CSVChunk.toChars(fc,0,bounds[1]);
+         characters(ch,0,ch.length);
+         if( record==null ) throw new Exception("Data parsing error (no record found)");
+         int nbRecord = nbCSVRecord;
+
+         // Blocs suivants => dcoupage parallle, consommation dans l'ordre
+         ForkJoinPool pool = getPool();
+         int window = 2*pool.getParallelism();
+         ArrayDeque<Future<CSVChunk>> pending = new ArrayDeque<>();
+         int next=1;
+         while( !flagEOD && !flagInterrupt && (next<bounds.length-1 || !pending.isEmpty()) ) {
+            while( next<bounds.length-1 && pending.size()<window ) {
+               pending.add( pool.submit( new CSVChunk(fc,bounds[next],bounds[next+1],rs,cs,nField,getDoubleCheck()) ) );
+               next++;
+            }
+            nbRecord = consumeChunk(pending.poll().get(),nbRecord);
+         }
+         for( Future<CSVChunk> f : pending ) f.cancel(true);
+      }
+
+      Aladin.trace(3,"TableParser: parallel CSV parsing done in "+(System.currentTimeMillis()-t0)+"ms");
+      return error==null;
+   }
+
+   /** Calcul des frontires des blocs: chaque bloc se termine juste aprs un sparateur
+    * d'enregistrement (hors guillemets en mode Excel). Les parits des guillemets de chaque
+    * bloc nominal sont calcules en parallle afin de connatre l'tat "entre guillemets"
+    * au dbut de chacun d'eux.
+    * @return les positions de dbut des blocs, suivies de la taille du fichier
+    */
+   private long [] getChunkBounds(final FileChannel fc,long size,byte rs,boolean excelCSV) throws Exception {
+      int n = (int)( (size+CHUNK-1)/CHUNK );
+
+      // Parit des guillemets de chaque bloc nominal
+      boolean [] odd = new boolean[n];
+      if( excelCSV ) {
+         ArrayList<Callable<Boolean>> tasks = new ArrayList<>(n);
+         for( int i=0; i<n; i++ ) {
+            final long pos = (long)i*CHUNK;
+            final int len = (int)Math.min(CHUNK,size-pos);
+            tasks.add( new Callable<Boolean>() {
+               public Boolean call() throws IOException {
+                  MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY,pos,len);
+                  boolean odd=false;
+                  for( int j=0; j<len; j++ ) if( buf.get(j)=='"' ) odd=!odd;
+                  return odd;
+               }
+            });
+         }
+         int i=0;
+         for( Future<Boolean> f : getPool().invokeAll(tasks) ) odd[i++]=f.get();
+      }
+
+      // Frontires effectives: premier sparateur hors guillemets aprs chaque dbut de bloc nominal
+      ArrayList<Long> bounds = new ArrayList<>(n+1);
+      bounds.add(0L);
+      boolean inQuote=false;
+      for( int i=1; i<n; i++ ) {
+         inQuote ^= odd[i-1];
+         long pos = (long)i*CHUNK;
+         if( pos<=bounds.get(bounds.size()-1) ) continue;   // bloc absorb par une trs longue ligne
+         long b = CSVChunk.nextRecord(fc,pos,size,rs,excelCSV,inQuote);
+         if( b<size && b>bounds.get(bounds.size()-1) ) bounds.add(b);
+      }
+      bounds.add(size);
+
+      long [] res = new long[bounds.size()];
+      for( int i=0; i<res.length; i++ ) res[i]=bounds.get(i);
+      return res;
+   }
+
+   /** Retourne les colonnes dont le datatype numrique (par dfaut "D") reste  vrifier */
+   private boolean [] getDoubleCheck() {
+      if( tsvField==null ) return null;
+      boolean [] check = new boolean[tsvField.length];
+      for( int i=0; i<check.length; i++ ) {
+         check[i] = tsvField[i].datatype!=null && tsvField[i].datatype.equals("D");
+      }
+      return check;
+   }
+
+   /** Transmission au consumer des enregistrements d'un bloc pars en parallle,
+    * comme le fait la fin de dataParse(...)
+    * @param chunk le bloc
+    * @param nbRecord nombre d'enregistrements dj transmis
+    * @return le nouveau nombre d'enregistrements transmis
+    */
+   private int consumeChunk(CSVChunk chunk,int nbRecord) {
+
+      // Vrification "manuelle" a posteriori du datatype (par dfaut double)
+      if( chunk.notDouble!=null ) {
+         for( int i=0; i<tsvField.length; i++ ) if( chunk.notDouble[i] ) tsvField[i].datatype=null;
+      }
+
+      int n = chunk.records.size();
+      for( int i=0; i<n && !flagInterrupt; i++ ) {
+         String [] rec = chunk.records.get(i);
+         int nbRow = chunk.nbRow[i];
+
+         // Mme messages d'alerte qu'en mode squentiel
+         if( chunk.extraValue!=null && chunk.extraValue.containsKey(i) ) {
+            aladin.command.printConsole("Not aligned CSV catalog (record="+(nbRecord+1)+" extra row value=\""
+                  +chunk.extraValue.get(i)+"\") => ignored\n");
+         }
+         if( nbRow<nField && !(i==n-1 && chunk.eod) ) {
+            aladin.command.printConsole("Not aligned CSV catalog (record="+(nbRecord+1)+" missing rows nbRow="
+                  +nbRow+"/"+nField+") => ignored" + (filename!=null?filename:""));
+         }
+         nbRecord++;
+
+         // Cas SkyCat
+         if( i==n-1 && chunk.eod ) {
+            consumer.tableParserInfo("   -Stop parsing at SkyCat [EOD] tag");
+            flagEOD=true;
+            break;
+         }
+
+         consumeRecord(rec,nbRecord);
+      }
+      return nbRecord;
+   }
+
+   /** Bloc d'un fichier CSV dcoup en enregistrements, indpendamment des autres blocs.
+    * Reprend les rgles de getRecord(...) et getField(...) mais sans toucher  l'tat du parser */
+   static private final class CSVChunk implements Callable<CSVChunk> {
+      private final FileChannel fc;
+      private final long start,end;       // Portion du fichier
+      private final char rs;              // Sparateur d'enregistrements
+      private final char [] cs;           // Sparateurs de champs
+      private final int nField;           // Nombre de champs
+      private final boolean [] checkD;    // Colonnes dont le datatype "D" est  vrifier (ou null)
+
+      ArrayList<String[]> records = new ArrayList<>();
+      int [] nbRow = new int[1024];       // Nombre de champs effectivement trouvs pour chaque enregistrement
+      HashMap<Integer,String> extraValue; // Premire valeur surnumraire de chaque enregistrement trop long
+      boolean [] notDouble;               // Colonnes qui s'avrent ne pas tre numriques
+      boolean eod;                        // true si le dernier enregistrement est le tag SkyCat [EOD]
+
+      CSVChunk(FileChannel fc,long start,long end,char rs,char [] cs,int nField,boolean [] checkD) {
+         this.fc=fc;
+         this.start=start;
+         this.end=end;
+         this.rs=rs;
+         this.cs=cs;
+         this.nField=nField;
+         this.checkD=checkD;
+      }
+
+      /** Lecture d'une portion du fichier sous la forme d'un tableau de caractres,
+       *  la manire de XMLParser (1 octet => 1 caractre) */
+      static char [] toChars(FileChannel fc,long pos,long end) throws IOException {
+         int len = (int)(end-pos);
+         MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY,pos,len);
+         char [] ch = new char[len];
+         for( int i=0; i<len; i++ ) ch[i] = (char)buf.get(i);
+         return ch;
+      }
+
+      /** Retourne la position qui suit le premier sparateur d'enregistrement (hors guillemets
+       * en mode Excel)  partir de pos, ou size si aucun */
+      static long nextRecord(FileChannel fc,long pos,long size,byte rs,boolean excelCSV,boolean inQuote) throws IOException {
+         while( pos<size ) {
+            int len = (int)Math.min(1024*1024,size-pos);
+            MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY,pos,len);
+            for( int i=0; i<len; i++ ) {
+               byte b = buf.get(i);
+               if( excelCSV && b=='"' ) inQuote=!inQuote;
+               else if( b==rs && !inQuote ) {
+                  long p = pos+i+1;
+
+                  // Comme skipRecSep(...) => \n\r
+                  if( rs=='\n' && p<size ) {
+                     byte b1 = i+1<len ? buf.get(i+1) : fc.map(FileChannel.MapMode.READ_ONLY,p,1).get(0);
+                     if( b1=='\r' ) p++;
+                  }
+                  return p;
+               }
+            }
+            pos+=len;
+         }
+         return size;
+      }
+
+      public CSVChunk call() throws Exception {
+         char [] ch = toChars(fc,start,end);
+         int cur=0;
+         int len=ch.length;
+         if( checkD!=null ) notDouble = new boolean[checkD.length];
+
+         while( cur<len ) {
+            if( vide(ch,cur,len,rs) ) { cur=skipRec(ch,cur,rs); continue; }
+
+            String [] rec = new String[nField];
+            int n = records.size();
+            if( n==nbRow.length ) nbRow = Arrays.copyOf(nbRow,n*2);
+            records.add(rec);
+            int [] row = new int[1];
+            cur = getRecord(ch,cur,len,rec,row,n);
+            nbRow[n]=row[0];
+
+            // Cas SkyCat
+            if( row[0]==1 && rec[0].equals("[EOD]") ) { eod=true; break; }
+
+            // Bourrage si champ manquant en fin de ligne
+            for( int i=row[0]; i<nField; i++ ) rec[i]="???";
+
+            // Vrification du datatype numrique
+            if( checkD!=null ) {
+               for( int i=0; i<checkD.length; i++ ) {
+                  if( !checkD[i] || notDouble[i] ) continue;
+                  try {
+                     String s1=rec[i].trim();
+                     if( s1.length()>0 && !s1.equals("-") && !s1.equalsIgnoreCase("null")  ) Double.parseDouble(s1);
+                  } catch( Exception e ) {
+                     notDouble[i]=true;
+                  }
+               }
+            }
+
+            cur=skipRecSep(ch,cur,rs);
+         }
+         return this;
+      }
+
+      /** Voir TableParser.getRecord(...) */
+      private int getRecord(char [] ch,int cur,int end,String [] rec,int [] row,int n) throws Exception {
+         int un=0;
+         while( cur<end && ch[cur]!=rs ) {
+            cur=getField(ch,cur+un,end,rec,row,n);
+            un=1;
+         }
+
+         // Dernier champ vide avec absence de retour  la ligne en fin de fichier
+         if( row[0]==nField-1 && cur==end && cur>0 && ch[cur-1]!=rs ) rec[row[0]++]="";
+         return cur;
+      }
+
+      /** Voir TableParser.getField(...) */
+      private int getField(char [] ch,int cur,int end,String [] rec,int [] row,int n) throws Exception {
+         int start=cur;
+         char sep=0;
+         boolean excelCSV = cs.length>0 && cs[0]==',';
+
+         if( excelCSV ) {
+            boolean inQuote=false;
+            for( ; cur<end; cur++ ) {
+               if( ch[cur]=='"' ) inQuote=!inQuote;
+               if( !inQuote && !( (sep=isColSep(ch[cur],cs))==0 && ch[cur]!=rs ) ) break;
+            }
+            if( inQuote ) throw new Exception("Bad CSV: Excel quote delimiters not balanced (field["+row[0]+"]=["
+                  +getStringTrim(ch,start,cur-start)+"])");
+         } else {
+            while( cur<end && (sep=isColSep(ch[cur],cs))==0 && (ch[cur]!=rs ) ) cur++;
+         }
+
+         String value;
+         if( excelCSV ) {
+            if( cur-start>1 && ch[start]=='"' && ch[cur-1]=='"' ) value = getStringTrim(ch,start+1,cur-start-2);
+            else value = getStringTrim(ch,start,cur-start);
+         } else {
+            if( sep==' ' ) {
+               cur++;
+               while( cur<end && ch[cur]==' ' && ch[cur]!=rs ) cur++;
+               cur--;
+            }
+            value = getStringTrim(ch,start,cur-start);
+         }
+
+         if( sep==' ' && row[0]==0 && value.length()==0 ) return cur;
+
+         if( row[0]>=nField ) {
+            if( extraValue==null ) extraValue = new HashMap<>();
+            if( !extraValue.containsKey(n) ) extraValue.put(n,value);
+         } else rec[row[0]]=value;
+         row[0]++;
+
+         return cur;
+      }
    }
 
 }
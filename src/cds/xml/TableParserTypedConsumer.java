@@ -0,0 +1,44 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.xml;
+
+/**
+ * Extension of the TableParserConsumer interface for consumers able to
+ * use the decoded values of the binary tables (VOTable BINARY/BINARY2, FITS BINTABLE)
+ * without formatting and parsing them back. For the textual formats, the record is
+ * just a wrapper around the String [] fields.
+ *
+ * @version 1.0 - octobre 2026 - creation
+ * @author P.Fernique [CDS]
+ */
+public interface TableParserTypedConsumer extends TableParserConsumer {
+
+  /** This method is called by the TableParser parser for each line
+   * of a DATA element, instead of setRecord(double,double,double,String []).
+   * @param ra the position of the associated astronomical object
+   * @param dec
+   * @param jdtime an time-stamp associated to the associated astronomical object
+   * @param rec the record (reused buffer, only valid during the call)
+   */
+   public abstract void setRecord(double ra,double dec,double jdtime, TableRecord rec);
+}
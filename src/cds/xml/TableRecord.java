@@ -0,0 +1,129 @@
+// Copyright 1999-2022 - Universite de Strasbourg/CNRS
+// The Aladin Desktop program is developped by the Centre de Donnees
+// astronomiques de Strasbourgs (CDS).
+// The Aladin Desktop program is distributed under the terms
+// of the GNU General Public License version 3.
+//
+//This file is part of Aladin Desktop.
+//
+//    Aladin Desktop is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License.
+//
+//    Aladin Desktop is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    The GNU General Public License is available in COPYING file
+//    along with Aladin Desktop.
+//
+
+
+package cds.xml;
+
+/**
+ * Reusable record buffer transmitted by the TableParser to a TableParserTypedConsumer.
+ * For binary tables (VOTable BINARY/BINARY2, FITS BINTABLE), the scalar numerical and
+ * boolean cells are kept as decoded primitives; the other cells (character strings,
+ * vectors, complex, null values) are given as Strings.
+ * The String representation of a primitive cell is only built on demand (getString()),
+ * and is exactly the one that the TableParser would have given via setRecord(...,String []).
+ *
+ * The buffer is reused for each record: a consumer must copy the values it wants to keep.
+ *
+ * @version 1.0 - octobre 2026 - creation
+ * @author P.Fernique [CDS]
+ */
+final public class TableRecord {
+
+   /** Cell types */
+   static final public int STRING  = 0;
+   static final public int DOUBLE  = 1;
+   static final public int LONG    = 2;
+   static final public int BOOLEAN = 3;
+
+   private int n;               // Number of cells
+   private int [] type;         // Type of each cell
+   private double [] d;         // DOUBLE values
+   private long [] l;           // LONG and BOOLEAN (0/1) values
+   private String [] s;         // STRING values, or cache of the String representation (null if not yet built)
+   private boolean allString;   // true if all the cells are Strings (wrapped String [] record)
+
+   /** Creation of an empty record, to be used with wrap() */
+   TableRecord() { }
+
+   /** Creation of a record of n cells */
+   TableRecord(int n) {
+      this.n=n;
+      type = new int[n];
+      d = new double[n];
+      l = new long[n];
+      s = new String[n];
+   }
+
+   /** Wraps a String [] record (textual formats) without any copy */
+   void wrap(String [] rec) {
+      s=rec;
+      n=rec.length;
+      allString=true;
+   }
+
+   void setString(int i,String v) { type[i]=STRING; s[i]=v; }
+   void setDouble(int i,double v) { type[i]=DOUBLE; d[i]=v; s[i]=null; }
+   void setLong(int i,long v)     { type[i]=LONG;   l[i]=v; s[i]=null; }
+   void setBoolean(int i,boolean v) { type[i]=BOOLEAN; l[i]=v?1:0; s[i]=null; }
+
+   /** Number of cells */
+   public int size() { return n; }
+
+   /** Type of the cell i (STRING, DOUBLE, LONG or BOOLEAN) */
+   public int getType(int i) { return allString ? STRING : type[i]; }
+
+   /** Numerical value of the cell i (DOUBLE or LONG), NaN otherwise */
+   public double getDouble(int i) {
+      switch( getType(i) ) {
+         case DOUBLE: return d[i];
+         case LONG:   return l[i];
+      }
+      return Double.NaN;
+   }
+
+   /** Value of the LONG cell i, 0 otherwise */
+   public long getLong(int i) { return getType(i)==LONG ? l[i] : 0; }
+
+   /** Value of the BOOLEAN cell i, false otherwise */
+   public boolean getBoolean(int i) { return getType(i)==BOOLEAN && l[i]!=0; }
+
+   /** String representation of the cell i (built and cached at the first call) */
+   public String getString(int i) {
+      String v = s[i];
+      if( v!=null || allString ) return v;
+      switch( type[i] ) {
+         case DOUBLE:  v = d[i]+""; break;
+         case LONG:    v = l[i]+""; break;
+         case BOOLEAN: v = l[i]!=0 ? "T":"F"; break;
+         default: return null;
+      }
+      return s[i]=v;
+   }
+
+   /** Appends the String representation of the cell i to sb, without building an
+    * intermediate String for the primitive cells */
+   public void append(int i,StringBuilder sb) {
+      String v = s[i];
+      if( v!=null || allString ) { sb.append(v); return; }
+      switch( type[i] ) {
+         case DOUBLE:  sb.append(d[i]); break;
+         case LONG:    sb.append(l[i]); break;
+         case BOOLEAN: sb.append(l[i]!=0 ? 'T':'F'); break;
+      }
+   }
+
+   /** String representation of all the cells. The returned array belongs to the record
+    * (for wrapped records, it is the original String [] record) */
+   public String [] getStrings() {
+      if( !allString ) for( int i=0; i<n; i++ ) getString(i);
+      return s;
+   }
+}